@@ -0,0 +1,503 @@
+package com.ontologycentral.ldspider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.frontier.FrontierJournal;
+import com.ontologycentral.ldspider.frontier.RecordReader;
+import com.ontologycentral.ldspider.frontier.RecordWriter;
+import com.ontologycentral.ldspider.queue.Redirects;
+import com.ontologycentral.ldspider.queue.SeenJournal;
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+/**
+ * Writes the state of a crawl to a directory after each round, so that a
+ * crawl can be resumed after a crash without fetching the URIs of the
+ * rounds done again.
+ *
+ * Checkpoint <i>n</i> consists of
+ * <ul>
+ * <li><code>seen-n.fp</code>, the fingerprints of the URIs seen in the round
+ * only (see {@link SeenJournal}), sorted and as varint gaps;</li>
+ * <li><code>links-n.rec</code>, the links added to the frontier in the
+ * round, written while crawling (see {@link FrontierJournal});</li>
+ * <li>every {@link #COMPACT} checkpoints, and if the links of the round are
+ * not complete, <code>frontier-n.rec</code>, the URIs of the frontier not
+ * seen yet instead; the files of the frontier of earlier checkpoints are
+ * deleted then;</li>
+ * <li><code>checkpoint-n</code>, the round, the length of the output, the
+ * number of the checkpoint with the latest frontier, the used budget and
+ * the redirects.</li>
+ * </ul>
+ * The files are synced to disk; <code>checkpoint-n</code> is written last
+ * and renamed into place, so that a checkpoint either is complete or does
+ * not count. Resuming reads the latest complete checkpoint, the seen
+ * fingerprints of all checkpoints up to it, and the latest frontier plus the
+ * links of the checkpoints after it.
+ *
+ * Before a checkpoint is written, the output is flushed, so that the output
+ * up to the recorded length belongs to the rounds done.
+ */
+public class Checkpointer {
+	private static final Logger _log = Logger.getLogger(Checkpointer.class.getName());
+
+	static final int MAGIC = 0x4c44434b;
+	static final int VERSION = 2;
+
+	static final String CHECKPOINT = "checkpoint-";
+	static final String SEEN = "seen-";
+	static final String SEEN_SUFFIX = ".fp";
+	static final String FRONTIER = "frontier-";
+	static final String FRONTIER_SUFFIX = ".rec";
+	static final String LINKS = "links-";
+	static final String TEMP_SUFFIX = ".tmp";
+
+	/**
+	 * URIs of the frontier checked against the seen set at once.
+	 */
+	static final int BATCH = 10000;
+
+	/**
+	 * Checkpoints until the whole frontier is written again.
+	 */
+	static final int COMPACT = 8;
+
+	File _dir;
+	SeenJournal _journal;
+	FrontierJournal _links;
+
+	Flushable _output;
+	File _outputFile;
+
+	/**
+	 * Number of the last checkpoint written or resumed from, -1 before the
+	 * first.
+	 */
+	int _last;
+
+	/**
+	 * Number of the last checkpoint with the whole frontier, 0 if none.
+	 */
+	int _full;
+
+	public Checkpointer(File dir) throws IOException {
+		_dir = dir;
+		if (!_dir.isDirectory() && !_dir.mkdirs()) {
+			throw new IOException("cannot create checkpoint directory " + _dir);
+		}
+		_journal = new SeenJournal();
+		_links = new FrontierJournal();
+		_last = -1;
+		_full = 0;
+	}
+
+	/**
+	 * @param output flushed before each checkpoint
+	 * @param file the file written by the output, whose length is recorded,
+	 *        <code>null</code> if none
+	 */
+	public void setOutput(Flushable output, File file) {
+		_output = output;
+		_outputFile = file;
+	}
+
+	/**
+	 * @return the journal to set on the queues (see
+	 *         {@link SpiderQueue#setSeenJournal(SeenJournal)})
+	 */
+	public SeenJournal getJournal() {
+		return _journal;
+	}
+
+	/**
+	 * Starts writing the links added to the frontier to the journal, after
+	 * {@link #resume(SpiderQueue, Frontier, CrawlBudget)} if the crawl is
+	 * resumed. Without the journal, each checkpoint writes the whole
+	 * frontier.
+	 *
+	 * @throws IOException if the directory holds the checkpoints of a crawl
+	 *         not resumed, or the journal cannot be written
+	 */
+	public void start(Frontier f) throws IOException {
+		checkNew();
+		_links.open(new File(_dir, LINKS + (_last + 1) + FRONTIER_SUFFIX));
+		f.setJournal(_links);
+	}
+
+	/**
+	 * A new crawl must not overwrite the checkpoints of another one.
+	 */
+	void checkNew() throws IOException {
+		if (_last < 0) {
+			if (getLatest() > 0) {
+				throw new IOException(_dir + " holds the checkpoints of another crawl; resume it, or clear them");
+			}
+			_last = 0;
+		}
+	}
+
+	/**
+	 * Writes a checkpoint after a round. The lookups of the round have to be
+	 * finished, and the frontier must not have been scheduled yet.
+	 *
+	 * @param round the round done
+	 */
+	public void checkpoint(int round, SpiderQueue q, Frontier f, CrawlBudget budget) throws IOException {
+		long time = System.currentTimeMillis();
+
+		checkNew();
+		int n = _last + 1;
+
+		if (_output != null) {
+			_output.flush();
+		}
+		long outputLength = _outputFile == null ? -1 : _outputFile.length();
+
+		long[] fps = _journal.drain();
+		writeSeen(new File(_dir, SEEN + n + SEEN_SUFFIX), fps);
+
+		// the links of the round, -1 if not journalled completely
+		boolean journalling = _links.isOpen();
+		long uris = _links.close();
+
+		boolean full = uris < 0 || _full == 0 || n - _full >= COMPACT;
+		if (full) {
+			uris = writeFrontier(new File(_dir, FRONTIER + n + FRONTIER_SUFFIX), q, f);
+		}
+
+		File tmp = new File(_dir, CHECKPOINT + n + TEMP_SUFFIX);
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(round);
+			out.writeLong(outputLength);
+			out.writeInt(full ? n : _full);
+			out.writeLong(budget.getFetches());
+			out.writeLong(budget.getFetchesWithRdf());
+			out.writeLong(budget.getStatements());
+			out.writeLong(budget.getBytes());
+			out.writeLong(budget.getTime());
+
+			byte[] redirects = serialise(q.getRedirects());
+			out.writeInt(redirects.length);
+			out.write(redirects);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+
+		File ckp = new File(_dir, CHECKPOINT + n);
+		if (!tmp.renameTo(ckp)) {
+			throw new IOException("cannot rename " + tmp + " to " + ckp);
+		}
+		_last = n;
+
+		if (full) {
+			// the frontier of the earlier checkpoints is not needed any more
+			for (int i = _full; i <= n; i++) {
+				if (i < n) {
+					new File(_dir, FRONTIER + i + FRONTIER_SUFFIX).delete();
+				}
+				new File(_dir, LINKS + i + FRONTIER_SUFFIX).delete();
+			}
+			_full = n;
+		}
+
+		if (journalling) {
+			_links.open(new File(_dir, LINKS + (n + 1) + FRONTIER_SUFFIX));
+		}
+
+		_log.info("checkpoint " + n + " after round " + round + ": " + fps.length + " seen, "
+				+ uris + (full ? " uris in frontier" : " links added to frontier") + ", output at "
+				+ outputLength + ", in " + (System.currentTimeMillis() - time) + " ms");
+	}
+
+	static void writeSeen(File file, long[] fps) throws IOException {
+		Arrays.sort(fps);
+
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(fps.length);
+			long prev = Long.MIN_VALUE;
+			for (long fp : fps) {
+				// sorted as signed, so the gaps fit as unsigned
+				writeVarlong(out, fp - prev);
+				prev = fp;
+			}
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			fos.close();
+		}
+	}
+
+	static long[] readSeen(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a checkpoint file");
+			}
+			long[] fps = new long[in.readInt()];
+			long prev = Long.MIN_VALUE;
+			for (int i = 0; i < fps.length; i++) {
+				prev += readVarlong(in);
+				fps[i] = prev;
+			}
+			return fps;
+		} finally {
+			in.close();
+		}
+	}
+
+	static void writeVarlong(DataOutputStream out, long v) throws IOException {
+		while ((v & ~0x7fL) != 0) {
+			out.write((int)((v & 0x7f) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int)v);
+	}
+
+	static long readVarlong(DataInputStream in) throws IOException {
+		long v = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			v |= (long)(b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	 * Writes the URIs of the frontier that have not been seen yet.
+	 *
+	 * @return number of URIs written
+	 */
+	static long writeFrontier(File file, SpiderQueue q, Frontier f) throws IOException {
+		FileOutputStream fos = new FileOutputStream(file);
+		RecordWriter out = new RecordWriter(fos, true);
+		try {
+			List<URI> batch = new ArrayList<URI>(BATCH);
+			for (Iterator<URI> it = f.iterator(); it.hasNext(); ) {
+				batch.add(it.next());
+				if (batch.size() == BATCH) {
+					writeUnseen(out, q, batch);
+				}
+			}
+			writeUnseen(out, q, batch);
+			out.flush();
+			fos.getFD().sync();
+		} finally {
+			out.close();
+		}
+		return out.getCount();
+	}
+
+	static void writeUnseen(RecordWriter out, SpiderQueue q, List<URI> batch) throws IOException {
+		boolean[] seen = q.checkSeen(batch);
+		for (int i = 0; i < seen.length; i++) {
+			if (!seen[i]) {
+				out.write(1, 0, batch.get(i).toString());
+			}
+		}
+		batch.clear();
+	}
+
+	static byte[] serialise(Redirects r) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(r);
+		oos.close();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @return the number of the latest complete checkpoint in the directory,
+	 *         0 if there is none
+	 */
+	public int getLatest() {
+		int latest = 0;
+		String[] names = _dir.list();
+		if (names != null) {
+			for (String name : names) {
+				if (name.startsWith(CHECKPOINT) && !name.endsWith(TEMP_SUFFIX)) {
+					try {
+						latest = Math.max(latest, Integer.parseInt(name.substring(CHECKPOINT.length())));
+					} catch (NumberFormatException e) {
+						;
+					}
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * @return the length of the output recorded with the latest checkpoint,
+	 *         -1 if there is none
+	 */
+	public long getOutputLength() throws IOException {
+		int n = getLatest();
+		if (n == 0) {
+			return -1;
+		}
+		DataInputStream in = openCheckpoint(n);
+		try {
+			in.readInt();
+			return in.readLong();
+		} finally {
+			in.close();
+		}
+	}
+
+	DataInputStream openCheckpoint(int n) throws IOException {
+		File file = new File(_dir, CHECKPOINT + n);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			in.close();
+			throw new IOException(file + " is not a checkpoint of this version");
+		}
+		return in;
+	}
+
+	/**
+	 * Restores the latest checkpoint: marks the URIs seen, adds the URIs of
+	 * the frontier, sets the redirects and takes over the used budget.
+	 * Later checkpoints continue the numbering.
+	 *
+	 * @return the round the checkpoint was written after, -1 if there is no
+	 *         checkpoint
+	 */
+	public int resume(SpiderQueue q, Frontier f, CrawlBudget budget) throws IOException {
+		long time = System.currentTimeMillis();
+
+		int n = getLatest();
+		if (n == 0) {
+			_log.info("no checkpoint in " + _dir + ", starting from scratch");
+			return -1;
+		}
+
+		int round;
+		int full;
+		DataInputStream in = openCheckpoint(n);
+		try {
+			round = in.readInt();
+			in.readLong();
+			full = in.readInt();
+			budget.resume(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong());
+
+			byte[] redirects = new byte[in.readInt()];
+			in.readFully(redirects);
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(redirects));
+			try {
+				q.setRedirects((Redirects)ois.readObject());
+			} catch (ClassNotFoundException e) {
+				throw new IOException("cannot read redirects: " + e.getMessage());
+			}
+		} finally {
+			in.close();
+		}
+
+		long seen = 0;
+		for (int i = 1; i <= n; i++) {
+			long[] fps = readSeen(new File(_dir, SEEN + i + SEEN_SUFFIX));
+			SeenJournal.restore(q.getSeen(), fps);
+			seen += fps.length;
+		}
+
+		long uris = readFrontier(new File(_dir, FRONTIER + full + FRONTIER_SUFFIX), f);
+		for (int i = full + 1; i <= n; i++) {
+			uris += readFrontier(new File(_dir, LINKS + i + FRONTIER_SUFFIX), f);
+		}
+
+		// a checkpoint not completed belongs to the round done again
+		for (int i = n + 1; new File(_dir, SEEN + i + SEEN_SUFFIX).exists()
+				|| new File(_dir, LINKS + i + FRONTIER_SUFFIX).exists(); i++) {
+			new File(_dir, SEEN + i + SEEN_SUFFIX).delete();
+			new File(_dir, FRONTIER + i + FRONTIER_SUFFIX).delete();
+			new File(_dir, LINKS + i + FRONTIER_SUFFIX).delete();
+			new File(_dir, CHECKPOINT + i + TEMP_SUFFIX).delete();
+		}
+
+		_journal.drain();
+		_last = n;
+		_full = full;
+
+		_log.info("resumed from checkpoint " + n + " after round " + round + ": " + seen + " seen, "
+				+ uris + " uris in frontier, " + budget + ", in "
+				+ (System.currentTimeMillis() - time) + " ms");
+
+		return round;
+	}
+
+	/**
+	 * Adds the URIs of a frontier or links file to the frontier.
+	 *
+	 * @return number of URIs read
+	 */
+	static long readFrontier(File file, Frontier f) throws IOException {
+		long uris = 0;
+		RecordReader r = new RecordReader(new FileInputStream(file));
+		try {
+			while (r.next()) {
+				try {
+					f.add(new URI(r.getUri()));
+					uris++;
+				} catch (URISyntaxException e) {
+					_log.fine("skipping " + r.getUri() + ", not parsable");
+				}
+			}
+		} finally {
+			r.close();
+		}
+		return uris;
+	}
+
+	/**
+	 * Deletes the checkpoints in the directory.
+	 */
+	public void clear() {
+		File[] files = _dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(CHECKPOINT) || name.startsWith(SEEN) || name.startsWith(FRONTIER) || name.startsWith(LINKS)) {
+					if (!file.delete()) {
+						_log.warning("cannot delete " + file);
+					}
+				}
+			}
+		}
+		_last = 0;
+		_full = 0;
+	}
+
+	public String toString() {
+		return "checkpoints in " + _dir + ", last " + _last;
+	}
+}
@@ -0,0 +1,227 @@
+package com.ontologycentral.ldspider;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The limits of a crawl and what has been used up so far: documents fetched
+ * (200 responses handled), documents with at least one statement, statements,
+ * bytes of content read and wall-clock time. The lookups report to the
+ * budget, and the threads check {@link #isExhausted()} before each lookup, so
+ * that the crawl stops after the lookups in progress once a limit is hit.
+ *
+ * Each {@link Crawler} has its own budget, so several crawls can run in the
+ * same JVM. A limit of -1 means no limit.
+ */
+public class CrawlBudget {
+	private final static Logger _log = Logger.getLogger(CrawlBudget.class.getSimpleName());
+
+	public static final long UNLIMITED = -1;
+
+	AtomicLong _fetches;
+	AtomicLong _fetchesWithRdf;
+	AtomicLong _statements;
+	AtomicLong _bytes;
+
+	long _maxFetches;
+	long _maxFetchesWithRdf;
+	long _maxStatements;
+	long _maxBytes;
+	long _maxTime;
+
+	/**
+	 * Point in time when the crawl started, 0 if not started yet.
+	 */
+	volatile long _start;
+
+	/**
+	 * The limit that has been hit, or <code>null</code>.
+	 */
+	volatile String _exhausted;
+
+	public CrawlBudget() {
+		_fetches = new AtomicLong(0);
+		_fetchesWithRdf = new AtomicLong(0);
+		_statements = new AtomicLong(0);
+		_bytes = new AtomicLong(0);
+
+		_maxFetches = UNLIMITED;
+		_maxFetchesWithRdf = UNLIMITED;
+		_maxStatements = UNLIMITED;
+		_maxBytes = UNLIMITED;
+		_maxTime = UNLIMITED;
+
+		_start = 0;
+		_exhausted = null;
+	}
+
+	/**
+	 * @param max maximum number of documents fetched
+	 */
+	public void setMaxFetches(long max) {
+		_maxFetches = max;
+	}
+
+	/**
+	 * @param max maximum number of documents fetched that contain statements
+	 */
+	public void setMaxFetchesWithRdf(long max) {
+		_maxFetchesWithRdf = max;
+	}
+
+	/**
+	 * @param max maximum number of statements
+	 */
+	public void setMaxStatements(long max) {
+		_maxStatements = max;
+	}
+
+	/**
+	 * @param max maximum number of bytes of content read
+	 */
+	public void setMaxBytes(long max) {
+		_maxBytes = max;
+	}
+
+	/**
+	 * @param max maximum time in ms, counted from {@link #start()}
+	 */
+	public void setMaxTime(long max) {
+		_maxTime = max;
+	}
+
+	/**
+	 * Starts the clock for the time limit. Does nothing if the clock has
+	 * been started already, so that the limit spans all rounds.
+	 */
+	public void start() {
+		if (_start == 0) {
+			_start = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Records a document that has been fetched and parsed.
+	 *
+	 * @param statements number of statements in the document
+	 */
+	public void fetched(long statements) {
+		check("fetches", _fetches.incrementAndGet(), _maxFetches);
+		if (statements > 0) {
+			check("fetches with rdf", _fetchesWithRdf.incrementAndGet(), _maxFetchesWithRdf);
+			check("statements", _statements.addAndGet(statements), _maxStatements);
+		}
+	}
+
+	/**
+	 * Records content that has been read.
+	 *
+	 * @param bytes
+	 */
+	public void read(long bytes) {
+		if (bytes > 0) {
+			check("bytes", _bytes.addAndGet(bytes), _maxBytes);
+		}
+	}
+
+	/**
+	 * Takes over what has been used before a crawl was resumed from a
+	 * checkpoint, with the time counted as already spent.
+	 *
+	 * @param fetches
+	 * @param fetchesWithRdf
+	 * @param statements
+	 * @param bytes
+	 * @param time in ms
+	 */
+	public void resume(long fetches, long fetchesWithRdf, long statements, long bytes, long time) {
+		check("fetches", _fetches.addAndGet(fetches), _maxFetches);
+		check("fetches with rdf", _fetchesWithRdf.addAndGet(fetchesWithRdf), _maxFetchesWithRdf);
+		check("statements", _statements.addAndGet(statements), _maxStatements);
+		check("bytes", _bytes.addAndGet(bytes), _maxBytes);
+		_start = System.currentTimeMillis() - time;
+	}
+
+	void check(String what, long used, long max) {
+		if (max != UNLIMITED && used >= max && _exhausted == null) {
+			_exhausted = what;
+			_log.info("limit of " + max + " " + what + " reached");
+		}
+	}
+
+	/**
+	 * @return true if any of the limits has been reached
+	 */
+	public boolean isExhausted() {
+		if (_exhausted == null && _maxTime != UNLIMITED && _start != 0) {
+			check("ms", System.currentTimeMillis() - _start, _maxTime);
+		}
+		return _exhausted != null;
+	}
+
+	/**
+	 * @return the limit that has been reached (e.g. "bytes"), or <code>null</code>
+	 */
+	public String getExhausted() {
+		isExhausted();
+		return _exhausted;
+	}
+
+	public long getFetches() {
+		return _fetches.get();
+	}
+
+	public long getFetchesWithRdf() {
+		return _fetchesWithRdf.get();
+	}
+
+	public long getStatements() {
+		return _statements.get();
+	}
+
+	public long getBytes() {
+		return _bytes.get();
+	}
+
+	/**
+	 * @return time in ms since {@link #start()}
+	 */
+	public long getTime() {
+		return _start == 0 ? 0 : System.currentTimeMillis() - _start;
+	}
+
+	public long getRemainingFetches() {
+		return remaining(_fetches.get(), _maxFetches);
+	}
+
+	public long getRemainingFetchesWithRdf() {
+		return remaining(_fetchesWithRdf.get(), _maxFetchesWithRdf);
+	}
+
+	public long getRemainingStatements() {
+		return remaining(_statements.get(), _maxStatements);
+	}
+
+	public long getRemainingBytes() {
+		return remaining(_bytes.get(), _maxBytes);
+	}
+
+	public long getRemainingTime() {
+		return remaining(getTime(), _maxTime);
+	}
+
+	/**
+	 * @return what is left of the budget, {@link Long#MAX_VALUE} if there is no limit
+	 */
+	static long remaining(long used, long max) {
+		if (max == UNLIMITED) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, max - used);
+	}
+
+	public String toString() {
+		return _fetches.get() + " fetches (" + _fetchesWithRdf.get() + " with rdf), "
+			+ _statements.get() + " statements, " + _bytes.get() + " bytes in " + getTime() + " ms";
+	}
+}
@@ -1,10 +1,6 @@
 package com.ontologycentral.ldspider;
 
 import java.io.IOException;
-import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
 import java.util.logging.Logger;
 
 import org.semanticweb.yars.nx.parser.Callback;
@@ -23,14 +19,25 @@ import com.ontologycentral.ldspider.hooks.sink.Sink;
 import com.ontologycentral.ldspider.hooks.sink.SinkCallback;
 import com.ontologycentral.ldspider.hooks.sink.SinkDummy;
 import com.ontologycentral.ldspider.hooks.sink.SpyingSinkCallback;
+import com.ontologycentral.ldspider.http.AsyncConnectionManager;
+import com.ontologycentral.ldspider.http.AsyncLookups;
+import com.ontologycentral.ldspider.http.ConcurrencyController;
 import com.ontologycentral.ldspider.http.ConnectionManager;
-import com.ontologycentral.ldspider.http.LookupThread;
+import com.ontologycentral.ldspider.http.DnsCache;
+import com.ontologycentral.ldspider.http.Lookup;
+import com.ontologycentral.ldspider.http.StagedLookups;
+import com.ontologycentral.ldspider.http.LookupThreadPool;
 import com.ontologycentral.ldspider.http.robot.Robots;
 import com.ontologycentral.ldspider.queue.BreadthFirstQueue;
+import com.ontologycentral.ldspider.queue.BestFirstQueue;
+import com.ontologycentral.ldspider.queue.ContinuousQueue;
 import com.ontologycentral.ldspider.queue.DiskBreadthFirstQueue;
 import com.ontologycentral.ldspider.queue.DummyRedirects;
 import com.ontologycentral.ldspider.queue.LoadBalancingQueue;
+import com.ontologycentral.ldspider.queue.PolitenessGroups;
 import com.ontologycentral.ldspider.queue.Redirects;
+import com.ontologycentral.ldspider.queue.SeenSet;
+import com.ontologycentral.ldspider.queue.ShardedBreadthFirstQueue;
 import com.ontologycentral.ldspider.queue.SpiderQueue;
 
 public class Crawler {
@@ -43,6 +50,14 @@ public class Crawler {
 	FetchFilter _ff, _blacklist;
 	ConnectionManager _cm;
 	
+	/**
+	 * Resolves the host names for the connections, and for the politeness
+	 * groups.
+	 */
+	DnsCache _dns;
+	
+	PolitenessGroups _groups;
+	
 	Class<? extends Redirects> _redirsClass;
 	
 	Robots _robots;
@@ -54,6 +69,53 @@ public class Crawler {
 	
 	int _threads;
 	
+	/**
+	 * The lookup threads, kept alive across rounds. Created on the first round.
+	 */
+	LookupThreadPool _pool = null;
+	
+	/**
+	 * Whether the lookups run on virtual threads.
+	 */
+	boolean _virtual = false;
+	
+	/**
+	 * Bounds for the number of threads if it is adjusted to the throughput,
+	 * -1 if the number of threads is fixed.
+	 */
+	int _minThreads = -1, _maxThreads = -1;
+	
+	ConcurrencyController _controller = null;
+	
+	/**
+	 * If set, lookups are done with non-blocking I/O instead of the pool.
+	 */
+	AsyncLookups _async = null;
+	
+	/**
+	 * If set, fetching, parsing, link extraction and output run in separate stages.
+	 */
+	StagedLookups _staged = null;
+	
+	String _proxyHost;
+	int _proxyPort;
+	boolean _proxyAuth;
+	
+	/**
+	 * The limits of this crawl.
+	 */
+	CrawlBudget _budget;
+	
+	/**
+	 * If set, the state of the crawl is written after each round.
+	 */
+	Checkpointer _checkpointer = null;
+	
+	/**
+	 * Whether the next crawl resumes from the latest checkpoint.
+	 */
+	boolean _resume = false;
+	
 	/**
 	 * The Crawling mode.
 	 * Defines whether ABox and/or TBox links are followed and whether an extra TBox round is done.
@@ -147,8 +209,13 @@ public class Crawler {
 			ppassword = System.getProperties().get("http.proxyPassword").toString();
 		}
 		
+		_proxyHost = phost;
+		_proxyPort = pport;
+		_proxyAuth = puser != null;
+		
+		_dns = new DnsCache();
 		_cm = new ConnectionManager(phost, pport, puser, ppassword, threads
-				* CrawlerConstants.MAX_CONNECTIONS_PER_THREAD);
+				* CrawlerConstants.MAX_CONNECTIONS_PER_THREAD, _dns);
 		_cm.setRetries(CrawlerConstants.RETRIES);
 
 		// Always use the local TldManager implementation. Changed for the one
@@ -172,6 +239,8 @@ public class Crawler {
 		} catch (IOException e1) {
 			_log.info("cannot get tld file locally " + e1.getMessage());
 		}
+		
+		_groups = new PolitenessGroups(_tldm, PolitenessGroups.By.PLD, _dns);
 	    
 		_eh = new ErrorHandlerDummy();
 
@@ -186,6 +255,8 @@ public class Crawler {
 		_ff = new FetchFilterAllow();
 		
 		_blacklist = new FetchFilterAllow();
+		
+		_budget = new CrawlBudget();
 	}
 	
 	public void setContentHandler(ContentHandler h) {
@@ -226,6 +297,17 @@ public class Crawler {
 		_links = links;
 	}
 	
+	/**
+	 * Sets which URIs share a politeness delay in breadth-first (in memory)
+	 * and load balanced crawls: the URIs of a pay-level domain (the default),
+	 * of a host, or of an IP address.
+	 * 
+	 * @param by
+	 */
+	public void setPolitenessGroups(PolitenessGroups.By by) {
+		_groups = new PolitenessGroups(_tldm, by, _dns);
+	}
+	
 	public void evaluateBreadthFirst(Frontier frontier, int depth, int maxuris, int maxplds, int minActPlds, boolean minActPldsAlready4Seedlist) {
 		evaluateBreadthFirst(frontier, depth, maxuris, maxplds, minActPlds, minActPldsAlready4Seedlist, Mode.ABOX_AND_TBOX);
 	}
@@ -244,15 +326,21 @@ public class Crawler {
 				_log.info("IllegalAccessException. Using dummy.");
 				r = new DummyRedirects();
 			}
-		if (_queue == null || !(_queue instanceof BreadthFirstQueue || _queue instanceof DiskBreadthFirstQueue)) {
+		if (_queue == null || !(_queue instanceof BreadthFirstQueue || _queue instanceof DiskBreadthFirstQueue || _queue instanceof ShardedBreadthFirstQueue)) {
 			if (CrawlerConstants.BREADTHFIRSTQUEUE_ONDISK)
 				_queue = new DiskBreadthFirstQueue(_tldm, r, minActPlds);
+			else if (CrawlerConstants.BREADTHFIRSTQUEUE_SHARDS > 0)
+				_queue = new ShardedBreadthFirstQueue(_tldm, r, maxuris, maxplds,
+						minActPlds, minActPldsAlready4Seedlist, CrawlerConstants.BREADTHFIRSTQUEUE_SHARDS);
 			else
 				_queue = new BreadthFirstQueue(_tldm, r, maxuris, maxplds,
 						minActPlds, minActPldsAlready4Seedlist);
 		} else {
-			Set<URI> seen = _queue.getSeen();
-			_queue = new BreadthFirstQueue(_tldm, r, maxuris, maxplds, minActPlds, minActPldsAlready4Seedlist);
+			SeenSet seen = _queue.getSeen();
+			if (CrawlerConstants.BREADTHFIRSTQUEUE_SHARDS > 0)
+				_queue = new ShardedBreadthFirstQueue(_tldm, r, maxuris, maxplds, minActPlds, minActPldsAlready4Seedlist, CrawlerConstants.BREADTHFIRSTQUEUE_SHARDS);
+			else
+				_queue = new BreadthFirstQueue(_tldm, r, maxuris, maxplds, minActPlds, minActPldsAlready4Seedlist);
 			_queue.setRedirects(r);
 			_queue.setSeen(seen);
 		}
@@ -261,6 +349,10 @@ public class Crawler {
 			_links = new LinkFilterDefault(frontier);
 		}
 		
+		_queue.setPolitenessGroups(_groups);
+		
+		int firstRound = startCheckpointing(frontier);
+		
 		_queue.schedule(frontier);
 		
 		_links.setFollowABox(crawlingMode.followABox());
@@ -269,50 +361,27 @@ public class Crawler {
 		_log.info(_queue.toString());
 
 		int rounds = crawlingMode.doExtraRound() ? depth + 1 : depth;
-		for (int curRound = 0; (curRound <= rounds)
-				&& (CrawlerConstants.URI_LIMIT_ENABLED ? (LookupThread
-				.getOverall200FetchesWithNonEmptyRDF() < CrawlerConstants.URI_LIMIT_WITH_NON_EMPTY_RDF)
-				: true); curRound++) {
-			List<Thread> ts = new ArrayList<Thread>();
-
+		for (int curRound = firstRound; (curRound <= rounds)
+				&& !_budget.isExhausted(); curRound++) {
 			//Extra round to get TBox
-			if(curRound == depth) {
+			if(curRound >= depth) {
 				_links.setFollowABox(false);
 				_links.setFollowTBox(true);
 			}
 
-			for (int j = 0; j < _threads; j++) {
-				LookupThread lt = new LookupThread(_cm, _queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist, j);
-				ts.add(lt); //new Thread(lt,"LookupThread-"+j));		
-			}
-
 			_log.info("Starting threads round " + curRound + " with " + _queue.size() + " uris");
 			
-			Monitor m = new Monitor(ts, System.err, 1000*10);
-			m.start();
-
-			for (Thread t : ts) {
-				t.start();
-			}
-
-			for (Thread t : ts) {
-				try {
-					t.join();
-				} catch (InterruptedException e1) {
-					_log.info(e1.getMessage());
-					//e1.printStackTrace();
-				}
-			}
-			
-			m.shutdown();
+			runRound(_queue);
 			
-			_log.info("ROUND " + curRound + " DONE with " + _queue.size() + " uris remaining in queue");
+			_log.info("ROUND " + curRound + " DONE with " + _queue.size() + " uris remaining in queue (" + _queue.getStatistics() + ")");
 			_log.fine("old queue: \n" + _queue.toString());
 
 			if (_output instanceof SpyingSinkCallback)
 				_log.info("Last non-empty context of this hop (# " + curRound
 						+ " ): " + ((SpyingSinkCallback) _output).whoWasLast());
 
+			checkpoint(curRound, frontier);
+
 			_queue.schedule(frontier);
 
 			_eh.handleNextRound();
@@ -321,6 +390,134 @@ public class Crawler {
 		}
 	}
 	
+	public void evaluateContinuous(Frontier frontier, int depth, int maxuris, int maxplds) {
+		evaluateContinuous(frontier, depth, maxuris, maxplds, Mode.ABOX_AND_TBOX);
+	}
+	
+	/**
+	 * Crawls without rounds: links become eligible for lookup as soon as they
+	 * have been found. The depth is tracked per URI; the limits are the same
+	 * as for {@link #evaluateBreadthFirst(Frontier, int, int, int, int, boolean, Mode)},
+	 * with maxuris applying per pay-level domain and depth. The extra round
+	 * of the crawling mode becomes an extra depth level.
+	 * 
+	 * @param frontier the seeds; links found are passed on to the queue
+	 *            instead of being added to the frontier
+	 * @param depth
+	 * @param maxuris
+	 * @param maxplds
+	 * @param crawlingMode
+	 */
+	public void evaluateContinuous(Frontier frontier, int depth, int maxuris, int maxplds, Mode crawlingMode) {
+		Redirects r = null;
+		if (_queue != null)
+			r = _queue.getRedirects();
+		if (r == null)
+			try {
+				r = _redirsClass.newInstance();
+			} catch (InstantiationException e) {
+				_log.info("InstantiationException. Using dummy.");
+				r = new DummyRedirects();
+			} catch (IllegalAccessException e) {
+				_log.info("IllegalAccessException. Using dummy.");
+				r = new DummyRedirects();
+			}
+		
+		if (_checkpointer != null) {
+			_log.warning("continuous crawls have no rounds to checkpoint after, writing no checkpoints");
+		}
+		
+		ContinuousQueue queue = new ContinuousQueue(_tldm, r, crawlingMode.doExtraRound() ? depth + 1 : depth, maxuris, maxplds);
+		if (_queue != null) {
+			queue.setSeen(_queue.getSeen());
+		}
+		_queue = queue;
+		
+		if (_links == null) {
+			_links = new LinkFilterDefault(frontier);
+		}
+		
+		_links.setFollowABox(crawlingMode.followABox());
+		_links.setFollowTBox(crawlingMode.followTBox());
+		
+		queue.schedule(frontier);
+		
+		_log.info(_queue.toString());
+		
+		frontier.setLinkListener(queue);
+		try {
+			runRound(_queue);
+		} finally {
+			frontier.setLinkListener(null);
+		}
+		
+		_log.info("DONE with " + _queue.size() + " uris remaining in queue");
+	}
+	
+	public void evaluateBestFirst(Frontier frontier, BestFirstQueue.Importance importance, int maxuris, int maxplds) {
+		evaluateBestFirst(frontier, importance, maxuris, maxplds, Mode.ABOX_AND_TBOX);
+	}
+	
+	/**
+	 * Crawls without rounds, the most important URIs first: links become
+	 * eligible for lookup as soon as they have been found, and each pay-level
+	 * domain hands out its most important URI by the online estimate of the
+	 * {@link BestFirstQueue}. The crawl ends when the queue is empty or the
+	 * crawl budget is spent.
+	 * 
+	 * @param frontier the seeds; links found are passed on to the queue
+	 *            instead of being added to the frontier
+	 * @param importance
+	 * @param maxuris maximum number of URIs kept per pay-level domain
+	 * @param maxplds
+	 * @param crawlingMode
+	 */
+	public void evaluateBestFirst(Frontier frontier, BestFirstQueue.Importance importance, int maxuris, int maxplds, Mode crawlingMode) {
+		Redirects r = null;
+		if (_queue != null)
+			r = _queue.getRedirects();
+		if (r == null)
+			try {
+				r = _redirsClass.newInstance();
+			} catch (InstantiationException e) {
+				_log.info("InstantiationException. Using dummy.");
+				r = new DummyRedirects();
+			} catch (IllegalAccessException e) {
+				_log.info("IllegalAccessException. Using dummy.");
+				r = new DummyRedirects();
+			}
+		
+		if (_checkpointer != null) {
+			_log.warning("best-first crawls have no rounds to checkpoint after, writing no checkpoints");
+		}
+		
+		BestFirstQueue queue = new BestFirstQueue(_tldm, r, importance, maxuris, maxplds);
+		if (_queue != null) {
+			queue.setSeen(_queue.getSeen());
+		}
+		_queue = queue;
+		
+		if (_links == null) {
+			_links = new LinkFilterDefault(frontier);
+		}
+		
+		_links.setFollowABox(crawlingMode.followABox());
+		_links.setFollowTBox(crawlingMode.followTBox());
+		
+		queue.schedule(frontier);
+		
+		_log.info(_queue.toString());
+		
+		frontier.setLinkListener(queue);
+		try {
+			runRound(_queue);
+		} finally {
+			frontier.setLinkListener(null);
+		}
+		
+		_log.info("DONE with " + _queue.size() + " uris remaining in queue, " + queue.getDropped() + " dropped");
+	}
+	
 	public void evaluateLoadBalanced(Frontier frontier, int maxuris) {
 		if (_queue == null || !(_queue instanceof LoadBalancingQueue)) {
 			Redirects r = null;
@@ -339,7 +536,7 @@ public class Crawler {
 			_queue = new LoadBalancingQueue(_tldm, r);
 		} else {
 			Redirects r = _queue.getRedirects();
-			Set<URI> seen = _queue.getSeen();
+			SeenSet seen = _queue.getSeen();
 			_queue = new LoadBalancingQueue(_tldm, r);
 			_queue.setSeen(seen);
 		}
@@ -348,50 +545,35 @@ public class Crawler {
 			_links = new LinkFilterDefault(frontier);
 		}
 		
+		_queue.setPolitenessGroups(_groups);
+		
+		int i = startCheckpointing(frontier);
+		int uris = 0;
+		
 		_queue.schedule(frontier);
 		
 		_log.fine(_queue.toString());
-
-		int i = 0;
-		int uris = 0;
 		
-		while (uris < maxuris && _queue.size() > 0) {
-			int size = _queue.size();
+		LoadBalancingQueue lbq = (LoadBalancingQueue)_queue;
+		
+		while (uris < maxuris && _queue.size() > 0 && !_budget.isExhausted()) {
+			// poll() waits for the next turnaround, so a round would drain the
+			// queue; end it after a turnaround to schedule the links found
+			lbq.setRoundLimit(Math.min(maxuris - uris, Math.max(1, _queue.getActivePlds())));
 			
-			List<Thread> ts = new ArrayList<Thread>();
-
-			for (int j = 0; j < _threads; j++) {
-				LookupThread lt = new LookupThread(_cm, _queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist, j);
-				ts.add(lt); //new Thread(lt,"LookupThread-"+j));		
-			}
-
 			_log.info("Starting threads round " + i++ + " with " + _queue.size() + " uris");
 			
-			for (Thread t : ts) {
-				t.start();
-			}
-			
-			Monitor m = new Monitor(ts, System.err, 1000*10);
-			m.start();
-
-			for (Thread t : ts) {
-				try {
-					t.join();
-				} catch (InterruptedException e1) {
-					_log.info(e1.getMessage());
-					//e1.printStackTrace();
-				}
-			}
+			runRound(_queue);
 			
-			m.shutdown();
-			
-			uris += size - _queue.size();
+			uris = (int)_queue.getStatistics().getPolled();
 			
 			_log.info("ROUND " + i + " DONE with " + _queue.size() + " uris remaining in queue");
 			_log.fine("old queue: \n" + _queue.toString());
 
 			_log.fine("frontier" + frontier);
 			
+			checkpoint(i - 1, frontier);
+			
 			_queue.schedule(frontier);
 
 			_log.info("new queue: \n" + _queue.toString());
@@ -418,33 +600,10 @@ public class Crawler {
 		
 		int i = 0;
 		
-		while (_queue.size() > 0 && i <= CrawlerConstants.MAX_REDIRECTS) {
-			List<Thread> ts = new ArrayList<Thread>();
-
-			for (int j = 0; j < _threads; j++) {
-				LookupThread lt = new LookupThread(_cm, _queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist, j);
-				ts.add(lt); //new Thread(lt,"LookupThread-"+j));		
-			}
-
+		while (_queue.size() > 0 && i <= CrawlerConstants.MAX_REDIRECTS && !_budget.isExhausted()) {
 			_log.info("Starting threads round " + i++ + " with " + _queue.size() + " uris");
 
-			for (Thread t : ts) {
-				t.start();
-			}
-
-			Monitor m = new Monitor(ts, System.err, 1000*10);
-			m.start();
-
-			for (Thread t : ts) {
-				try {
-					t.join();
-				} catch (InterruptedException e1) {
-					_log.info(e1.getMessage());
-					//e1.printStackTrace();
-				}
-			}
-			
-			m.shutdown();
+			runRound(_queue);
 
 			_queue.schedule(frontier);
 			
@@ -456,27 +615,226 @@ public class Crawler {
 		_log.info("DONE with " + _queue.size() + " uris remaining in queue");
 	}
 	
-	public void run(SpiderQueue queue){
-		List<Thread> ts = new ArrayList<Thread>();
-
-		for (int j = 0; j < _threads; j++) {
-			LookupThread lt = new LookupThread(_cm, queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist, j);
-			ts.add(lt); //new Thread(lt,"LookupThread-"+j));		
+	/**
+	 * Sets the journals of the checkpointer on the queue and the frontier
+	 * and, if the crawl is to be resumed, restores the latest checkpoint into
+	 * the queue and the frontier. A crawl not resumed does not start if the
+	 * checkpoint directory holds checkpoints.
+	 * 
+	 * @param frontier
+	 * @return the round to start with
+	 */
+	int startCheckpointing(Frontier frontier) {
+		if (_checkpointer == null) {
+			return 0;
 		}
-
 		
-		for (Thread t : ts) {
-			t.start();
-		}
-
-		for (Thread t : ts) {
+		_queue.setSeenJournal(_checkpointer.getJournal());
+		
+		int round = 0;
+		if (_resume) {
+			_resume = false;
 			try {
-				t.join();
-			} catch (InterruptedException e1) {
-				_log.info(e1.getMessage());
-				//e1.printStackTrace();
+				round = _checkpointer.resume(_queue, frontier, _budget) + 1;
+			} catch (IOException e) {
+				throw new IllegalStateException("cannot resume from " + _checkpointer, e);
 			}
 		}
+		
+		try {
+			_checkpointer.start(frontier);
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot write checkpoints: " + e.getMessage(), e);
+		}
+		return round;
+	}
+	
+	/**
+	 * Writes a checkpoint, if set, after a round has been done and before
+	 * the frontier is scheduled.
+	 * 
+	 * @param round
+	 * @param frontier
+	 */
+	void checkpoint(int round, Frontier frontier) {
+		if (_checkpointer == null) {
+			return;
+		}
+		
+		try {
+			_checkpointer.checkpoint(round, _queue, frontier, _budget);
+		} catch (IOException e) {
+			_log.warning("could not write checkpoint after round " + round + ": " + e.getMessage());
+		}
+	}
+	
+	public void run(SpiderQueue queue){
+		runRound(queue);
+	}
+	
+	/**
+	 * Lets the lookup threads work off the queue and returns when the queue
+	 * is exhausted. The threads are created on the first round and reused
+	 * afterwards; changes of the hooks take effect with the next round.
+	 * 
+	 * @param queue
+	 */
+	void runRound(SpiderQueue queue) {
+		_budget.start();
+		
+		if (_async != null) {
+			Lookup lookup = new Lookup(queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist);
+			lookup.setBudget(_budget);
+			_async.runRound(queue, lookup);
+			return;
+		}
+		if (_staged != null) {
+			_staged.runRound(queue, _contentHandler, _output, _links, _robots, _eh, _ff, _blacklist, _budget);
+			return;
+		}
+		if (_pool == null) {
+			_pool = new LookupThreadPool(_cm, _threads);
+			_pool.setVirtual(_virtual);
+			startController();
+		}
+		_pool.setHooks(_contentHandler, _output, _links, _robots, _eh, _ff, _blacklist);
+		_pool.setBudget(_budget);
+		_pool.runRound(queue);
+	}
+	
+	/**
+	 * The limits of the crawl (fetches, statements, bytes, time) and what
+	 * has been used so far. The crawl stops once a limit has been reached;
+	 * the time limit is counted from the first round.
+	 * 
+	 * @return the budget
+	 */
+	public CrawlBudget getBudget() {
+		return _budget;
+	}
+	
+	public void setBudget(CrawlBudget budget) {
+		_budget = budget;
+	}
+	
+	/**
+	 * Changes the number of lookup threads. Takes effect immediately, also
+	 * within a running round. Note that the connection manager has been sized
+	 * for the number of threads given at construction time.
+	 * 
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		_threads = threads;
+		if (_pool != null) {
+			_pool.setSize(threads);
+		}
+	}
+	
+	public int getThreads() {
+		return _threads;
+	}
+	
+	/**
+	 * Lets the number of lookup threads follow the throughput and latency
+	 * of the lookups, within the given bounds, instead of keeping it fixed
+	 * (see {@link ConcurrencyController}). Does not apply to non-blocking
+	 * fetching and staged lookups.
+	 * 
+	 * @param min minimum number of threads
+	 * @param max maximum number of threads
+	 */
+	public void setAdaptiveThreads(int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("invalid bounds " + min + ".." + max);
+		}
+		
+		_minThreads = min;
+		_maxThreads = max;
+		
+		_threads = Math.max(min, Math.min(max, _threads));
+		_cm.setMaxConnections(max * CrawlerConstants.MAX_CONNECTIONS_PER_THREAD);
+		
+		if (_pool != null) {
+			_pool.setSize(_threads);
+			startController();
+		}
+	}
+	
+	void startController() {
+		if (_controller != null) {
+			_controller.shutdown();
+			_controller = null;
+		}
+		if (_minThreads > 0) {
+			_controller = new ConcurrencyController(_pool, _minThreads, _maxThreads, ConcurrencyController.DEFAULT_INTERVAL);
+			_controller.start();
+		}
+	}
+	
+	/**
+	 * Runs each lookup on a virtual thread instead of a platform thread, so
+	 * that the number of threads can go into the tens of thousands. Requires
+	 * Java 21; on older JVMs, platform threads are used. Has to be set before
+	 * the first round.
+	 * 
+	 * @param virtual
+	 */
+	public void setVirtualThreads(boolean virtual) {
+		_virtual = virtual;
+		if (_pool != null) {
+			_pool.setVirtual(virtual);
+		}
+	}
+	
+	/**
+	 * Switches to non-blocking fetching: up to maxInFlight requests are
+	 * carried out concurrently by a single I/O thread, while the configured
+	 * number of threads only do the processing of the responses (parsing,
+	 * link extraction, output).
+	 * 
+	 * @param maxInFlight
+	 * @throws IOException if the selector cannot be opened
+	 */
+	public void setAsyncFetching(int maxInFlight) throws IOException {
+		if (_async != null) {
+			_async.shutdown();
+		}
+		AsyncConnectionManager acm = new AsyncConnectionManager(_cm, _proxyHost, _proxyPort, _proxyAuth, maxInFlight);
+		_async = new AsyncLookups(acm, _threads, maxInFlight);
+	}
+	
+	/**
+	 * Switches to staged lookups: the configured number of threads only
+	 * fetch, while parsing, link extraction and output are done by separate
+	 * threads, connected by bounded queues.
+	 * 
+	 * @param parsers number of parse threads
+	 * @param linkers number of link extraction threads
+	 * @param sinks number of output threads
+	 */
+	public void setStagedLookups(int parsers, int linkers, int sinks) {
+		if (_staged != null) {
+			_staged.shutdown();
+		}
+		_staged = new StagedLookups(_cm, _threads, parsers, linkers, sinks, StagedLookups.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Writes a checkpoint after each round of breadth-first and load
+	 * balanced crawls.
+	 * 
+	 * @param checkpointer the checkpointer, <code>null</code> for none
+	 * @param resume whether the next crawl continues from the latest
+	 *        checkpoint instead of starting over
+	 */
+	public void setCheckpointer(Checkpointer checkpointer, boolean resume) {
+		_checkpointer = checkpointer;
+		_resume = resume;
+	}
+	
+	public Checkpointer getCheckpointer() {
+		return _checkpointer;
 	}
 	
 	/**
@@ -505,6 +863,18 @@ public class Crawler {
 		this._redirsClass = _redirsClass;
 	}
 	public void close() {
+		if (_controller != null) {
+			_controller.shutdown();
+		}
+		if (_pool != null) {
+			_pool.shutdown();
+		}
+		if (_async != null) {
+			_async.shutdown();
+		}
+		if (_staged != null) {
+			_staged.shutdown();
+		}
 		_cm.shutdown();
 		_eh.close();
 	}
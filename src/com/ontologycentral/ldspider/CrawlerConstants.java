@@ -1,5 +1,7 @@
 package com.ontologycentral.ldspider;
 
+import java.io.File;
+
 import org.apache.http.Header;
 import org.apache.http.message.BasicHeader;
 
@@ -26,9 +28,6 @@ public class CrawlerConstants {
 
 	public static String[] SITES_NO_RDF = { "wikipedia.org", "wikimedia.org", "slideshare.net", "imdb.com", "twimg.com", "dblp.uni-trier.de", "flickr.com", "amazon.com", "last.fm" };
 
-	public static String[] SITES_SLOW = { "l3s.de", "semantictweet.com", "kaufkauf.net", "rpi.edu", "uniprot.org", "geonames.org", "dbtune" };
-	public static final int SLOW_DIV = 20;
-
 	public static int CONNECTION_TIMEOUT = 16*1000;
 	public static int SOCKET_TIMEOUT = 16*1000;
 
@@ -51,17 +50,31 @@ public class CrawlerConstants {
 	// for bfs queue: max time after plds get re-visited
 	public static final long MAX_DELAY = 2*MIN_DELAY;
 	
+	// delay per pld learned from the response times: a multiple of the average
+	// response time, at most ADAPTIVE_MAX_DELAY ms (see PldStatistics)
+	public static double ADAPTIVE_LATENCY_FACTOR = 2.0;
+	public static long ADAPTIVE_MAX_DELAY = 60*1000;
+	// smallest share of the maximum number of uris for slow or failing plds
+	public static double ADAPTIVE_MIN_QUOTA = 1.0/20;
+	
+	// maximum size of documents that are buffered in memory before parsing
+	public static final long MAX_CONTENT_LENGTH = 32*1024*1024;
+	
 	// close idle connections
 	public static final int CLOSE_IDLE = 60000;
 	
+	// how long resolved host names (resp. failures to resolve them) are cached, in ms
+	public static long DNS_TTL = 10*60*1000;
+	public static long DNS_NEGATIVE_TTL = 60*1000;
+	// maximum number of host names in the dns cache, and threads resolving them ahead of the lookups
+	public static final int DNS_CACHE_SIZE = 1000000;
+	public static final int DNS_THREADS = 8;
+	
 	// our status codes
 	public static final int SKIP_SUFFIX = 497;
 	public static final int SKIP_ROBOTS = 498;
 	public static final int SKIP_MIMETYPE = 499;
 	
-	public static int URI_LIMIT_WITH_NON_EMPTY_RDF = 0;
-	public static boolean URI_LIMIT_ENABLED = false;
-	
 	public static int NB_THREADS;
 	public static boolean DISKFRONTIER_SORT_BEFORE_ITERATING = false;
 	public static boolean DISKFRONTIER_GZIP_FRONTIER = false;
@@ -70,6 +83,15 @@ public class CrawlerConstants {
 	
 	public static boolean BREADTHFIRSTQUEUE_ONDISK = false;
 	
+	// number of shards of the in-memory breadth-first queue, 0 for the unsharded queue
+	public static int BREADTHFIRSTQUEUE_SHARDS = 0;
+	
+	// whether the queues allocate the fingerprints of the seen URIs outside the heap
+	public static boolean SEEN_OFF_HEAP = false;
+	
+	// directory for the targets of FingerprintRedirects, null to keep them in memory
+	public static File REDIRECTS_DIR = null;
+	
 	public static boolean DUMP_FRONTIER = false;
 	public static String DUMP_FRONTIER_FILENAME = "";
 
@@ -0,0 +1,65 @@
+package com.ontologycentral.ldspider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzip stream that can end the current gzip member, so that the file is
+ * complete up to there; the next write starts a new member. A file of
+ * several members reads like one with the data of all of them, e.g. with
+ * {@link java.util.zip.GZIPInputStream}. A {@link Checkpointer} ends a member
+ * before each checkpoint, so that gzipped output can be cut back to the
+ * checkpoint when the crawl is resumed.
+ */
+public class GZIPMembersOutputStream extends OutputStream {
+	OutputStream _out;
+
+	/**
+	 * The current member, <code>null</code> until the next write.
+	 */
+	GZIPOutputStream _gz;
+
+	public GZIPMembersOutputStream(OutputStream out) {
+		_out = out;
+	}
+
+	GZIPOutputStream member() throws IOException {
+		if (_gz == null) {
+			_gz = new GZIPOutputStream(_out);
+		}
+		return _gz;
+	}
+
+	public void write(int b) throws IOException {
+		member().write(b);
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException {
+		member().write(b, off, len);
+	}
+
+	/**
+	 * Writes the rest of the current member, if any, and flushes the
+	 * underlying stream.
+	 */
+	public void endMember() throws IOException {
+		if (_gz != null) {
+			_gz.finish();
+			_gz = null;
+		}
+		_out.flush();
+	}
+
+	public void flush() throws IOException {
+		if (_gz != null) {
+			_gz.flush();
+		}
+		_out.flush();
+	}
+
+	public void close() throws IOException {
+		endMember();
+		_out.close();
+	}
+}
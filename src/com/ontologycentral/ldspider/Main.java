@@ -9,9 +9,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -44,13 +47,18 @@ import org.deri.any23.writer.TripleHandler;
 import org.semanticweb.yars.nx.Node;
 import org.semanticweb.yars.nx.Resource;
 import org.semanticweb.yars.nx.parser.Callback;
+import org.semanticweb.yars.tld.TldManager;
 import org.semanticweb.yars.util.CallbackNxOutputStream;
 
 import com.ontologycentral.ldspider.any23.ContentHandlerAny23;
 import com.ontologycentral.ldspider.any23.ContentHandlerHybridRdfXmlAny23;
+import com.ontologycentral.ldspider.distributed.PldPartitioner;
+import com.ontologycentral.ldspider.distributed.SocketLinkTransport;
 import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.ConcurrentFrontier;
 import com.ontologycentral.ldspider.frontier.DiskFrontier;
 import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.frontier.PartitioningFrontier;
 import com.ontologycentral.ldspider.frontier.RankedFrontier;
 import com.ontologycentral.ldspider.frontier.SortingDiskFrontier;
 import com.ontologycentral.ldspider.hooks.content.AllrounderPretendingContentHandler;
@@ -73,9 +81,12 @@ import com.ontologycentral.ldspider.hooks.links.LinkFilterSelect;
 import com.ontologycentral.ldspider.hooks.sink.Sink;
 import com.ontologycentral.ldspider.hooks.sink.SinkCallback;
 import com.ontologycentral.ldspider.hooks.sink.SinkSparul;
+import com.ontologycentral.ldspider.http.AsyncConnectionManager;
 import com.ontologycentral.ldspider.http.Headers;
+import com.ontologycentral.ldspider.queue.BestFirstQueue;
 import com.ontologycentral.ldspider.queue.DummyRedirects;
-import com.ontologycentral.ldspider.queue.HashTableRedirects;
+import com.ontologycentral.ldspider.queue.FingerprintRedirects;
+import com.ontologycentral.ldspider.queue.PolitenessGroups;
 
 public class Main {
 	private final static Logger _log = Logger.getLogger(Main.class.getSimpleName());
@@ -131,6 +142,25 @@ public class Main {
 
 		strategy.setRequired(true);
 
+		Option distributed = new Option("dist", false, "crawl as one of several nodes, each crawling the pay-level domains hashed to it; links for other nodes are sent to them");
+		distributed.setArgs(2);
+		distributed.setArgName("node-no host:port,host:port,...");
+		options.addOption(distributed);
+
+		Option politeness = new Option("pol", false, "with -b or -c: keep the politeness delay per pld (default), host or ip address");
+		politeness.setArgs(1);
+		politeness.setArgName("pld|host|ip");
+		options.addOption(politeness);
+
+		Option continuous = new Option("cont", false, "with -b: crawl continuously, following links as soon as they are found instead of round by round");
+		options.addOption(continuous);
+
+		Option bestFirst = new Option("bf", false, "with -b: crawl continuously, the most important URIs first by OPIC cash (default) or in-degree; depth is ignored, uri-limit is the number of URIs kept per pld");
+		bestFirst.setArgs(1);
+		bestFirst.setOptionalArg(true);
+		bestFirst.setArgName("opic|indegree");
+		options.addOption(bestFirst);
+
 		options.addOptionGroup(strategy);
 
 		Option header = new Option("e", false, "omit header triple in data");
@@ -159,6 +189,29 @@ public class Main {
 		.create("t");
 		options.addOption(threads);
 
+		Option stages = OptionBuilder.withArgName("parse,link,output")
+		.hasArg()
+		.withDescription("run parsing, link extraction and output in separate stages with the given numbers of threads (default: one per core for parsing, one each for the others); threads (-t) then only fetch")
+		.hasOptionalArg()
+		.create("stages");
+		options.addOption(stages);
+
+		Option adaptive = OptionBuilder.withArgName("min,max")
+		.hasArg()
+		.withDescription("adjust the number of threads between min and max to the throughput and latency of the lookups")
+		.create("at");
+		options.addOption(adaptive);
+
+		Option virtual = new Option("vt", false, "run the threads (-t) as virtual threads (requires Java 21)");
+		options.addOption(virtual);
+
+		Option async = OptionBuilder.withArgName("max. # of requests")
+		.hasArg()
+		.withDescription("fetch with non-blocking I/O, keeping up to the given number of requests in flight (default " + AsyncConnectionManager.DEFAULT_MAX_IN_FLIGHT + "); threads (-t) then only process responses")
+		.hasOptionalArg()
+		.create("async");
+		options.addOption(async);
+
 		//Link Filters
 		OptionGroup linkFilterOptions = new OptionGroup();
 
@@ -184,6 +237,12 @@ public class Main {
 		
 		Option redirsInternal = OptionBuilder.withDescription("Don't use Redirects.class for Redirects handling").create("dr");
 		options.addOption(redirsInternal);
+		
+		Option redirsDir = OptionBuilder.withArgName("directory")
+		.hasArgs(1)
+		.withDescription("keep the targets of redirects in a file in the directory instead of in memory")
+		.create("rd");
+		options.addOption(redirsDir);
 
 		//Output
 		OptionGroup output = new OptionGroup();
@@ -202,6 +261,22 @@ public class Main {
 				.create("ul");
 		options.addOption(uriLimit);
 
+		options.addOption(OptionBuilder.withArgName("number").hasArgs(1)
+				.withDescription("Sets a limit for the documents downloaded overall.")
+				.create("fl"));
+
+		options.addOption(OptionBuilder.withArgName("number").hasArgs(1)
+				.withDescription("Sets a limit for the statements downloaded overall.")
+				.create("sl"));
+
+		options.addOption(OptionBuilder.withArgName("bytes").hasArgs(1)
+				.withDescription("Sets a limit for the bytes of content downloaded overall.")
+				.create("byl"));
+
+		options.addOption(OptionBuilder.withArgName("seconds").hasArgs(1)
+				.withDescription("Sets a limit for the duration of the crawl.")
+				.create("tl"));
+
 		Option outputEndpoint = OptionBuilder.withArgName("uri")
 		.hasArgs(1)
 		.withDescription("SPARQL/Update endpoint for output")
@@ -256,11 +331,18 @@ public class Main {
 				"If set, the URIs in frontier are ranked according to their number of in-links, and alphabetically as second ordering. Use this option for something like a priority queue.");
 		options.addOption(rankO);
 		
+		Option concurrentO = new Option(
+				"cf",
+				"concurrentFrontier",
+				false,
+				"If set, the threads collect the links they find in buffers of their own and merge them in batches into a sharded in-memory frontier, instead of adding each link under a global lock.");
+		options.addOption(concurrentO);
+		
 		Option sortDF = OptionBuilder
 				.withArgName("sort gzip")
 				.hasOptionalArgs(2)
 				.withDescription(
-						"Use SortingDiskFrontier as frontier. If URIs are to be returned sorted, add \"sort\" as value, if all temp files involved are to be gzipped, add \"gzip\".")
+						"Use SortingDiskFrontier as frontier. If URIs are to be returned sorted, add \"sort\" as value, if all temp files involved are to be compressed, add \"gzip\".")
 				.create("sdf");
 		options.addOption(sortDF);
 		
@@ -287,6 +369,20 @@ public class Main {
 						"Uses the on-disk BreadthFirstQueue if crawling breadth-first. Doesn't support uri-limit and pld-limit (see -b). Needs -sdf sort to be set. Ranks URIs on the PLDs according to their in-link count.")
 				.create("dbfq");
 		options.addOption(bfqOD);
+		
+		Option bfqSharded = OptionBuilder
+				.withArgName("shards")
+				.hasOptionalArg()
+				.withDescription(
+						"Uses the sharded in-memory BreadthFirstQueue if crawling breadth-first, for many threads (default: 4 shards per core).")
+				.create("sbfq");
+		options.addOption(bfqSharded);
+		
+		Option seenOffHeap = OptionBuilder
+				.withDescription(
+						"Keeps the fingerprints of the seen URIs outside the Java heap (not for the on-disk BreadthFirstQueue, see -dbfq).")
+				.create("soh");
+		options.addOption(seenOffHeap);
 
 		Option maxRedirs = OptionBuilder.withArgName("max. # of redirects")
 				.hasArg()
@@ -304,6 +400,26 @@ public class Main {
 				.create("mapseed");
 		options.addOption(minApldSeedlist);
 		
+		Option checkpointO = OptionBuilder
+				.withArgName("directory")
+				.hasArg()
+				.withDescription(
+						"Write a checkpoint of the crawl to the directory after each round (breadth-first and load balanced crawling).")
+				.create("ckp");
+		options.addOption(checkpointO);
+		
+		Option resumeO = OptionBuilder
+				.withDescription(
+						"Resume the crawl from the latest checkpoint in the directory given with -ckp, without fetching the URIs of the rounds done again. Use the same options as for the crawl resumed.")
+				.create("resume");
+		options.addOption(resumeO);
+		
+		Option ckpClearO = OptionBuilder
+				.withDescription(
+						"Delete the checkpoints in the directory given with -ckp before a crawl not resumed, rather than refusing to start.")
+				.create("ckpclear");
+		options.addOption(ckpClearO);
+		
 		CommandLineParser parser = new BasicParser();
 		HelpFormatter formatter = new HelpFormatter();
 		CommandLine cmd = null;
@@ -361,6 +477,24 @@ public class Main {
 		if (cmd.hasOption("dh"))
 			headerTreatment = Headers.Treatment.DUMP;
 
+		Checkpointer checkpointer = null;
+		if (cmd.hasOption("ckp")) {
+			checkpointer = new Checkpointer(new File(cmd.getOptionValue("ckp")));
+		} else if (cmd.hasOption("resume")) {
+			System.err.println("-resume needs the checkpoint directory given with -ckp");
+			System.exit(-1);
+		}
+		boolean resume = checkpointer != null && cmd.hasOption("resume");
+		if (checkpointer != null && !resume && checkpointer.getLatest() > 0) {
+			if (cmd.hasOption("ckpclear")) {
+				_log.info("deleting the checkpoints in " + cmd.getOptionValue("ckp"));
+				checkpointer.clear();
+			} else {
+				System.err.println(cmd.getOptionValue("ckp") + " holds checkpoints; give -resume to resume the crawl or -ckpclear to delete them");
+				System.exit(-1);
+			}
+		}
+
 		Sink sink;
 		OutputStream os = System.out;
 		CallbackNxOutputStream cbos = null;
@@ -371,14 +505,48 @@ public class Main {
 		} else {
 			if (cmd.hasOption("o")) {
 				String path = cmd.getOptionValue("o");
-				if (path.endsWith(".gz"))
+				
+				// when resuming, drop the output of the round not done and append;
+				// gzipped output ends a gzip member at each checkpoint
+				boolean append = false;
+				if (resume) {
+					long length = checkpointer.getOutputLength();
+					if (length >= 0) {
+						RandomAccessFile raf = new RandomAccessFile(path, "rw");
+						raf.setLength(length);
+						raf.close();
+						append = true;
+					}
+				}
+				
+				Flushable checkpointOutput;
+				if (path.endsWith(".gz") && checkpointer != null) {
+					final GZIPMembersOutputStream gz = new GZIPMembersOutputStream(
+							new FileOutputStream(path, append));
+					final OutputStream buffered = new BufferedOutputStream(gz);
+					checkpointOutput = new Flushable() {
+						public void flush() throws IOException {
+							buffered.flush();
+							gz.endMember();
+						}
+					};
+					os = buffered;
+				} else if (path.endsWith(".gz")) {
 					os = new BufferedOutputStream(new GZIPOutputStream(
-							new FileOutputStream(path)));
-				else
+							new FileOutputStream(path, append)));
+					checkpointOutput = os;
+				} else {
 					os = new BufferedOutputStream(new FileOutputStream(
-							cmd.getOptionValue("o")));
+							cmd.getOptionValue("o"), append));
+					checkpointOutput = os;
+				}
 				// os = new FileOutputStream(cmd.getOptionValue("o"));
 				CrawlerConstants.CLOSER.add(os);
+				
+				if (checkpointer != null)
+					checkpointer.setOutput(checkpointOutput, new File(path));
+			} else if (checkpointer != null) {
+				checkpointer.setOutput(os, null);
 			}
 			
 			cbos = new CallbackNxOutputStream(os, false);
@@ -457,6 +625,8 @@ public class Main {
 		
 		if (cmd.hasOption("rf"))
 			frontier = new RankedFrontier();
+		else if (cmd.hasOption("cf"))
+			frontier = new ConcurrentFrontier();
 		else if (cmd.hasOption("m")) 
 			frontier = new DiskFrontier(new File(cmd.getOptionValue("m")));
 		else if (cmd.hasOption("sdf")) {
@@ -475,6 +645,29 @@ public class Main {
 							: "doesn't gzip") + ".");
 		}
 			
+		PartitioningFrontier pf = null;
+		if (cmd.hasOption("dist")) {
+			if (cmd.hasOption("cont") && !cmd.hasOption("bf")) {
+				// links received carry no depth, which the continuous queue needs
+				System.err.println("-dist cannot be combined with -cont");
+				System.exit(-1);
+			}
+			String[] vals = cmd.getOptionValues("dist");
+			int self = Integer.parseInt(vals[0]);
+			String[] hosts = vals[1].split(",");
+			InetSocketAddress[] nodes = new InetSocketAddress[hosts.length];
+			for (int i = 0; i < hosts.length; i++) {
+				String[] hp = hosts[i].trim().split(":");
+				nodes[i] = new InetSocketAddress(hp[0], Integer.parseInt(hp[1]));
+			}
+
+			_log.info("distributed crawl, node " + self + " of " + nodes.length);
+
+			PldPartitioner part = new PldPartitioner(new TldManager(), nodes.length, self);
+			pf = new PartitioningFrontier(frontier, part, new SocketLinkTransport(nodes, self), PartitioningFrontier.DEFAULT_BATCH_SIZE);
+			frontier = pf;
+		}
+
 		frontier.setErrorHandler(eh);
 		frontier.addAll(seeds);
 
@@ -509,14 +702,16 @@ public class Main {
 			CrawlerConstants.NB_THREADS = Integer.parseInt(cmd.getOptionValue("t"));
 		}
 		
-		if (cmd.hasOption("ul")) {
-			CrawlerConstants.URI_LIMIT_WITH_NON_EMPTY_RDF = Integer.parseInt(cmd.getOptionValue("ul"));
-			CrawlerConstants.URI_LIMIT_ENABLED = true;
-		}
-		
 		if (cmd.hasOption("dbfq"))
 			CrawlerConstants.BREADTHFIRSTQUEUE_ONDISK = true;
 		
+		if (cmd.hasOption("sbfq"))
+			CrawlerConstants.BREADTHFIRSTQUEUE_SHARDS = Integer.parseInt(cmd.getOptionValue("sbfq",
+					Integer.toString(4 * Runtime.getRuntime().availableProcessors())));
+		
+		if (cmd.hasOption("soh"))
+			CrawlerConstants.SEEN_OFF_HEAP = true;
+		
 		// Max redirects. Setting appropriate defaults and values.
 		if (cmd.hasOption("d"))
 			CrawlerConstants.MAX_REDIRECTS = CrawlerConstants.MAX_REDIRECTS_DEFAULT_SEQUENTIALSTRATEGY;
@@ -544,6 +739,46 @@ public class Main {
 		Runtime.getRuntime().addShutdownHook(CrawlerConstants.CLOSER);
 
 		Crawler c = new Crawler(CrawlerConstants.NB_THREADS);
+		
+		if (cmd.hasOption("ul")) {
+			c.getBudget().setMaxFetchesWithRdf(Long.parseLong(cmd.getOptionValue("ul")));
+		}
+		if (cmd.hasOption("fl")) {
+			c.getBudget().setMaxFetches(Long.parseLong(cmd.getOptionValue("fl")));
+		}
+		if (cmd.hasOption("sl")) {
+			c.getBudget().setMaxStatements(Long.parseLong(cmd.getOptionValue("sl")));
+		}
+		if (cmd.hasOption("byl")) {
+			c.getBudget().setMaxBytes(Long.parseLong(cmd.getOptionValue("byl")));
+		}
+		if (cmd.hasOption("tl")) {
+			c.getBudget().setMaxTime(Long.parseLong(cmd.getOptionValue("tl")) * 1000);
+		}
+		
+		if (cmd.hasOption("stages")) {
+			int[] sizes = { Runtime.getRuntime().availableProcessors(), 1, 1 };
+			if (cmd.getOptionValue("stages") != null) {
+				String[] s = cmd.getOptionValue("stages").split(",");
+				for (int i = 0; i < s.length && i < sizes.length; i++) {
+					sizes[i] = Integer.parseInt(s[i].trim());
+				}
+			}
+			c.setStagedLookups(sizes[0], sizes[1], sizes[2]);
+		}
+		
+		if (cmd.hasOption("at")) {
+			String[] bounds = cmd.getOptionValue("at").split(",");
+			c.setAdaptiveThreads(Integer.parseInt(bounds[0].trim()), Integer.parseInt(bounds[1].trim()));
+		}
+		
+		if (cmd.hasOption("vt")) {
+			c.setVirtualThreads(true);
+		}
+		
+		if (cmd.hasOption("async")) {
+			c.setAsyncFetching(Integer.parseInt(cmd.getOptionValue("async", Integer.toString(AsyncConnectionManager.DEFAULT_MAX_IN_FLIGHT))));
+		}
 
 		TripleHandler headerTripleHandler = null;
 		if (headerTreatment == Headers.Treatment.DUMP)
@@ -621,6 +856,8 @@ public class Main {
 		c.setErrorHandler(eh);
 		c.setOutputCallback(sink);
 		c.setLinkFilter(links);
+		if (checkpointer != null)
+			c.setCheckpointer(checkpointer, resume);
 //		if (!cmd.hasOption("ctIgnore"))
 //			c.setFetchFilter(ffrdf);
 		c.setBlacklistFilter(blacklist);
@@ -631,7 +868,11 @@ public class Main {
 		if (cmd.hasOption("dr"))
 			c.setRedirsClass(DummyRedirects.class);
 		else
-			c.setRedirsClass(HashTableRedirects.class);
+			c.setRedirsClass(FingerprintRedirects.class);
+		if (cmd.hasOption("rd"))
+			CrawlerConstants.REDIRECTS_DIR = new File(cmd.getOptionValue("rd"));
+		if (cmd.hasOption("pol"))
+			c.setPolitenessGroups(PolitenessGroups.By.valueOf(cmd.getOptionValue("pol").toUpperCase()));
 
 		if (cmd.hasOption("b")) {
 			String[] vals = cmd.getOptionValues("b");
@@ -649,7 +890,16 @@ public class Main {
 
 			_log.info("breadth-first crawl with " + CrawlerConstants.NB_THREADS + " threads, depth " + depth + " maxuris " + maxuris + " maxplds " + maxplds + " minActivePlds " + cmd.getOptionValue("minpld", "unspecified"));
 
-			c.evaluateBreadthFirst(frontier, depth, maxuris, maxplds, Integer.parseInt(cmd.getOptionValue("minpld", "-1")), cmd.hasOption("mapseed") );
+			if (cmd.hasOption("bf")) {
+				BestFirstQueue.Importance importance = BestFirstQueue.Importance.valueOf(cmd.getOptionValue("bf", "opic").toUpperCase());
+				_log.info("best-first crawl by " + importance);
+				c.evaluateBestFirst(frontier, importance, maxuris, maxplds);
+			} else if (cmd.hasOption("cont")) {
+				_log.info("continuous crawl");
+				c.evaluateContinuous(frontier, depth, maxuris, maxplds);
+			} else {
+				c.evaluateBreadthFirst(frontier, depth, maxuris, maxplds, Integer.parseInt(cmd.getOptionValue("minpld", "-1")), cmd.hasOption("mapseed") );
+			}
 		} else if (cmd.hasOption("c")) {
 			int maxuris = Integer.parseInt(cmd.getOptionValues("c")[0]);
 
@@ -677,6 +927,10 @@ public class Main {
 
 		System.err.println(eh);
 
+		if (pf != null) {
+			pf.close();
+		}
+
 		c.close();
 
 		long time1 = System.currentTimeMillis();
@@ -0,0 +1,32 @@
+package com.ontologycentral.ldspider.distributed;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import com.ontologycentral.ldspider.frontier.LinkListener;
+
+/**
+ * Ships batches of links to the nodes owning them, and hands the links
+ * received from other nodes to a {@link LinkListener} (with an unknown
+ * source).
+ */
+public interface LinkTransport {
+	/**
+	 * Sends links to a node.
+	 *
+	 * @param node
+	 * @param links
+	 * @throws IOException
+	 */
+	public void send(int node, List<URI> links) throws IOException;
+
+	/**
+	 * Sets where links received from other nodes go to.
+	 *
+	 * @param l
+	 */
+	public void setReceiver(LinkListener l);
+
+	public void close();
+}
@@ -0,0 +1,53 @@
+package com.ontologycentral.ldspider.distributed;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import com.ontologycentral.ldspider.frontier.LinkListener;
+
+/**
+ * Connects several nodes running in the same JVM, e.g. for testing. The
+ * links are handed to the receiver of the target node in the calling thread.
+ */
+public class LocalLinkTransport implements LinkTransport {
+	LocalLinkTransport[] _nodes;
+	volatile LinkListener _receiver;
+
+	LocalLinkTransport(LocalLinkTransport[] nodes) {
+		_nodes = nodes;
+	}
+
+	/**
+	 * Creates the transports of a set of nodes that are connected to each
+	 * other.
+	 *
+	 * @param nodes number of nodes
+	 * @return the transport per node
+	 */
+	public static LocalLinkTransport[] create(int nodes) {
+		LocalLinkTransport[] t = new LocalLinkTransport[nodes];
+		for (int i = 0; i < nodes; i++) {
+			t[i] = new LocalLinkTransport(t);
+		}
+		return t;
+	}
+
+	public void send(int node, List<URI> links) throws IOException {
+		LinkListener r = _nodes[node]._receiver;
+		if (r == null) {
+			throw new IOException("node " + node + " is not receiving");
+		}
+		for (URI u : links) {
+			r.linkFound(u, null);
+		}
+	}
+
+	public void setReceiver(LinkListener l) {
+		_receiver = l;
+	}
+
+	public void close() {
+		_receiver = null;
+	}
+}
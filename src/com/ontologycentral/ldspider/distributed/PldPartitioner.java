@@ -0,0 +1,59 @@
+package com.ontologycentral.ldspider.distributed;
+
+import java.net.URI;
+
+import org.semanticweb.yars.tld.TldManager;
+
+/**
+ * Assigns pay-level domains to the nodes of a distributed crawl by hashing
+ * the pay-level domain, so that all URIs of a pay-level domain (and thus
+ * politeness and seen checks for it) end up at the same node.
+ */
+public class PldPartitioner {
+	TldManager _tldm;
+	int _nodes;
+	int _self;
+
+	/**
+	 * @param tldm
+	 * @param nodes number of nodes
+	 * @param self number of this node, 0 to nodes-1
+	 */
+	public PldPartitioner(TldManager tldm, int nodes, int self) {
+		if (nodes < 1 || self < 0 || self >= nodes) {
+			throw new IllegalArgumentException("node " + self + " of " + nodes);
+		}
+		_tldm = tldm;
+		_nodes = nodes;
+		_self = self;
+	}
+
+	/**
+	 * @param u
+	 * @return the node owning the pay-level domain of the URI, or -1 if the
+	 *         URI has no pay-level domain
+	 */
+	public int getNode(URI u) {
+		String pld = _tldm.getPLD(u);
+		if (pld == null) {
+			return -1;
+		}
+		return getNode(pld);
+	}
+
+	public int getNode(String pld) {
+		return (pld.hashCode() & Integer.MAX_VALUE) % _nodes;
+	}
+
+	public boolean isLocal(URI u) {
+		return getNode(u) == _self;
+	}
+
+	public int getNodes() {
+		return _nodes;
+	}
+
+	public int getSelf() {
+		return _self;
+	}
+}
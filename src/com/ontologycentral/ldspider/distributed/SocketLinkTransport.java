@@ -0,0 +1,240 @@
+package com.ontologycentral.ldspider.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import com.ontologycentral.ldspider.frontier.LinkListener;
+
+/**
+ * Ships links over TCP. Each node listens on the port of its own address;
+ * connections to the other nodes are opened on the first batch and kept
+ * open. A batch is the number of links followed by the links, each as the
+ * length and the bytes of its UTF-8 encoding. If sending fails, the connection is re-opened once before the
+ * batch is given up.
+ */
+public class SocketLinkTransport implements LinkTransport {
+	private final static Logger _log = Logger.getLogger(SocketLinkTransport.class.getSimpleName());
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Links longer than that (in bytes) are not sent, and taken as a sign of
+	 * a corrupt stream when received.
+	 */
+	public static final int MAX_LINK_LENGTH = 1024*1024;
+
+	InetSocketAddress[] _nodes;
+	int _self;
+
+	ServerSocket _server;
+	Thread _acceptor;
+
+	Socket[] _out;
+	DataOutputStream[] _outStreams;
+	ReentrantLock[] _outLocks;
+
+	/**
+	 * Incoming connections, closed on {@link #close()}.
+	 */
+	List<Socket> _in;
+
+	volatile LinkListener _receiver;
+	volatile boolean _closed;
+
+	/**
+	 * @param nodes the addresses of all nodes
+	 * @param self number of this node; its port is the one to listen on
+	 * @throws IOException if the port cannot be bound
+	 */
+	public SocketLinkTransport(InetSocketAddress[] nodes, int self) throws IOException {
+		_nodes = nodes;
+		_self = self;
+
+		_out = new Socket[nodes.length];
+		_outStreams = new DataOutputStream[nodes.length];
+		_outLocks = new ReentrantLock[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			_outLocks[i] = new ReentrantLock();
+		}
+		_in = new CopyOnWriteArrayList<Socket>();
+		_closed = false;
+
+		_server = new ServerSocket(nodes[self].getPort());
+
+		_acceptor = new Thread("LinkTransport-" + self) {
+			public void run() {
+				accept();
+			}
+		};
+		_acceptor.setDaemon(true);
+		_acceptor.start();
+
+		_log.info("node " + self + " listening on port " + _server.getLocalPort());
+	}
+
+	/**
+	 * @return the port this node listens on
+	 */
+	public int getPort() {
+		return _server.getLocalPort();
+	}
+
+	public void setReceiver(LinkListener l) {
+		_receiver = l;
+	}
+
+	public void send(int node, List<URI> links) throws IOException {
+		_outLocks[node].lock();
+		try {
+			try {
+				write(node, links);
+			} catch (IOException e) {
+				_log.info("sending to node " + node + " failed, reconnecting: " + e.getMessage());
+				disconnect(node);
+				write(node, links);
+			}
+		} finally {
+			_outLocks[node].unlock();
+		}
+	}
+
+	void write(int node, List<URI> links) throws IOException {
+		if (_outStreams[node] == null) {
+			Socket s = new Socket();
+			s.setTcpNoDelay(true);
+			s.connect(_nodes[node]);
+			_out[node] = s;
+			_outStreams[node] = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+		}
+
+		List<byte[]> encoded = new ArrayList<byte[]>(links.size());
+		for (URI u : links) {
+			byte[] b = u.toString().getBytes(UTF8);
+			if (b.length > MAX_LINK_LENGTH) {
+				_log.info("skipping link of " + b.length + " bytes for node " + node);
+				continue;
+			}
+			encoded.add(b);
+		}
+
+		DataOutputStream out = _outStreams[node];
+		out.writeInt(encoded.size());
+		for (byte[] b : encoded) {
+			out.writeInt(b.length);
+			out.write(b);
+		}
+		out.flush();
+	}
+
+	void disconnect(int node) {
+		if (_out[node] != null) {
+			try {
+				_out[node].close();
+			} catch (IOException e) {
+				;
+			}
+		}
+		_out[node] = null;
+		_outStreams[node] = null;
+	}
+
+	void accept() {
+		while (!_closed) {
+			try {
+				final Socket s = _server.accept();
+				_in.add(s);
+				Thread t = new Thread("LinkTransport-" + _self + "-" + s.getRemoteSocketAddress()) {
+					public void run() {
+						receive(s);
+					}
+				};
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				if (!_closed) {
+					_log.warning("accepting connection failed: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	void receive(Socket s) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			while (!_closed) {
+				int n = in.readInt();
+				for (int i = 0; i < n; i++) {
+					int len = in.readInt();
+					if (len < 0 || len > MAX_LINK_LENGTH) {
+						throw new IOException("invalid link length " + len);
+					}
+					byte[] b = new byte[len];
+					in.readFully(b);
+					String link = new String(b, UTF8);
+					LinkListener r = _receiver;
+					if (r == null) {
+						_log.info("no receiver, dropping " + link);
+						continue;
+					}
+					try {
+						r.linkFound(new URI(link), null);
+					} catch (URISyntaxException e) {
+						_log.fine(link + " not parsable, skipping");
+					}
+				}
+			}
+		} catch (EOFException e) {
+			;
+		} catch (IOException e) {
+			if (!_closed) {
+				_log.info("connection from " + s.getRemoteSocketAddress() + " failed: " + e.getMessage());
+			}
+		} finally {
+			_in.remove(s);
+			try {
+				s.close();
+			} catch (IOException e) {
+				;
+			}
+		}
+	}
+
+	public void close() {
+		_closed = true;
+		try {
+			_server.close();
+		} catch (IOException e) {
+			;
+		}
+		for (int i = 0; i < _out.length; i++) {
+			_outLocks[i].lock();
+			try {
+				disconnect(i);
+			} finally {
+				_outLocks[i].unlock();
+			}
+		}
+		for (Socket s : _in) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				;
+			}
+		}
+	}
+}
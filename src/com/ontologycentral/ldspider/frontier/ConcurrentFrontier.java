@@ -0,0 +1,295 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An in-memory frontier for many threads adding links at once. Each thread
+ * collects the links it finds in a buffer of its own, and merges the buffer
+ * into the frontier when it holds {@link #DEFAULT_BATCH_SIZE} links. The
+ * frontier is split into shards by the hash of the URI, each with a lock of
+ * its own, so that a merge holds one shard lock at a time, once per batch,
+ * and threads merging into different shards do not wait for each other.
+ *
+ * The buffers of all threads are merged before the frontier is iterated
+ * (i.e. when the next round is scheduled), so no link is lost. Iterate
+ * when no links are being added, as with {@link BasicFrontier}.
+ */
+public class ConcurrentFrontier extends Frontier {
+	public static final int DEFAULT_SHARDS = 64;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	Shard[] _shards;
+	int _batchSize;
+
+	/**
+	 * The buffers of the threads, for merging them all before iterating.
+	 */
+	ConcurrentLinkedQueue<Buffer> _buffers;
+
+	ThreadLocal<Buffer> _buffer;
+
+	public ConcurrentFrontier() {
+		this(DEFAULT_SHARDS, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param shards number of shards, about the number of threads adding links
+	 * @param batchSize number of links a thread collects before merging them
+	 */
+	public ConcurrentFrontier(int shards, int batchSize) {
+		super();
+		_shards = new Shard[Math.max(1, shards)];
+		for (int i = 0; i < _shards.length; i++) {
+			_shards[i] = new Shard();
+		}
+		_batchSize = Math.max(1, batchSize);
+
+		_buffers = new ConcurrentLinkedQueue<Buffer>();
+		_buffer = new ThreadLocal<Buffer>() {
+			protected Buffer initialValue() {
+				Buffer b = new Buffer(Thread.currentThread());
+				_buffers.add(b);
+				return b;
+			}
+		};
+	}
+
+	public void add(URI u) {
+		u = process(u);
+		if (u == null) {
+			return;
+		}
+
+		Buffer b = _buffer.get();
+		b._lock.lock();
+		try {
+			b._uris.add(u);
+			if (b._uris.size() >= _batchSize) {
+				merge(b._uris);
+				b._uris.clear();
+			}
+		} finally {
+			b._lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the links to the shards, holding the lock of each shard once.
+	 */
+	void merge(List<URI> uris) {
+		List<List<URI>> perShard = new ArrayList<List<URI>>(_shards.length);
+		for (int i = 0; i < _shards.length; i++) {
+			perShard.add(null);
+		}
+
+		for (URI u : uris) {
+			int i = shard(u);
+			List<URI> l = perShard.get(i);
+			if (l == null) {
+				l = new ArrayList<URI>();
+				perShard.set(i, l);
+			}
+			l.add(u);
+		}
+
+		for (int i = 0; i < _shards.length; i++) {
+			List<URI> l = perShard.get(i);
+			if (l != null) {
+				_shards[i].addAll(l);
+			}
+		}
+	}
+
+	int shard(URI u) {
+		return (u.hashCode() & Integer.MAX_VALUE) % _shards.length;
+	}
+
+	/**
+	 * Merges the links buffered by all threads. Forgets the buffers of
+	 * threads that have terminated.
+	 */
+	public void flush() {
+		for (Iterator<Buffer> it = _buffers.iterator(); it.hasNext(); ) {
+			Buffer b = it.next();
+			b._lock.lock();
+			try {
+				if (!b._uris.isEmpty()) {
+					merge(b._uris);
+					b._uris.clear();
+				}
+				if (!b._owner.isAlive()) {
+					it.remove();
+				}
+			} finally {
+				b._lock.unlock();
+			}
+		}
+	}
+
+	public Iterator<URI> iterator() {
+		flush();
+		return new ShardIterator();
+	}
+
+	public void removeAll(Collection<URI> c) {
+		flush();
+		for (URI u : c) {
+			_shards[shard(u)].remove(u);
+		}
+	}
+
+	public void reset() {
+		for (Buffer b : _buffers) {
+			b._lock.lock();
+			try {
+				b._uris.clear();
+			} finally {
+				b._lock.unlock();
+			}
+		}
+		for (Shard s : _shards) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * @return number of URIs in the frontier, after merging the buffers
+	 */
+	public int size() {
+		flush();
+		int size = 0;
+		for (Shard s : _shards) {
+			size += s.size();
+		}
+		return size;
+	}
+
+	public String toString() {
+		flush();
+		StringBuilder sb = new StringBuilder("[");
+		for (Iterator<URI> it = new ShardIterator(); it.hasNext(); ) {
+			sb.append(it.next());
+			if (it.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * The links a thread has found and not merged yet. The lock is taken by
+	 * the owning thread, and by {@link ConcurrentFrontier#flush()}.
+	 */
+	static class Buffer {
+		final Thread _owner;
+		final List<URI> _uris;
+		final ReentrantLock _lock;
+
+		Buffer(Thread owner) {
+			_owner = owner;
+			_uris = new ArrayList<URI>();
+			_lock = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * A part of the frontier.
+	 */
+	static class Shard {
+		final Set<URI> _data;
+		final ReentrantLock _lock;
+
+		Shard() {
+			_data = new HashSet<URI>();
+			_lock = new ReentrantLock();
+		}
+
+		void addAll(Collection<URI> uris) {
+			_lock.lock();
+			try {
+				_data.addAll(uris);
+			} finally {
+				_lock.unlock();
+			}
+		}
+
+		void remove(URI u) {
+			_lock.lock();
+			try {
+				_data.remove(u);
+			} finally {
+				_lock.unlock();
+			}
+		}
+
+		void clear() {
+			_lock.lock();
+			try {
+				_data.clear();
+			} finally {
+				_lock.unlock();
+			}
+		}
+
+		int size() {
+			_lock.lock();
+			try {
+				return _data.size();
+			} finally {
+				_lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Iterates over the shards one after the other. Supports removal, which
+	 * the queues use to take the scheduled URIs out of the frontier.
+	 */
+	class ShardIterator implements Iterator<URI> {
+		int _shard;
+		Iterator<URI> _current;
+
+		/**
+		 * The iterator that returned the last URI, as hasNext() may have
+		 * moved on to the next shard.
+		 */
+		Iterator<URI> _last;
+
+		ShardIterator() {
+			_shard = 0;
+			_current = _shards[0]._data.iterator();
+		}
+
+		public boolean hasNext() {
+			while (!_current.hasNext() && _shard < _shards.length - 1) {
+				_shard++;
+				_current = _shards[_shard]._data.iterator();
+			}
+			return _current.hasNext();
+		}
+
+		public URI next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			_last = _current;
+			return _current.next();
+		}
+
+		public void remove() {
+			if (_last == null) {
+				throw new IllegalStateException();
+			}
+			_last.remove();
+		}
+	}
+}
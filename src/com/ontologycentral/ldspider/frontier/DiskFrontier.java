@@ -1,25 +1,24 @@
 package com.ontologycentral.ldspider.frontier;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.logging.Logger;
 
+/**
+ * Keeps the URIs in a file of records (see {@link RecordWriter}).
+ */
 public class DiskFrontier extends Frontier {
 	Logger _log = Logger.getLogger(this.getClass().getSimpleName());
 
 	File _f;
-	PrintWriter _ps;
+	RecordWriter _out;
 	
 	public DiskFrontier(File f) {
 		super();
@@ -33,12 +32,15 @@ public class DiskFrontier extends Frontier {
 	}
 	
 	void open(boolean append) throws IOException {
-		_ps = new PrintWriter(new FileOutputStream(_f, append));
+		_out = new RecordWriter(new FileOutputStream(_f, append), false);
 	}
 	
 	public void close() {
-		_ps.flush();
-		_ps.close();
+		try {
+			_out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	public void add(URI u) {
@@ -46,20 +48,35 @@ public class DiskFrontier extends Frontier {
 		_log.fine("processed " + u);
 		if (u != null) {
 			synchronized(this) {
-				_ps.println(u.toString());
-				_ps.flush();
+				try {
+					_out.write(1, 0, u.toString());
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
 			}
 		}
 	}
 	
 	public Iterator<URI> iterator() {
-		_ps.flush();
+		try {
+			synchronized(this) {
+				_out.flush();
+			}
+		} catch (IOException e) {
+			// closed already
+			_log.fine(e.getMessage());
+		}
 //		try {
 //			open(true);
 //		} catch (IOException e) {
 //			e.printStackTrace();
 //		}
-		return new DiskFrontierIterator(_f);
+		try {
+			return new DiskFrontierIterator(_f);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return Collections.<URI>emptyList().iterator();
+		}
 	}
 
 	public void removeAll(Collection<URI> c) {
@@ -67,6 +84,7 @@ public class DiskFrontier extends Frontier {
 	}
 	
 	public void reset() {
+		close();
 		_f.delete();
 		try {
 			open(false);
@@ -81,45 +99,25 @@ public class DiskFrontier extends Frontier {
 }
 
 class DiskFrontierIterator implements Iterator<URI> {
-	BufferedReader _br = null;
+	RecordIterator _it;
 	URI _next = null;
 	Set<URI> _unique;
 	
-	public DiskFrontierIterator(File f) {
+	public DiskFrontierIterator(File f) throws IOException {
 		_unique = new HashSet<URI>();
-		
-		try {
-			_br = new BufferedReader(new InputStreamReader(new FileInputStream(f)));
+		_it = new RecordIterator(f);
 
-			readNext();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
-		}
+		readNext();
 	}
 	
 	public boolean hasNext() {
-		if (_next == null) {
-			try {
-				_br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
 		return (_next != null);
 	}
 
 	public URI next() {
 		URI next = _next;
 		
-		try {
-			readNext();
-		} catch (IOException e) {
-			e.printStackTrace();
-		} catch (URISyntaxException e) {
-			e.printStackTrace();
-		}
+		readNext();
 		
 		return next;
 	}
@@ -128,13 +126,12 @@ class DiskFrontierIterator implements Iterator<URI> {
 		;
 	}
 
-	void readNext() throws IOException, URISyntaxException {
-		String line;
+	void readNext() {
 		URI next = null;
 		
-		while ((line = _br.readLine()) != null) {
-			URI u = new URI(line);
-			if (u != null && !_unique.contains(u)) {
+		while (_it.hasNext()) {
+			URI u = _it.next();
+			if (!_unique.contains(u)) {
 				next = u;
 				_unique.add(u);
 				break;
@@ -143,4 +140,4 @@ class DiskFrontierIterator implements Iterator<URI> {
 		
 		_next = next;
 	}
-}
\ No newline at end of file
+}
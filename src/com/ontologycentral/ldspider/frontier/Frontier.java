@@ -15,6 +15,17 @@ public abstract class Frontier implements Iterable<URI> {
 	String[] _suffixes = { };
 	ErrorHandler _eh;
 	
+	/**
+	 * If set, links are handed to the listener instead of being added.
+	 */
+	LinkListener _listener;
+	
+	/**
+	 * If set, the links added via {@link #add(URI, URI)} are written to the
+	 * journal, for incremental checkpoints.
+	 */
+	volatile FrontierJournal _journal;
+	
 	public Frontier() {
 		_eh = new ErrorHandlerDummy();
 	}
@@ -23,7 +34,37 @@ public abstract class Frontier implements Iterable<URI> {
 		_eh = eh;
 	}
 	
-	URI process(URI u) {
+	/**
+	 * Diverts the links added via {@link #add(URI, URI)} to the listener.
+	 * 
+	 * @param l the listener, <code>null</code> to add the links to the frontier again
+	 */
+	public void setLinkListener(LinkListener l) {
+		_listener = l;
+	}
+	
+	/**
+	 * @param j the journal, <code>null</code> for none
+	 */
+	public void setJournal(FrontierJournal j) {
+		_journal = j;
+	}
+	
+	public FrontierJournal getJournal() {
+		return _journal;
+	}
+	
+	/**
+	 * Writes a link to the journal, if set.
+	 */
+	protected void journal(URI u) {
+		FrontierJournal j = _journal;
+		if (j != null) {
+			j.add(u);
+		}
+	}
+	
+	protected URI process(URI u) {
 		if (u == null || u.getScheme() == null) {
 			return null;
 		}
@@ -66,6 +107,29 @@ public abstract class Frontier implements Iterable<URI> {
 	}
 	
 	public abstract void add(URI u);
+	
+	/**
+	 * Adds a link found in a document. Goes to the link listener, if set,
+	 * otherwise to the journal, too.
+	 * 
+	 * @param u the link
+	 * @param from the document, or <code>null</code> if unknown
+	 */
+	public void add(URI u, URI from) {
+		LinkListener l = _listener;
+		if (l != null) {
+			u = process(u);
+			if (u != null) {
+				l.linkFound(u, from);
+			}
+		} else {
+			add(u);
+			if (u != null) {
+				// processed again when the journal is read
+				journal(u);
+			}
+		}
+	}
 
 	public void addAll(Collection<URI> c) {
 		for (URI u : c) {
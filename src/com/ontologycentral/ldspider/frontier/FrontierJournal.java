@@ -0,0 +1,75 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.logging.Logger;
+
+/**
+ * Writes the links added to a {@link Frontier} to a file as they are found,
+ * so that a checkpoint only has to close the file rather than write the
+ * whole frontier (see {@link com.ontologycentral.ldspider.Checkpointer}).
+ * The links are written as compressed records with {@link RecordWriter}.
+ */
+public class FrontierJournal {
+	private static final Logger _log = Logger.getLogger(FrontierJournal.class.getName());
+
+	File _file;
+	FileOutputStream _fos;
+	RecordWriter _out;
+
+	/**
+	 * Whether a link could not be written to the current file.
+	 */
+	boolean _failed;
+
+	/**
+	 * Starts a new file, overwriting an existing one.
+	 */
+	public synchronized void open(File file) throws IOException {
+		if (_out != null) {
+			close();
+		}
+		_file = file;
+		_fos = new FileOutputStream(file);
+		_out = new RecordWriter(_fos, true);
+		_failed = false;
+	}
+
+	public synchronized boolean isOpen() {
+		return _out != null;
+	}
+
+	public synchronized void add(URI u) {
+		if (_out == null || _failed) {
+			return;
+		}
+		try {
+			_out.write(1, 0, u.toString());
+		} catch (IOException e) {
+			_log.warning("cannot write " + u + " to " + _file + ": " + e.getMessage());
+			_failed = true;
+		}
+	}
+
+	/**
+	 * Writes the links to disk and closes the file.
+	 *
+	 * @return number of links written, -1 if a link could not be written
+	 */
+	public synchronized long close() throws IOException {
+		if (_out == null) {
+			return -1;
+		}
+		long count = _out.getCount();
+		try {
+			_out.flush();
+			_fos.getFD().sync();
+		} finally {
+			_out.close();
+			_out = null;
+		}
+		return _failed ? -1 : count;
+	}
+}
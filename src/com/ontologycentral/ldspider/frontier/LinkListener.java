@@ -0,0 +1,16 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.net.URI;
+
+/**
+ * Receives the links added to a {@link Frontier} right away, together with
+ * the document they have been found in, e.g. for crawling without rounds.
+ */
+public interface LinkListener {
+	
+	/**
+	 * @param u the link, already normalised
+	 * @param from the document the link has been found in, or <code>null</code> if unknown
+	 */
+	public void linkFound(URI u, URI from);
+}
@@ -0,0 +1,298 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.ontologycentral.ldspider.distributed.LinkTransport;
+import com.ontologycentral.ldspider.distributed.PldPartitioner;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandler;
+
+/**
+ * The frontier of a node in a distributed crawl. URIs of pay-level domains
+ * owned by this node go to the local frontier; the others are collected in
+ * batches per node and shipped to their owner, where they end up in the
+ * local frontier. The seen checks are thus done by the owner only.
+ *
+ * Batches are sent when full, and before the frontier is iterated (i.e.
+ * when the next round is scheduled). A batch that cannot be sent is kept
+ * and sent again together with the next batch for the node. The rounds of the nodes are not
+ * synchronised: links arriving during a round are crawled in the next
+ * round of the receiving node. If a link listener is set (crawls without
+ * rounds), links received are handed to the listener right away.
+ */
+public class PartitioningFrontier extends Frontier {
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	Frontier _local;
+	PldPartitioner _partitioner;
+	LinkTransport _transport;
+
+	int _batchSize;
+
+	/**
+	 * The links waiting to be sent, per node.
+	 */
+	List<List<URI>> _batches;
+
+	/**
+	 * The links that could not be sent, per node, <code>null</code> for none.
+	 */
+	List<List<URI>> _failed;
+
+	/**
+	 * The links received from other nodes. They are moved to the local
+	 * frontier when it is iterated, as the queue iterates and resets the
+	 * local frontier while receiving goes on.
+	 */
+	List<URI> _received;
+
+	ReentrantLock _lock;
+
+	/**
+	 * @param local the frontier for the URIs owned by this node
+	 * @param partitioner
+	 * @param transport
+	 * @param batchSize number of links sent at once
+	 */
+	public PartitioningFrontier(Frontier local, PldPartitioner partitioner, LinkTransport transport, int batchSize) {
+		super();
+		_local = local;
+		_partitioner = partitioner;
+		_transport = transport;
+		_batchSize = batchSize;
+
+		_batches = new ArrayList<List<URI>>(partitioner.getNodes());
+		_failed = new ArrayList<List<URI>>(partitioner.getNodes());
+		for (int i = 0; i < partitioner.getNodes(); i++) {
+			_batches.add(new ArrayList<URI>());
+			_failed.add(null);
+		}
+
+		_received = new ArrayList<URI>();
+
+		_lock = new ReentrantLock();
+
+		_transport.setReceiver(new LinkListener() {
+			public void linkFound(URI u, URI from) {
+				LinkListener l = _listener;
+				if (l != null) {
+					l.linkFound(u, null);
+					return;
+				}
+				_lock.lock();
+				try {
+					_received.add(u);
+				} finally {
+					_lock.unlock();
+				}
+				journal(u);
+			}
+		});
+	}
+
+	/**
+	 * Also hands the links received so far to the listener.
+	 */
+	public void setLinkListener(LinkListener l) {
+		super.setLinkListener(l);
+		if (l == null) {
+			return;
+		}
+
+		List<URI> received;
+		_lock.lock();
+		try {
+			received = _received;
+			_received = new ArrayList<URI>();
+		} finally {
+			_lock.unlock();
+		}
+		for (URI u : received) {
+			l.linkFound(u, null);
+		}
+	}
+
+	public void setErrorHandler(ErrorHandler eh) {
+		super.setErrorHandler(eh);
+		_local.setErrorHandler(eh);
+	}
+
+	public void add(URI u) {
+		u = process(u);
+		if (u == null) {
+			return;
+		}
+
+		if (isLocal(u)) {
+			_local.add(u);
+		} else {
+			ship(u);
+		}
+	}
+
+	public void add(URI u, URI from) {
+		u = process(u);
+		if (u == null) {
+			return;
+		}
+
+		if (isLocal(u)) {
+			super.add(u, from);
+		} else {
+			ship(u);
+		}
+	}
+
+	boolean isLocal(URI u) {
+		int node = _partitioner.getNode(u);
+		// URIs without pay-level domain are dropped by the queue anyway
+		return node == -1 || node == _partitioner.getSelf();
+	}
+
+	void ship(URI u) {
+		int node = _partitioner.getNode(u);
+		List<URI> batch = null;
+
+		_lock.lock();
+		try {
+			List<URI> b = _batches.get(node);
+			b.add(u);
+			if (b.size() >= _batchSize) {
+				batch = b;
+				_batches.set(node, new ArrayList<URI>());
+			}
+		} finally {
+			_lock.unlock();
+		}
+
+		if (batch != null) {
+			send(node, batch);
+		}
+	}
+
+	void send(int node, List<URI> batch) {
+		_lock.lock();
+		try {
+			List<URI> failed = _failed.get(node);
+			if (failed != null) {
+				_failed.set(node, null);
+				failed.addAll(batch);
+				batch = failed;
+			}
+		} finally {
+			_lock.unlock();
+		}
+
+		try {
+			_transport.send(node, batch);
+			_log.fine("sent " + batch.size() + " links to node " + node);
+		} catch (IOException e) {
+			_log.warning("keeping " + batch.size() + " links for node " + node + " to send them again: " + e.getMessage());
+
+			_lock.lock();
+			try {
+				List<URI> failed = _failed.get(node);
+				if (failed != null) {
+					batch.addAll(failed);
+				}
+				_failed.set(node, batch);
+			} finally {
+				_lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Sends the links collected so far, and those that could not be sent
+	 * before.
+	 */
+	public void flush() {
+		for (int node = 0; node < _partitioner.getNodes(); node++) {
+			List<URI> batch;
+
+			_lock.lock();
+			try {
+				batch = _batches.get(node);
+				if (batch.isEmpty() && _failed.get(node) == null) {
+					continue;
+				}
+				_batches.set(node, new ArrayList<URI>());
+			} finally {
+				_lock.unlock();
+			}
+
+			send(node, batch);
+		}
+	}
+
+	/**
+	 * Sends the links collected so far, adds the links received to the
+	 * local frontier, and iterates over the local frontier.
+	 */
+	public Iterator<URI> iterator() {
+		flush();
+
+		List<URI> received;
+		_lock.lock();
+		try {
+			received = _received;
+			_received = new ArrayList<URI>();
+		} finally {
+			_lock.unlock();
+		}
+
+		if (!received.isEmpty()) {
+			_log.info("adding " + received.size() + " links received from other nodes");
+			_local.addAll(received);
+		}
+
+		return _local.iterator();
+	}
+
+	public void removeAll(Collection<URI> c) {
+		_local.removeAll(c);
+	}
+
+	public void reset() {
+		_local.reset();
+	}
+
+	/**
+	 * @return number of links that could not be sent yet
+	 */
+	public int getUnsent() {
+		_lock.lock();
+		try {
+			int n = 0;
+			for (List<URI> failed : _failed) {
+				if (failed != null) {
+					n += failed.size();
+				}
+			}
+			return n;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends the links collected so far and closes the transport.
+	 */
+	public void close() {
+		flush();
+		int unsent = getUnsent();
+		if (unsent > 0) {
+			_log.warning("dropping " + unsent + " links that could not be sent");
+		}
+		_transport.close();
+	}
+
+	public String toString() {
+		return _local.toString();
+	}
+}
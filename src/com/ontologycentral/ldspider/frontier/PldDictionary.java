@@ -0,0 +1,62 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Numbers the pay-level domains in the records of a {@link RecordWriter}, so
+ * that a record carries a small id instead of the name. Id 0 stands for no
+ * pay-level domain.
+ *
+ * Not thread-safe.
+ */
+public class PldDictionary {
+	Map<String, Integer> _ids;
+	List<String> _plds;
+
+	public PldDictionary() {
+		_ids = new HashMap<String, Integer>();
+		_plds = new ArrayList<String>();
+		// id 0
+		_plds.add(null);
+	}
+
+	/**
+	 * @return the id of the pay-level domain, a new one if it has none yet
+	 */
+	public int getId(String pld) {
+		if (pld == null) {
+			return 0;
+		}
+
+		Integer id = _ids.get(pld);
+		if (id == null) {
+			id = _plds.size();
+			_ids.put(pld, id);
+			_plds.add(pld);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the pay-level domain with the id, <code>null</code> for 0
+	 */
+	public String getPld(int id) {
+		return _plds.get(id);
+	}
+
+	/**
+	 * @return number of pay-level domains
+	 */
+	public int size() {
+		return _plds.size() - 1;
+	}
+
+	public void clear() {
+		_ids.clear();
+		_plds.clear();
+		_plds.add(null);
+	}
+}
@@ -0,0 +1,73 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+/**
+ * The URIs in a file of records, closing the file at the end.
+ */
+class RecordIterator implements Iterator<URI> {
+	private static final Logger _log = Logger.getLogger(RecordIterator.class.getName());
+
+	RecordReader _reader;
+	URI _next;
+
+	RecordIterator(File f) throws IOException {
+		_reader = new RecordReader(new FileInputStream(f));
+		readNext();
+	}
+
+	public boolean hasNext() {
+		return _next != null;
+	}
+
+	public URI next() {
+		if (_next == null) {
+			throw new NoSuchElementException();
+		}
+		URI next = _next;
+		readNext();
+		return next;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	void readNext() {
+		_next = null;
+		if (_reader == null) {
+			return;
+		}
+
+		try {
+			while (_reader.next()) {
+				try {
+					_next = new URI(_reader.getUri());
+					return;
+				} catch (URISyntaxException e) {
+					_log.fine("skipping " + _reader.getUri() + ", not parsable");
+				}
+			}
+		} catch (IOException e) {
+			_log.warning("cannot read records: " + e.getMessage());
+		}
+
+		close();
+	}
+
+	void close() {
+		try {
+			_reader.close();
+		} catch (IOException e) {
+			_log.fine(e.getMessage());
+		}
+		_reader = null;
+	}
+}
@@ -0,0 +1,208 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the records written by {@link RecordWriter}, one after the other:
+ *
+ * <pre>
+ * while (r.next()) {
+ * 	r.getUri() ...
+ * }
+ * </pre>
+ *
+ * Not thread-safe.
+ */
+public class RecordReader {
+	InputStream _in;
+	boolean _compressed;
+	Inflater _inflater;
+
+	byte[] _buf;
+	int _pos;
+	int _limit;
+	byte[] _deflated;
+
+	int _count;
+	int _pld;
+	String _uri;
+
+	/**
+	 * @param in the stream, which need not be buffered
+	 */
+	public RecordReader(InputStream in) throws IOException {
+		_in = in;
+
+		byte[] magic = new byte[RecordWriter.MAGIC.length + 1];
+		readFully(magic, 0, magic.length);
+		for (int i = 0; i < RecordWriter.MAGIC.length; i++) {
+			if (magic[i] != RecordWriter.MAGIC[i]) {
+				throw new IOException("not a record file");
+			}
+		}
+		_compressed = (magic[RecordWriter.MAGIC.length] & RecordWriter.COMPRESSED) != 0;
+
+		if (_compressed) {
+			_inflater = new Inflater();
+			_deflated = new byte[RecordWriter.BLOCK_SIZE];
+		}
+		_buf = new byte[RecordWriter.BLOCK_SIZE + 64];
+		_pos = 0;
+		_limit = 0;
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return false at the end of the file
+	 */
+	public boolean next() throws IOException {
+		if (_pos == _limit && !fill()) {
+			_uri = null;
+			return false;
+		}
+
+		_count = readVarint();
+		_pld = readVarint();
+		int length = readVarint();
+
+		if (_limit - _pos >= length) {
+			_uri = new String(_buf, _pos, length, "UTF-8");
+			_pos += length;
+		} else {
+			byte[] bytes = new byte[length];
+			int n = 0;
+			while (n < length) {
+				if (_pos == _limit && !fill()) {
+					throw new EOFException("record cut off");
+				}
+				int c = Math.min(length - n, _limit - _pos);
+				System.arraycopy(_buf, _pos, bytes, n, c);
+				_pos += c;
+				n += c;
+			}
+			_uri = new String(bytes, "UTF-8");
+		}
+
+		return true;
+	}
+
+	public int getCount() {
+		return _count;
+	}
+
+	/**
+	 * @return the id of the pay-level domain, 0 for none
+	 */
+	public int getPld() {
+		return _pld;
+	}
+
+	public String getUri() {
+		return _uri;
+	}
+
+	int readVarint() throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (_pos == _limit && !fill()) {
+				throw new EOFException("record cut off");
+			}
+			byte b = _buf[_pos++];
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("malformed varint");
+	}
+
+	/**
+	 * Reads the next bytes, or block if compressed, into the buffer.
+	 *
+	 * @return false at the end of the stream
+	 */
+	boolean fill() throws IOException {
+		_pos = 0;
+		_limit = 0;
+
+		if (!_compressed) {
+			int n = _in.read(_buf, 0, _buf.length);
+			if (n < 0) {
+				return false;
+			}
+			_limit = n;
+			return true;
+		}
+
+		int b = _in.read();
+		if (b < 0) {
+			return false;
+		}
+		int length = readVarint(b);
+		int deflated = readVarint(_in.read());
+
+		if (_deflated.length < deflated) {
+			_deflated = new byte[deflated];
+		}
+		readFully(_deflated, 0, deflated);
+		if (_buf.length < length) {
+			// a block with a long URI
+			_buf = new byte[length];
+		}
+
+		_inflater.reset();
+		_inflater.setInput(_deflated, 0, deflated);
+		try {
+			int n = 0;
+			while (n < length && !_inflater.finished()) {
+				n += _inflater.inflate(_buf, n, length - n);
+			}
+			_limit = n;
+		} catch (DataFormatException e) {
+			throw new IOException("corrupt block: " + e.getMessage());
+		}
+
+		return _limit > 0;
+	}
+
+	/**
+	 * Reads a varint from the stream, starting with the given byte.
+	 */
+	int readVarint(int b) throws IOException {
+		int v = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			if (b < 0) {
+				throw new EOFException("block header cut off");
+			}
+			v |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return v;
+			}
+			b = _in.read();
+		}
+		throw new IOException("malformed varint");
+	}
+
+	void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = _in.read(b, off, len);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			off += n;
+			len -= n;
+		}
+	}
+
+	public void close() throws IOException {
+		_in.close();
+		if (_inflater != null) {
+			_inflater.end();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Writes URIs as binary records, for the files of the disk frontiers and of
+ * the {@link com.ontologycentral.ldspider.queue.DiskBreadthFirstQueue}.
+ *
+ * A file starts with {@link #MAGIC} and a flags byte. A record is the count,
+ * the id of the pay-level domain (0 for none, see {@link PldDictionary}) and
+ * the length of the URI in UTF-8, each as varint, followed by the bytes.
+ *
+ * Records are collected in blocks of about {@link #BLOCK_SIZE} bytes. If the
+ * file is compressed, each block is written deflated, preceded by its
+ * length before and after compression as varints; a record never spans
+ * blocks. Otherwise, the blocks are written as they are.
+ *
+ * Read with {@link RecordReader}. Not thread-safe.
+ */
+public class RecordWriter {
+	static final byte[] MAGIC = { 'L', 'D', 'S', 'R' };
+
+	static final int COMPRESSED = 1;
+
+	public static final int BLOCK_SIZE = 1 << 16;
+
+	OutputStream _out;
+	boolean _compress;
+	Deflater _deflater;
+
+	byte[] _block;
+	int _length;
+	byte[] _deflated;
+
+	long _count;
+
+	/**
+	 * @param out the stream, which need not be buffered
+	 * @param compress whether to deflate the blocks
+	 */
+	public RecordWriter(OutputStream out, boolean compress) throws IOException {
+		_out = out;
+		_compress = compress;
+		_block = new byte[BLOCK_SIZE + 64];
+		_length = 0;
+		_count = 0;
+
+		if (compress) {
+			_deflater = new Deflater(Deflater.BEST_SPEED);
+			_deflated = new byte[BLOCK_SIZE];
+		}
+
+		_out.write(MAGIC);
+		_out.write(compress ? COMPRESSED : 0);
+	}
+
+	public void write(int count, int pld, String uri) throws IOException {
+		byte[] bytes = uri.getBytes("UTF-8");
+
+		ensure(15 + bytes.length);
+		putVarint(count);
+		putVarint(pld);
+		putVarint(bytes.length);
+		System.arraycopy(bytes, 0, _block, _length, bytes.length);
+		_length += bytes.length;
+		_count++;
+
+		if (_length >= BLOCK_SIZE) {
+			writeBlock();
+		}
+	}
+
+	void ensure(int n) {
+		if (_length + n > _block.length) {
+			// a long URI
+			byte[] b = new byte[_length + n];
+			System.arraycopy(_block, 0, b, 0, _length);
+			_block = b;
+		}
+	}
+
+	void putVarint(int v) {
+		while ((v & ~0x7f) != 0) {
+			_block[_length++] = (byte)((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		_block[_length++] = (byte)v;
+	}
+
+	void writeBlock() throws IOException {
+		if (_length == 0) {
+			return;
+		}
+
+		if (_compress) {
+			_deflater.reset();
+			_deflater.setInput(_block, 0, _length);
+			_deflater.finish();
+
+			int deflated = 0;
+			while (!_deflater.finished()) {
+				if (deflated == _deflated.length) {
+					byte[] b = new byte[_deflated.length * 2];
+					System.arraycopy(_deflated, 0, b, 0, deflated);
+					_deflated = b;
+				}
+				deflated += _deflater.deflate(_deflated, deflated, _deflated.length - deflated);
+			}
+
+			writeVarint(_out, _length);
+			writeVarint(_out, deflated);
+			_out.write(_deflated, 0, deflated);
+		} else {
+			_out.write(_block, 0, _length);
+		}
+
+		_length = 0;
+		if (_block.length > BLOCK_SIZE + 64) {
+			_block = new byte[BLOCK_SIZE + 64];
+		}
+	}
+
+	static void writeVarint(OutputStream out, int v) throws IOException {
+		while ((v & ~0x7f) != 0) {
+			out.write((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.write(v);
+	}
+
+	/**
+	 * Writes the records so far, e.g. before the file is read while still
+	 * being written. Ends a block if compressed.
+	 */
+	public void flush() throws IOException {
+		writeBlock();
+		_out.flush();
+	}
+
+	/**
+	 * @return number of records written
+	 */
+	public long getCount() {
+		return _count;
+	}
+
+	public void close() throws IOException {
+		writeBlock();
+		_out.close();
+		if (_deflater != null) {
+			_deflater.end();
+		}
+	}
+}
@@ -1,38 +1,21 @@
 package com.ontologycentral.ldspider.frontier;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-
-import org.semanticweb.yars.nx.Node;
-import org.semanticweb.yars.nx.NodeComparator;
-import org.semanticweb.yars.nx.NodeComparator.NodeComparatorArgs;
-import org.semanticweb.yars.nx.parser.Callback;
-import org.semanticweb.yars.nx.parser.NxParser;
-import org.semanticweb.yars.nx.parser.ParseException;
-import org.semanticweb.yars.nx.sort.SortIterator;
-import org.semanticweb.yars.nx.sort.SortIterator.SortArgs;
-import org.semanticweb.yars.util.CallbackNxBufferedWriter;
-import org.semanticweb.yars.util.Node2uriConvertingIterator;
-import org.semanticweb.yars.util.PleaseCloseTheDoorWhenYouLeaveIterator;
 
 import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.queue.ExternalSorter;
 
 /**
+ * Keeps the URIs in a file of records (see {@link RecordWriter}), block
+ * compressed if asked to gzip.
  * 
  * @author Tobias Kaefer
  * 
@@ -41,7 +24,7 @@ public class SortingDiskFrontier extends Frontier {
 
 	Logger _log = Logger.getLogger(this.getClass().getName());
 
-	BufferedWriter _bw;
+	RecordWriter _out;
 
 	static final String FILENAME_BASE = "ldspider-diskFrontierTmp";
 	static final String FILENAME_CURRENT = FILENAME_BASE + "-Current";
@@ -65,13 +48,11 @@ public class SortingDiskFrontier extends Frontier {
 		_isSorted = false;
 		_sortBeforeIterating = sort;
 		_gzipFrontier = gzip;
-		SUFFIX = _gzipFrontier ? ".nx.gz" : ".nx";
+		SUFFIX = _gzipFrontier ? ".rec.z" : ".rec";
 		_currentTempFile = File.createTempFile(FILENAME_CURRENT, SUFFIX);
 		_currentTempFile.deleteOnExit();
-		OutputStream os = _gzipFrontier ? new GZIPOutputStream(
-				new FileOutputStream(_currentTempFile)) : new FileOutputStream(
-				_currentTempFile);
-		_bw = new BufferedWriter(new OutputStreamWriter(os));
+		_out = new RecordWriter(new FileOutputStream(_currentTempFile),
+				_gzipFrontier);
 	}
 
 	@Override
@@ -79,14 +60,14 @@ public class SortingDiskFrontier extends Frontier {
 		u = process(u);
 		if (u == null)
 			return;
-		try {
-			_bw.write("<");
-			_bw.write(u.toString());
-			_bw.write("> .\n");
-			_isSorted = false;
-		} catch (IOException e) {
-			// _log.warning(e.getLocalizedMessage());
-			e.printStackTrace();
+		synchronized(this) {
+			try {
+				_out.write(1, 0, u.toString());
+				_isSorted = false;
+			} catch (IOException e) {
+				// _log.warning(e.getLocalizedMessage());
+				e.printStackTrace();
+			}
 		}
 
 	}
@@ -100,7 +81,7 @@ public class SortingDiskFrontier extends Frontier {
 	@Override
 	public void reset() {
 		try {
-			_bw.close();
+			_out.close();
 		} catch (IOException e1) {
 			_log.warning(e1.getMessage());
 		}
@@ -114,10 +95,8 @@ public class SortingDiskFrontier extends Frontier {
 		}
 		_currentTempFile.deleteOnExit();
 		try {
-			OutputStream os = _gzipFrontier ? new GZIPOutputStream(
-					new FileOutputStream(_currentTempFile))
-					: new FileOutputStream(_currentTempFile);
-			_bw = new BufferedWriter(new OutputStreamWriter(os));
+			_out = new RecordWriter(new FileOutputStream(_currentTempFile),
+					_gzipFrontier);
 		} catch (IOException e) {
 			_log.warning(e.getMessage());
 		}
@@ -127,93 +106,65 @@ public class SortingDiskFrontier extends Frontier {
 	@Override
 	public Iterator<URI> iterator() {
 
-		final NxParser nx;
-		final BufferedReader br;
-
 		try {
-			_bw.close();
+			_out.close();
 
 			if (!_isSorted && _sortBeforeIterating) {
 				_sortedTempFile = sort(_currentTempFile);
 				_sortedTempFile.deleteOnExit();
+				_isSorted = true;
 			}
 
 			File file = _sortBeforeIterating ? _sortedTempFile : _currentTempFile;
-			
-			InputStream is = _gzipFrontier ? new GZIPInputStream(
-					new FileInputStream(file)) : new FileInputStream(
-					file);
-
-			br = new BufferedReader(new InputStreamReader(is));
 
-			nx = new NxParser(br);
+			return new RecordIterator(file);
 		} catch (IOException e) {
 			_log.warning("IOException. " + e.getLocalizedMessage()
 					+ ". returning empty iterator!");
 			return Collections.<URI>emptyList().iterator();
-		} catch (ParseException e) {
-			_log.warning("ParseException. " + e.getLocalizedMessage()
-					+ ". returning empty iterator!");
-			return Collections.<URI>emptyList().iterator();
 		}
 
-		return new PleaseCloseTheDoorWhenYouLeaveIterator<URI>(
-				new Node2uriConvertingIterator(nx, 0), br);
-
 	}
 
-	private File sort(File in) throws IOException, ParseException {
+	private File sort(File in) throws IOException {
 		_log.info("Sorting the frontier...");
-		
-		System.gc();
-		
-		InputStream is = _gzipFrontier ? new GZIPInputStream(
-				new FileInputStream(in)) : new FileInputStream(in);
 
-		BufferedReader br = new BufferedReader(new InputStreamReader(is));
+		ExternalSorter sorter = new ExternalSorter(null,
+				ExternalSorter.DEFAULT_BATCH, Runtime.getRuntime()
+						.availableProcessors());
 
 		File out = File.createTempFile(FILENAME_SORTED, SUFFIX);
 
-		OutputStream os = _gzipFrontier ? new GZIPOutputStream(
-				new FileOutputStream(out)) : new FileOutputStream(out);
-
-		BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(os));
-
-		// Code from NxParser's Sort class
-
-		Iterator<Node[]> it = new NxParser(br);
-
-		Callback cb = new CallbackNxBufferedWriter(bw, true);
-
-		NodeComparatorArgs nca = new NodeComparatorArgs();
-
-		// nca.setOrder(NodeComparatorArgs.getIntegerMask(cmd.getOptionValue("so")));
-
-		// allow duplicates
-		nca.setNoEquals(true);
-		nca.setNoZero(true);
-
-		NodeComparator nc = new NodeComparator(nca);
-
-		SortArgs sa = new SortArgs(it, (short) 1);
-		sa.setComparator(nc);
-		sa.setGzipBatches(_gzipFrontier);
-
-		SortIterator si = new SortIterator(sa);
-		Iterator<Node[]> iter = si;
-
-		cb.startDocument();
+		try {
+			RecordReader r = new RecordReader(new FileInputStream(in));
+			try {
+				while (r.next()) {
+					// no pld, so by URI, with duplicates
+					sorter.add("", r.getCount(), r.getUri());
+				}
+			} finally {
+				r.close();
+			}
 
-		while (iter.hasNext()) {
-			cb.processStatement(iter.next());
+			RecordWriter w = new RecordWriter(new FileOutputStream(out),
+					_gzipFrontier);
+			try {
+				Iterator<ExternalSorter.Record> it = sorter.sorted();
+				while (it.hasNext()) {
+					ExternalSorter.Record rec = it.next();
+					w.write(rec.getCount(), 0, rec.getUri());
+				}
+			} finally {
+				w.close();
+			}
+		} finally {
+			sorter.close();
 		}
 
-		cb.endDocument();
-
 		in.delete();
 
-		_log.info("Finished sorting the frontier. Sorted " + si.count() + " with "
-				+ si.duplicates() + " duplicates.");
+		_log.info("Finished sorting the frontier. Sorted " + sorter.getCount()
+				+ " in " + sorter.getRuns() + " runs.");
 
 		return out;
 	}
@@ -29,6 +29,12 @@ public class LinkFilterDefault implements LinkFilter {
 	
 	protected boolean _followABox;
 	protected boolean _followTBox;
+	
+	/**
+	 * The last context seen by each thread, as the statements of a document
+	 * come in a row; the threads share the link filter.
+	 */
+	final ThreadLocal<Source> _last = new ThreadLocal<Source>();
 		
 	public LinkFilterDefault(Frontier f) {
 		_f = f;
@@ -56,7 +62,7 @@ public class LinkFilterDefault implements LinkFilter {
 		_log.info("document done");
 	}
 
-	public synchronized void processStatement(Node[] nx) {
+	public void processStatement(Node[] nx) {
 		_log.fine("seeing " + Nodes.toN3(nx));
 		for (int i = 0; i < Math.min(nx.length, 3); i++) {
 			if (nx[i] instanceof Resource) {
@@ -86,7 +92,7 @@ public class LinkFilterDefault implements LinkFilter {
 	 * Override this in sub classes to modify ABox handling.
 	 * 
 	 */
-	protected synchronized void addABox(Node[] nx, int i) {
+	protected void addABox(Node[] nx, int i) {
 		addUri(nx, i);
 	}
 	
@@ -95,14 +101,37 @@ public class LinkFilterDefault implements LinkFilter {
 	 * Override this in sub classes to modify TBox handling.
 	 * 
 	 */
-	protected synchronized void addTBox(Node[] nx, int i) {
+	protected void addTBox(Node[] nx, int i) {
 		addUri(nx, i);
 	}
 	
+	/**
+	 * Returns the document a statement has been found in, i.e. its context.
+	 * 
+	 * @return the document or <code>null</code> if the statement has no context
+	 */
+	protected URI getSource(Node[] nx) {
+		if (nx.length < 4 || !(nx[3] instanceof Resource)) {
+			return null;
+		}
+		Source last = _last.get();
+		if (last == null || !nx[3].equals(last._context)) {
+			URI source;
+			try {
+				source = new URI(nx[3].toString());
+			} catch (URISyntaxException e) {
+				source = null;
+			}
+			last = new Source(nx[3], source);
+			_last.set(last);
+		}
+		return last._source;
+	}
+	
 	/**
 	 * Adds a new uri to the frontier.
 	 */
-	protected synchronized void addUri(Node[] nx, int i) {
+	protected void addUri(Node[] nx, int i) {
 		try {
 			_log.fine("adduri " + nx[i].toString());
 			try {
@@ -116,7 +145,7 @@ public class LinkFilterDefault implements LinkFilter {
 					}
 				}
 				if (add) {
-					_f.add(u);
+					_f.add(u, getSource(nx));
 					// saves normalisations:
 					boolean presumablyDiscardedWhileAdding = false;
 					try {
@@ -144,4 +173,17 @@ public class LinkFilterDefault implements LinkFilter {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * A context and the document it stands for.
+	 */
+	static class Source {
+		final Node _context;
+		final URI _source;
+
+		Source(Node context, URI source) {
+			_context = context;
+			_source = source;
+		}
+	}
 }
@@ -47,7 +47,7 @@ public class LinkFilterDomain extends LinkFilterDefault {
 		try {
 			URI u = new URI(nx[i].toString());
 			if (_hosts.contains(u.getHost())) {
-				_f.add(u);
+				_f.add(u, getSource(nx));
 				_log.fine("adding " + u + " to frontier");
 			}
 		} catch (URISyntaxException e) {
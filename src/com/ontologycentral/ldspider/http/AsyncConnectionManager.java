@@ -0,0 +1,358 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.http.internal.NioExchange;
+
+/**
+ * Fetches URIs on non-blocking channels, so that the number of requests in
+ * flight is not tied to the number of threads: one I/O thread drives all
+ * connections, completion is signalled via {@link FetchCallback}.
+ *
+ * Plain http requests (directly or via a proxy without authentication) are
+ * carried out on the I/O thread. Everything else (https, authenticating
+ * proxies) is handed to the blocking {@link ConnectionManager} on a few
+ * fallback threads.
+ *
+ * Responses are buffered in memory (up to {@link #setMaxContentLength(long)}),
+ * so the callback may hand them to other threads for processing.
+ */
+public class AsyncConnectionManager {
+	private final static Logger _log = Logger.getLogger(AsyncConnectionManager.class.getName());
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+	public static final long DEFAULT_MAX_CONTENT_LENGTH = CrawlerConstants.MAX_CONTENT_LENGTH;
+
+	ConnectionManager _fallback;
+
+	String _proxyHost;
+	int _proxyPort;
+	boolean _proxyAuth;
+
+	Selector _selector;
+	Thread _ioThread;
+	volatile boolean _running;
+
+	/**
+	 * Exchanges whose host has been resolved, to be registered by the I/O thread.
+	 */
+	Queue<NioExchange> _pending;
+
+	ExecutorService _resolver;
+	ExecutorService _blocking;
+
+	Semaphore _permits;
+	AtomicInteger _inFlight;
+
+	long _maxContentLength;
+
+	/**
+	 * @param fallback used for requests that cannot be carried out non-blocking
+	 * @param proxyHost the proxy host or <code>null</code>
+	 * @param proxyPort
+	 * @param proxyAuth whether the proxy needs authentication
+	 * @param maxInFlight maximum number of concurrent requests
+	 */
+	public AsyncConnectionManager(ConnectionManager fallback, String proxyHost, int proxyPort, boolean proxyAuth, int maxInFlight) throws IOException {
+		_fallback = fallback;
+		_proxyHost = proxyHost;
+		_proxyPort = proxyPort;
+		_proxyAuth = proxyAuth;
+
+		_pending = new ConcurrentLinkedQueue<NioExchange>();
+		_permits = new Semaphore(maxInFlight);
+		_inFlight = new AtomicInteger(0);
+		_maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+
+		_resolver = Executors.newFixedThreadPool(4, new NamedDaemonThreadFactory("AsyncResolver"));
+		_blocking = Executors.newFixedThreadPool(8, new NamedDaemonThreadFactory("AsyncFallback"));
+
+		_selector = Selector.open();
+		_running = true;
+
+		_ioThread = new Thread("AsyncIO") {
+			public void run() {
+				loop();
+			}
+		};
+		_ioThread.setDaemon(true);
+		_ioThread.start();
+
+		_log.info("async connection manager with up to " + maxInFlight + " requests in flight");
+	}
+
+	public void setMaxContentLength(long max) {
+		_maxContentLength = max;
+	}
+
+	public int getInFlight() {
+		return _inFlight.get();
+	}
+
+	/**
+	 * Issues a request. Blocks if the maximum number of requests is in flight.
+	 *
+	 * @param get
+	 * @param cb receives the outcome; is called on an internal thread and
+	 *            should not block for long
+	 * @throws InterruptedException
+	 */
+	public void execute(final HttpGet get, final FetchCallback cb) throws InterruptedException {
+		if (!_running) {
+			throw new IllegalStateException("connection manager has been shut down");
+		}
+
+		_permits.acquire();
+		_inFlight.incrementAndGet();
+
+		final URI u = get.getURI();
+
+		if (!"http".equalsIgnoreCase(u.getScheme()) || _proxyAuth) {
+			_blocking.execute(new Runnable() {
+				public void run() {
+					HttpResponse res = null;
+					try {
+						res = _fallback.connect(get);
+					} catch (Throwable e) {
+						release();
+						cb.failed(get, e);
+						return;
+					}
+					release();
+					cb.completed(get, res);
+				}
+			});
+			return;
+		}
+
+		final NioExchange ex = new NioExchange(get, cb);
+		ex.prepareRequest(_proxyHost != null);
+
+		_resolver.execute(new Runnable() {
+			public void run() {
+				String host = _proxyHost != null ? _proxyHost : u.getHost();
+				int port = _proxyHost != null ? _proxyPort : (u.getPort() == -1 ? 80 : u.getPort());
+
+				InetSocketAddress addr;
+				try {
+					addr = new InetSocketAddress(_fallback.getDnsCache().resolve(host)[0], port);
+				} catch (UnknownHostException e) {
+					fail(ex, e);
+					return;
+				}
+
+				ex._address = addr;
+				_pending.add(ex);
+				if (!_running && _pending.remove(ex)) {
+					// the I/O thread may have drained the queue already
+					fail(ex, new IOException("connection manager has been shut down"));
+					return;
+				}
+				_selector.wakeup();
+			}
+		});
+	}
+
+	private void release() {
+		_inFlight.decrementAndGet();
+		_permits.release();
+	}
+
+	private void loop() {
+		ByteBuffer buf = ByteBuffer.allocate(64*1024);
+
+		while (_running) {
+			NioExchange ex;
+			while ((ex = _pending.poll()) != null) {
+				register(ex);
+			}
+
+			try {
+				_selector.select(1000);
+			} catch (IOException e) {
+				_log.warning("select failed: " + e.getMessage());
+				continue;
+			}
+
+			for (Iterator<SelectionKey> it = _selector.selectedKeys().iterator(); it.hasNext(); ) {
+				SelectionKey key = it.next();
+				it.remove();
+
+				ex = (NioExchange)key.attachment();
+
+				try {
+					if (key.isConnectable()) {
+						if (ex._channel.finishConnect()) {
+							key.interestOps(SelectionKey.OP_WRITE);
+							ex._deadline = System.currentTimeMillis() + CrawlerConstants.SOCKET_TIMEOUT;
+						}
+					} else if (key.isWritable()) {
+						if (ex.write()) {
+							key.interestOps(SelectionKey.OP_READ);
+						}
+						ex._deadline = System.currentTimeMillis() + CrawlerConstants.SOCKET_TIMEOUT;
+					} else if (key.isReadable()) {
+						buf.clear();
+						int n = ex._channel.read(buf);
+						if (n < 0) {
+							complete(key, ex);
+						} else if (n > 0) {
+							buf.flip();
+							if (ex.append(buf, _maxContentLength)) {
+								complete(key, ex);
+							}
+							ex._deadline = System.currentTimeMillis() + CrawlerConstants.SOCKET_TIMEOUT;
+						}
+					}
+				} catch (CancelledKeyException e) {
+					;
+				} catch (Throwable e) {
+					close(key, ex);
+					fail(ex, e);
+				}
+			}
+
+			expire();
+		}
+
+		for (SelectionKey key : _selector.keys()) {
+			// cancelled keys stay in the key set until the next select
+			if (!key.isValid()) {
+				continue;
+			}
+			NioExchange ex = (NioExchange)key.attachment();
+			close(key, ex);
+			fail(ex, new IOException("connection manager has been shut down"));
+		}
+
+		NioExchange ex;
+		while ((ex = _pending.poll()) != null) {
+			fail(ex, new IOException("connection manager has been shut down"));
+		}
+
+		try {
+			_selector.close();
+		} catch (IOException e) {
+			_log.info(e.getMessage());
+		}
+	}
+
+	private void register(NioExchange ex) {
+		try {
+			SocketChannel ch = SocketChannel.open();
+			ch.configureBlocking(false);
+			ch.socket().setTcpNoDelay(true);
+			ex._channel = ch;
+			ex._deadline = System.currentTimeMillis() + CrawlerConstants.CONNECTION_TIMEOUT;
+
+			if (ch.connect(ex._address)) {
+				ch.register(_selector, SelectionKey.OP_WRITE, ex);
+			} else {
+				ch.register(_selector, SelectionKey.OP_CONNECT, ex);
+			}
+		} catch (Throwable e) {
+			close(null, ex);
+			fail(ex, e);
+		}
+	}
+
+	private void expire() {
+		long now = System.currentTimeMillis();
+
+		for (SelectionKey key : _selector.keys()) {
+			NioExchange ex = (NioExchange)key.attachment();
+			if (key.isValid() && ex._deadline < now) {
+				close(key, ex);
+				fail(ex, new SocketTimeoutException("timeout on " + ex._get.getURI()));
+			}
+		}
+	}
+
+	private void complete(SelectionKey key, NioExchange ex) {
+		close(key, ex);
+
+		HttpResponse res;
+		try {
+			res = ex.toResponse();
+		} catch (Throwable e) {
+			fail(ex, e);
+			return;
+		}
+
+		release();
+		try {
+			ex._cb.completed(ex._get, res);
+		} catch (Throwable e) {
+			_log.warning("callback failed for " + ex._get.getURI() + ": " + e.getMessage());
+		}
+	}
+
+	private void fail(NioExchange ex, Throwable e) {
+		release();
+		try {
+			ex._cb.failed(ex._get, e);
+		} catch (Throwable e1) {
+			_log.warning("callback failed for " + ex._get.getURI() + ": " + e1.getMessage());
+		}
+	}
+
+	private void close(SelectionKey key, NioExchange ex) {
+		if (key != null) {
+			key.cancel();
+		}
+		if (ex._channel != null) {
+			try {
+				ex._channel.close();
+			} catch (IOException e) {
+				_log.fine(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Fails all requests in flight and stops the threads.
+	 */
+	public void shutdown() {
+		_running = false;
+		_selector.wakeup();
+		_resolver.shutdown();
+		_blocking.shutdown();
+	}
+
+	static class NamedDaemonThreadFactory implements ThreadFactory {
+		String _name;
+		AtomicInteger _no = new AtomicInteger(0);
+
+		NamedDaemonThreadFactory(String name) {
+			_name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, _name + "-" + _no.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package com.ontologycentral.ldspider.http;
+
+import java.net.URI;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+/**
+ * Works off a {@link SpiderQueue} with the {@link AsyncConnectionManager}:
+ * the calling thread polls the queue, a few processing threads do the access
+ * checks and hand the fetched responses to the {@link Lookup}, i.e. to the
+ * content handler, sink and link filter. The number of lookups that are
+ * outstanding at a time is bounded, so the queue is not drained faster than
+ * it can be fetched.
+ */
+public class AsyncLookups {
+	private final static Logger _log = Logger.getLogger(AsyncLookups.class.getName());
+
+	AsyncConnectionManager _acm;
+	ExecutorService _processors;
+
+	int _maxOutstanding;
+
+	/**
+	 * @param acm
+	 * @param processors number of threads for access checks and content processing
+	 * @param maxOutstanding maximum number of URIs polled but not yet processed
+	 */
+	public AsyncLookups(AsyncConnectionManager acm, int processors, int maxOutstanding) {
+		_acm = acm;
+		_processors = Executors.newFixedThreadPool(processors, new AsyncConnectionManager.NamedDaemonThreadFactory("AsyncLookup"));
+		_maxOutstanding = maxOutstanding;
+	}
+
+	/**
+	 * Polls the queue until it is exhausted and all lookups are done.
+	 *
+	 * @param q
+	 * @param lookup
+	 */
+	public void runRound(final SpiderQueue q, final Lookup lookup) {
+		final Semaphore outstanding = new Semaphore(_maxOutstanding);
+
+		long time = System.currentTimeMillis();
+		int i = 0;
+
+		while (true) {
+			if (lookup.getBudget().isExhausted()) {
+				_log.info("Budget exhausted. Stopping...");
+				break;
+			}
+
+			URI lu = q.poll();
+
+			if (lu == null) {
+				// lookups still in progress might add redirects to the queue
+				outstanding.acquireUninterruptibly(_maxOutstanding);
+				outstanding.release(_maxOutstanding);
+
+				lu = q.poll();
+				if (lu == null) {
+					break;
+				}
+			}
+
+			outstanding.acquireUninterruptibly();
+			i++;
+
+			final URI u = lu;
+			_processors.execute(new Runnable() {
+				public void run() {
+					// the callback finishes the lookup once it has been sent
+					boolean sent = false;
+					try {
+						if (!lookup.accessOk(u)) {
+							return;
+						}
+
+						sent = send(u, lookup, q, outstanding);
+					} finally {
+						if (!sent) {
+							q.finished(u);
+							outstanding.release();
+						}
+					}
+				}
+			});
+		}
+
+		// wait for the lookups that are still in progress
+		outstanding.acquireUninterruptibly(_maxOutstanding);
+		outstanding.release(_maxOutstanding);
+
+		_log.info("finished round after polling " + i + " uris in " + (System.currentTimeMillis() - time) + " ms; " + lookup.getBudget() + " overall until now.");
+	}
+
+	/**
+	 * Sends the request; the response is handled in a processor thread.
+	 *
+	 * @return true if the request has been sent, false if it failed right away
+	 */
+	boolean send(final URI u, final Lookup lookup, final SpiderQueue q, final Semaphore outstanding) {
+		final long time2 = System.currentTimeMillis();
+		final HttpGet hget = lookup.newRequest(u);
+
+		try {
+			_acm.execute(hget, new FetchCallback() {
+				public void completed(HttpGet get, final HttpResponse response) {
+					// the content has been read, but not parsed yet
+					final long received = System.currentTimeMillis();
+					_processors.execute(new Runnable() {
+						public void run() {
+							try {
+								lookup.handleResponse(u, hget, response, time2, received);
+							} finally {
+								q.finished(u);
+								outstanding.release();
+							}
+						}
+					});
+				}
+
+				public void failed(HttpGet get, Throwable e) {
+					try {
+						lookup.handleFailure(u, hget, e);
+					} finally {
+						q.finished(u);
+						outstanding.release();
+					}
+				}
+			});
+			return true;
+		} catch (Throwable e) {
+			lookup.handleFailure(u, hget, e);
+			return false;
+		}
+	}
+
+	public void shutdown() {
+		_processors.shutdown();
+		_acm.shutdown();
+	}
+}
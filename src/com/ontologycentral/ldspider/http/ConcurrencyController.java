@@ -0,0 +1,189 @@
+package com.ontologycentral.ldspider.http;
+
+import java.util.logging.Logger;
+
+/**
+ * Tunes the number of threads of a {@link LookupThreadPool} from the live
+ * throughput and latency of the lookups (additive increase, multiplicative
+ * decrease). At the end of each interval, the controller compares the
+ * lookups completed per second and their average latency with the previous
+ * interval:
+ *
+ * <ul>
+ * <li>if the latency has grown beyond a multiple of the lowest latency seen,
+ * the servers (or our connection) are saturated and the pool is shrunk by a
+ * factor;</li>
+ * <li>if the throughput has dropped although threads have been added, there
+ * is no point in more threads and the pool is shrunk by a factor, too;</li>
+ * <li>otherwise, the pool grows by a fixed step.</li>
+ * </ul>
+ *
+ * The lowest latency drifts upwards a bit with each interval, so that it
+ * follows changes in the mix of pay-level domains. Intervals with too few
+ * lookups (e.g. between rounds) are skipped. The size stays within the
+ * configured bounds.
+ */
+public class ConcurrencyController extends Thread {
+	private final static Logger _log = Logger.getLogger(ConcurrencyController.class.getSimpleName());
+
+	public static final long DEFAULT_INTERVAL = 5*1000;
+
+	/**
+	 * Minimum number of lookups in an interval for it to be taken into account.
+	 */
+	public static final int MIN_SAMPLES = 10;
+
+	LookupThreadPool _pool;
+
+	int _min, _max;
+	long _interval;
+
+	int _step;
+	double _backoff;
+	double _latencyTolerance;
+	double _drift;
+
+	long _lastCompleted, _lastLatency, _lastTime;
+	double _lastThroughput;
+	int _lastSize;
+
+	/**
+	 * Lowest average latency per lookup seen so far, -1 if none.
+	 */
+	double _minLatency;
+
+	volatile boolean _shutdown;
+
+	/**
+	 * @param pool
+	 * @param min minimum number of threads
+	 * @param max maximum number of threads
+	 * @param interval time in ms between adjustments
+	 */
+	public ConcurrencyController(LookupThreadPool pool, int min, int max, long interval) {
+		super("ConcurrencyController");
+		setDaemon(true);
+
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("invalid bounds " + min + ".." + max);
+		}
+
+		_pool = pool;
+		_min = min;
+		_max = max;
+		_interval = interval;
+
+		_step = 1;
+		_backoff = 0.75;
+		_latencyTolerance = 2.0;
+		_drift = 1.05;
+
+		_lastCompleted = pool.getCompleted();
+		_lastLatency = pool.getLatency();
+		_lastTime = System.currentTimeMillis();
+		_lastThroughput = -1;
+		_lastSize = pool.getSize();
+		_minLatency = -1;
+
+		_shutdown = false;
+	}
+
+	/**
+	 * @param step number of threads added per interval
+	 */
+	public void setStep(int step) {
+		_step = step;
+	}
+
+	/**
+	 * @param backoff factor applied to the number of threads on congestion
+	 */
+	public void setBackoff(double backoff) {
+		_backoff = backoff;
+	}
+
+	/**
+	 * @param tolerance multiple of the lowest latency that is considered congestion
+	 */
+	public void setLatencyTolerance(double tolerance) {
+		_latencyTolerance = tolerance;
+	}
+
+	public void run() {
+		_log.info("adjusting threads between " + _min + " and " + _max + " every " + _interval + " ms");
+
+		while (!_shutdown) {
+			try {
+				Thread.sleep(_interval);
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			adjust(System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Takes a sample and resizes the pool if necessary.
+	 *
+	 * @param now
+	 * @return the new number of threads
+	 */
+	int adjust(long now) {
+		long completed = _pool.getCompleted();
+		long latency = _pool.getLatency();
+		int size = _pool.getSize();
+
+		long n = completed - _lastCompleted;
+		if (n < MIN_SAMPLES || now <= _lastTime) {
+			// idle, start over with the next interval
+			_lastCompleted = completed;
+			_lastLatency = latency;
+			_lastTime = now;
+			_lastThroughput = -1;
+			_lastSize = size;
+			return size;
+		}
+
+		double throughput = n * 1000.0 / (now - _lastTime);
+		double avgLatency = (latency - _lastLatency) / (double)n;
+
+		if (_minLatency < 0 || avgLatency < _minLatency) {
+			_minLatency = avgLatency;
+		}
+
+		int next;
+		if (avgLatency > _minLatency * _latencyTolerance) {
+			next = (int)(size * _backoff);
+			_log.info("latency " + (long)avgLatency + " ms exceeds " + _latencyTolerance + " x " + (long)_minLatency + " ms");
+		} else if (_lastThroughput > 0 && size > _lastSize && throughput < _lastThroughput) {
+			next = (int)(size * _backoff);
+			_log.info("throughput dropped from " + (long)_lastThroughput + " to " + (long)throughput + " lookups/s with more threads");
+		} else {
+			next = size + _step;
+		}
+
+		next = Math.max(_min, Math.min(_max, next));
+
+		_log.info(n + " lookups, " + (long)throughput + " lookups/s, avg. latency " + (long)avgLatency + " ms; " + size + " -> " + next + " threads");
+
+		if (next != size) {
+			_pool.setSize(next);
+		}
+
+		_minLatency *= _drift;
+
+		_lastCompleted = completed;
+		_lastLatency = latency;
+		_lastTime = now;
+		_lastThroughput = throughput;
+		_lastSize = size;
+
+		return next;
+	}
+
+	public void shutdown() {
+		_shutdown = true;
+		interrupt();
+	}
+}
@@ -11,6 +11,7 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionOperator;
 import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.conn.scheme.PlainSocketFactory;
@@ -25,6 +26,7 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 
 import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.http.internal.CachingConnectionOperator;
 import com.ontologycentral.ldspider.http.internal.CloseIdleConnectionThread;
 import com.ontologycentral.ldspider.http.internal.HttpRequestRetryHandler;
 import com.ontologycentral.ldspider.http.internal.ResponseGzipUncompress;
@@ -35,8 +37,20 @@ public class ConnectionManager {
 
 	private CloseIdleConnectionThread _ciThread;
 
+	private DnsCache _dns;
+
     
     public ConnectionManager(String proxyHost, int proxyPort, String puser, String ppassword, int connections) {
+    	this(proxyHost, proxyPort, puser, ppassword, connections, new DnsCache());
+    }
+    
+    /**
+     * @param dns the addresses of the hosts are taken from here, HttpClient
+     *        does not resolve host names itself
+     */
+    public ConnectionManager(String proxyHost, int proxyPort, String puser, String ppassword, int connections, final DnsCache dns) {
+    	_dns = dns;
+    	
     	// general setup
     	SchemeRegistry supportedSchemes = new SchemeRegistry();
 
@@ -60,7 +74,11 @@ public class ConnectionManager {
     	params.setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT, CrawlerConstants.CONNECTION_TIMEOUT);
 
     	ConnManagerParams.setMaxTotalConnections(params, connections);
-    	ClientConnectionManager cm = new ThreadSafeClientConnManager(params, supportedSchemes);
+    	ClientConnectionManager cm = new ThreadSafeClientConnManager(params, supportedSchemes) {
+    		protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg) {
+    			return new CachingConnectionOperator(schreg, dns);
+    		}
+    	};
     	
     	_client = new DefaultHttpClient(cm, params);
     	_client.addResponseInterceptor(new ResponseGzipUncompress());
@@ -81,6 +99,22 @@ public class ConnectionManager {
     	_ciThread.start();
     }
     
+    /**
+     * Changes the maximum number of connections over all hosts.
+     * 
+     * @param connections
+     */
+    public void setMaxConnections(int connections) {
+    	ClientConnectionManager cm = _client.getConnectionManager();
+    	if (cm instanceof ThreadSafeClientConnManager) {
+    		((ThreadSafeClientConnManager)cm).setMaxTotal(connections);
+    	}
+    }
+    
+    public DnsCache getDnsCache() {
+    	return _dns;
+    }
+    
     public void setRetries(int no) {
     	// set the retry handler
     	if (no > 0) {
@@ -95,6 +129,7 @@ public class ConnectionManager {
     		_ciThread.interrupt();
     	}
     	_client.getConnectionManager().shutdown();
+    	_dns.close();
     	
 
     }
@@ -0,0 +1,16 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the content of a response exceeds the maximum length. The
+ * server has answered, so this is a problem of the content, not a failed
+ * lookup.
+ */
+public class ContentTooLargeException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	public ContentTooLargeException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,332 @@
+package com.ontologycentral.ldspider.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+
+/**
+ * Resolves host names and caches the addresses, for
+ * {@link CrawlerConstants#DNS_TTL} ms (failures for
+ * {@link CrawlerConstants#DNS_NEGATIVE_TTL} ms). Thread-safe without a global
+ * lock: the entries are kept in a {@link ConcurrentHashMap}, and threads that
+ * ask for a host name that is being resolved wait for that resolution instead
+ * of starting another one.
+ *
+ * Host names can be resolved ahead of time by a pool of resolver threads
+ * ({@link #prefetch(String)}), so that the threads fetching the documents
+ * find the addresses in the cache; the {@link ConnectionManager} takes the
+ * addresses from here instead of letting HttpClient resolve them.
+ */
+public class DnsCache {
+	private static final Logger _log = Logger.getLogger(DnsCache.class.getName());
+
+	ConcurrentHashMap<String, Entry> _cache;
+
+	/**
+	 * Resolutions in progress.
+	 */
+	ConcurrentHashMap<String, FutureTask<Entry>> _pending;
+
+	ExecutorService _executor;
+
+	long _ttl;
+	long _negativeTtl;
+	int _maxSize;
+
+	AtomicLong _hits;
+	AtomicLong _misses;
+
+	public DnsCache() {
+		this(CrawlerConstants.DNS_TTL, CrawlerConstants.DNS_NEGATIVE_TTL, CrawlerConstants.DNS_CACHE_SIZE, CrawlerConstants.DNS_THREADS);
+	}
+
+	/**
+	 * @param ttl time in ms an address is cached
+	 * @param negativeTtl time in ms a failure to resolve a host name is cached
+	 * @param maxSize maximum number of host names cached
+	 * @param threads number of threads resolving host names ahead of time
+	 */
+	public DnsCache(long ttl, long negativeTtl, int maxSize, int threads) {
+		_ttl = ttl;
+		_negativeTtl = negativeTtl;
+		_maxSize = maxSize;
+
+		_cache = new ConcurrentHashMap<String, Entry>();
+		_pending = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+		_executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			AtomicInteger _no = new AtomicInteger(0);
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "DnsResolver-" + _no.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		_hits = new AtomicLong(0);
+		_misses = new AtomicLong(0);
+	}
+
+	/**
+	 * Returns the addresses of a host, from the cache if possible. Otherwise
+	 * resolves the host name in the calling thread, or waits for a
+	 * resolution in progress.
+	 *
+	 * @param host
+	 * @return the addresses, at least one
+	 * @throws UnknownHostException if the host name cannot be resolved
+	 */
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+		host = host.toLowerCase(Locale.ENGLISH);
+
+		Entry e = _cache.get(host);
+		if (e != null && !e.isExpired(System.currentTimeMillis())) {
+			_hits.incrementAndGet();
+			return e.getAddresses(host);
+		}
+
+		_misses.incrementAndGet();
+
+		return await(host, submit(host, false)).getAddresses(host);
+	}
+
+	/**
+	 * Returns the addresses of a host if they are in the cache. Does not
+	 * resolve the host name, and so never blocks.
+	 *
+	 * @param host
+	 * @return the addresses, <code>null</code> if the host name has not been
+	 *         resolved, has expired or cannot be resolved
+	 */
+	public InetAddress[] getCached(String host) {
+		Entry e = _cache.get(host.toLowerCase(Locale.ENGLISH));
+		if (e == null || e.isExpired(System.currentTimeMillis()) || e._addresses == null || e._addresses.length == 0) {
+			return null;
+		}
+		_hits.incrementAndGet();
+		return e._addresses.clone();
+	}
+
+	/**
+	 * Starts resolving a host name in a resolver thread, unless it is cached
+	 * or being resolved already. Does not wait.
+	 *
+	 * @param host
+	 */
+	public void prefetch(String host) {
+		host = host.toLowerCase(Locale.ENGLISH);
+
+		Entry e = _cache.get(host);
+		if (e != null && !e.isExpired(System.currentTimeMillis())) {
+			return;
+		}
+
+		submit(host, true);
+	}
+
+	/**
+	 * Resolves host names in the resolver threads, and waits until all of
+	 * them have been resolved (or have failed).
+	 *
+	 * @param hosts
+	 */
+	public void resolveAll(Collection<String> hosts) {
+		Set<String> distinct = new LinkedHashSet<String>();
+		for (String host : hosts) {
+			distinct.add(host.toLowerCase(Locale.ENGLISH));
+		}
+
+		for (String host : distinct) {
+			prefetch(host);
+		}
+
+		for (String host : distinct) {
+			FutureTask<Entry> f = _pending.get(host);
+			if (f != null) {
+				await(host, f);
+			}
+		}
+	}
+
+	/**
+	 * @return the resolution in progress for the host name, a new one if
+	 *         there is none; a new one is run in a resolver thread or, if
+	 *         not asynchronous, in the calling thread
+	 */
+	FutureTask<Entry> submit(final String host, boolean async) {
+		FutureTask<Entry> f = _pending.get(host);
+		if (f != null) {
+			return f;
+		}
+
+		FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+			public Entry call() {
+				return lookup(host);
+			}
+		});
+
+		f = _pending.putIfAbsent(host, task);
+		if (f != null) {
+			return f;
+		}
+
+		if (async) {
+			try {
+				_executor.execute(task);
+				return task;
+			} catch (RejectedExecutionException ex) {
+				_log.fine("resolver threads shut down, resolving " + host + " in the calling thread");
+			}
+		}
+
+		task.run();
+		return task;
+	}
+
+	Entry await(String host, FutureTask<Entry> f) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return f.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException ex) {
+			// lookup() catches what resolving throws
+			throw new IllegalStateException("cannot resolve " + host, ex.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Resolves the host name and caches the result.
+	 */
+	Entry lookup(String host) {
+		try {
+			// resolved since the caller has looked
+			Entry e = _cache.get(host);
+			if (e != null && !e.isExpired(System.currentTimeMillis())) {
+				return e;
+			}
+
+			try {
+				InetAddress[] addresses = getAllByName(host);
+				e = new Entry(addresses, System.currentTimeMillis() + _ttl);
+			} catch (UnknownHostException ex) {
+				_log.fine("cannot resolve " + host + ": " + ex.getMessage());
+				e = new Entry(null, System.currentTimeMillis() + _negativeTtl);
+			}
+
+			if (_cache.size() >= _maxSize) {
+				evict();
+			}
+			_cache.put(host, e);
+
+			return e;
+		} finally {
+			_pending.remove(host);
+		}
+	}
+
+	/**
+	 * Resolves a host name, with the resolver of the JVM.
+	 */
+	protected InetAddress[] getAllByName(String host) throws UnknownHostException {
+		return InetAddress.getAllByName(host);
+	}
+
+	/**
+	 * Removes the expired entries, and arbitrary other ones if the cache is
+	 * still too large.
+	 */
+	void evict() {
+		long now = System.currentTimeMillis();
+		for (Iterator<Map.Entry<String, Entry>> it = _cache.entrySet().iterator(); it.hasNext(); ) {
+			if (it.next().getValue().isExpired(now)) {
+				it.remove();
+			}
+		}
+
+		int target = _maxSize - _maxSize / 4;
+		for (Iterator<String> it = _cache.keySet().iterator(); it.hasNext() && _cache.size() >= target; ) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return number of host names cached
+	 */
+	public int size() {
+		return _cache.size();
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+
+	/**
+	 * Stops the resolver threads; host names are resolved in the calling
+	 * thread afterwards.
+	 */
+	public void close() {
+		_executor.shutdown();
+	}
+
+	public String toString() {
+		return _cache.size() + " hosts cached, " + _hits.get() + " hits, " + _misses.get() + " misses";
+	}
+
+	/**
+	 * The addresses of a host, <code>null</code> if it cannot be resolved,
+	 * and when they expire.
+	 */
+	static class Entry {
+		final InetAddress[] _addresses;
+		final long _expires;
+
+		Entry(InetAddress[] addresses, long expires) {
+			_addresses = addresses;
+			_expires = expires;
+		}
+
+		boolean isExpired(long now) {
+			return now >= _expires;
+		}
+
+		InetAddress[] getAddresses(String host) throws UnknownHostException {
+			if (_addresses == null || _addresses.length == 0) {
+				throw new UnknownHostException(host);
+			}
+			return _addresses.clone();
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.ontologycentral.ldspider.http;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+
+/**
+ * Receives the outcome of a request issued via the
+ * {@link AsyncConnectionManager}.
+ */
+public interface FetchCallback {
+
+	/**
+	 * The response has been received completely.
+	 *
+	 * @param get the request
+	 * @param response the response, with the entity buffered in memory
+	 */
+	public void completed(HttpGet get, HttpResponse response);
+
+	/**
+	 * The request could not be carried out.
+	 *
+	 * @param get the request
+	 * @param e the cause
+	 */
+	public void failed(HttpGet get, Throwable e);
+}
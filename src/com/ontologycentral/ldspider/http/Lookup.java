@@ -0,0 +1,288 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.logging.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpGet;
+import org.semanticweb.yars.nx.parser.Callback;
+import org.semanticweb.yars.util.Callbacks;
+
+import com.ontologycentral.ldspider.CrawlBudget;
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.hooks.content.ContentHandler;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandler;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilter;
+import com.ontologycentral.ldspider.hooks.sink.Provenance;
+import com.ontologycentral.ldspider.hooks.sink.Sink;
+import com.ontologycentral.ldspider.http.internal.CountingInputStream;
+import com.ontologycentral.ldspider.http.robot.Robots;
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+/**
+ * The steps of looking up a single URI: access checks, building the request,
+ * and handing the response to the content handler, sink and link filter.
+ * Holds no per-lookup state, so a single instance can be used by several
+ * threads, no matter whether the response was fetched by a
+ * {@link LookupThread} or by the {@link AsyncConnectionManager}.
+ */
+public class Lookup {
+	Logger _log = Logger.getLogger(this.getClass().getSimpleName());
+
+	SpiderQueue _q;
+	ContentHandler _contentHandler;
+	Sink _content;
+	Callback _links;
+	FetchFilter _ff, _blacklist;
+	Robots _robots;
+	ErrorHandler _eh;
+	CrawlBudget _budget;
+
+	public Lookup(SpiderQueue q, ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist) {
+		_q = q;
+		_contentHandler = handler;
+		_content = content;
+		_links = links;
+		_robots = robots;
+		_eh = eh;
+		_ff = ff;
+		_blacklist = blacklist;
+		_budget = new CrawlBudget();
+	}
+
+	/**
+	 * Sets the budget that fetched documents and bytes are reported to.
+	 *
+	 * @param budget
+	 */
+	public void setBudget(CrawlBudget budget) {
+		_budget = budget;
+	}
+
+	public CrawlBudget getBudget() {
+		return _budget;
+	}
+
+	/**
+	 * Checks the blacklist and robots.txt.
+	 *
+	 * @param lu
+	 * @return true if the URI may be looked up
+	 */
+	public boolean accessOk(URI lu) {
+		if (!_blacklist.fetchOk(lu, 0, null)) {
+			_log.info("access denied per blacklist for " + lu);
+			_eh.handleStatus(lu, CrawlerConstants.SKIP_SUFFIX, null, 0, -1);
+			return false;
+		} else if (!_robots.accessOk(lu)) {
+			_log.info("access denied per robots.txt for " + lu);
+			_eh.handleStatus(lu, CrawlerConstants.SKIP_ROBOTS, null, 0, -1);
+			return false;
+		}
+
+		return true;
+	}
+
+	public HttpGet newRequest(URI lu) {
+		HttpGet hget = new HttpGet(lu);
+		hget.setHeaders(CrawlerConstants.HEADERS);
+		return hget;
+	}
+
+	/**
+	 * Looks up a URI: checks access, fetches it and handles the response.
+	 *
+	 * @param lu
+	 * @param cm
+	 */
+	public void lookup(URI lu, ConnectionManager cm) {
+		long time = System.currentTimeMillis();
+
+		if (accessOk(lu)) {
+			long time2 = System.currentTimeMillis();
+
+			HttpGet hget = newRequest(lu);
+
+			HttpResponse hres = null;
+			try {
+				hres = cm.connect(hget);
+			} catch (Throwable e) {
+				handleFailure(lu, hget, e);
+			}
+
+			if (hres != null) {
+				// the headers have been read, the content is read while parsing
+				handleResponse(lu, hget, hres, time2, System.currentTimeMillis());
+			}
+
+			_log.fine(lu + " " + (time2-time) + " ms to check if lookup is ok");
+		}
+	}
+
+	/**
+	 * Handles the response to a lookup: parses the content, follows redirects
+	 * and reports the status to the error handler.
+	 *
+	 * @param lu the URI looked up
+	 * @param hget the request
+	 * @param hres the response
+	 * @param time2 point in time when the request was started
+	 * @param received point in time when the response was received, i.e. its
+	 *        headers, or its content if the content has been read already;
+	 *        the difference to time2 is the response time of the server
+	 */
+	public void handleResponse(URI lu, HttpGet hget, HttpResponse hres, long time2, long received) {
+		long bytes = -1;
+		int status = 0;
+		String type = null;
+
+		Header[] headers = null;
+		
+		boolean failed = false;
+
+		try {
+			HttpEntity hen = hres.getEntity();
+
+			status = hres.getStatusLine().getStatusCode();
+
+			Header ct = hres.getFirstHeader("Content-Type");
+			if (ct != null) {
+				type = hres.getFirstHeader("Content-Type").getValue();
+			}
+
+			_log.info("lookup on " + lu + " status " + status + " " + Thread.currentThread().getName());
+
+			if (status == HttpStatus.SC_OK) {
+				if (hen != null) {
+					if (_ff.fetchOk(lu, status, hen) && _contentHandler.canHandle(type)) {
+						CountingInputStream is = new CountingInputStream(hen.getContent());
+						try {
+							handleContent(lu, type, hres, is);
+						} finally {
+							_budget.read(is.getCount());
+						}
+						is.close();
+
+						headers = hres.getAllHeaders();
+
+						Header hloc = hres.getFirstHeader("Content-Location");
+						if (hloc != null) {
+							URI to = new URI(hloc.getValue());
+
+							// handle local redirects
+							if (!to.isAbsolute()) {
+								to = lu.resolve(hloc.getValue());
+							}
+
+							_q.setRedirect(lu, to, status);
+							_eh.handleRedirect(lu, to, status);
+							_q.addSeen(to);
+						}
+					} else {
+						_log.info("disallowed via fetch filter " + lu + " type " + type);
+						_eh.handleStatus(lu, CrawlerConstants.SKIP_MIMETYPE, null, 0, -1);
+						hget.abort();
+						hen = null;
+						status = 0;
+					}
+				} else {
+					_log.info("HttpEntity for " + lu + " is null");
+				}
+			} else if (status == HttpStatus.SC_MOVED_PERMANENTLY || status == HttpStatus.SC_MOVED_TEMPORARILY || status == HttpStatus.SC_SEE_OTHER || status == HttpStatus.SC_TEMPORARY_REDIRECT) {
+				// treating all redirects the same but shouldn't: 301 -> rename context URI, 302,307 -> keep original context URI, 303 -> spec inconclusive
+				Header[] loc = hres.getHeaders("location");
+				String path = loc[0].getValue();
+				_log.info("redirecting (" + status + ") to " + path);
+				URI to = new URI(path);
+
+				// handle local redirects
+				if (!to.isAbsolute()) {
+					to = lu.resolve(path);
+				}
+
+				// set redirect from original uri to new uri
+				_q.setRedirect(lu, to, status);
+				_eh.handleRedirect(lu, to, status);
+
+				headers = hres.getAllHeaders();
+			}
+
+			if (hen != null) {
+				bytes = hen.getContentLength();
+			}
+			hget.abort();
+		} catch (Throwable e) {
+			failed = isConnectionFailure(e);
+			handleFailure(lu, hget, e);
+		}
+
+		long time3 = System.currentTimeMillis();
+		
+		if (!failed) {
+			_q.lookupDone(lu, status, received-time2);
+		}
+
+		if (status != 0) {
+			_eh.handleStatus(lu, status, headers, (time3-time2), bytes);
+		}
+
+		_log.fine(lu + " " + (time3-time2) + " ms for lookup");
+	}
+
+	/**
+	 * Parses the content of a 200 response and hands the statements to the
+	 * sink and the link filter.
+	 *
+	 * @param lu the URI looked up
+	 * @param type the content type
+	 * @param hres the response
+	 * @param is the content
+	 */
+	protected void handleContent(URI lu, String type, HttpResponse hres, InputStream is) throws IOException {
+		StatementCountingCallback stmtCountingCallback = new StatementCountingCallback();
+		Callback contentCb = _content.newDataset(new Provenance(lu, hres.getAllHeaders(), hres.getStatusLine().getStatusCode()));
+		Callbacks cbs = new Callbacks(new Callback[] { contentCb, _links, stmtCountingCallback } );
+		_contentHandler.handle(lu, type, is, cbs);
+
+		_budget.fetched(stmtCountingCallback.getStmtCount());
+	}
+
+	/**
+	 * Handles a lookup that failed before or while processing the response.
+	 * Connection failures and timeouts count against the server in the
+	 * statistics of the queue; other errors (e.g. content that cannot be
+	 * parsed or is too large) do not.
+	 *
+	 * @param lu
+	 * @param hget
+	 * @param e
+	 */
+	public void handleFailure(URI lu, HttpGet hget, Throwable e) {
+		hget.abort();
+		_log.warning("Exception " + e.getClass().getName() + " " + lu);
+		if (isConnectionFailure(e)) {
+			_q.lookupFailed(lu, -1);
+		}
+		_eh.handleError(lu, e);
+	}
+
+	/**
+	 * @return whether the exception means that the server could not be
+	 *         reached or did not answer in time
+	 */
+	static boolean isConnectionFailure(Throwable e) {
+		return e instanceof SocketException
+			|| e instanceof InterruptedIOException
+			|| e instanceof UnknownHostException
+			|| e instanceof NoHttpResponseException;
+	}
+}
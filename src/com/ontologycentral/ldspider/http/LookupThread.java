@@ -1,23 +1,15 @@
 package com.ontologycentral.ldspider.http;
 
-import java.io.InputStream;
 import java.net.URI;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.http.Header;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.methods.HttpGet;
 import org.semanticweb.yars.nx.parser.Callback;
-import org.semanticweb.yars.util.Callbacks;
 
-import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.CrawlBudget;
 import com.ontologycentral.ldspider.hooks.content.ContentHandler;
 import com.ontologycentral.ldspider.hooks.error.ErrorHandler;
 import com.ontologycentral.ldspider.hooks.fetch.FetchFilter;
-import com.ontologycentral.ldspider.hooks.sink.Provenance;
 import com.ontologycentral.ldspider.hooks.sink.Sink;
 import com.ontologycentral.ldspider.http.robot.Robots;
 import com.ontologycentral.ldspider.queue.SpiderQueue;
@@ -31,18 +23,37 @@ public class LookupThread extends Thread {
 	Callback _links;
 	FetchFilter _ff, _blacklist;
 	
-	StatementCountingCallback _stmtCountingCallback;
-	
 	Robots _robots;
 //	Sitemaps _sitemaps;
 	
 	ErrorHandler _eh;
 	ConnectionManager _hclient;
 	
+	CrawlBudget _budget;
+	
 	int _no;
-
-	static AtomicInteger _overall200FetchesWithRDF = new AtomicInteger(0);
-	static AtomicInteger _overall200Fetches = new AtomicInteger(0);
+	
+	/**
+	 * The pool this thread belongs to, or <code>null</code> if it processes a
+	 * single queue and terminates afterwards.
+	 */
+	LookupThreadPool _pool;
+	
+	/**
+	 * The thread running this one, itself unless the pool runs it in a
+	 * virtual thread; the monitor shows the URI being fetched by it.
+	 */
+	Thread _thread = this;
+	
+	/**
+	 * Number of the last round this thread has taken part in (pool mode only).
+	 */
+	int _round;
+	
+	/**
+	 * Number of URIs processed by this thread over all rounds.
+	 */
+	long _lookups;
 
 	public LookupThread(ConnectionManager hc, SpiderQueue q, ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist, int no) {
 		_hclient = hc;
@@ -55,22 +66,93 @@ public class LookupThread extends Thread {
 		_blacklist = blacklist;
 		_eh = eh;
 		
-		_no = no;
+		_budget = new CrawlBudget();
 		
-		_stmtCountingCallback = new StatementCountingCallback();
+		_no = no;
 		
 		setName("LT-"+_no);
 	}
 	
+	/**
+	 * Sets the budget the lookups are reported to; the thread stops when it
+	 * is exhausted.
+	 */
+	public void setBudget(CrawlBudget budget) {
+		_budget = budget;
+	}
+	
+	/**
+	 * Creates a thread that stays alive across rounds and takes its queue and
+	 * hooks from the pool at the beginning of each round.
+	 */
+	LookupThread(LookupThreadPool pool, int no) {
+		this(pool._cm, null, null, null, null, null, null, null, null, no);
+		_pool = pool;
+		setDaemon(true);
+	}
+	
 	public void run() {
+		if (_pool == null) {
+			processQueue();
+			return;
+		}
+		
+		boolean retired = false;
+		try {
+			SpiderQueue q;
+			while ((q = _pool.awaitRound(this)) != null) {
+				_q = q;
+				boolean left = false;
+				try {
+					left = processQueue();
+				} finally {
+					_q = null;
+					_thread.setName("LT-"+_no);
+					_pool.roundDone(this, left);
+				}
+			}
+			retired = true;
+		} finally {
+			if (!retired) {
+				// the pool would wait for this thread in the next round
+				_pool.workerDied(this);
+			}
+		}
+		
+		_log.info("retiring thread after " + _lookups + " lookups");
+	}
+	
+	/**
+	 * Sets the hooks for the next round (pool mode only).
+	 */
+	void configure(ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist, CrawlBudget budget) {
+		_contentHandler = handler;
+		_content = content;
+		_links = links;
+		_robots = robots;
+		_eh = eh;
+		_ff = ff;
+		_blacklist = blacklist;
+		_budget = budget;
+	}
+	
+	/**
+	 * @return true if the thread has left the round because the pool has
+	 *         been shrunk
+	 */
+	boolean processQueue() {
 		_log.info("starting thread ...");
 		
-		if (!(!CrawlerConstants.URI_LIMIT_ENABLED || (_overall200FetchesWithRDF.get() < CrawlerConstants.URI_LIMIT_WITH_NON_EMPTY_RDF))) {
-			_log.info("URI limit reached. Stopping...");
-			return;
+		if (_budget.isExhausted()) {
+			_log.info("Budget exhausted. Stopping...");
+			return false;
 		}
 		
+		Lookup lookup = new Lookup(_q, _contentHandler, _content, _links, _robots, _eh, _ff, _blacklist);
+		lookup.setBudget(_budget);
+		
 		int i = 0;
+		boolean left = false;
 
 		URI lu = _q.poll();
 
@@ -78,149 +160,51 @@ public class LookupThread extends Thread {
 		
 		while (lu != null) {
 			
-			if (!(!CrawlerConstants.URI_LIMIT_ENABLED || (_overall200FetchesWithRDF.get() < CrawlerConstants.URI_LIMIT_WITH_NON_EMPTY_RDF))) {
-				_log.info("URI limit reached. Stopping...");
+			if (_budget.isExhausted()) {
+				_log.info("Budget exhausted. Stopping...");
+				_q.finished(lu);
 				break;
 			}
-				
 			
-			setName("LT-"+_no+":"+lu.toString());
+			_thread.setName("LT-"+_no+":"+lu.toString());
 			
 			i++;
-			long time = System.currentTimeMillis();
+			_lookups++;
 			
 //				URI lu = _q.obtainRedirect(u);
 
-			long time1 = System.currentTimeMillis();
-			long time2 = time1;
-			long time3 = time1;
-			long bytes = -1;
-			int status = 0;
-			String type = null;
-			
 //			List<URI> li = _sitemaps.getSitemapUris(lu);
 //			if (li != null && li.size() > 0) {
 //				_log.info("sitemap surprisingly actually has uris " + li);
 //			}
 			
-			Header[] headers = null;
-			
-			if (!_blacklist.fetchOk(lu, 0, null)) {
-				_log.info("access denied per blacklist for " + lu);
-				_eh.handleStatus(lu, CrawlerConstants.SKIP_SUFFIX, null, 0, -1);
-			} else if (!_robots.accessOk(lu)) {
-				_log.info("access denied per robots.txt for " + lu);
-				_eh.handleStatus(lu, CrawlerConstants.SKIP_ROBOTS, null, 0, -1);
-			} else {
-				time2 = System.currentTimeMillis();
-
-				HttpGet hget = new HttpGet(lu);
-				hget.setHeaders(CrawlerConstants.HEADERS);
-				
-				try {
-					HttpResponse hres = _hclient.connect(hget);
-
-					HttpEntity hen = hres.getEntity();
-
-					status = hres.getStatusLine().getStatusCode();
-
-					Header ct = hres.getFirstHeader("Content-Type");
-					if (ct != null) {
-						type = hres.getFirstHeader("Content-Type").getValue();
-					}
-					
-					_log.info("lookup on " + lu + " status " + status + " " + getName());
-
-					if (status == HttpStatus.SC_OK) {				
-						if (hen != null) {
-							if (_ff.fetchOk(lu, status, hen) && _contentHandler.canHandle(type)) {
-								InputStream is = hen.getContent();
-								Callback contentCb = _content.newDataset(new Provenance(lu, hres.getAllHeaders(), status));
-								Callbacks cbs = new Callbacks(new Callback[] { contentCb, _links, _stmtCountingCallback.reset() } );
-								_contentHandler.handle(lu, type, is, cbs);
-								is.close();
-								
-								_overall200Fetches.incrementAndGet();
-								
-								if (_stmtCountingCallback.getStmtCount() > 0)
-									_overall200FetchesWithRDF.incrementAndGet();
-								
-								//System.out.println("done with " + lu);
-								
-								headers = hres.getAllHeaders();
-
-								Header hloc = hres.getFirstHeader("Content-Location");
-								if (hloc != null) {
-									URI to = new URI(hloc.getValue());
-									
-									// handle local redirects
-									if (!to.isAbsolute()) {
-										to = lu.resolve(hloc.getValue());
-									}
-
-									_q.setRedirect(lu, to, status);
-									_eh.handleRedirect(lu, to, status);
-									_q.addSeen(to);
-								}
-							} else {
-								_log.info("disallowed via fetch filter " + lu + " type " + type);
-								_eh.handleStatus(lu, CrawlerConstants.SKIP_MIMETYPE, null, 0, -1);
-								hget.abort();
-								hen = null;
-								status = 0;
-							}
-						} else {
-							_log.info("HttpEntity for " + lu + " is null");
-						}
-					} else if (status == HttpStatus.SC_MOVED_PERMANENTLY || status == HttpStatus.SC_MOVED_TEMPORARILY || status == HttpStatus.SC_SEE_OTHER || status == HttpStatus.SC_TEMPORARY_REDIRECT) { 
-						// treating all redirects the same but shouldn't: 301 -> rename context URI, 302,307 -> keep original context URI, 303 -> spec inconclusive
-						Header[] loc = hres.getHeaders("location");
-						String path = loc[0].getValue();
-						_log.info("redirecting (" + status + ") to " + path);
-						URI to = new URI(path);
-						
-						// handle local redirects
-						if (!to.isAbsolute()) {
-							to = lu.resolve(path);
-						}
+			long time = System.currentTimeMillis();
+			try {
+				lookup.lookup(lu, _hclient);
+			} catch (Throwable e) {
+				// a bug in a hook must not end the thread
+				_log.log(Level.SEVERE, "lookup of " + lu + " failed", e);
+			} finally {
+				// the continuous queues wait for all lookups to finish
+				_q.finished(lu);
+			}
 
-						// set redirect from original uri to new uri
-						_q.setRedirect(lu, to, status);
-						_eh.handleRedirect(lu, to, status);
-	
-						headers = hres.getAllHeaders();
-					}
+			if (_pool != null) {
+				_pool.lookupDone(System.currentTimeMillis() - time);
+			}
 
-					if (hen != null) {
-						bytes = hen.getContentLength();
-					}
-					hget.abort();
-				} catch (Throwable e) {
-					hget.abort();
-					_log.warning("Exception " + e.getClass().getName() + " " + lu);
-					_eh.handleError(lu, e);
-				}
-				
-				time3 = System.currentTimeMillis();
-				
-				if (status != 0) {
-					_eh.handleStatus(lu, status, headers, (time3-time2), bytes);
-				}
-				
-				_log.fine(lu + " " + (time1-time) + " ms before lookup, " + (time2-time1) + " ms to check if lookup is ok, " + (time3-time2) + " ms for lookup");
+			if (_pool != null && _pool.isRetired(this)) {
+				_log.info("pool has been shrunk. Leaving round...");
+				left = true;
+				break;
 			}
 
 			lu = _q.poll();
 		}
 		
-		_log.info("finished thread after fetching " + i + " uris; " + getOverall200Fetches() + " in all threads overall until now (" + getOverall200FetchesWithNonEmptyRDF() + " with non-empty RDF).");
-	}
-	
-	public static int getOverall200FetchesWithNonEmptyRDF() {
-		return _overall200FetchesWithRDF.get();
-	}
-	public static int getOverall200Fetches() {
-		return _overall200Fetches.get();
+		_log.info("finished thread after fetching " + i + " uris; " + _budget + " in all threads overall until now.");
+		
+		return left;
 	}
 
 }
\ No newline at end of file
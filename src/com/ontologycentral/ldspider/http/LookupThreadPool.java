@@ -0,0 +1,437 @@
+package com.ontologycentral.ldspider.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.nx.parser.Callback;
+
+import com.ontologycentral.ldspider.Monitor;
+import com.ontologycentral.ldspider.CrawlBudget;
+import com.ontologycentral.ldspider.hooks.content.ContentHandler;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandler;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilter;
+import com.ontologycentral.ldspider.hooks.sink.Sink;
+import com.ontologycentral.ldspider.http.internal.VirtualThreads;
+import com.ontologycentral.ldspider.http.robot.Robots;
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+/**
+ * A set of {@link LookupThread}s that survive across crawl rounds. Each round
+ * hands a {@link SpiderQueue} to the threads, which poll it until it is
+ * exhausted, and then wait for the next round instead of terminating.
+ *
+ * The number of threads can be changed at runtime. Surplus threads leave at
+ * their next poll, additional threads join the round that is currently running.
+ *
+ * Optionally, the lookups run on virtual threads (Java 21 and later), which
+ * allows for many thousands of concurrent lookups without reserving a stack
+ * per lookup. The pool and the queues use explicit locks rather than
+ * monitors, so waiting threads release their carrier.
+ */
+public class LookupThreadPool {
+	private static final Logger _log = Logger.getLogger(LookupThreadPool.class.getName());
+
+	ConnectionManager _cm;
+
+	ContentHandler _contentHandler;
+	Sink _content;
+	Callback _links;
+	Robots _robots;
+	ErrorHandler _eh;
+	FetchFilter _ff, _blacklist;
+	CrawlBudget _budget;
+
+	/**
+	 * The threads, indexed by their number. Empty slots are <code>null</code>.
+	 */
+	List<LookupThread> _workers;
+
+	/**
+	 * The threads as seen by the monitor.
+	 */
+	List<Thread> _monitored;
+
+	Monitor _monitor;
+
+	volatile int _size;
+
+	/**
+	 * The queue of the round that is currently running, <code>null</code> between rounds.
+	 */
+	SpiderQueue _queue;
+
+	int _round;
+
+	/**
+	 * Number of threads that have not finished the current round yet,
+	 * including those that have not started it yet.
+	 */
+	int _active;
+
+	boolean _shutdown;
+
+	/**
+	 * Whether new threads are started as virtual threads.
+	 */
+	boolean _virtual;
+
+	/**
+	 * Number of lookups completed and their total duration in ms, over all
+	 * rounds.
+	 */
+	AtomicLong _completed;
+	AtomicLong _latency;
+
+	ReentrantLock _lock;
+
+	/**
+	 * Signalled when a round starts, the size changes or the pool is shut down.
+	 */
+	Condition _roundStarted;
+
+	/**
+	 * Signalled when a thread is done with the current round.
+	 */
+	Condition _roundDone;
+
+	public LookupThreadPool(ConnectionManager cm, int size) {
+		_cm = cm;
+		_size = size;
+		_round = 0;
+		_active = 0;
+		_shutdown = false;
+		_virtual = false;
+		_budget = new CrawlBudget();
+
+		_completed = new AtomicLong(0);
+		_latency = new AtomicLong(0);
+
+		_lock = new ReentrantLock();
+		_roundStarted = _lock.newCondition();
+		_roundDone = _lock.newCondition();
+
+		_workers = new ArrayList<LookupThread>();
+		_monitored = new CopyOnWriteArrayList<Thread>();
+	}
+
+	/**
+	 * Sets the hooks that are used by the threads, starting with the next round.
+	 */
+	public void setHooks(ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist) {
+		_lock.lock();
+		try {
+			_contentHandler = handler;
+			_content = content;
+			_links = links;
+			_robots = robots;
+			_eh = eh;
+			_ff = ff;
+			_blacklist = blacklist;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the budget that the threads report to and check, starting with
+	 * the next round.
+	 */
+	public void setBudget(CrawlBudget budget) {
+		_lock.lock();
+		try {
+			_budget = budget;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs threads started from now on as virtual threads. Falls back to
+	 * platform threads if the JVM does not support virtual threads.
+	 *
+	 * @param virtual
+	 */
+	public void setVirtual(boolean virtual) {
+		if (virtual && !VirtualThreads.isSupported()) {
+			_log.warning("virtual threads are not supported by this JVM, using platform threads");
+			virtual = false;
+		}
+
+		_lock.lock();
+		try {
+			_virtual = virtual;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public boolean isVirtual() {
+		return _virtual;
+	}
+
+	/**
+	 * Changes the number of threads. Can be called while a round is running.
+	 *
+	 * @param size
+	 */
+	public void setSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("pool size must be positive: " + size);
+		}
+
+		_lock.lock();
+		try {
+			_log.info("resizing pool from " + _size + " to " + size + " threads");
+
+			_size = size;
+
+			if (_queue != null) {
+				_active += startWorkers();
+			}
+
+			_roundStarted.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int getSize() {
+		return _size;
+	}
+
+	/**
+	 * Runs one round, i.e. lets the threads poll the queue until it is
+	 * exhausted. Blocks until all threads are done with the round.
+	 *
+	 * @param q
+	 */
+	public void runRound(SpiderQueue q) {
+		_lock.lock();
+		try {
+			runRoundLocked(q);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private void runRoundLocked(SpiderQueue q) {
+		if (_shutdown) {
+			throw new IllegalStateException("pool has been shut down");
+		}
+
+		if (_monitor == null) {
+			_monitor = new Monitor(_monitored, System.err, 1000*10);
+			_monitor.setDaemon(true);
+			_monitor.start();
+		}
+
+		_queue = q;
+		_round++;
+
+		startWorkers();
+
+		_active = 0;
+		for (LookupThread lt : _workers) {
+			if (lt != null) {
+				_active++;
+			}
+		}
+
+		_log.info("starting round " + _round + " with " + _size + (_virtual ? " virtual" : "") + " threads");
+
+		_roundStarted.signalAll();
+
+		while (_active > 0) {
+			try {
+				_roundDone.await();
+			} catch (InterruptedException e) {
+				_log.info(e.getMessage());
+			}
+		}
+
+		_queue = null;
+	}
+
+	/**
+	 * Fills the empty slots up to the current size with new threads that take
+	 * part in the current round.
+	 * 
+	 * @return the number of threads started
+	 */
+	private int startWorkers() {
+		int started = 0;
+
+		while (_workers.size() < _size) {
+			_workers.add(null);
+		}
+
+		for (int i = 0; i < _size; i++) {
+			if (_workers.get(i) == null) {
+				LookupThread lt = new LookupThread(this, i);
+				lt._round = _round - 1;
+				_workers.set(i, lt);
+				if (_virtual) {
+					// the LookupThread object only serves as the Runnable;
+					// the thread cannot get to awaitRound before the lock
+					// is released, so it sees _thread set
+					lt._thread = VirtualThreads.start(lt, lt.getName());
+				} else {
+					lt.start();
+				}
+				_monitored.add(lt._thread);
+				started++;
+			}
+		}
+
+		return started;
+	}
+
+	/**
+	 * Called by the threads after each lookup.
+	 *
+	 * @param time duration of the lookup in ms
+	 */
+	void lookupDone(long time) {
+		_completed.incrementAndGet();
+		_latency.addAndGet(time);
+	}
+
+	/**
+	 * @return number of lookups completed over all rounds
+	 */
+	public long getCompleted() {
+		return _completed.get();
+	}
+
+	/**
+	 * @return total duration in ms of the lookups completed over all rounds
+	 */
+	public long getLatency() {
+		return _latency.get();
+	}
+
+	boolean isRetired(LookupThread lt) {
+		return lt._no >= _size;
+	}
+
+	/**
+	 * Called by the threads between rounds.
+	 *
+	 * @return the queue for the next round, or <code>null</code> if the thread
+	 *         should terminate
+	 */
+	SpiderQueue awaitRound(LookupThread lt) {
+		_lock.lock();
+		try {
+			while (!_shutdown && !isRetired(lt) && owns(lt) && (_queue == null || lt._round == _round)) {
+				try {
+					_roundStarted.await();
+				} catch (InterruptedException e) {
+					_log.info(e.getMessage());
+				}
+			}
+
+			if (_shutdown || isRetired(lt) || !owns(lt)) {
+				if (_queue != null && lt._round != _round) {
+					// was expected to take part in the current round
+					_active--;
+					_roundDone.signalAll();
+				}
+				free(lt);
+				return null;
+			}
+
+			lt._round = _round;
+			lt.configure(_contentHandler, _content, _links, _robots, _eh, _ff, _blacklist, _budget);
+
+			return _queue;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return whether the thread still holds its slot; a thread that has
+	 *         left a round because the pool was shrunk does not
+	 */
+	private boolean owns(LookupThread lt) {
+		return _workers.size() > lt._no && _workers.get(lt._no) == lt;
+	}
+
+	/**
+	 * Frees the slot of a thread that terminates.
+	 */
+	private void free(LookupThread lt) {
+		if (owns(lt)) {
+			_workers.set(lt._no, null);
+		}
+		_monitored.remove(lt._thread);
+	}
+
+	/**
+	 * Called by a thread that is done with the current round.
+	 *
+	 * @param left whether the thread has left the round because the pool
+	 *        was shrunk; it then gives up its slot, and a new thread is
+	 *        started for the slot if the pool has been grown again meanwhile
+	 */
+	void roundDone(LookupThread lt, boolean left) {
+		_lock.lock();
+		try {
+			_active--;
+			if (left) {
+				free(lt);
+				if (_queue != null && !_shutdown) {
+					_active += startWorkers();
+				}
+			}
+			_roundDone.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Called by a thread that terminates with an exception. Frees its slot,
+	 * and starts a replacement if a round is running.
+	 */
+	void workerDied(LookupThread lt) {
+		_lock.lock();
+		try {
+			_log.warning("thread " + lt._no + " terminated unexpectedly");
+			free(lt);
+			if (_queue != null && lt._round != _round) {
+				// died before taking part in the current round
+				_active--;
+			}
+			if (_queue != null && !_shutdown) {
+				_active += startWorkers();
+			}
+			_roundDone.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Terminates the threads once they are done with the current round.
+	 */
+	public void shutdown() {
+		_lock.lock();
+		try {
+			_shutdown = true;
+			_roundStarted.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+
+		if (_monitor != null) {
+			_monitor.shutdown();
+		}
+	}
+}
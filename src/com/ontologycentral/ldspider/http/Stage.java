@@ -0,0 +1,162 @@
+package com.ontologycentral.ldspider.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * A step of the {@link StagedLookups} pipeline: a bounded queue of items and
+ * a fixed number of threads working it off. {@link #put(Object)} blocks while
+ * the queue is full, so that a slow stage holds back the stages feeding it
+ * instead of piling up items in memory.
+ *
+ * @param <T> the type of the items
+ */
+public abstract class Stage<T> {
+	private final static Logger _log = Logger.getLogger(Stage.class.getName());
+
+	String _name;
+	BlockingQueue<T> _queue;
+	List<Thread> _threads;
+
+	ReentrantLock _lock;
+	Condition _idle;
+
+	/**
+	 * Number of items that have been put but not processed yet.
+	 */
+	int _pending;
+
+	volatile boolean _shutdown;
+
+	/**
+	 * @param name prefix of the thread names
+	 * @param threads number of threads
+	 * @param capacity maximum number of items waiting
+	 */
+	public Stage(String name, int threads, int capacity) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("stage " + name + " needs at least one thread: " + threads);
+		}
+
+		_name = name;
+		_queue = new ArrayBlockingQueue<T>(capacity);
+		_threads = new ArrayList<Thread>(threads);
+
+		_lock = new ReentrantLock();
+		_idle = _lock.newCondition();
+		_pending = 0;
+		_shutdown = false;
+
+		for (int i = 0; i < threads; i++) {
+			Thread t = new Thread(_name + "-" + i) {
+				public void run() {
+					work();
+				}
+			};
+			t.setDaemon(true);
+			_threads.add(t);
+		}
+	}
+
+	/**
+	 * Starts the threads.
+	 */
+	public void start() {
+		for (Thread t : _threads) {
+			t.start();
+		}
+	}
+
+	/**
+	 * Processes an item; called concurrently by the threads of the stage.
+	 *
+	 * @param item
+	 */
+	protected abstract void process(T item);
+
+	/**
+	 * Hands an item to the stage. Blocks while the queue is full.
+	 *
+	 * @param item
+	 */
+	public void put(T item) {
+		_lock.lock();
+		try {
+			_pending++;
+		} finally {
+			_lock.unlock();
+		}
+
+		while (true) {
+			try {
+				_queue.put(item);
+				return;
+			} catch (InterruptedException e) {
+				_log.info(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Blocks until all items put so far have been processed.
+	 */
+	public void awaitIdle() {
+		_lock.lock();
+		try {
+			while (_pending > 0) {
+				_idle.awaitUninterruptibly();
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public int getQueued() {
+		return _queue.size();
+	}
+
+	public int getThreads() {
+		return _threads.size();
+	}
+
+	void work() {
+		while (!_shutdown) {
+			T item;
+			try {
+				item = _queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			try {
+				process(item);
+			} catch (Throwable e) {
+				_log.warning(_name + " failed on " + item + ": " + e.getMessage());
+			} finally {
+				_lock.lock();
+				try {
+					if (--_pending == 0) {
+						_idle.signalAll();
+					}
+				} finally {
+					_lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the threads. Items still waiting are dropped.
+	 */
+	public void shutdown() {
+		_shutdown = true;
+		for (Thread t : _threads) {
+			t.interrupt();
+		}
+	}
+}
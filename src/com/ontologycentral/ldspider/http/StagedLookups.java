@@ -0,0 +1,319 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.parser.Callback;
+
+import com.ontologycentral.ldspider.CrawlBudget;
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.hooks.content.ContentHandler;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandler;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilter;
+import com.ontologycentral.ldspider.hooks.sink.Provenance;
+import com.ontologycentral.ldspider.hooks.sink.Sink;
+import com.ontologycentral.ldspider.http.robot.Robots;
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+/**
+ * Works off a {@link SpiderQueue} in four stages with separate threads:
+ * fetching, parsing, link extraction and output. The fetch stage reads the
+ * content into memory and releases the connection before the document is
+ * parsed, so that slow parsing does not hold a connection, and the number of
+ * threads of each stage can be chosen independently (e.g. many fetch threads
+ * and one parse thread per core).
+ *
+ * The stages are connected by bounded queues; if a stage falls behind, the
+ * stages before it block.
+ */
+public class StagedLookups {
+	private final static Logger _log = Logger.getLogger(StagedLookups.class.getName());
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	ConnectionManager _cm;
+
+	Stage<URI> _fetch;
+	Stage<Document> _parse;
+	Stage<Document> _link;
+	Stage<Document> _sink;
+
+	/**
+	 * The hooks of the current round.
+	 */
+	volatile SpiderQueue _q;
+	volatile BufferingLookup _lookup;
+	volatile ContentHandler _contentHandler;
+	volatile Sink _content;
+	volatile Callback _links;
+	volatile ErrorHandler _eh;
+	volatile CrawlBudget _budget;
+
+	long _maxContentLength;
+
+	/**
+	 * @param cm
+	 * @param fetchers number of fetch threads
+	 * @param parsers number of parse threads
+	 * @param linkers number of link extraction threads
+	 * @param sinks number of output threads
+	 * @param capacity size of the queue in front of each stage
+	 */
+	public StagedLookups(ConnectionManager cm, int fetchers, int parsers, int linkers, int sinks, int capacity) {
+		_cm = cm;
+		_maxContentLength = CrawlerConstants.MAX_CONTENT_LENGTH;
+
+		_fetch = new Stage<URI>("Fetch", fetchers, capacity) {
+			protected void process(URI u) {
+				Document doc = null;
+				try {
+					doc = _lookup.fetch(u, _cm);
+				} finally {
+					// a fetched document is finished once its links are extracted
+					if (doc == null) {
+						_q.finished(u);
+					}
+				}
+				if (doc != null) {
+					_parse.put(doc);
+				}
+			}
+		};
+		_parse = new Stage<Document>("Parse", parsers, capacity) {
+			protected void process(Document doc) {
+				boolean passed = false;
+				try {
+					passed = parse(doc);
+				} finally {
+					// otherwise finished by the link stage
+					if (!passed) {
+						_q.finished(doc._uri);
+					}
+				}
+			}
+		};
+		_link = new Stage<Document>("Link", linkers, capacity) {
+			protected void process(Document doc) {
+				try {
+					replay(doc, _links);
+				} finally {
+					_q.finished(doc._uri);
+				}
+			}
+		};
+		_sink = new Stage<Document>("Sink", sinks, capacity) {
+			protected void process(Document doc) {
+				replay(doc, _content.newDataset(new Provenance(doc._uri, doc._headers, doc._status)));
+			}
+		};
+
+		_fetch.start();
+		_parse.start();
+		_link.start();
+		_sink.start();
+
+		_log.info("staged lookups with " + fetchers + " fetch, " + parsers + " parse, " + linkers + " link and " + sinks + " output threads");
+	}
+
+	public void setMaxContentLength(long max) {
+		_maxContentLength = max;
+	}
+
+	/**
+	 * Polls the queue until it is exhausted and all stages are done.
+	 */
+	public void runRound(SpiderQueue q, ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist, CrawlBudget budget) {
+		_q = q;
+		_lookup = new BufferingLookup(q, handler, content, links, robots, eh, ff, blacklist);
+		_lookup.setBudget(budget);
+		_budget = budget;
+		_contentHandler = handler;
+		_content = content;
+		_links = links;
+		_eh = eh;
+
+		long time = System.currentTimeMillis();
+		int i = 0;
+
+		while (true) {
+			if (budget.isExhausted()) {
+				_log.info("Budget exhausted. Stopping...");
+				break;
+			}
+
+			URI lu = q.poll();
+
+			if (lu == null) {
+				// documents still in progress might add redirects or links
+				// (in continuous mode) to the queue
+				awaitIdle();
+
+				lu = q.poll();
+				if (lu == null) {
+					break;
+				}
+			}
+
+			_fetch.put(lu);
+			i++;
+		}
+
+		awaitIdle();
+
+		_log.info("finished round after polling " + i + " uris in " + (System.currentTimeMillis() - time) + " ms; " + budget + " overall until now.");
+	}
+
+	void awaitIdle() {
+		_fetch.awaitIdle();
+		_parse.awaitIdle();
+		_link.awaitIdle();
+		_sink.awaitIdle();
+	}
+
+	/**
+	 * Parses a document and passes the statements on to the link and output
+	 * stages.
+	 *
+	 * @return true if the document has been passed on to the link stage
+	 */
+	boolean parse(Document doc) {
+		StatementBuffer buf = new StatementBuffer();
+		try {
+			if (!_contentHandler.handle(doc._uri, doc._type, new ByteArrayInputStream(doc._content), buf)) {
+				_log.info("could not parse " + doc._uri + " as " + doc._type);
+				_eh.handleError(doc._uri, new IOException("could not parse " + doc._uri + " as " + doc._type));
+			}
+		} catch (Throwable e) {
+			_log.warning("Exception " + e.getClass().getName() + " parsing " + doc._uri);
+			_eh.handleError(doc._uri, e);
+		}
+
+		doc._content = null;
+		doc._statements = buf._statements;
+
+		_budget.fetched(doc._statements.size());
+
+		_link.put(doc);
+		_sink.put(doc);
+		return true;
+	}
+
+	static void replay(Document doc, Callback cb) {
+		cb.startDocument();
+		for (Node[] nx : doc._statements) {
+			cb.processStatement(nx);
+		}
+		cb.endDocument();
+	}
+
+	public void shutdown() {
+		_fetch.shutdown();
+		_parse.shutdown();
+		_link.shutdown();
+		_sink.shutdown();
+	}
+
+	/**
+	 * A fetched document on its way through the stages.
+	 */
+	static class Document {
+		URI _uri;
+		String _type;
+		Header[] _headers;
+		int _status;
+
+		/**
+		 * The content, until parsed.
+		 */
+		byte[] _content;
+
+		/**
+		 * The statements, once parsed.
+		 */
+		List<Node[]> _statements;
+
+		public String toString() {
+			return _uri.toString();
+		}
+	}
+
+	static class StatementBuffer implements Callback {
+		List<Node[]> _statements = new ArrayList<Node[]>();
+
+		public void startDocument() {
+			;
+		}
+
+		public void endDocument() {
+			;
+		}
+
+		public void processStatement(Node[] nx) {
+			_statements.add(nx);
+		}
+	}
+
+	/**
+	 * Reads the content into memory for the parse stage instead of parsing it
+	 * right away.
+	 */
+	class BufferingLookup extends Lookup {
+		/**
+		 * The document read by the current lookup of each thread.
+		 */
+		ThreadLocal<Document> _fetched;
+
+		BufferingLookup(SpiderQueue q, ContentHandler handler, Sink content, Callback links, Robots robots, ErrorHandler eh, FetchFilter ff, FetchFilter blacklist) {
+			super(q, handler, content, links, robots, eh, ff, blacklist);
+			_fetched = new ThreadLocal<Document>();
+		}
+
+		/**
+		 * Looks up a URI.
+		 *
+		 * @return the document to parse, or <code>null</code> if there is no
+		 *         content to parse
+		 */
+		Document fetch(URI u, ConnectionManager cm) {
+			_fetched.remove();
+			try {
+				lookup(u, cm);
+				return _fetched.get();
+			} finally {
+				_fetched.remove();
+			}
+		}
+
+		protected void handleContent(URI lu, String type, HttpResponse hres, InputStream is) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = is.read(buf)) != -1) {
+				out.write(buf, 0, n);
+				if (out.size() > _maxContentLength) {
+					throw new ContentTooLargeException("content of " + lu + " exceeds " + _maxContentLength + " bytes");
+				}
+			}
+			// releases the connection before waiting for the parse stage
+			is.close();
+
+			Document doc = new Document();
+			doc._uri = lu;
+			doc._type = type;
+			doc._headers = hres.getAllHeaders();
+			doc._status = hres.getStatusLine().getStatusCode();
+			doc._content = out.toByteArray();
+
+			_fetched.set(doc);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package com.ontologycentral.ldspider.http.internal;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+
+import com.ontologycentral.ldspider.http.DnsCache;
+
+/**
+ * Opens connections with the addresses from a {@link DnsCache} instead of
+ * resolving the host names for each connection.
+ */
+public class CachingConnectionOperator extends DefaultClientConnectionOperator {
+	DnsCache _dns;
+
+	public CachingConnectionOperator(SchemeRegistry schemes, DnsCache dns) {
+		super(schemes);
+		_dns = dns;
+	}
+
+	protected InetAddress[] resolveHostname(String host) throws UnknownHostException {
+		return _dns.resolve(host);
+	}
+}
@@ -0,0 +1,50 @@
+package com.ontologycentral.ldspider.http.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream.
+ */
+public class CountingInputStream extends FilterInputStream {
+	long _count;
+
+	public CountingInputStream(InputStream in) {
+		super(in);
+		_count = 0;
+	}
+
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) {
+			_count++;
+		}
+		return b;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			_count += n;
+		}
+		return n;
+	}
+
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		_count += skipped;
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * @return the number of bytes read so far
+	 */
+	public long getCount() {
+		return _count;
+	}
+}
@@ -0,0 +1,411 @@
+package com.ontologycentral.ldspider.http.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.apache.http.ConnectionClosedException;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolException;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+
+import com.ontologycentral.ldspider.http.ContentTooLargeException;
+import com.ontologycentral.ldspider.http.FetchCallback;
+
+/**
+ * State of a single HTTP/1.1 GET exchange carried out on a non-blocking
+ * channel. The connection is not kept alive, so the response ends at the end
+ * of the entity or when the server closes the connection.
+ */
+public class NioExchange {
+	private static final byte[] CRLFCRLF = { '\r', '\n', '\r', '\n' };
+
+	public final HttpGet _get;
+	public final FetchCallback _cb;
+
+	public InetSocketAddress _address;
+	public SocketChannel _channel;
+
+	ByteBuffer _request;
+	ByteArrayOutputStream _response;
+
+	/**
+	 * Point in time when the exchange times out unless there is activity.
+	 */
+	public long _deadline;
+
+	/**
+	 * Offset of the entity in the response, -1 as long as the header is incomplete.
+	 */
+	int _bodyStart;
+	long _contentLength;
+	boolean _chunked;
+
+	/**
+	 * Number of bytes of CRLFCRLF matched at the end of the data so far, to
+	 * find the end of the header without scanning the response again.
+	 */
+	int _headerMatch;
+
+	/**
+	 * State of the chunked entity, parsed as the data arrives.
+	 */
+	int _chunkState;
+	long _chunkSize;
+	int _lineLength;
+
+	static final int CHUNK_SIZE = 0;
+	static final int CHUNK_EXTENSION = 1;
+	static final int CHUNK_DATA = 2;
+	static final int CHUNK_DATA_END = 3;
+	static final int TRAILER = 4;
+	static final int DONE = 5;
+
+	public NioExchange(HttpGet get, FetchCallback cb) {
+		_get = get;
+		_cb = cb;
+		_response = new ByteArrayOutputStream(8192);
+		_bodyStart = -1;
+		_contentLength = -1;
+		_chunked = false;
+		_headerMatch = 0;
+		_chunkState = CHUNK_SIZE;
+		_chunkSize = 0;
+		_lineLength = 0;
+	}
+
+	/**
+	 * Serialises the request.
+	 *
+	 * @param absolute use the absolute URI as request target (needed for proxies)
+	 */
+	public void prepareRequest(boolean absolute) {
+		URI u = _get.getURI();
+
+		String target;
+		if (absolute) {
+			target = u.toASCIIString();
+		} else {
+			target = u.getRawPath();
+			if (target == null || target.length() == 0) {
+				target = "/";
+			}
+			if (u.getRawQuery() != null) {
+				target = target + "?" + u.getRawQuery();
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("GET ").append(target).append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(u.getHost());
+		if (u.getPort() != -1) {
+			sb.append(':').append(u.getPort());
+		}
+		sb.append("\r\n");
+		for (Header h : _get.getAllHeaders()) {
+			sb.append(h.getName()).append(": ").append(h.getValue()).append("\r\n");
+		}
+		sb.append("Connection: close\r\n\r\n");
+
+		try {
+			_request = ByteBuffer.wrap(sb.toString().getBytes("ISO-8859-1"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return true if the request has been written completely
+	 */
+	public boolean write() throws IOException {
+		_channel.write(_request);
+		return !_request.hasRemaining();
+	}
+
+	/**
+	 * Appends data read from the channel. Only the new data is looked at, for
+	 * the end of the header and the end of a chunked entity.
+	 *
+	 * @return true if the response is complete
+	 */
+	public boolean append(ByteBuffer buf, long maxLength) throws IOException {
+		byte[] a = buf.array();
+		int off = buf.arrayOffset() + buf.position();
+		int end = off + buf.remaining();
+		int start = _response.size();
+
+		_response.write(a, off, end - off);
+
+		if (_response.size() > maxLength) {
+			throw new ContentTooLargeException("response from " + _get.getURI() + " exceeds " + maxLength + " bytes");
+		}
+
+		if (_bodyStart < 0) {
+			int i = off;
+			while (i < end && _headerMatch < CRLFCRLF.length) {
+				byte b = a[i++];
+				if (b == CRLFCRLF[_headerMatch]) {
+					_headerMatch++;
+				} else {
+					_headerMatch = (b == '\r') ? 1 : 0;
+				}
+			}
+			if (_headerMatch < CRLFCRLF.length) {
+				return false;
+			}
+			_bodyStart = start + (i - off);
+			parseHeader();
+			off = i;
+		}
+
+		if (_chunked) {
+			return parseChunks(a, off, end);
+		} else if (_contentLength >= 0) {
+			return _response.size() - _bodyStart >= _contentLength;
+		}
+
+		// read until the server closes the connection
+		return false;
+	}
+
+	private void parseHeader() throws IOException {
+		byte[] data = _response.toByteArray();
+		String head = new String(data, 0, _bodyStart - CRLFCRLF.length, "ISO-8859-1");
+		for (String line : head.split("\r\n")) {
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+			String name = line.substring(0, colon).trim();
+			String value = line.substring(colon + 1).trim();
+			if (name.equalsIgnoreCase("Content-Length")) {
+				try {
+					_contentLength = Long.parseLong(value);
+				} catch (NumberFormatException e) {
+					_contentLength = -1;
+				}
+			} else if (name.equalsIgnoreCase("Transfer-Encoding") && value.toLowerCase().indexOf("chunked") >= 0) {
+				_chunked = true;
+			}
+		}
+	}
+
+	/**
+	 * Follows the chunk sizes through the new data, skipping the chunks
+	 * themselves.
+	 *
+	 * @return true if the last chunk and the trailers have been received
+	 */
+	private boolean parseChunks(byte[] a, int off, int end) throws IOException {
+		int i = off;
+		while (i < end && _chunkState != DONE) {
+			if (_chunkState == CHUNK_DATA) {
+				int n = (int)Math.min(_chunkSize, end - i);
+				i += n;
+				_chunkSize -= n;
+				if (_chunkSize == 0) {
+					_chunkState = CHUNK_DATA_END;
+				}
+				continue;
+			}
+
+			byte b = a[i++];
+			switch (_chunkState) {
+			case CHUNK_SIZE:
+				int d = Character.digit(b, 16);
+				if (d >= 0) {
+					if (_chunkSize > (Long.MAX_VALUE >> 4)) {
+						throw new IOException("invalid chunk size in " + _get.getURI());
+					}
+					_chunkSize = (_chunkSize << 4) + d;
+					_lineLength++;
+				} else if (b == '\n') {
+					endOfSize();
+				} else if (b == ';' || b == ' ' || b == '\t' || b == '\r') {
+					_chunkState = CHUNK_EXTENSION;
+				} else {
+					throw new IOException("invalid chunk size in " + _get.getURI());
+				}
+				break;
+			case CHUNK_EXTENSION:
+				if (b == '\n') {
+					endOfSize();
+				}
+				break;
+			case CHUNK_DATA_END:
+				if (b == '\n') {
+					_chunkState = CHUNK_SIZE;
+					_chunkSize = 0;
+					_lineLength = 0;
+				}
+				break;
+			case TRAILER:
+				if (b == '\n') {
+					if (_lineLength == 0) {
+						_chunkState = DONE;
+					}
+					_lineLength = 0;
+				} else if (b != '\r') {
+					_lineLength++;
+				}
+				break;
+			}
+		}
+
+		return _chunkState == DONE;
+	}
+
+	private void endOfSize() throws IOException {
+		if (_lineLength == 0) {
+			throw new IOException("missing chunk size in " + _get.getURI());
+		}
+		_lineLength = 0;
+		if (_chunkSize == 0) {
+			_chunkState = TRAILER;
+		} else {
+			_chunkState = CHUNK_DATA;
+		}
+	}
+
+	/**
+	 * Parses the data received so far into a response.
+	 */
+	public HttpResponse toResponse() throws IOException, ProtocolException {
+		byte[] data = _response.toByteArray();
+
+		if (_bodyStart < 0) {
+			throw new ProtocolException("incomplete response header from " + _get.getURI());
+		}
+
+		String head = new String(data, 0, _bodyStart - CRLFCRLF.length, "ISO-8859-1");
+		String[] lines = head.split("\r\n");
+
+		// status line: HTTP/1.1 200 OK
+		String[] status = lines[0].split(" ", 3);
+		if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+			throw new ProtocolException("invalid status line " + lines[0]);
+		}
+		int code;
+		try {
+			code = Integer.parseInt(status[1]);
+		} catch (NumberFormatException e) {
+			throw new ProtocolException("invalid status line " + lines[0]);
+		}
+		ProtocolVersion version = new ProtocolVersion("HTTP", 1, status[0].endsWith("1.0") ? 0 : 1);
+
+		BasicHttpResponse res = new BasicHttpResponse(new BasicStatusLine(version, code, status.length > 2 ? status[2] : ""));
+		for (int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if (colon > 0) {
+				res.addHeader(lines[i].substring(0, colon).trim(), lines[i].substring(colon + 1).trim());
+			}
+		}
+
+		byte[] body;
+		if (_chunked) {
+			if (_chunkState != DONE) {
+				// the connection was closed early
+				throw new ConnectionClosedException("premature end of chunk coded message body from " + _get.getURI() + ": closing chunk expected");
+			}
+			body = dechunk(data, _bodyStart);
+		} else {
+			int len = data.length - _bodyStart;
+			if (_contentLength >= 0 && _contentLength < len) {
+				len = (int)_contentLength;
+			} else if (_contentLength > len && hasBody(code)) {
+				throw new ConnectionClosedException("premature end of Content-Length delimited message body from "
+						+ _get.getURI() + " (expected: " + _contentLength + "; received: " + len + ")");
+			}
+			body = new byte[len];
+			System.arraycopy(data, _bodyStart, body, 0, len);
+		}
+
+		ByteArrayEntity entity = new ByteArrayEntity(body);
+		Header ct = res.getFirstHeader("Content-Type");
+		if (ct != null) {
+			entity.setContentType(ct.getValue());
+		}
+		Header ce = res.getFirstHeader("Content-Encoding");
+		if (ce != null) {
+			entity.setContentEncoding(ce.getValue());
+		}
+
+		HttpEntity hen = entity;
+		if (ce != null) {
+			for (HeaderElement codec : ce.getElements()) {
+				if (codec.getName().equalsIgnoreCase("gzip")) {
+					hen = new GzipDecompressingEntity(entity);
+				}
+			}
+		}
+		res.setEntity(hen);
+
+		return res;
+	}
+
+	/**
+	 * @return false for the responses without a body despite a
+	 *         Content-Length header
+	 */
+	static boolean hasBody(int code) {
+		return code >= 200 && code != 204 && code != 304;
+	}
+
+	static byte[] dechunk(byte[] data, int offset) throws IOException, ProtocolException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length - offset);
+
+		int pos = offset;
+		while (pos < data.length) {
+			int eol = indexOf(data, new byte[] { '\r', '\n' }, pos);
+			if (eol < 0) {
+				throw new ProtocolException("truncated chunk header");
+			}
+			String size = new String(data, pos, eol - pos);
+			int ext = size.indexOf(';');
+			if (ext >= 0) {
+				size = size.substring(0, ext);
+			}
+			int len;
+			try {
+				len = Integer.parseInt(size.trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new ProtocolException("invalid chunk size " + size);
+			}
+			if (len == 0) {
+				return out.toByteArray();
+			}
+			pos = eol + 2;
+			if (pos + len > data.length) {
+				throw new ProtocolException("truncated chunk");
+			}
+			out.write(data, pos, len);
+			pos += len + 2;
+		}
+
+		throw new ConnectionClosedException("premature end of chunk coded message body: closing chunk expected");
+	}
+
+	static int indexOf(byte[] data, byte[] pattern, int from) {
+		outer:
+		for (int i = from; i <= data.length - pattern.length; i++) {
+			for (int j = 0; j < pattern.length; j++) {
+				if (data[i+j] != pattern[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
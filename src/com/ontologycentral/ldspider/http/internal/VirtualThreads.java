@@ -0,0 +1,55 @@
+package com.ontologycentral.ldspider.http.internal;
+
+import java.lang.reflect.Method;
+import java.util.logging.Logger;
+
+/**
+ * Starts virtual threads if the JVM supports them (Java 21 and later). The
+ * code is compiled for older JVMs, so the builder API is called via
+ * reflection.
+ */
+public class VirtualThreads {
+	private final static Logger _log = Logger.getLogger(VirtualThreads.class.getSimpleName());
+
+	static Method _ofVirtual;
+	static Method _name;
+	static Method _start;
+
+	static {
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			_ofVirtual = Thread.class.getMethod("ofVirtual");
+			_name = builder.getMethod("name", String.class);
+			_start = builder.getMethod("start", Runnable.class);
+		} catch (Exception e) {
+			_ofVirtual = null;
+			_log.fine("no virtual threads: " + e.getMessage());
+		}
+	}
+
+	public static boolean isSupported() {
+		return _ofVirtual != null;
+	}
+
+	/**
+	 * Starts a virtual thread.
+	 *
+	 * @param r
+	 * @param name
+	 * @return the thread
+	 * @throws UnsupportedOperationException if the JVM has no virtual threads
+	 */
+	public static Thread start(Runnable r, String name) {
+		if (!isSupported()) {
+			throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+		}
+
+		try {
+			Object builder = _ofVirtual.invoke(null);
+			builder = _name.invoke(builder, name);
+			return (Thread)_start.invoke(builder, r);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("cannot start virtual thread: " + e.getMessage());
+		}
+	}
+}
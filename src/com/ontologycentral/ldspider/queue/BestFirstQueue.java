@@ -0,0 +1,560 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.frontier.LinkListener;
+
+/**
+ * A queue for crawling the most important URIs first. As with the
+ * {@link ContinuousQueue}, links are queued as soon as they are found (the
+ * queue is registered as {@link LinkListener} with the frontier); the
+ * importance of a URI is estimated online while the crawl goes on:
+ * <ul>
+ * <li>{@link Importance#OPIC}: each seed starts with a cash of 1; when the
+ * lookup of a document has {@link #finished(URI)}, the cash it had when it
+ * was polled is distributed in equal shares among the links found in it.</li>
+ * <li>{@link Importance#INDEGREE}: each link found adds 1.</li>
+ * </ul>
+ *
+ * Per pay-level domain, the queued URIs are kept ordered by importance, so
+ * that a pay-level domain hands out its most important URI when it is next
+ * polled. The pay-level domains (or the politeness groups, see
+ * {@link PolitenessGroups}) themselves are still interleaved by a
+ * {@link PolitenessScheduler}. Memory is bounded by the maximum number of URIs
+ * kept per pay-level domain and by the maximum number of URIs queued
+ * overall: if a pay-level domain or the queue is full, the least important
+ * URI (of the pay-level domain or of all) is dropped, together with its
+ * importance, in favour of a more important one.
+ *
+ * {@link #poll()} blocks while no pay-level domain is ready, and while the
+ * queue is empty but lookups are still in progress; it returns
+ * <code>null</code> once the queue is empty and all lookups have finished.
+ */
+public class BestFirstQueue extends RedirectsFavouringSpiderQueue implements LinkListener {
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger _log = Logger.getLogger(BestFirstQueue.class.getName());
+
+	public enum Importance {
+		/**
+		 * On-line page importance computation, cash passed on along links
+		 */
+		OPIC,
+		/**
+		 * Number of links found to the URI
+		 */
+		INDEGREE
+	}
+
+	/**
+	 * Importance of seeds.
+	 */
+	static final double SEED_SCORE = 1.0;
+
+	/**
+	 * Default maximum number of URIs queued overall, about 500 bytes each.
+	 */
+	public static final int DEFAULT_MAX_QUEUED = 1000000;
+
+	Importance _importance;
+
+	int _maxuris;
+	int _maxplds;
+	int _maxqueued;
+
+	/**
+	 * Queued URIs per pay-level domain, most important first.
+	 */
+	Map<String, TreeSet<Candidate>> _queues;
+
+	/**
+	 * All queued URIs, for raising their importance.
+	 */
+	Map<URI, Candidate> _candidates;
+
+	/**
+	 * All queued URIs, most important first, for dropping the least
+	 * important one when the queue is full.
+	 */
+	TreeSet<Candidate> _all;
+
+	/**
+	 * Pay-level domains with URIs in the queue, by the time they may be
+	 * polled next.
+	 */
+	PolitenessScheduler _politeness;
+
+	/**
+	 * With OPIC: the cash of the URIs polled whose lookups have not finished
+	 * yet, and the links found in them so far.
+	 */
+	Map<URI, Double> _cash;
+	Map<URI, Set<URI>> _links;
+
+	long _seq;
+	long _dropped;
+
+	int _inFlight;
+
+	/**
+	 * Signalled when URIs are added or lookups finish.
+	 */
+	Condition _changed;
+
+	/**
+	 * @param tldm
+	 * @param redirs
+	 * @param importance how to estimate the importance of URIs
+	 * @param maxuris maximum number of URIs kept per pay-level domain, -1 for no limit
+	 * @param maxplds maximum number of pay-level domains, -1 for no limit
+	 */
+	public BestFirstQueue(TldManager tldm, Redirects redirs, Importance importance, int maxuris, int maxplds) {
+		this(tldm, redirs, importance, maxuris, maxplds, DEFAULT_MAX_QUEUED);
+	}
+
+	/**
+	 * @param tldm
+	 * @param redirs
+	 * @param importance how to estimate the importance of URIs
+	 * @param maxuris maximum number of URIs kept per pay-level domain, -1 for no limit
+	 * @param maxplds maximum number of pay-level domains, -1 for no limit
+	 * @param maxqueued maximum number of URIs queued overall, -1 for no limit
+	 */
+	public BestFirstQueue(TldManager tldm, Redirects redirs, Importance importance, int maxuris, int maxplds, int maxqueued) {
+		super(tldm, redirs);
+
+		_importance = importance;
+
+		_maxuris = maxuris;
+		if (_maxuris == -1) {
+			_maxuris = Integer.MAX_VALUE;
+		}
+
+		_maxplds = maxplds;
+		if (_maxplds == -1) {
+			_maxplds = Integer.MAX_VALUE;
+		}
+
+		_maxqueued = maxqueued;
+		if (_maxqueued == -1) {
+			_maxqueued = Integer.MAX_VALUE;
+		}
+
+		_queues = new HashMap<String, TreeSet<Candidate>>();
+		_candidates = new HashMap<URI, Candidate>();
+		_all = new TreeSet<Candidate>();
+		_politeness = new PolitenessScheduler(CrawlerConstants.MIN_DELAY);
+		_politeness.setStatistics(_pldStats);
+		_cash = new HashMap<URI, Double>();
+		_links = new HashMap<URI, Set<URI>>();
+
+		_seq = 0;
+		_dropped = 0;
+		_inFlight = 0;
+
+		_changed = _lock.newCondition();
+	}
+
+	public void setMinDelay(long delay) {
+		_lock.lock();
+		try {
+			_politeness.setDelay(delay);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the URIs of the frontier as seeds.
+	 */
+	public void schedule(Frontier f) {
+		Iterator<URI> it = resolveGroups(f.iterator(), false);
+
+		_lock.lock();
+		try {
+			int n = 0;
+			while (it.hasNext()) {
+				if (credit(it.next(), SEED_SCORE)) {
+					n++;
+				}
+			}
+			_log.info("scheduled " + n + " seeds from " + _queues.size() + " plds");
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void add(URI u, boolean uriHasAlreadyBeenProcessed) {
+		if (!uriHasAlreadyBeenProcessed) {
+			try {
+				u = Frontier.normalise(u);
+			} catch (URISyntaxException e) {
+				_log.info(u +  " not parsable, skipping " + u);
+				return;
+			}
+		}
+
+		resolveGroup(u);
+
+		_lock.lock();
+		try {
+			credit(u, SEED_SCORE);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void linkFound(URI u, URI from) {
+		resolveGroup(u);
+
+		_lock.lock();
+		try {
+			if (u.equals(from)) {
+				return;
+			}
+
+			if (_importance == Importance.INDEGREE) {
+				credit(u, 1.0);
+			} else {
+				// the cash follows once the lookup of from has finished
+				if (credit(u, 0.0) && from != null) {
+					Set<URI> links = _links.get(from);
+					if (links == null && _cash.containsKey(from)) {
+						links = new LinkedHashSet<URI>();
+						_links.put(from, links);
+					}
+					if (links != null) {
+						links.add(u);
+					}
+				}
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Raises the importance of a queued URI, or queues it, unless it has
+	 * been seen or is beyond the limits.
+	 *
+	 * @param u a normalised URI
+	 * @param score added to the importance
+	 * @return true if the URI is queued
+	 */
+	boolean credit(URI u, double score) {
+		Candidate c = _candidates.get(u);
+		if (c != null) {
+			TreeSet<Candidate> q = _queues.get(c._pld);
+			q.remove(c);
+			_all.remove(c);
+			c._score += score;
+			q.add(c);
+			_all.add(c);
+			return true;
+		}
+
+		if (checkSeen(u)) {
+			return false;
+		}
+
+		String pld = getGroup(u);
+		if (pld == null) {
+			return false;
+		}
+
+		TreeSet<Candidate> q = _queues.get(pld);
+		if (q == null) {
+			if (_queues.size() >= _maxplds) {
+				return false;
+			}
+			q = new TreeSet<Candidate>();
+			_queues.put(pld, q);
+		}
+
+		c = new Candidate(u, pld, score, _seq++);
+
+		if (q.size() >= _maxuris) {
+			if (q.isEmpty() || c.compareTo(q.last()) > 0) {
+				_dropped++;
+				return false;
+			}
+			drop(q.last());
+		} else if (_candidates.size() >= _maxqueued) {
+			if (c.compareTo(_all.last()) > 0) {
+				_dropped++;
+				return false;
+			}
+			drop(_all.last());
+		}
+
+		if (q.isEmpty()) {
+			_activePlds.incrementAndGet();
+		}
+		q.add(c);
+		_all.add(c);
+		_candidates.put(u, c);
+		_politeness.add(pld);
+		_queued.incrementAndGet();
+
+		_changed.signalAll();
+
+		return true;
+	}
+
+	/**
+	 * Drops a queued URI together with its importance. A pay-level domain
+	 * left without URIs stays scheduled until it is polled.
+	 */
+	void drop(Candidate c) {
+		TreeSet<Candidate> q = _queues.get(c._pld);
+		q.remove(c);
+		_all.remove(c);
+		_candidates.remove(c._uri);
+		_queued.decrementAndGet();
+		_dropped++;
+		if (q.isEmpty()) {
+			_activePlds.decrementAndGet();
+		}
+	}
+
+	/**
+	 * With OPIC, the target of a redirect gets the cash of the redirecting
+	 * URI.
+	 */
+	public void setRedirect(URI from, URI to, int status) {
+		_lock.lock();
+		try {
+			Double cash = _cash.remove(from);
+			if (cash != null) {
+				try {
+					URI norm = Frontier.normalise(to);
+					if (!_cash.containsKey(norm)) {
+						_cash.put(norm, cash);
+					}
+				} catch (URISyntaxException e) {
+					;
+				}
+			}
+			super.setRedirect(from, to, status);
+			_changed.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the importance of a queued URI.
+	 *
+	 * @param u
+	 * @return the importance or -1 if the URI is not queued
+	 */
+	public double getScore(URI u) {
+		_lock.lock();
+		try {
+			Candidate c = _candidates.get(u);
+			return c == null ? -1 : c._score;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of URIs dropped or not queued because their pay-level
+	 *         domain was full
+	 */
+	public long getDropped() {
+		_lock.lock();
+		try {
+			return _dropped;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Polls a URI, waiting for a pay-level domain to become ready or for
+	 * running lookups to add links if necessary.
+	 *
+	 * @return the URI or <code>null</code> if the crawl is done
+	 */
+	public URI poll() {
+		_lock.lock();
+		try {
+			while (true) {
+				URI u = super.poll();
+				if (u != null) {
+					_inFlight++;
+					if (_importance == Importance.OPIC && !_cash.containsKey(u)) {
+						// the target of a redirect without cash
+						_cash.put(u, Double.valueOf(0.0));
+					}
+					return u;
+				}
+
+				if (_inFlight == 0 && size() == 0) {
+					return null;
+				}
+
+				try {
+					_changed.await(untilReady(), TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					_log.info(e.getMessage());
+				}
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return time in ms until the next pay-level domain is ready
+	 */
+	long untilReady() {
+		long wait = _politeness.untilNext(System.currentTimeMillis());
+		if (wait < 0) {
+			// only lookups in progress, which signal when they finish
+			wait = _politeness.getDelay();
+		}
+
+		return Math.max(wait, 1);
+	}
+
+	protected URI pollInternal() {
+		_lock.lock();
+		try {
+			long now = System.currentTimeMillis();
+
+			String pld;
+			while ((pld = _politeness.next(now)) != null) {
+				TreeSet<Candidate> q = _queues.get(pld);
+				if (q.isEmpty()) {
+					// its URIs have been dropped for more important ones
+					continue;
+				}
+
+				Candidate next = null;
+				while (next == null && !q.isEmpty()) {
+					next = q.first();
+					q.remove(next);
+					_all.remove(next);
+					_candidates.remove(next._uri);
+					_queued.decrementAndGet();
+					if (checkSeen(next._uri)) {
+						next = null;
+					}
+				}
+
+				if (!q.isEmpty()) {
+					_politeness.add(pld);
+					prefetch(q.first()._uri);
+				} else {
+					_activePlds.decrementAndGet();
+				}
+
+				if (next != null) {
+					setSeen(next._uri);
+					if (_importance == Importance.OPIC) {
+						_cash.put(next._uri, Double.valueOf(next._score));
+					}
+					return next._uri;
+				}
+			}
+
+			return null;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * With OPIC, distributes the cash of the URI among the links found in it.
+	 */
+	public void finished(URI u) {
+		_lock.lock();
+		try {
+			_inFlight--;
+
+			Double cash = _cash.remove(u);
+			Set<URI> links = _links.remove(u);
+			if (cash != null && links != null) {
+				double share = cash.doubleValue() / links.size();
+				for (URI l : links) {
+					credit(l, share);
+				}
+			}
+
+			_changed.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public String toString() {
+		_lock.lock();
+		try {
+			StringBuilder sb = new StringBuilder();
+
+			for (Map.Entry<String, TreeSet<Candidate>> e : _queues.entrySet()) {
+				if (e.getValue().isEmpty()) {
+					continue;
+				}
+				sb.append(e.getKey());
+				sb.append(": ");
+				sb.append(e.getValue().size());
+				sb.append(", first ");
+				sb.append(e.getValue().first()._score);
+				sb.append("\n");
+			}
+			sb.append("Plus ");
+			sb.append(_redirectsQueue.size());
+			sb.append(" redirects, ");
+			sb.append(_inFlight);
+			sb.append(" lookups in progress, ");
+			sb.append(_dropped);
+			sb.append(" uris dropped.\n");
+
+			return sb.toString();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * A queued URI with its importance; the more important, the smaller. URIs
+	 * of the same importance are in the order they have been queued.
+	 */
+	static class Candidate implements Comparable<Candidate> {
+		final URI _uri;
+		final String _pld;
+		final long _seq;
+		double _score;
+
+		Candidate(URI uri, String pld, double score, long seq) {
+			_uri = uri;
+			_pld = pld;
+			_score = score;
+			_seq = seq;
+		}
+
+		public int compareTo(Candidate o) {
+			if (_score != o._score) {
+				return _score > o._score ? -1 : 1;
+			}
+			return _seq < o._seq ? -1 : (_seq == o._seq ? 0 : 1);
+		}
+	}
+}
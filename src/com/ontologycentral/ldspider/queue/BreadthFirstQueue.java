@@ -6,10 +6,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.logging.Logger;
 
 import org.semanticweb.yars.tld.TldManager;
@@ -26,10 +28,19 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 	private static final  Logger _log = Logger.getLogger(BreadthFirstQueue.class.getName());
 
 	Map<String, Queue<URI>> _queues;
-	Queue<String> _current;
 	
 	/**
-	 * Point in time of the last schedule or the last queue turnaround.
+	 * The plds of {@link #_queues} by the number of URIs left.
+	 */
+	PldCountIndex _index;
+	
+	/**
+	 * The plds with URIs left, by the time they may be accessed next.
+	 */
+	PolitenessScheduler _politeness;
+	
+	/**
+	 * Point in time of the last schedule.
 	 */
 	long _time;
 
@@ -66,6 +77,12 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 	 * seedlist.
 	 */
 	boolean _minActPldsAlready4Seedlist;
+	
+	/**
+	 * Used to wait for the next pld to become eligible without holding the
+	 * lock.
+	 */
+	Condition _eligible;
 
 	/**
 	 * 
@@ -88,10 +105,12 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 		_minActPlds = minActPlds;
 
-		_current = new ConcurrentLinkedQueue<String>();
+		_politeness = new PolitenessScheduler(CrawlerConstants.MIN_DELAY);
+		_politeness.setStatistics(_pldStats);
 
 		_queues = Collections
 				.synchronizedMap(new HashMap<String, Queue<URI>>());
+		_index = new PldCountIndex();
 
 		_minReached = false;
 
@@ -99,13 +118,26 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 		
 		_minActPldsAlready4Seedlist = minActPldsAlready4Seedlist;
 
+		_eligible = _lock.newCondition();
 	}
 	
 	/**
 	 * Put URIs from frontier to queue
 	 * 
 	 */
-	public synchronized void schedule(Frontier f) {	
+	public void schedule(Frontier f) {
+		// resolving the hosts may take a while, not holding the lock
+		Iterator<URI> it = resolveGroups(f.iterator(), false);
+		
+		_lock.lock();
+		try {
+			scheduleLocked(f, it);
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private void scheduleLocked(Frontier f, Iterator<URI> it) {
 		_log.info("start scheduling...");
 
 		_minReached = false;
@@ -117,8 +149,11 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 		// super.schedule(f);
 
 		_queues.clear();
+		_index.clear();
+		_politeness.clear();
+		_queued.set(0);
+		_activePlds.set(0);
 
-		Iterator<URI> it = f.iterator();
 		while (it.hasNext()) {
 			URI u = it.next();
 			if (!checkSeen(u)) {
@@ -131,28 +166,14 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 			for (String pld : _queues.keySet()) {
 				Queue<URI> q = _queues.get(pld);
 
-				// HACK to avoid hanging at slow servers
-				int maxuris = _maxuris;
-				for (String s : CrawlerConstants.SITES_SLOW) {
-					if (s.equals(pld)) {
-						maxuris = maxuris / CrawlerConstants.SLOW_DIV;
-					}
-				}
+				// fewer uris for slow or failing servers
+				int maxuris = _pldStats.getQuota(pld, _maxuris, _politeness.getDelay());
 
-				if (q.size() > maxuris) {
-					int n = 0;
-					ConcurrentLinkedQueue<URI> nq = new ConcurrentLinkedQueue<URI>();
-					for (URI u : q) {
-						nq.add(u);
-						n++;
-						if (n >= maxuris) {
-							break;
-						}
-					}
-					q = nq;
-
-					_queues.put(pld, q);
+				while (q.size() > maxuris) {
+					((LinkedList<URI>)q).removeLast();
+					_queued.decrementAndGet();
 				}
+				_index.set(pld, q.size());
 			}
 
 		List<String> lipld = getQueuePlds(_minActPlds < 0);
@@ -161,15 +182,21 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 		if (_maxplds < Integer.MAX_VALUE - 1) {
 			for (int i = _maxplds; i < lipld.size(); i++) {
 				String pld = lipld.get(i);
-				_queues.remove(pld);
+				Queue<URI> q = _queues.remove(pld);
+				_queued.addAndGet(-q.size());
+				_index.remove(pld);
 
 				_log.fine("removing " + pld);
 			}
 		}
 		
-		_current.addAll(_queues.keySet());
-		
-		//_current.addAll(lipld);
+		_politeness.clear();
+		for (String pld : lipld) {
+			if (_queues.containsKey(pld)) {
+				_politeness.add(pld);
+			}
+		}
+		_activePlds.set(_politeness.size());
 		
 		// now just forgets what's happened in the previous round; means that we might
 		// starve of URIs but helps the crawler move on
@@ -189,90 +216,93 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 		_time = System.currentTimeMillis();
 
-		_log.info("scheduling " + _current.size() + " plds done (" + size()
+		_log.info("scheduling " + _politeness.size() + " plds done (" + size()
 				+ " URIs) in " + (_time - time) + " ms. This was schedule No. "
 				+ _scheduledFrontiers);
 		_log.info(toString());
+		_log.info(_pldStats.toString());
 	}
 		
 	/**
-	 * Poll a URI, one PLD after another. If queue turnaround is smaller than
-	 * DELAY, wait for DELAY ms to avoid overloading servers. Note that if there
-	 * are redirects to be processed, they are already returned by
-	 * {@link RedirectsFavouringSpiderQueue}. If {@link #_minActPlds} is used (>-1),
-	 * plds with many URIs are not favoured, otherwise they are.
+	 * Poll a URI from a PLD that has not been accessed for DELAY ms. If no PLD
+	 * is eligible, wait for the next one, without holding the lock. Note that
+	 * if there are redirects to be processed, they are already returned by
+	 * {@link RedirectsFavouringSpiderQueue}. If {@link #_minActPlds} is used
+	 * (>-1), plds with many URIs are not favoured, otherwise they are.
 	 * 
 	 * @return URI
 	 */
-	protected synchronized URI pollInternal() {
-		if (_current == null) {
-			return null;
+	protected URI pollInternal() {
+		_lock.lock();
+		try {
+			return pollLocked();
+		} finally {
+			_lock.unlock();
 		}
+	}
+	
+	private URI pollLocked() {
+		long time = System.currentTimeMillis();
 		
 		URI next = null;
 		
-		long time = System.currentTimeMillis();
-		
-		int empty = 0;
-
-		long time1 = 0l;
-
-		do {	
-			time1 = System.currentTimeMillis();
-
-			// randomly start from the beginning of the queue to spread out lookupt to large sites
-			if (_current.isEmpty() || (_minActPlds < 0 && (time1 - _time) > CrawlerConstants.MAX_DELAY))
-			{                       // ^^ only consider max delay if minActPLDs is disabled 
-				// queue is empty, done for this round
-				if (size() == 0) {
-					return null;
-				}
-							
-				if ((time1 - _time) < CrawlerConstants.MIN_DELAY) {
-					try {
-						_log.info("delaying queue " + CrawlerConstants.MIN_DELAY + " ms ...");
-						Thread.sleep(CrawlerConstants.MIN_DELAY);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				
-				_log.info("queue turnaround in " + (time1-_time) + " ms");
-
-				_time = System.currentTimeMillis();
-
-				List<String> lipld = getQueuePlds(_minActPlds < 0);
-				
-				_current.addAll(lipld);
-				
-				if (_minActPlds > -1 && _current.size() < _minActPlds && (_minActPldsAlready4Seedlist || _scheduledFrontiers > 1)) {
-					_log.info("The minimum number of active PLDs has been reached. Finishing this round...");
-					_minReached = true;
-				}
+		while (next == null) {
+			if (_minReached) {
+				return null;
 			}
-
-			if (_minReached)
+			
+			if (_politeness.isEmpty()) {
+				// queue is empty, done for this round; plds of URIs added
+				// since schedule() have been added to the scheduler
 				return null;
+			}
+			
+			if (_minActPlds > -1 && _activePlds.get() < _minActPlds && (_minActPldsAlready4Seedlist || _scheduledFrontiers > 1)) {
+				_log.info("The minimum number of active PLDs has been reached. Finishing this round...");
+				_minReached = true;
+				return null;
+			}
+			
+			long time1 = System.currentTimeMillis();
+			
+			String pld = _politeness.next(time1);
+			
+			if (pld == null) {
+				long wait = _politeness.untilNext(time1);
+				_log.fine("no pld eligible, waiting " + wait + " ms ...");
+				try {
+					// releases the lock while waiting
+					_eligible.await(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				continue;
+			}
 			
-			String pld = _current.poll();
 			Queue<URI> q = _queues.get(pld);
 			
-			if (q != null && !q.isEmpty()) {
+			while (next == null && q != null && !q.isEmpty()) {
 				next = q.poll();
+				_queued.decrementAndGet();
+				_index.decrement(pld);
 				
 				if (checkSeen(next)) {
 					next = null;
 				} else {			
 					setSeen(next);
 				}
-			} else {
-				empty++;
 			}
-		} while (next == null && empty < _queues.size());
-		
-		time1 = System.currentTimeMillis();
+			
+			if (q != null && !q.isEmpty()) {
+				_politeness.add(pld);
+				prefetch(q.peek());
+			} else if (q != null) {
+				_queues.remove(pld);
+				_activePlds.decrementAndGet();
+			}
+		}
 		
-		_log.fine("poll for " + next + " done in " + (time1 - time) + " ms");
+		_log.fine("poll for " + next + " done in " + (System.currentTimeMillis() - time) + " ms");
 
 		return next;
 	}
@@ -282,6 +312,10 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 	}
 	
 	List<String> getQueuePlds(boolean sorted) {
+		if (sorted) {
+			return _index.getPlds();
+		}
+		
 		List<String> li = new ArrayList<String>();
 
 		for (String pld : _queues.keySet()) {
@@ -289,8 +323,6 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 				li.add(pld);
 			}
 		}
-		if (sorted)
-			Collections.sort(li, new PldCountComparator(_queues));
 
 		return li;
 	}
@@ -303,7 +335,18 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 	 *            if the URI has already been frontier.normalise()d or
 	 *            frontier.process()ed.
 	 */
-	public synchronized void add(URI u, boolean uriHasAlreadyBeenProcessed) {
+	public void add(URI u, boolean uriHasAlreadyBeenProcessed) {
+		resolveGroup(u);
+		
+		_lock.lock();
+		try {
+			addLocked(u, uriHasAlreadyBeenProcessed);
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private void addLocked(URI u, boolean uriHasAlreadyBeenProcessed) {
 		if (!uriHasAlreadyBeenProcessed)
 			try {
 				u = Frontier.normalise(u);
@@ -312,27 +355,24 @@ public class BreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 				return;
 			}
 
-		String pld = _tldm.getPLD(u);
+		// the pld or, if set, the politeness group
+		String pld = getGroup(u);
 		if (pld != null) {
 			Queue<URI> q = _queues.get(pld);
 			if (q == null) {
-				q = new ConcurrentLinkedQueue<URI>();
+				q = new LinkedList<URI>();
 				_queues.put(pld, q);
-				// _current.add(pld);
+			}
+			if (q.isEmpty()) {
+				_politeness.add(pld);
+				_activePlds.incrementAndGet();
+				_eligible.signalAll();
 			}
 			q.add(u);
+			_queued.incrementAndGet();
+			_index.increment(pld);
 		}
 	}
-
-	public int size() {
-		int size = super.size();
-		
-		for (Queue<URI> q : _queues.values()) {
-			size += q.size();
-		}
-		
-		return size;
-	}
 	
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
@@ -0,0 +1,371 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.frontier.LinkListener;
+
+/**
+ * A queue for crawling without rounds. Links are queued as soon as they are
+ * found (the queue is registered as {@link LinkListener} with the frontier),
+ * with the depth of the document they have been found in plus one. Seeds
+ * have depth 0.
+ *
+ * The limits of the breadth-first crawl apply per URI: URIs deeper than the
+ * maximum depth are dropped, as are URIs beyond the maximum number of URIs
+ * per pay-level domain and depth, and URIs of pay-level domains beyond the
+ * maximum number of pay-level domains.
+ *
+ * Pay-level domains are polled by a {@link PolitenessScheduler}, each at most
+ * once per {@link CrawlerConstants#MIN_DELAY} ms. {@link #poll()} blocks while no
+ * pay-level domain is ready, and while the queue is empty but lookups are
+ * still in progress (which might add links); it returns <code>null</code>
+ * once the queue is empty and all lookups have {@link #finished(URI)}.
+ */
+public class ContinuousQueue extends RedirectsFavouringSpiderQueue implements LinkListener {
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger _log = Logger.getLogger(ContinuousQueue.class.getName());
+
+	int _maxdepth;
+	int _maxuris;
+	int _maxplds;
+
+	Map<String, Queue<URI>> _queues;
+
+	/**
+	 * Pay-level domains with URIs in the queue, by the time they may be
+	 * polled next.
+	 */
+	PolitenessScheduler _politeness;
+
+	/**
+	 * Number of URIs queued per pay-level domain and depth.
+	 */
+	Map<String, int[]> _counts;
+
+	/**
+	 * Depth of the URIs queued or being looked up. A URI is dropped once its
+	 * lookup has finished and its links have been queued; from then on, the
+	 * seen set keeps it from being queued again.
+	 */
+	Map<URI, Integer> _depths;
+
+	int _inFlight;
+
+	/**
+	 * Signalled when URIs are added or lookups finish.
+	 */
+	Condition _changed;
+
+	/**
+	 * @param tldm
+	 * @param redirs
+	 * @param maxdepth maximum depth, seeds have depth 0
+	 * @param maxuris maximum number of URIs per pay-level domain and depth, -1 for no limit
+	 * @param maxplds maximum number of pay-level domains, -1 for no limit
+	 */
+	public ContinuousQueue(TldManager tldm, Redirects redirs, int maxdepth, int maxuris, int maxplds) {
+		super(tldm, redirs);
+
+		_maxdepth = maxdepth;
+
+		_maxuris = maxuris;
+		if (_maxuris == -1) {
+			_maxuris = Integer.MAX_VALUE;
+		}
+
+		_maxplds = maxplds;
+		if (_maxplds == -1) {
+			_maxplds = Integer.MAX_VALUE;
+		}
+
+		_queues = new HashMap<String, Queue<URI>>();
+		_politeness = new PolitenessScheduler(CrawlerConstants.MIN_DELAY);
+		_politeness.setStatistics(_pldStats);
+		_counts = new HashMap<String, int[]>();
+		_depths = new HashMap<URI, Integer>();
+
+		_inFlight = 0;
+
+		_changed = _lock.newCondition();
+	}
+
+	public void setMinDelay(long delay) {
+		_lock.lock();
+		try {
+			_politeness.setDelay(delay);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues the URIs of the frontier as seeds (depth 0).
+	 */
+	public void schedule(Frontier f) {
+		_lock.lock();
+		try {
+			int n = 0;
+			for (URI u : f) {
+				if (add(u, 0)) {
+					n++;
+				}
+			}
+			_log.info("scheduled " + n + " seeds from " + _queues.size() + " plds");
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void add(URI u, boolean uriHasAlreadyBeenProcessed) {
+		if (!uriHasAlreadyBeenProcessed) {
+			try {
+				u = Frontier.normalise(u);
+			} catch (URISyntaxException e) {
+				_log.info(u +  " not parsable, skipping " + u);
+				return;
+			}
+		}
+
+		add(u, 0);
+	}
+
+	public void linkFound(URI u, URI from) {
+		_lock.lock();
+		try {
+			Integer depth = from == null ? null : _depths.get(from);
+			if (depth == null) {
+				_log.fine("depth of " + from + " unknown, skipping " + u);
+				return;
+			}
+			add(u, depth.intValue() + 1);
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a URI, unless it has been queued before or is beyond the limits.
+	 *
+	 * @param u a normalised URI
+	 * @param depth
+	 * @return true if the URI has been queued
+	 */
+	boolean add(URI u, int depth) {
+		_lock.lock();
+		try {
+			if (depth > _maxdepth || _depths.containsKey(u) || checkSeen(u)) {
+				return false;
+			}
+
+			String pld = _tldm.getPLD(u);
+			if (pld == null) {
+				return false;
+			}
+
+			int[] counts = _counts.get(pld);
+			if (counts == null) {
+				if (_counts.size() >= _maxplds) {
+					return false;
+				}
+				counts = new int[_maxdepth + 1];
+				_counts.put(pld, counts);
+			}
+			if (counts[depth] >= _maxuris) {
+				return false;
+			}
+			counts[depth]++;
+
+			Queue<URI> q = _queues.get(pld);
+			if (q == null) {
+				q = new LinkedList<URI>();
+				_queues.put(pld, q);
+			}
+			if (q.isEmpty()) {
+				_activePlds.incrementAndGet();
+			}
+			q.add(u);
+			_politeness.add(pld);
+
+			_depths.put(u, Integer.valueOf(depth));
+			_queued.incrementAndGet();
+
+			_changed.signalAll();
+
+			return true;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * The target of a redirect gets the depth of the redirecting URI.
+	 */
+	public void setRedirect(URI from, URI to, int status) {
+		_lock.lock();
+		try {
+			Integer depth = _depths.get(from);
+			if (depth != null) {
+				try {
+					URI norm = Frontier.normalise(to);
+					// a target that has been seen is not looked up again
+					if (!_depths.containsKey(norm) && !checkSeen(norm)) {
+						_depths.put(norm, depth);
+					}
+				} catch (URISyntaxException e) {
+					;
+				}
+			}
+			super.setRedirect(from, to, status);
+			_changed.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the depth of a URI that is queued or being looked up.
+	 *
+	 * @param u
+	 * @return the depth or -1 if the URI is not queued (anymore)
+	 */
+	public int getDepth(URI u) {
+		_lock.lock();
+		try {
+			Integer depth = _depths.get(u);
+			return depth == null ? -1 : depth.intValue();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Polls a URI, waiting for a pay-level domain to become ready or for
+	 * running lookups to add links if necessary.
+	 *
+	 * @return the URI or <code>null</code> if the crawl is done
+	 */
+	public URI poll() {
+		_lock.lock();
+		try {
+			while (true) {
+				URI u = super.poll();
+				if (u != null) {
+					_inFlight++;
+					return u;
+				}
+
+				if (_inFlight == 0 && size() == 0) {
+					return null;
+				}
+
+				try {
+					_changed.await(untilReady(), TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					_log.info(e.getMessage());
+				}
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * @return time in ms until the next pay-level domain is ready
+	 */
+	long untilReady() {
+		long wait = _politeness.untilNext(System.currentTimeMillis());
+		if (wait < 0) {
+			// only lookups in progress, which signal when they finish
+			wait = _politeness.getDelay();
+		}
+
+		return Math.max(wait, 1);
+	}
+
+	protected URI pollInternal() {
+		_lock.lock();
+		try {
+			long now = System.currentTimeMillis();
+
+			String pld;
+			while ((pld = _politeness.next(now)) != null) {
+				Queue<URI> q = _queues.get(pld);
+
+				URI next = null;
+				while (next == null && !q.isEmpty()) {
+					next = q.poll();
+					_queued.decrementAndGet();
+					if (checkSeen(next)) {
+						next = null;
+					}
+				}
+
+				if (!q.isEmpty()) {
+					_politeness.add(pld);
+					prefetch(q.peek());
+				} else {
+					_activePlds.decrementAndGet();
+				}
+
+				if (next != null) {
+					setSeen(next);
+					return next;
+				}
+			}
+
+			return null;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public void finished(URI u) {
+		_lock.lock();
+		try {
+			_depths.remove(u);
+			_inFlight--;
+			_changed.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	public String toString() {
+		_lock.lock();
+		try {
+			StringBuilder sb = new StringBuilder();
+
+			for (Map.Entry<String, Queue<URI>> e : _queues.entrySet()) {
+				if (e.getValue().isEmpty()) {
+					continue;
+				}
+				sb.append(e.getKey());
+				sb.append(": ");
+				sb.append(e.getValue().size());
+				sb.append("\n");
+			}
+			sb.append("Plus ");
+			sb.append(_redirectsQueue.size());
+			sb.append(" redirects, ");
+			sb.append(_inFlight);
+			sb.append(" lookups in progress.\n");
+
+			return sb.toString();
+		} finally {
+			_lock.unlock();
+		}
+	}
+}
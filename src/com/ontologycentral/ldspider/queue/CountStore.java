@@ -0,0 +1,207 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * Counts per URI that outlive a round, e.g. the number of links to a URI
+ * over the whole crawl (see {@link DiskBreadthFirstQueue.CountLifeTime}).
+ *
+ * The counts are kept by {@link Fingerprint} in an open-addressing hash
+ * table with linear probing in a file. A slot is the fingerprint (8 bytes)
+ * followed by the count (4 bytes); a free slot is all zero. The file is
+ * mapped page by page, so that an increment changes the slot in place and a
+ * round only touches the URIs of the round. When the table is filled beyond
+ * {@link #MAX_LOAD}, it is rehashed into a file of twice the size.
+ *
+ * Not thread-safe.
+ */
+public class CountStore {
+	private static final Logger _log = Logger.getLogger(CountStore.class.getName());
+
+	public static final long DEFAULT_CAPACITY = 1 << 20;
+
+	static final double MAX_LOAD = 0.7;
+
+	static final int SLOT = 12;
+
+	/**
+	 * Slots per mapped page.
+	 */
+	static final int PAGE_SLOTS = 1 << 20;
+
+	static final String PREFIX = "ldspider-counts";
+	static final String SUFFIX = ".cnt";
+
+	File _dir;
+	File _file;
+	RandomAccessFile _raf;
+	MappedByteBuffer[] _pages;
+
+	long _capacity;
+	long _size;
+
+	public CountStore() throws IOException {
+		this(null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param dir directory for the file, <code>null</code> for the default
+	 *        temporary directory
+	 * @param capacity initial number of slots, rounded up to a power of two
+	 */
+	public CountStore(File dir, long capacity) throws IOException {
+		_dir = dir;
+
+		long c = 1;
+		while (c < capacity) {
+			c <<= 1;
+		}
+
+		open(c);
+		_size = 0;
+	}
+
+	void open(long capacity) throws IOException {
+		_file = File.createTempFile(PREFIX, SUFFIX, _dir);
+		_file.deleteOnExit();
+		_raf = new RandomAccessFile(_file, "rw");
+		_capacity = capacity;
+
+		int pages = (int)((capacity + PAGE_SLOTS - 1) / PAGE_SLOTS);
+		_pages = new MappedByteBuffer[pages];
+
+		FileChannel ch = _raf.getChannel();
+		for (int i = 0; i < pages; i++) {
+			long slots = Math.min(PAGE_SLOTS, capacity - (long)i * PAGE_SLOTS);
+			// mapping beyond the end grows the file, with zeros
+			_pages[i] = ch.map(FileChannel.MapMode.READ_WRITE, (long)i * PAGE_SLOTS * SLOT, slots * SLOT);
+		}
+	}
+
+	static long fingerprint(URI u) {
+		long fp = Fingerprint.fingerprint(u);
+		return fp == 0 ? FingerprintSeenSet.ZERO : fp;
+	}
+
+	/**
+	 * Adds to the count of a URI.
+	 *
+	 * @return the new count
+	 */
+	public int add(URI u, int count) throws IOException {
+		if (_size + 1 > _capacity * MAX_LOAD) {
+			grow();
+		}
+
+		long fp = fingerprint(u);
+		long slot = find(fp);
+
+		MappedByteBuffer page = _pages[(int)(slot / PAGE_SLOTS)];
+		int pos = (int)(slot % PAGE_SLOTS) * SLOT;
+
+		if (page.getLong(pos) == 0) {
+			page.putLong(pos, fp);
+			_size++;
+		}
+		int total = page.getInt(pos + 8) + count;
+		page.putInt(pos + 8, total);
+
+		return total;
+	}
+
+	/**
+	 * @return the count of the URI, 0 if it has none
+	 */
+	public int get(URI u) {
+		long fp = fingerprint(u);
+		long slot = find(fp);
+
+		MappedByteBuffer page = _pages[(int)(slot / PAGE_SLOTS)];
+		int pos = (int)(slot % PAGE_SLOTS) * SLOT;
+
+		return page.getInt(pos + 8);
+	}
+
+	/**
+	 * @return the slot of the fingerprint, or the free slot where it goes
+	 */
+	long find(long fp) {
+		long mask = _capacity - 1;
+		for (long slot = fp & mask; ; slot = (slot + 1) & mask) {
+			long v = _pages[(int)(slot / PAGE_SLOTS)].getLong((int)(slot % PAGE_SLOTS) * SLOT);
+			if (v == fp || v == 0) {
+				return slot;
+			}
+		}
+	}
+
+	void grow() throws IOException {
+		long time = System.currentTimeMillis();
+
+		MappedByteBuffer[] old = _pages;
+		File oldFile = _file;
+		RandomAccessFile oldRaf = _raf;
+		long oldCapacity = _capacity;
+
+		open(oldCapacity * 2);
+
+		for (long slot = 0; slot < oldCapacity; slot++) {
+			MappedByteBuffer page = old[(int)(slot / PAGE_SLOTS)];
+			int pos = (int)(slot % PAGE_SLOTS) * SLOT;
+			long fp = page.getLong(pos);
+			if (fp != 0) {
+				long s = find(fp);
+				MappedByteBuffer p = _pages[(int)(s / PAGE_SLOTS)];
+				int ps = (int)(s % PAGE_SLOTS) * SLOT;
+				p.putLong(ps, fp);
+				p.putInt(ps + 8, page.getInt(pos + 8));
+			}
+		}
+
+		oldRaf.close();
+		if (!oldFile.delete()) {
+			_log.warning("cannot delete " + oldFile);
+		}
+
+		_log.info("grew count store to " + _capacity + " slots in " + (System.currentTimeMillis() - time) + " ms");
+	}
+
+	/**
+	 * @return number of URIs with a count
+	 */
+	public long size() {
+		return _size;
+	}
+
+	/**
+	 * @return bytes of the file
+	 */
+	public long getFileSize() {
+		return _capacity * SLOT;
+	}
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	public void close() {
+		try {
+			_raf.close();
+		} catch (IOException e) {
+			_log.warning(e.getMessage());
+		}
+		_pages = null;
+		if (!_file.delete()) {
+			_log.warning("cannot delete " + _file);
+		}
+	}
+
+	public String toString() {
+		return _size + " counts in " + _capacity + " slots";
+	}
+}
@@ -1,37 +1,22 @@
 package com.ontologycentral.ldspider.queue;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.net.URI;
-import java.util.Collection;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.logging.Logger;
 
-import org.semanticweb.yars.nx.Literal;
-import org.semanticweb.yars.nx.Node;
-import org.semanticweb.yars.nx.NodeComparator;
-import org.semanticweb.yars.nx.NodeComparator.NodeComparatorArgs;
-import org.semanticweb.yars.nx.Resource;
 import org.semanticweb.yars.nx.parser.Callback;
-import org.semanticweb.yars.nx.parser.NxParser;
-import org.semanticweb.yars.nx.parser.ParseException;
-import org.semanticweb.yars.nx.sort.SortIterator;
-import org.semanticweb.yars.nx.sort.SortIterator.SortArgs;
 import org.semanticweb.yars.tld.TldManager;
-import org.semanticweb.yars.util.CallbackNxBufferedWriter;
-import org.semanticweb.yars.util.Node2uriConvertingIterator;
-import org.semanticweb.yars.util.PeekingIterator;
-import org.semanticweb.yars.util.PleaseCloseTheDoorWhenYouLeaveIterator;
 
 import com.ontologycentral.ldspider.CrawlerConstants;
 import com.ontologycentral.ldspider.frontier.Frontier;
@@ -49,33 +34,45 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 	private static final Logger _log = Logger
 			.getLogger(DiskBreadthFirstQueue.class.getName());
 
-	private static final String BASE_TEMP_FILENAME = "ldspider-diskBreadthFirstQueueTmp";
-	private static final String TEMP_FILENAME_SORTED = BASE_TEMP_FILENAME
-			+ "Sorted";
-	private static final String ETERNAL_BASE_TEMP_FILENAME = BASE_TEMP_FILENAME
-			+ "EternalCounts";
-
-	private static final String TEMPFILE_SUFFIX = ".nx";
-
-	private static final String COUNT1FULLSTOP = "\"1\" .";
-	private static final short _two = 2;
+	/**
+	 * Number of URIs of the frontier checked against the seen set at once.
+	 */
+	static final int SEEN_BATCH = 100000;
 
 	public static enum CountLifeTime {
 		ONE_HOP, ETERNALLY
 	}
 
-	Map<String, File> _files;
-	Map<String, NxParser> _nxps;
-	Set<BufferedReader> _brs;
+	/**
+	 * Sorts the URIs of the round by pld and count.
+	 */
+	ExternalSorter _sorter;
+
+	/**
+	 * The URIs of the round by pld, sorted by count.
+	 */
+	SegmentStore _segments;
 
 	private final CountLifeTime _lifeTimeOfCounts;
 
 	private boolean _isScheduled;
 	private boolean _noURIsLeft;
 
-	private File _eternalFileCounts;
+	/**
+	 * The counts of all rounds, if counts live eternally.
+	 */
+	private CountStore _eternalCounts;
+
+	/**
+	 * The plds with URIs left, by the time they may be accessed next.
+	 */
+	PolitenessScheduler _politeness;
 
-	private Iterator<URI> _it4poll;
+	/**
+	 * Used to wait for the next pld to become eligible without holding the
+	 * lock.
+	 */
+	Condition _eligible;
 
 	int _minimumActivePlds;
 	int _scheduledFrontiers;
@@ -88,36 +85,27 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 	BufferedWriter _frontierDumper;
 
-	NodeComparator _nc;
-
-	private int _noOfUris;
-
 	public DiskBreadthFirstQueue(TldManager tldm, Redirects redirs,
 			int minimumActivePLDs) {
 		super(tldm, redirs);
 		_isScheduled = false;
 		_scheduledFrontiers = 0;
-		_noOfUris = 0;
 		_noURIsLeft = false;
-		_it4poll = null;
-		_nxps = null;
-		_brs = new HashSet<BufferedReader>();
-		_files = new HashMap<String, File>();
+		_politeness = new PolitenessScheduler(CrawlerConstants.MIN_DELAY);
+		_politeness.setStatistics(_pldStats);
+		_eligible = _lock.newCondition();
+		_segments = new SegmentStore(null, SegmentStore.DEFAULT_SEGMENT_SIZE);
 		_minimumActivePlds = minimumActivePLDs;
 
-		NodeComparatorArgs nca = new NodeComparatorArgs();
-		nca.setOrder(NodeComparatorArgs.getIntegerMask("10"));
-		nca.setReverse(NodeComparatorArgs.getBooleanMask("1"));
-		nca.setNumeric(NodeComparatorArgs.getBooleanMask("1"));
-		_nc = new NodeComparator(nca);
+		// the seen URIs go to disk, too
+		_seen = new TieredSeenSet();
 
 		_lifeTimeOfCounts = CrawlerConstants.DISKBREADTHFIRSTQUEUE_COUNTLIFETIME;
 		if (_lifeTimeOfCounts == CountLifeTime.ETERNALLY) {
 			try {
-				_eternalFileCounts = File.createTempFile(
-						ETERNAL_BASE_TEMP_FILENAME, TEMPFILE_SUFFIX);
+				_eternalCounts = new CountStore();
 			} catch (IOException e) {
-				_log.warning("could not create eternal temp file");
+				_log.warning("could not create eternal count store");
 			}
 		}
 		try {
@@ -127,16 +115,17 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 		}
 	}
 
-	private int calculateCurrentlyActivePlds() {
-		int activePlds = 0;
-		for (NxParser nx : _nxps.values())
-			if (nx.hasNext())
-				++activePlds;
-		return activePlds;
-	}
-
 	@Override
-	protected synchronized URI pollInternal() {
+	protected URI pollInternal() {
+		_lock.lock();
+		try {
+			return pollLocked();
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private URI pollLocked() {
 		long time0 = System.currentTimeMillis();
 
 		if (_noURIsLeft)
@@ -146,38 +135,70 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 			throw new IllegalStateException("No frontier scheduled");
 
 		if (_minimumActivePlds > -1
-				&& _minimumActivePlds > calculateCurrentlyActivePlds()
+				&& _minimumActivePlds > _activePlds.get()
 				&& _scheduledFrontiers > 1) {
 			_log.info("The minimum number of active PLDs has been reached. Finishing this round...");
 			return null;
 		}
 
-		if (_it4poll == null)
-			_it4poll = new Node2uriConvertingIterator(
-					new PoliteRoundRobinIterator(_nxps.values()), 0);
+		while (!_politeness.isEmpty()) {
+			long now = System.currentTimeMillis();
+			String pld = _politeness.next(now);
+
+			if (pld == null) {
+				long wait = _politeness.untilNext(now);
+				_log.fine("no pld eligible, waiting " + wait + " ms ...");
+				try {
+					// releases the lock while waiting
+					_eligible.await(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				continue;
+			}
 
-		if (_it4poll.hasNext()) {
-			URI next = _it4poll.next();
+			String uri = _segments.next(pld);
+			if (uri == null) {
+				_activePlds.decrementAndGet();
+				continue;
+			}
+
+			if (_segments.hasNext(pld)) {
+				_politeness.add(pld);
+			} else {
+				_activePlds.decrementAndGet();
+			}
+
+			_queued.decrementAndGet();
+
+			URI next;
+			try {
+				next = new URI(uri);
+			} catch (URISyntaxException e) {
+				_log.info(uri + " not parsable, skipping");
+				continue;
+			}
+
+			// e.g. the target of a redirect polled in the meantime
+			if (checkSeen(next)) {
+				continue;
+			}
+			setSeen(next);
 
-			--_noOfUris;
 			_time = System.currentTimeMillis();
 
 			_log.fine("poll for " + next + " done in " + (_time - time0)
 					+ " ms");
 			return next;
-		} else {
-			_log.info("last uri polled, closing this hop...");
-			_noURIsLeft = true;
-			_isScheduled = false;
-
-			_nxps.clear();
-			_it4poll = null;
+		}
 
-			clear();
+		_log.info("last uri polled, closing this hop...");
+		_noURIsLeft = true;
+		_isScheduled = false;
 
-			return null;
-		}
+		clear();
 
+		return null;
 	}
 
 	@Override
@@ -227,40 +248,42 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 				e2.printStackTrace();
 			}
 
-		Map<String, File> sortedFiles = new HashMap<String, File>(_files.size());
-		if (_nxps == null)
-			_nxps = new HashMap<String, NxParser>(_files.size());
-		else
-			_nxps.clear();
-
-		for (Entry<String, File> e : _files.entrySet()) {
-			sortedFiles
-					.put(e.getKey(),
-							sort(TEMP_FILENAME_SORTED + "-" + e.getKey(),
-									e.getValue()));
-		}
+		long time1 = System.currentTimeMillis();
+		long time2 = time1;
 
-		_files.clear();
-		_files = sortedFiles;
+		try {
+			Iterator<ExternalSorter.Record> sorted = _sorter.sorted();
+			time2 = System.currentTimeMillis();
 
-		BufferedReader br = null;
-		for (Entry<String, File> e : _files.entrySet()) {
-			try {
-				e.getValue().deleteOnExit();
-				br = new BufferedReader(new FileReader(e.getValue()));
-				_nxps.put(e.getKey(), new NxParser(br));
-				_brs.add(br);
-			} catch (FileNotFoundException e1) {
-				_log.warning(e1.getLocalizedMessage());
-			} catch (Exception e3) {
-				e3.printStackTrace();
+			// straight from the merge into the segments
+			while (sorted.hasNext()) {
+				ExternalSorter.Record r = sorted.next();
+				_segments.append(r.getPld(), r.getUri());
 			}
+			_segments.finish();
+		} catch (IOException e) {
+			_log.warning("could not write segments: " + e.getLocalizedMessage());
+		} finally {
+			_sorter.close();
 		}
+
+		long time3 = System.currentTimeMillis();
+
+		_log.info("wrote " + _sorter.getCount() + " uris in " + (time1 - _time)
+				+ " ms, sorted " + _sorter.getRuns() + " runs in "
+				+ (time2 - time1) + " ms (" + _sorter.getRunTime()
+				+ " ms in sorting threads), merged into segments in "
+				+ (time3 - time2) + " ms");
+
 		f.reset();
-		_it4poll = null;
+		_politeness.clear();
+		for (String pld : _segments.getPlds()) {
+			_politeness.add(pld);
+		}
+		_activePlds.set(_politeness.size());
 		_isScheduled = true;
 
-		_log.info("scheduling " + _nxps.size() + " plds done (" + size()
+		_log.info("scheduling " + _activePlds.get() + " plds in " + _segments.getSegments() + " segments done (" + size()
 				+ " URIs) in " + (System.currentTimeMillis() - _time)
 				+ " ms. This was schedule No. " + _scheduledFrontiers + ".");
 	}
@@ -269,6 +292,10 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 		Map<String, Callback> callbacks = new HashMap<String, Callback>();
 
+		// distinct URIs in sorted order and their counts
+		List<URI> uris = new ArrayList<URI>(SEEN_BATCH);
+		int[] counts = new int[SEEN_BATCH];
+
 		URI currentURI = null;
 		URI prevURI = null;
 
@@ -283,19 +310,20 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 				if (currentURI.equals(prevURI))
 					++currentCount;
 				else {
-					if (!checkSeen(prevURI)) {
-						++_noOfUris;
-						_writer.writeOut(prevURI, currentCount);
-					}
+					counts[uris.size()] = currentCount;
+					uris.add(prevURI);
+					if (uris.size() == SEEN_BATCH)
+						writeOutUnseen(uris, counts);
 					currentCount = 1;
 				}
 		}
 
 		// the last one if there was one at all:
-		if (currentURI != null && !checkSeen(currentURI)) {
-			++_noOfUris;
-			_writer.writeOut(currentURI, currentCount);
+		if (currentURI != null) {
+			counts[uris.size()] = currentCount;
+			uris.add(currentURI);
 		}
+		writeOutUnseen(uris, counts);
 
 		// close all callbacks
 		for (Callback c : callbacks.values()) {
@@ -306,8 +334,19 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 	}
 
-	public int size() {
-		return super.size() + _noOfUris;
+	/**
+	 * Writes out the URIs of a batch that have not been seen, and clears the
+	 * batch.
+	 */
+	private void writeOutUnseen(List<URI> uris, int[] counts) {
+		boolean[] seen = checkSeen(uris);
+		for (int i = 0; i < seen.length; i++) {
+			if (!seen[i]) {
+				_queued.incrementAndGet();
+				_writer.writeOut(uris.get(i), counts[i]);
+			}
+		}
+		uris.clear();
 	}
 
 	private class Writer {
@@ -320,44 +359,12 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 		int _currentCount;
 
-		Map<String, Callback> _callbacks;
-
-		PeekingIterator<Node[]> _eternal;
-		File _newEternalCountsFile = null;
-		Callback _newEternalCountsCB = null;
-
 		public Writer() {
-			_callbacks = new HashMap<String, Callback>();
+			_sorter = new ExternalSorter(null, ExternalSorter.DEFAULT_BATCH,
+					Runtime.getRuntime().availableProcessors());
 			_countLifeTime = _lifeTimeOfCounts;
 			_currentCount = 1;
 			_stateFinished = false;
-
-			if (_countLifeTime == CountLifeTime.ETERNALLY) {
-				BufferedReader br = null;
-				try {
-					br = new BufferedReader(new FileReader(_eternalFileCounts));
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
-				_eternal = new PeekingIterator<Node[]>(
-						new PleaseCloseTheDoorWhenYouLeaveIterator<Node[]>(
-								new NxParser(br), br));
-				// if (_eternal.hasNext())
-				// _current = _eternal.next();
-				// else
-				// _eternalEmptyAndFirstUriNotYetProcessed = true;
-
-				try {
-					_newEternalCountsFile = File.createTempFile(
-							ETERNAL_BASE_TEMP_FILENAME, TEMPFILE_SUFFIX);
-					_newEternalCountsFile.deleteOnExit();
-					_newEternalCountsCB = new CallbackNxBufferedWriter(
-							new BufferedWriter(new FileWriter(
-									_newEternalCountsFile)), true);
-				} catch (IOException e) {
-					_log.warning("Could not create new temp file for eternal counts.");
-				}
-			}
 		}
 
 		private void writeOut(URI u, int i) {
@@ -378,106 +385,25 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 
 			String currentPLD = _tm.getPLD(u);
 
-			Callback cb = null;
+			if (currentPLD == null)
+				return;
 
-			if ((cb = _callbacks.get(currentPLD)) == null) {
+			switch (_countLifeTime) {
+			case ETERNALLY:
 				try {
-					File file = File.createTempFile(BASE_TEMP_FILENAME + "-"
-							+ currentPLD, ".nx");
-					file.deleteOnExit();
-					cb = new CallbackNxBufferedWriter(new BufferedWriter(
-							new FileWriter(file)), true);
-					_callbacks.put(currentPLD, cb);
-					_files.put(currentPLD, file);
+					i = _eternalCounts.add(u, i);
 				} catch (IOException e) {
-					_log.warning(e.getLocalizedMessage()
-							+ " while creating file for pld "
-							+ currentPLD
-							+ " ("
-							+ _files.size()
-							+ " files for plds overall at the moment in this queue).");
-					e.printStackTrace();
+					_log.warning("could not add to eternal counts: " + e.getLocalizedMessage());
 				}
-			}
-
-			switch (_countLifeTime) {
-			case ETERNALLY:
-				i = determineEternalCountAndWriteToEternal(u, i);
 			default:
-				cb.processStatement(new Node[] { new Resource(u),
-						new Literal(Integer.toString(i)) });
-				break;
-			}
-
-		}
-
-		private int determineEternalCountAndWriteToEternal(URI u,
-				int itsCountInThisRound) {
-			Node[] prev = null;
-			Node[] current = null;
-
-			// empty eternal or in the previous rounds we got the last one of
-			// it.
-			if (_eternal.peek() == null) {
-				_newEternalCountsCB.processStatement(new Node[] {
-						new Resource(u),
-						new Literal(Integer.toString(itsCountInThisRound)) });
-				return itsCountInThisRound;
-			}
-
-			// insertion of uris before first one in eternal
-			if (((Resource) _eternal.peek()[0]).toURI().compareTo(u) > 0) {
-				_newEternalCountsCB.processStatement(new Node[] {
-						new Resource(u),
-						new Literal(Integer.toString(itsCountInThisRound)) });
-				return itsCountInThisRound;
-			}
-
-			// iterate until eternal ends or uri has been put:
-			while (_eternal.hasNext()) {
-				prev = current;
-				current = _eternal.peek();
-
-				// should only be null if we just started off at the beginning
-				// of eternal or we just went through the next if check:
-				if (prev != null)
-					_newEternalCountsCB.processStatement(prev);
-
-				// if we are AT u in eternal:
-				if (current != null
-						&& ((Resource) current[0]).toURI().equals(u)) {
-					int count = itsCountInThisRound
-							+ Integer
-									.parseInt(((Literal) current[1]).getData());
-					current[1] = new Literal(Integer.toString(count));
-					_newEternalCountsCB.processStatement(current);
-					// to step forward, the object has already been peeked
-					// anyway:
-					_eternal.next();
-					return count;
-				}
-
-				// if there is no entry for u in eternal (we just skipped over
-				// its empty place):
-				if (current != null
-						&& ((Resource) current[0]).toURI().compareTo(u) > 0) {
-					_newEternalCountsCB
-							.processStatement(new Node[] {
-									new Resource(u),
-									new Literal(Integer
-											.toString(itsCountInThisRound)) });
-					return itsCountInThisRound;
+				try {
+					_sorter.add(currentPLD, i, u.toString());
+				} catch (IOException e) {
+					_log.warning("could not write run: " + e.getLocalizedMessage());
 				}
-
-				// to step forward, the object has already been peeked anyway:
-				_eternal.next();
+				break;
 			}
 
-			// if the uri is to be put at the end of the non-empty eternal:
-			_newEternalCountsCB.processStatement(current);
-			_newEternalCountsCB.processStatement(new Node[] { new Resource(u),
-					new Literal(Integer.toString(itsCountInThisRound)) });
-			return itsCountInThisRound;
 		}
 
 		public void finishUp() {
@@ -489,230 +415,23 @@ public class DiskBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
 				writeOut(_currentURI, _currentCount);
 			}
 
-			if (_countLifeTime == CountLifeTime.ETERNALLY) {
-				// copy the rest of the old to the new eternal count list
-				while (_eternal.hasNext())
-					_newEternalCountsCB.processStatement(_eternal.next());
-				_newEternalCountsCB.endDocument();
-				_eternalFileCounts.delete();
-				_eternalFileCounts = _newEternalCountsFile;
-			}
-
-			// close all callbacks
-			for (Callback c : _callbacks.values()) {
-				c.endDocument();
-			}
-
-			_callbacks.clear();
+			if (_countLifeTime == CountLifeTime.ETERNALLY)
+				_log.info("eternal counts: " + _eternalCounts);
 
 			_stateFinished = true;
 		}
 	}
 
-	private File sort(String newBaseFileName, File in) {
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(in));
-
-			// Called very often, so quick check first if there is something to
-			// be sorted at all:
-			br.mark(1024);
-
-			String line1, line2, line3;
-
-			line1 = br.readLine();
-			if ((line2 = br.readLine()) == null) {
-				// only <= one line in file, nothing to be sorted...
-				br.close();
-				_log.info("Finished sort. Sorted 1 with 0 duplicates.");
-				return in;
-			} else if ((line3 = br.readLine()) == null) {
-				if (line1.endsWith(COUNT1FULLSTOP)
-						&& line2.endsWith(COUNT1FULLSTOP)
-						&& line1.compareTo(line2) < 0) {
-					// only two lines, both with count 1 and already sorted
-					br.close();
-					_log.info("Finished sort. Sorted 2 with 0 duplicates.");
-					return in;
-				}
-			} else if (br.readLine() == null) {
-				if (line1.endsWith(COUNT1FULLSTOP)
-						&& line2.endsWith(COUNT1FULLSTOP)
-						&& line3.endsWith(COUNT1FULLSTOP)
-						&& line1.compareTo(line2) < 0
-						&& line2.compareTo(line3) < 0) {
-					// only three lines, all of them with count 1 and already
-					// sorted
-					br.close();
-					_log.info("Finished sort. Sorted 3 with 0 duplicates.");
-					return in;
-				}
-			}
-			// check done, there seems to be something to be sorted, so go on.
-
-			// reset the data structures from the quick check:
-			line1 = null;
-			line2 = null;
-			line3 = null;
-			try {
-				br.reset();
-			} catch (IOException e) {
-				br = new BufferedReader(new FileReader(in));
-			}
-
-			// Code from NxParser's Sort class
-
-			File out = File.createTempFile(newBaseFileName, ".nx");
-			out.deleteOnExit();
-
-			BufferedWriter bw = new BufferedWriter(new FileWriter(out));
-
-			Iterator<Node[]> it = new NxParser(br);
-
-			Callback cb = new CallbackNxBufferedWriter(bw, true);
-
-			SortArgs sa = new SortArgs(it, _two, 10000);
-			sa.setComparator(_nc);
-			sa.setGzipBatches(false);
-
-			SortIterator si = null;
-			try {
-				si = new SortIterator(sa);
-			} catch (ParseException e) {
-				_log.warning(e.getLocalizedMessage());
-			}
-			Iterator<Node[]> iter = si;
-
-			cb.startDocument();
-
-			while (iter.hasNext()) {
-				cb.processStatement(iter.next());
-			}
-
-			cb.endDocument();
-
-			in.delete();
-
-			System.gc();
-
-			_log.info("Finished sort. Sorted " + si.count() + " with "
-					+ si.duplicates() + " duplicates.");
-
-			return out;
-		} catch (IOException e) {
-			_log.warning(e.getLocalizedMessage());
-
-			return in;
-		} catch (Exception e3) {
-			e3.printStackTrace();
-			return in;
-		}
-	}
-
-	private static class PoliteRoundRobinIterator implements Iterator<Node[]> {
-
-		Collection<NxParser> _nxparsers;
-
-		Iterator<NxParser> _nxpIt;
-
-		NxParser _next = null;
-
-		boolean _firstOfNewRound;
-
-		long _time;
-
-		boolean _hasNextCache;
-		boolean _hasNextCacheIsFresh;
-
-		public PoliteRoundRobinIterator(Collection<NxParser> nxparsers) {
-			_nxparsers = nxparsers;
-			_nxpIt = nxparsers.iterator();
-			_time = System.currentTimeMillis();
-			_firstOfNewRound = false;
-			_hasNextCache = false;
-			_hasNextCacheIsFresh = false;
-		}
-
-		public boolean hasNext() {
-			// So that calling hasNext() twice or more often does not
-			// change the state of the iterator:
-			if (!_hasNextCacheIsFresh)
-				_hasNextCache = hasNextInternal();
-			_hasNextCacheIsFresh = true;
-			return _hasNextCache;
-		}
-
-		private boolean hasNextInternal() {
-			if (_nxparsers.isEmpty())
-				return false;
-			boolean thereWasAfullRoundWithoutUris = false;
-			boolean iStartedOverAgain = false;
-
-			while (!thereWasAfullRoundWithoutUris) {
-
-				while (_nxpIt.hasNext()) {
-					_next = _nxpIt.next();
-					if (_next.hasNext())
-						return true;
-				}
-				if (iStartedOverAgain)
-					thereWasAfullRoundWithoutUris = true;
-				_nxpIt = _nxparsers.iterator();
-				_firstOfNewRound = true;
-				iStartedOverAgain = true;
-			}
-			return false;
-		}
-
-		public Node[] next() {
-			_hasNextCacheIsFresh = false;
-			Node[] n = _next.next();
-
-			// Politeness:
-			if (_firstOfNewRound) {
-				if (System.currentTimeMillis() - _time < CrawlerConstants.MIN_DELAY) {
-					_log.info("delaying queue " + CrawlerConstants.MIN_DELAY
-							+ " ms ...");
-					try {
-						Thread.sleep(CrawlerConstants.MIN_DELAY);
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				_log.info("queue turnaround in "
-						+ (System.currentTimeMillis() - _time) + " ms");
-				_time = System.currentTimeMillis();
-			}
-			_firstOfNewRound = false;
-			return n;
-		}
-
-		public void remove() {
-			throw new UnsupportedOperationException();
-		}
-
-	}
-
 	public void clear() {
-		if (_nxps != null && !_nxps.isEmpty())
-			_nxps.clear();
+		_segments.clear();
 
-		if (_brs != null && !_brs.isEmpty())
-			for (BufferedReader br : _brs)
-				try {
-					br.close();
-				} catch (IOException e4) {
-					e4.printStackTrace();
-				}
-
-		if (_files != null && !_files.isEmpty()) {
-			for (File file : _files.values())
-				file.delete();
-			_files.clear();
+		if (_sorter != null) {
+			_sorter.close();
+			_sorter = null;
 		}
 
-		_noOfUris = 0;
-
-		System.gc();
+		_queued.set(0);
+		_activePlds.set(0);
 	}
 
 }
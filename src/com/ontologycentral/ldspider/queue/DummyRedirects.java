@@ -1,22 +1,39 @@
-package com.ontologycentral.ldspider.queue;
-
-import java.net.URI;
-import java.util.logging.Logger;
-
-public class DummyRedirects implements Redirects {
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 1L;
-
-	private final static Logger _log = Logger.getLogger(DummyRedirects.class.getName());
-
-	public void put(URI from, URI to) {
-		return;
-	}
-	
-	public URI getRedirect(URI from) {
-		_log.info("GetRedirect has been called. Returning the from URI.");
-		return from;
-	}
-}
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.util.LRUMapCache;
+
+/**
+ * Does not keep the redirects. The hops are counted for the targets of the
+ * last {@link #RECENT} redirects only, enough for the redirects the threads
+ * follow at a time.
+ */
+public class DummyRedirects implements Redirects {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final static Logger _log = Logger.getLogger(DummyRedirects.class.getName());
+
+	static final int RECENT = 1024;
+
+	LRUMapCache<URI, Integer> _hops = new LRUMapCache<URI, Integer>(RECENT);
+
+	public synchronized void put(URI from, URI to) {
+		Integer i = _hops.get(from);
+		_hops.put(to, Integer.valueOf(i == null ? 1 : i.intValue() + 1));
+	}
+	
+	public URI getRedirect(URI from) {
+		_log.info("GetRedirect has been called. Returning the from URI.");
+		return from;
+	}
+	
+	public synchronized int getHops(URI u) {
+		Integer i = _hops.get(u);
+		return i == null ? 0 : i.intValue();
+	}
+}
@@ -0,0 +1,421 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.ontologycentral.ldspider.frontier.PldDictionary;
+import com.ontologycentral.ldspider.frontier.RecordReader;
+import com.ontologycentral.ldspider.frontier.RecordWriter;
+
+/**
+ * Sorts the URIs of a round of the {@link DiskBreadthFirstQueue} by
+ * pay-level domain, count descending and URI, in one external sort.
+ *
+ * Added records are collected in batches; each full batch is sorted and
+ * written to a run file by a pool of threads while the next batch is
+ * collected. {@link #sorted()} merges the runs with a heap, k-way, and
+ * returns the records in order without writing the result to disk. If all
+ * records fit into one batch, no run is written at all. If there are more
+ * than {@link #MAX_FAN_IN} runs, groups of that many are first merged into
+ * longer runs by the pool, in as many passes as needed, so that the number
+ * of files open at once stays bounded.
+ *
+ * Runs are files of records (see {@link RecordWriter}) with the pay-level
+ * domains as ids of a {@link PldDictionary}.
+ */
+public class ExternalSorter {
+	private static final Logger _log = Logger.getLogger(ExternalSorter.class.getName());
+
+	public static final int DEFAULT_BATCH = 500000;
+
+	/**
+	 * Number of runs merged at once.
+	 */
+	public static final int MAX_FAN_IN = 64;
+
+	static final String PREFIX = "ldspider-diskBreadthFirstQueueRun";
+	static final String SUFFIX = ".run";
+
+	File _dir;
+	int _batchSize;
+	int _fanIn;
+
+	List<Record> _batch;
+	PldDictionary _plds;
+
+	ExecutorService _pool;
+	int _threads;
+	LinkedList<Future<Run>> _pending;
+	List<Run> _runs;
+
+	long _count;
+	int _spilled;
+
+	/**
+	 * Time spent by the threads sorting and writing runs.
+	 */
+	AtomicLong _runTime;
+
+	/**
+	 * @param dir directory for the runs, <code>null</code> for the default
+	 *        temporary directory
+	 * @param batchSize number of records sorted in memory at once
+	 * @param threads number of threads sorting and writing runs
+	 */
+	public ExternalSorter(File dir, int batchSize, int threads) {
+		_dir = dir;
+		_batchSize = batchSize;
+		_fanIn = MAX_FAN_IN;
+		_threads = threads;
+
+		_batch = new ArrayList<Record>();
+		_plds = new PldDictionary();
+		_pending = new LinkedList<Future<Run>>();
+		_runs = new ArrayList<Run>();
+		_runTime = new AtomicLong(0);
+		_count = 0;
+		_spilled = 0;
+	}
+
+	public void add(String pld, int count, String uri) throws IOException {
+		int id = _plds.getId(pld);
+		// the dictionary's instance of the pld, not one per record
+		_batch.add(new Record(_plds.getPld(id), id, count, uri));
+		_count++;
+
+		if (_batch.size() >= _batchSize) {
+			spill();
+		}
+	}
+
+	/**
+	 * Hands the current batch to the pool. At most as many batches as there
+	 * are threads are sorted at a time, which bounds the memory used.
+	 */
+	void spill() throws IOException {
+		if (_pool == null) {
+			_pool = Executors.newFixedThreadPool(_threads);
+		}
+
+		while (_pending.size() >= _threads) {
+			_runs.add(get(_pending.removeFirst()));
+		}
+
+		final List<Record> batch = _batch;
+		_batch = new ArrayList<Record>();
+		_spilled++;
+
+		_pending.add(_pool.submit(new Callable<Run>() {
+			public Run call() throws IOException {
+				long time = System.currentTimeMillis();
+				Collections.sort(batch);
+				Run r = Run.write(batch, _dir);
+				_runTime.addAndGet(System.currentTimeMillis() - time);
+				return r;
+			}
+		}));
+	}
+
+	static Run get(Future<Run> f) throws IOException {
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted while sorting: " + e.getMessage());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Waits for the runs and merges them. The sorter cannot be added to
+	 * afterwards.
+	 *
+	 * @return the records, by pay-level domain, count descending and URI
+	 */
+	public Iterator<Record> sorted() throws IOException {
+		if (_runs.isEmpty() && _pending.isEmpty()) {
+			// all in memory
+			Collections.sort(_batch);
+			List<Record> batch = _batch;
+			_batch = null;
+			return batch.iterator();
+		}
+
+		if (!_batch.isEmpty()) {
+			spill();
+		}
+		_batch = null;
+
+		while (!_pending.isEmpty()) {
+			_runs.add(get(_pending.removeFirst()));
+		}
+
+		while (_runs.size() > _fanIn) {
+			mergePass();
+		}
+		_pool.shutdown();
+		_pool = null;
+
+		return new MergeIterator(_runs, _plds);
+	}
+
+	/**
+	 * Merges groups of {@link #_fanIn} runs into one run each, in the pool.
+	 */
+	void mergePass() throws IOException {
+		long time = System.currentTimeMillis();
+		int before = _runs.size();
+
+		for (int i = 0; i < _runs.size(); i += _fanIn) {
+			final List<Run> group = new ArrayList<Run>(_runs.subList(i, Math.min(i + _fanIn, _runs.size())));
+			_pending.add(_pool.submit(new Callable<Run>() {
+				public Run call() throws IOException {
+					try {
+						return Run.write(new MergeIterator(group, _plds), _dir);
+					} catch (IllegalStateException e) {
+						// a run that cannot be read
+						if (e.getCause() instanceof IOException) {
+							throw (IOException)e.getCause();
+						}
+						throw e;
+					}
+				}
+			}));
+		}
+		_runs.clear();
+
+		while (!_pending.isEmpty()) {
+			_runs.add(get(_pending.removeFirst()));
+		}
+
+		_log.fine("merged " + before + " runs into " + _runs.size() + " in "
+				+ (System.currentTimeMillis() - time) + " ms");
+	}
+
+	/**
+	 * @return number of records added
+	 */
+	public long getCount() {
+		return _count;
+	}
+
+	/**
+	 * @return number of runs written
+	 */
+	public int getRuns() {
+		return _spilled;
+	}
+
+	/**
+	 * @return time the threads spent sorting and writing runs, in ms
+	 */
+	public long getRunTime() {
+		return _runTime.get();
+	}
+
+	/**
+	 * Deletes the runs, e.g. if the records have not been read to the end.
+	 */
+	public void close() {
+		if (_pool != null) {
+			_pool.shutdownNow();
+			_pool = null;
+		}
+		for (Future<Run> f : _pending) {
+			try {
+				get(f).close();
+			} catch (Exception e) {
+				_log.fine(e.getMessage());
+			}
+		}
+		_pending.clear();
+		for (Run r : _runs) {
+			r.close();
+		}
+		_runs.clear();
+	}
+
+	/**
+	 * A URI with its pay-level domain and count.
+	 */
+	public static class Record implements Comparable<Record> {
+		final String _pld;
+		final int _pldId;
+		final int _count;
+		final String _uri;
+
+		public Record(String pld, int count, String uri) {
+			this(pld, 0, count, uri);
+		}
+
+		Record(String pld, int pldId, int count, String uri) {
+			_pld = pld;
+			_pldId = pldId;
+			_count = count;
+			_uri = uri;
+		}
+
+		public String getPld() {
+			return _pld;
+		}
+
+		public int getCount() {
+			return _count;
+		}
+
+		public String getUri() {
+			return _uri;
+		}
+
+		public int compareTo(Record o) {
+			int c = _pld.compareTo(o._pld);
+			if (c != 0) {
+				return c;
+			}
+			if (_count != o._count) {
+				return _count > o._count ? -1 : 1;
+			}
+			return _uri.compareTo(o._uri);
+		}
+
+		public String toString() {
+			return _pld + " " + _count + " " + _uri;
+		}
+	}
+
+	/**
+	 * A file of sorted records, read once.
+	 */
+	static class Run {
+		File _file;
+		long _left;
+		RecordReader _in;
+		PldDictionary _plds;
+		Record _head;
+
+		static Run write(List<Record> records, File dir) throws IOException {
+			return write(records.iterator(), dir);
+		}
+
+		static Run write(Iterator<Record> records, File dir) throws IOException {
+			File f = File.createTempFile(PREFIX, SUFFIX, dir);
+			f.deleteOnExit();
+
+			long count = 0;
+			RecordWriter out = new RecordWriter(new FileOutputStream(f), false);
+			try {
+				while (records.hasNext()) {
+					Record r = records.next();
+					out.write(r._count, r._pldId, r._uri);
+					count++;
+				}
+			} finally {
+				out.close();
+			}
+
+			Run run = new Run();
+			run._file = f;
+			run._left = count;
+			return run;
+		}
+
+		/**
+		 * Reads the next record into the head.
+		 *
+		 * @return false if the run is exhausted, which closes it
+		 */
+		boolean advance() throws IOException {
+			if (_in == null) {
+				_in = new RecordReader(new FileInputStream(_file));
+			}
+			if (_left == 0) {
+				close();
+				return false;
+			}
+			if (!_in.next()) {
+				throw new IOException("run " + _file + " cut off");
+			}
+			_head = new Record(_plds.getPld(_in.getPld()), _in.getPld(), _in.getCount(), _in.getUri());
+			_left--;
+			return true;
+		}
+
+		void close() {
+			if (_in != null) {
+				try {
+					_in.close();
+				} catch (IOException e) {
+					_log.fine(e.getMessage());
+				}
+				_in = null;
+			}
+			_head = null;
+			_file.delete();
+		}
+	}
+
+	/**
+	 * Merges the runs with a heap of their heads.
+	 */
+	static class MergeIterator implements Iterator<Record> {
+		PriorityQueue<Run> _heap;
+
+		MergeIterator(List<Run> runs, PldDictionary plds) throws IOException {
+			_heap = new PriorityQueue<Run>(Math.max(1, runs.size()), new Comparator<Run>() {
+				public int compare(Run r1, Run r2) {
+					return r1._head.compareTo(r2._head);
+				}
+			});
+			for (Run r : runs) {
+				r._plds = plds;
+				if (r.advance()) {
+					_heap.add(r);
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return !_heap.isEmpty();
+		}
+
+		public Record next() {
+			Run r = _heap.poll();
+			if (r == null) {
+				throw new NoSuchElementException();
+			}
+			Record next = r._head;
+			try {
+				if (r.advance()) {
+					_heap.add(r);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException("cannot read run " + r._file, e);
+			}
+			return next;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+
+/**
+ * 64-bit fingerprints of URIs, for storing sets of URIs compactly. Two
+ * different URIs get the same fingerprint with a probability of about
+ * 2^-64.
+ */
+public class Fingerprint {
+	static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	static final long FNV_PRIME = 0x100000001b3L;
+
+	public static long fingerprint(URI u) {
+		return fingerprint(u.toString());
+	}
+
+	/**
+	 * FNV-1a over the characters, followed by the finalisation step of
+	 * MurmurHash3 so that all bits depend on all characters.
+	 *
+	 * @param s
+	 * @return the fingerprint
+	 */
+	public static long fingerprint(String s) {
+		long h = FNV_OFFSET;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			h ^= (c & 0xff);
+			h *= FNV_PRIME;
+			h ^= (c >>> 8);
+			h *= FNV_PRIME;
+		}
+		return mix(h);
+	}
+
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,338 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+
+/**
+ * Redirects keyed by the {@link Fingerprint} of the redirecting URI, in a
+ * {@link ConcurrentHashMap}, so that neither lookups nor additions take a
+ * lock; entries are replaced by compare-and-set.
+ *
+ * Chains are compressed: a redirect to a URI that redirects itself points
+ * to the end of the chain right away, and an entry that points to a URI
+ * that has redirected since is moved to the end of the chain on lookup. So
+ * A&rarr;B&rarr;C resolves to C with one lookup.
+ *
+ * For each URI reached by a redirect, the number of redirects on the way
+ * is kept (see {@link #getHops(URI)}), for the limit of
+ * {@link com.ontologycentral.ldspider.CrawlerConstants#MAX_REDIRECTS}.
+ *
+ * Optionally, the targets are written to a file in a directory, so that an
+ * entry in memory is the fingerprint, the position of the target in the
+ * file and the number of hops. Each target is written once; an entry
+ * compressed to the end of a chain points to the target stored for that.
+ * With the no-argument constructor, the file is used if
+ * {@link com.ontologycentral.ldspider.CrawlerConstants#REDIRECTS_DIR} is set.
+ */
+public class FingerprintRedirects implements Redirects {
+	private static final long serialVersionUID = 1L;
+
+	private final static Logger _log = Logger.getLogger(FingerprintRedirects.class.getName());
+
+	/**
+	 * Bound for following a chain, against cycles.
+	 */
+	static final int MAX_CHAIN = 32;
+
+	static final String PREFIX = "ldspider-redirects";
+	static final String SUFFIX = ".tgt";
+
+	transient ConcurrentHashMap<Long, Entry> _map;
+
+	transient File _file;
+	transient FileChannel _channel;
+	transient AtomicLong _end;
+
+	/**
+	 * Keeps the targets in memory, or writes them to a file in
+	 * {@link com.ontologycentral.ldspider.CrawlerConstants#REDIRECTS_DIR} if
+	 * that is set and the file can be created.
+	 */
+	public FingerprintRedirects() {
+		_map = new ConcurrentHashMap<Long, Entry>();
+		if (CrawlerConstants.REDIRECTS_DIR != null) {
+			try {
+				open(CrawlerConstants.REDIRECTS_DIR);
+			} catch (IOException e) {
+				_log.warning("cannot create file for redirect targets in " + CrawlerConstants.REDIRECTS_DIR + ", keeping them in memory: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes the targets to a file.
+	 *
+	 * @param dir directory for the file, <code>null</code> for the default
+	 *        temporary directory
+	 */
+	public FingerprintRedirects(File dir) throws IOException {
+		_map = new ConcurrentHashMap<Long, Entry>();
+		open(dir);
+	}
+
+	void open(File dir) throws IOException {
+		_file = File.createTempFile(PREFIX, SUFFIX, dir);
+		_file.deleteOnExit();
+		_channel = new RandomAccessFile(_file, "rw").getChannel();
+		_end = new AtomicLong(0);
+	}
+
+	public void put(URI from, URI to) {
+		long ff = Fingerprint.fingerprint(from);
+		long ft = Fingerprint.fingerprint(to);
+
+		if (ff == ft) {
+			return;
+		}
+
+		// compress: point to where the target redirects to, unless that is back
+		Entry et = _map.get(ft);
+		long ftarget = ft;
+		Entry written = null;
+		if (et != null && et.hasTarget()) {
+			long f = Fingerprint.fingerprint(target(et));
+			if (f != ff) {
+				// the target of the target is stored already
+				written = et;
+				ftarget = f;
+			}
+		}
+		if (written == null) {
+			// written once, also if the entry has to be replaced again
+			written = newEntry(to.toString(), 0);
+		}
+		Entry ef;
+		for (;;) {
+			ef = _map.get(ff);
+			Entry e = new Entry(written._target, written._position, ef == null ? 0 : ef._hops);
+			if (ef == null ? _map.putIfAbsent(ff, e) == null : _map.replace(ff, ef, e)) {
+				break;
+			}
+		}
+
+		// the target is one more hop away, the end of the chain at least one more
+		raiseHops(ft, (ef == null ? 0 : ef._hops) + 1);
+		if (ftarget != ft) {
+			raiseHops(ftarget, _map.get(ft)._hops + 1);
+		}
+	}
+
+	void raiseHops(long fp, int hops) {
+		for (;;) {
+			Entry e = _map.get(fp);
+			if (e == null) {
+				if (_map.putIfAbsent(fp, new Entry(null, -1, hops)) == null) {
+					return;
+				}
+			} else if (e._hops >= hops) {
+				return;
+			} else if (_map.replace(fp, e, new Entry(e._target, e._position, hops))) {
+				return;
+			}
+		}
+	}
+
+	public URI getRedirect(URI from) {
+		long ff = Fingerprint.fingerprint(from);
+
+		Entry e = _map.get(ff);
+		if (e == null || !e.hasTarget()) {
+			return from;
+		}
+
+		String target = target(e);
+
+		// follow the rest of the chain, if the target has redirected since
+		Entry end = e;
+		Entry next = _map.get(Fingerprint.fingerprint(target));
+		for (int i = 0; i < MAX_CHAIN && next != null && next.hasTarget(); i++) {
+			String t = target(next);
+			long f = Fingerprint.fingerprint(t);
+			if (f == ff) {
+				// a cycle
+				break;
+			}
+			target = t;
+			end = next;
+			next = _map.get(f);
+		}
+		if (end != e) {
+			// points to the target stored for the end of the chain, nothing is written
+			_map.replace(ff, e, new Entry(end._target, end._position, e._hops));
+		}
+
+		try {
+			return new URI(target);
+		} catch (URISyntaxException ex) {
+			_log.info("cannot parse redirect target " + target + ": " + ex.getMessage());
+			return from;
+		}
+	}
+
+	/**
+	 * @return the number of redirects followed to get to the URI, 0 if it
+	 *         has not been the target of a redirect
+	 */
+	public int getHops(URI u) {
+		Entry e = _map.get(Fingerprint.fingerprint(u));
+		return e == null ? 0 : e._hops;
+	}
+
+	/**
+	 * @return number of URIs that redirect or have been redirected to
+	 */
+	public int size() {
+		return _map.size();
+	}
+
+	Entry newEntry(String target, int hops) {
+		if (_channel == null) {
+			return new Entry(target, -1, hops);
+		}
+		try {
+			return new Entry(null, write(target), hops);
+		} catch (IOException ex) {
+			_log.warning("cannot write redirect target, keeping it in memory: " + ex.getMessage());
+			return new Entry(target, -1, hops);
+		}
+	}
+
+	/**
+	 * Appends the target to the file. The position is reserved first, so
+	 * that the threads do not have to wait for each other.
+	 */
+	long write(String target) throws IOException {
+		byte[] bytes = target.getBytes("UTF-8");
+		ByteBuffer b = ByteBuffer.allocate(4 + bytes.length);
+		b.putInt(bytes.length);
+		b.put(bytes);
+		b.flip();
+
+		long position = _end.getAndAdd(b.remaining());
+		long p = position;
+		while (b.hasRemaining()) {
+			p += _channel.write(b, p);
+		}
+		return position;
+	}
+
+	String target(Entry e) {
+		if (e._target != null) {
+			return e._target;
+		}
+		try {
+			ByteBuffer length = ByteBuffer.allocate(4);
+			readFully(length, e._position);
+			ByteBuffer bytes = ByteBuffer.allocate(length.getInt(0));
+			readFully(bytes, e._position + 4);
+			return new String(bytes.array(), "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		} catch (IOException ex) {
+			throw new IllegalStateException("cannot read redirect target from " + _file, ex);
+		}
+	}
+
+	void readFully(ByteBuffer b, long position) throws IOException {
+		while (b.hasRemaining()) {
+			int n = _channel.read(b, position);
+			if (n < 0) {
+				throw new IOException("unexpected end of " + _file);
+			}
+			position += n;
+		}
+	}
+
+	/**
+	 * Closes and deletes the file, if any.
+	 */
+	public void close() {
+		if (_channel != null) {
+			try {
+				_channel.close();
+			} catch (IOException e) {
+				_log.warning(e.getMessage());
+			}
+			_channel = null;
+			if (!_file.delete()) {
+				_log.warning("cannot delete " + _file);
+			}
+		}
+	}
+
+	public String toString() {
+		return _map.size() + " redirects" + (_file == null ? "" : " with targets in " + _file);
+	}
+
+	/**
+	 * Writes the entries with the targets; reading them keeps the targets
+	 * in memory.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(_map.size());
+		for (Map.Entry<Long, Entry> me : _map.entrySet()) {
+			Entry e = me.getValue();
+			out.writeLong(me.getKey());
+			out.writeInt(e._hops);
+			out.writeBoolean(e.hasTarget());
+			if (e.hasTarget()) {
+				byte[] b = target(e).getBytes("UTF-8");
+				out.writeInt(b.length);
+				out.write(b);
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		int size = in.readInt();
+		_map = new ConcurrentHashMap<Long, Entry>(Math.max(16, size * 4 / 3));
+		for (int i = 0; i < size; i++) {
+			long fp = in.readLong();
+			int hops = in.readInt();
+			String target = null;
+			if (in.readBoolean()) {
+				byte[] b = new byte[in.readInt()];
+				in.readFully(b);
+				target = new String(b, "UTF-8");
+			}
+			_map.put(fp, new Entry(target, -1, hops));
+		}
+	}
+
+	/**
+	 * The target of a URI, in memory or at a position in the file, if it
+	 * redirects, and the number of redirects to get to the URI. Immutable,
+	 * so that it can be replaced by compare-and-set.
+	 */
+	static class Entry {
+		final String _target;
+		final long _position;
+		final int _hops;
+
+		Entry(String target, long position, int hops) {
+			_target = target;
+			_position = position;
+			_hops = hops;
+		}
+
+		boolean hasTarget() {
+			return _target != null || _position >= 0;
+		}
+	}
+}
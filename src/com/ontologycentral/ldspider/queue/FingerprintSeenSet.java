@@ -0,0 +1,303 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A set of URIs that only stores their 64-bit {@link Fingerprint}s, 8 bytes
+ * per URI plus the free slots of the hash tables, instead of the several
+ * hundred bytes of a {@link URI} object in a HashSet. A URI not in the set
+ * is reported as contained only if its fingerprint collides with one in the
+ * set; see {@link #getFalsePositiveRate()}.
+ *
+ * The fingerprints are spread over a number of stripes by their top bits;
+ * each stripe is an open-addressing hash table with linear probing and its
+ * own lock. The tables can be allocated outside the Java heap.
+ *
+ * As the URIs themselves are not stored, the set cannot be iterated, and
+ * URIs cannot be removed.
+ */
+public class FingerprintSeenSet implements SeenSet, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	/**
+	 * Initial number of slots per stripe.
+	 */
+	static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * A stripe is grown when it is filled beyond this.
+	 */
+	static final double MAX_LOAD = 0.7;
+
+	/**
+	 * Stored instead of 0, which marks a free slot.
+	 */
+	static final long ZERO = 1;
+
+	transient Stripe[] _stripes;
+	int _stripeBits;
+	boolean _offHeap;
+
+	public FingerprintSeenSet() {
+		this(DEFAULT_STRIPES, false);
+	}
+
+	/**
+	 * @param stripes number of stripes, rounded up to a power of two
+	 * @param offHeap whether the tables are allocated outside the Java heap
+	 */
+	public FingerprintSeenSet(int stripes, boolean offHeap) {
+		_stripeBits = 0;
+		while ((1 << _stripeBits) < stripes) {
+			_stripeBits++;
+		}
+		_offHeap = offHeap;
+
+		init();
+	}
+
+	void init() {
+		_stripes = new Stripe[1 << _stripeBits];
+		for (int i = 0; i < _stripes.length; i++) {
+			_stripes[i] = new Stripe(INITIAL_CAPACITY, _offHeap);
+		}
+	}
+
+	Stripe getStripe(long fp) {
+		if (_stripeBits == 0) {
+			return _stripes[0];
+		}
+		return _stripes[(int)(fp >>> (64 - _stripeBits))];
+	}
+
+	public boolean add(URI u) {
+		return addFingerprint(Fingerprint.fingerprint(u));
+	}
+
+	public boolean contains(URI u) {
+		return containsFingerprint(Fingerprint.fingerprint(u));
+	}
+
+	public boolean[] contains(List<URI> uris) {
+		boolean[] seen = new boolean[uris.size()];
+		for (int i = 0; i < seen.length; i++) {
+			seen[i] = contains(uris.get(i));
+		}
+		return seen;
+	}
+
+	/**
+	 * @param fp
+	 * @return true if the fingerprint has not been in the set
+	 */
+	public boolean addFingerprint(long fp) {
+		if (fp == 0) {
+			fp = ZERO;
+		}
+		return getStripe(fp).add(fp);
+	}
+
+	public boolean containsFingerprint(long fp) {
+		if (fp == 0) {
+			fp = ZERO;
+		}
+		return getStripe(fp).contains(fp);
+	}
+
+	public int size() {
+		long size = 0;
+		for (Stripe s : _stripes) {
+			size += s._size;
+		}
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	public void clear() {
+		for (Stripe s : _stripes) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * @return bytes allocated for the tables
+	 */
+	public long getMemoryUsage() {
+		long bytes = 0;
+		for (Stripe s : _stripes) {
+			bytes += 8L * s._capacity;
+		}
+		return bytes;
+	}
+
+	/**
+	 * The probability that a URI not in the set is reported as contained,
+	 * i.e. that its fingerprint equals one of the fingerprints in the set.
+	 *
+	 * @return the false positive rate for the current size
+	 */
+	public double getFalsePositiveRate() {
+		// size / 2^64
+		return size() / 18446744073709551616.0;
+	}
+
+	public long[] fingerprints() {
+		long[] fps = new long[size()];
+		int n = 0;
+		for (Stripe s : _stripes) {
+			s._lock.lock();
+			try {
+				for (int i = 0; i < s._capacity && n < fps.length; i++) {
+					long fp = s._table.get(i);
+					if (fp != 0) {
+						fps[n++] = fp;
+					}
+				}
+			} finally {
+				s._lock.unlock();
+			}
+		}
+		if (n < fps.length) {
+			long[] copy = new long[n];
+			System.arraycopy(fps, 0, copy, 0, n);
+			fps = copy;
+		}
+		return fps;
+	}
+
+	public String toString() {
+		return size() + " fingerprints in " + _stripes.length + " stripes, " + getMemoryUsage() + " bytes" + (_offHeap ? " off-heap" : "");
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		for (Stripe s : _stripes) {
+			s._lock.lock();
+			try {
+				out.writeInt(s._size);
+				for (int i = 0; i < s._capacity; i++) {
+					long fp = s._table.get(i);
+					if (fp != 0) {
+						out.writeLong(fp);
+					}
+				}
+			} finally {
+				s._lock.unlock();
+			}
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+		for (Stripe s : _stripes) {
+			int size = in.readInt();
+			for (int i = 0; i < size; i++) {
+				s.add(in.readLong());
+			}
+		}
+	}
+
+	static class Stripe {
+		final ReentrantLock _lock = new ReentrantLock();
+
+		LongBuffer _table;
+		int _capacity;
+		volatile int _size;
+		boolean _offHeap;
+
+		Stripe(int capacity, boolean offHeap) {
+			_offHeap = offHeap;
+			_table = allocate(capacity);
+			_capacity = capacity;
+			_size = 0;
+		}
+
+		LongBuffer allocate(int capacity) {
+			if (_offHeap) {
+				return ByteBuffer.allocateDirect(8 * capacity).order(ByteOrder.nativeOrder()).asLongBuffer();
+			}
+			return LongBuffer.wrap(new long[capacity]);
+		}
+
+		boolean add(long fp) {
+			_lock.lock();
+			try {
+				if (_size + 1 > _capacity * MAX_LOAD) {
+					grow();
+				}
+				if (insert(_table, _capacity, fp)) {
+					_size++;
+					return true;
+				}
+				return false;
+			} finally {
+				_lock.unlock();
+			}
+		}
+
+		boolean contains(long fp) {
+			_lock.lock();
+			try {
+				int mask = _capacity - 1;
+				for (int i = (int)fp & mask; ; i = (i + 1) & mask) {
+					long v = _table.get(i);
+					if (v == fp) {
+						return true;
+					} else if (v == 0) {
+						return false;
+					}
+				}
+			} finally {
+				_lock.unlock();
+			}
+		}
+
+		static boolean insert(LongBuffer table, int capacity, long fp) {
+			int mask = capacity - 1;
+			for (int i = (int)fp & mask; ; i = (i + 1) & mask) {
+				long v = table.get(i);
+				if (v == fp) {
+					return false;
+				} else if (v == 0) {
+					table.put(i, fp);
+					return true;
+				}
+			}
+		}
+
+		void grow() {
+			int capacity = _capacity * 2;
+			LongBuffer table = allocate(capacity);
+			for (int i = 0; i < _capacity; i++) {
+				long fp = _table.get(i);
+				if (fp != 0) {
+					insert(table, capacity, fp);
+				}
+			}
+			_table = table;
+			_capacity = capacity;
+		}
+
+		void clear() {
+			_lock.lock();
+			try {
+				_table = allocate(INITIAL_CAPACITY);
+				_capacity = INITIAL_CAPACITY;
+				_size = 0;
+			} finally {
+				_lock.unlock();
+			}
+		}
+	}
+}
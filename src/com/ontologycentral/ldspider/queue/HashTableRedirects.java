@@ -1,39 +1,57 @@
-package com.ontologycentral.ldspider.queue;
-
-import java.net.URI;
-import java.util.Collections;
-import java.util.Hashtable;
-import java.util.Map;
-import java.util.logging.Logger;
-
-public class HashTableRedirects implements Redirects {
-	/**
-	 * 
-	 */
-	private static final long serialVersionUID = 1L;
-
-	private final static Logger _log = Logger.getLogger(Redirects.class.getName());
-
-	Map<URI, URI> _map;
-	
-	public HashTableRedirects() {
-		_map = Collections.synchronizedMap(new Hashtable<URI, URI>());
-	}
-
-	public void put(URI from, URI to) {
-		if (_map.containsKey(from)) {
-			_log.info("URI " + from + " already redirects to " + _map.get(from));
-		}
-		
-		_map.put(from, to);
-	}
-	
-	public URI getRedirect(URI from) {
-		URI to = _map.get(from);
-		if (to != null) {
-			return to;
-		}
-		
-		return from;
-	}
-}
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.logging.Logger;
+
+public class HashTableRedirects implements Redirects {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final static Logger _log = Logger.getLogger(Redirects.class.getName());
+
+	Map<URI, URI> _map;
+	
+	/**
+	 * The number of redirects followed to get to each target.
+	 */
+	Map<URI, Integer> _hops;
+	
+	public HashTableRedirects() {
+		_map = Collections.synchronizedMap(new Hashtable<URI, URI>());
+		_hops = new Hashtable<URI, Integer>();
+	}
+
+	public void put(URI from, URI to) {
+		if (_map.containsKey(from)) {
+			_log.info("URI " + from + " already redirects to " + _map.get(from));
+		}
+		
+		_map.put(from, to);
+		
+		synchronized (_hops) {
+			int hops = getHops(from) + 1;
+			if (hops > getHops(to)) {
+				_hops.put(to, Integer.valueOf(hops));
+			}
+		}
+	}
+	
+	public URI getRedirect(URI from) {
+		URI to = _map.get(from);
+		if (to != null) {
+			return to;
+		}
+		
+		return from;
+	}
+	
+	public int getHops(URI u) {
+		Integer i = _hops.get(u);
+		return i == null ? 0 : i.intValue();
+	}
+}
@@ -2,15 +2,17 @@ package com.ontologycentral.ldspider.queue;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
 import java.util.logging.Logger;
 
 import org.semanticweb.yars.tld.TldManager;
@@ -25,6 +27,12 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 
 
 	Map<String, Queue<URI>> _queues;
+	
+	/**
+	 * The plds of {@link #_queues} by the number of URIs left, for the order
+	 * of a turnaround.
+	 */
+	PldCountIndex _index;
 	Queue<String> _current;
 
 	long _mindelay, _maxdelay;
@@ -32,7 +40,17 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 	
 	int _depth = 0;
 	
-	static Queue<String> POISON = new ConcurrentLinkedQueue<String>();
+	/**
+	 * Used to wait for the next turnaround without holding the lock.
+	 */
+	Condition _eligible;
+	
+	/**
+	 * Number of URIs to poll until the next call to {@link #schedule(Frontier)},
+	 * and the number polled since.
+	 */
+	volatile int _roundLimit;
+	AtomicInteger _roundPolled;
 	
 	public LoadBalancingQueue(TldManager tldm, Redirects r) {
 		super(tldm, r);
@@ -41,6 +59,11 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 		
 		_mindelay = CrawlerConstants.MIN_DELAY;
 		_maxdelay = CrawlerConstants.MAX_DELAY;
+		
+		_eligible = _lock.newCondition();
+		
+		_roundLimit = Integer.MAX_VALUE;
+		_roundPolled = new AtomicInteger(0);
 	}
 	
 	public void setMinDelay(int delay) {
@@ -52,20 +75,45 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 	}
 	
 	/**
-	 * Put URIs from frontier to queue
+	 * Sets the number of URIs that are polled until the next call to
+	 * {@link #schedule(Frontier)}; afterwards, {@link #poll()} returns
+	 * <code>null</code>, which ends the round.
 	 * 
-	 * @param maxuris - cut off number of uris per pld
+	 * @param limit
 	 */
-	public synchronized void schedule(Frontier f) {	
+	public void setRoundLimit(int limit) {
+		_roundLimit = limit;
+	}
+	
+	/**
+	 * Put URIs from frontier to queue. URIs not polled in the previous round
+	 * stay queued, and the next turnaround starts no earlier than the delay
+	 * after the previous one.
+	 */
+	public void schedule(Frontier f) {
+		// resolving the hosts may take a while, not holding the lock
+		Iterator<URI> it = resolveGroups(f.iterator(), true);
+		
+		_lock.lock();
+		try {
+			scheduleLocked(it);
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private void scheduleLocked(Iterator<URI> it) {
 		_log.info("start scheduling depth " + _depth++ + "...");
 
 		long time = System.currentTimeMillis();
 
 //		super.schedule(f);
 
-		_queues = Collections.synchronizedMap(new HashMap<String, Queue<URI>>());
-		
-		Iterator<URI> it = f.iterator();
+		if (_queues == null) {
+			_queues = Collections.synchronizedMap(new HashMap<String, Queue<URI>>());
+			_index = new PldCountIndex();
+		}
+		_roundPolled.set(0);
 		
 		while (it.hasNext()) {
 			URI u = it.next();
@@ -76,11 +124,11 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 			//f.remove(u);
 		}
 	
-		_current.addAll(getSortedQueuePlds());
-		
-		_mintime = _maxtime = System.currentTimeMillis();
+		// add() has put the new plds in already; start with a turnaround in
+		// sorted order, once the delay since the last one has passed
+		_current = new ConcurrentLinkedQueue<String>();
 		
-		_log.info("scheduling depth " + _depth + " with " + size() + " uris and " + getSortedQueuePlds().size() + " plds done in " + (_mintime - time) + " ms");
+		_log.info("scheduling depth " + _depth + " with " + _queued.get() + " uris and " + _activePlds.get() + " plds done in " + (System.currentTimeMillis() - time) + " ms");
 	}
 	
 //	/**
@@ -102,7 +150,18 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 	 * 
 	 * @param u
 	 */
-	public synchronized void add(URI u, boolean uriHasBeenProcessed) {
+	public void add(URI u, boolean uriHasBeenProcessed) {
+		resolveGroup(u);
+
+		_lock.lock();
+		try {
+			addLocked(u, uriHasBeenProcessed);
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private void addLocked(URI u, boolean uriHasBeenProcessed) {
 		if (!uriHasBeenProcessed) {
 			try {
 				u = Frontier.normalise(u);
@@ -112,26 +171,60 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 			}
 		}
 
-		String pld = _tldm.getPLD(u);
+		// the pld or, if set, the politeness group
+		String pld = getGroup(u);
 		if (pld != null) {	
 			Queue<URI> q = _queues.get(pld);
 			if (q == null) {
-				q = new ConcurrentLinkedQueue<URI>();
+				q = new LinkedList<URI>();
 				_queues.put(pld, q);
 				_current.add(pld);
+				_eligible.signalAll();
+			}
+			if (q.isEmpty()) {
+				_activePlds.incrementAndGet();
 			}
 			q.add(u);
+			_queued.incrementAndGet();
+			_index.increment(pld);
+		}
+	}
+	
+	/**
+	 * Poll a URI, or <code>null</code> if the limit of the round has been
+	 * reached.
+	 */
+	public URI poll() {
+		if (_roundPolled.incrementAndGet() > _roundLimit) {
+			return null;
 		}
+		
+		URI u = super.poll();
+		if (u == null) {
+			_roundPolled.decrementAndGet();
+		}
+		return u;
 	}
 	
 	/**
 	 * Poll a URI, one PLD after another.
-	 * If queue turnaround is smaller than DELAY, wait for DELAY ms to
-	 * avoid overloading servers.
+	 * If queue turnaround is smaller than DELAY, wait until DELAY ms have
+	 * passed since the start of the turnaround, without holding the lock, to
+	 * avoid overloading servers. Returns <code>null</code> only once the
+	 * queue is empty.
 	 * 
 	 * @return URI
 	 */
-	protected synchronized URI pollInternal() {
+	protected URI pollInternal() {
+		_lock.lock();
+		try {
+			return pollLocked();
+		} finally {
+			_lock.unlock();
+		}
+	}
+	
+	private URI pollLocked() {
 		if (_current == null) {
 			return null;
 		}
@@ -140,26 +233,26 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 
 		URI next = null;
 
-		int empty = 0;
-
 		do {
 			long time1 = System.currentTimeMillis();
 
 			if (_current.isEmpty()) {
-				// queue is empty, done for this round
-				if (size() == 0) {
+				// turnaround done; if the queue is empty, done for this round
+				if (_queued.get() == 0) {
 					_log.info("queue size is 0: " + toString());
 					return null;
 				}
-				if (_current == POISON) {
-					return null;
-				}
 		
 				if ((time1 - _mintime) < _mindelay) {
-					_log.info("fetching plds too fast, rescheduling, remaining uris in queue " + size());
-					_log.info(toString());
-					_current = POISON;
-					return null;
+					long wait = _mindelay - (time1 - _mintime);
+					_log.fine("fetching plds too fast, waiting " + wait + " ms, remaining uris in queue " + _queued.get());
+					try {
+						// releases the lock while waiting
+						_eligible.await(wait, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						_log.info(e.getMessage());
+					}
+					continue;
 				}
 				
 				_log.info("queue turnaround in " + (time1-_mintime) + " ms");
@@ -168,7 +261,7 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 				
 				_current.addAll(getSortedQueuePlds());
 			} else if ((time1 - _maxtime) > _maxdelay) {
-				_log.info("skipped to start of queue in " + (time1-_maxtime) + " ms, queue size " + size());
+				_log.info("skipped to start of queue in " + (time1-_maxtime) + " ms, queue size " + _queued.get());
 
 				_maxtime = System.currentTimeMillis();
 				
@@ -181,12 +274,15 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 			
 			if (q != null && !q.isEmpty()) {
 				next = q.poll();
+				_queued.decrementAndGet();
+				_index.decrement(pld);
+				if (q.isEmpty()) {
+					_activePlds.decrementAndGet();
+				}
 
 				setSeen(next);
-			} else {
-				empty++;
 			}
-		} while (next == null && empty < _queues.size());
+		} while (next == null);
 		
 		long time1 = System.currentTimeMillis();
 		
@@ -195,24 +291,11 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 		return next;
 	}
 	
+	/**
+	 * @return the plds with URIs left, most URIs first
+	 */
 	List<String> getSortedQueuePlds() {
-		List<String> li = new ArrayList<String>();
-		
-		li.addAll(_queues.keySet());
-		
-		Collections.sort(li, new PldCountComparator(_queues));
-		
-		return li;
-	}
-	
-	public int size() {
-		int size = 0;
-		
-		for (Queue<URI> q : _queues.values()) {
-			size += q.size();
-		}
-		
-		return size;
+		return _index.getPlds();
 	}
 	
 	public String toString() {
@@ -233,15 +316,3 @@ public class LoadBalancingQueue extends RedirectsFavouringSpiderQueue {
 		return sb.toString();
 	}
 }
-
-class PldCountComparator implements Comparator<String> {
-	Map<String, Queue<URI>> _map;
-	
-	public PldCountComparator(Map<String, Queue<URI>> map) {
-		_map = map;
-	}
-	
-	public int compare(String arg0, String arg1) {
-		return _map.get(arg1).size() - _map.get(arg0).size();
-	}
-}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The pay-level domains with URIs left, ordered by the number of URIs left,
+ * most first. The pay-level domains are kept in buckets by count, so that a
+ * change of count moves a pay-level domain from one bucket to the next in
+ * O(log n) of the number of distinct counts, and listing them in order does
+ * not need sorting. Within a bucket, pay-level domains are listed in the
+ * order they got that count.
+ *
+ * Not thread-safe; the queues hold their lock.
+ */
+public class PldCountIndex implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Pay-level domains by count, highest count first.
+	 */
+	TreeMap<Integer, Set<String>> _buckets;
+
+	Map<String, Integer> _counts;
+
+	public PldCountIndex() {
+		_buckets = new TreeMap<Integer, Set<String>>(Collections.reverseOrder());
+		_counts = new HashMap<String, Integer>();
+	}
+
+	public void increment(String pld) {
+		set(pld, getCount(pld) + 1);
+	}
+
+	public void decrement(String pld) {
+		set(pld, getCount(pld) - 1);
+	}
+
+	/**
+	 * @param pld
+	 * @param count new count; the pay-level domain is removed if 0 or less
+	 */
+	public void set(String pld, int count) {
+		Integer old = _counts.get(pld);
+		if (old != null) {
+			if (old.intValue() == count) {
+				return;
+			}
+			Set<String> bucket = _buckets.get(old);
+			bucket.remove(pld);
+			if (bucket.isEmpty()) {
+				_buckets.remove(old);
+			}
+		}
+
+		if (count <= 0) {
+			_counts.remove(pld);
+			return;
+		}
+
+		Integer c = Integer.valueOf(count);
+		_counts.put(pld, c);
+
+		Set<String> bucket = _buckets.get(c);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<String>();
+			_buckets.put(c, bucket);
+		}
+		bucket.add(pld);
+	}
+
+	public void remove(String pld) {
+		set(pld, 0);
+	}
+
+	/**
+	 * @param pld
+	 * @return number of URIs left, 0 if the pay-level domain is not indexed
+	 */
+	public int getCount(String pld) {
+		Integer c = _counts.get(pld);
+		return c == null ? 0 : c.intValue();
+	}
+
+	/**
+	 * @return the pay-level domains, most URIs left first
+	 */
+	public List<String> getPlds() {
+		List<String> li = new ArrayList<String>(_counts.size());
+		for (Set<String> bucket : _buckets.values()) {
+			li.addAll(bucket);
+		}
+		return li;
+	}
+
+	/**
+	 * @return number of pay-level domains with URIs left
+	 */
+	public int size() {
+		return _counts.size();
+	}
+
+	public boolean isEmpty() {
+		return _counts.isEmpty();
+	}
+
+	public void clear() {
+		_buckets.clear();
+		_counts.clear();
+	}
+}
@@ -0,0 +1,300 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+
+/**
+ * Response times and errors of the lookups per pay-level domain (or
+ * politeness group, see {@link PolitenessGroups}), from which the queues
+ * derive a delay and a quota of URIs per pay-level domain.
+ *
+ * The response time and the error rate are moving averages, so that they
+ * follow a server that becomes slow or recovers. The delay is
+ * {@link CrawlerConstants#ADAPTIVE_LATENCY_FACTOR} times the average response
+ * time, at least half the configured delay, so that fast servers are polled
+ * more often than with the configured delay, and at most
+ * {@link CrawlerConstants#ADAPTIVE_MAX_DELAY}. After consecutive errors
+ * (connection failures, 5xx), the delay doubles with each error. The quota
+ * is the share of the maximum number of URIs per pay-level domain that can
+ * be fetched with the delay in the time the configured delay would take,
+ * reduced by the error rate, but not below
+ * {@link CrawlerConstants#ADAPTIVE_MIN_QUOTA}.
+ *
+ * Until a pay-level domain has {@link #MIN_SAMPLES} lookups, the configured
+ * values apply. Thread-safe.
+ */
+public class PldStatistics implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Weight of a new sample in the moving averages.
+	 */
+	static final double ALPHA = 0.2;
+
+	/**
+	 * Number of lookups before the learned values apply.
+	 */
+	public static final int MIN_SAMPLES = 3;
+
+	/**
+	 * Upper bound for the doubling of the delay after errors, against overflow.
+	 */
+	static final int MAX_BACKOFF = 16;
+
+	ConcurrentHashMap<String, Entry> _entries;
+
+	public PldStatistics() {
+		_entries = new ConcurrentHashMap<String, Entry>();
+	}
+
+	/**
+	 * Records a lookup that got a response.
+	 *
+	 * @param pld
+	 * @param status the status code of the response
+	 * @param duration time in ms from sending the request to handling the response
+	 */
+	public void done(String pld, int status, long duration) {
+		getEntry(pld).add(duration, status >= 500);
+	}
+
+	/**
+	 * Records a lookup that failed without a response, e.g. with a timeout.
+	 *
+	 * @param pld
+	 * @param duration time in ms until the failure, -1 if unknown
+	 */
+	public void failed(String pld, long duration) {
+		getEntry(pld).add(duration, true);
+	}
+
+	Entry getEntry(String pld) {
+		Entry e = _entries.get(pld);
+		if (e == null) {
+			e = new Entry();
+			Entry old = _entries.putIfAbsent(pld, e);
+			if (old != null) {
+				e = old;
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * @param pld
+	 * @return the statistics of the pay-level domain, <code>null</code> if
+	 *         it has not been looked up
+	 */
+	public Stats get(String pld) {
+		Entry e = _entries.get(pld);
+		return e == null ? null : e.snapshot();
+	}
+
+	/**
+	 * @return the statistics of all pay-level domains looked up
+	 */
+	public Map<String, Stats> getAll() {
+		Map<String, Stats> all = new HashMap<String, Stats>();
+		for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+			all.put(e.getKey(), e.getValue().snapshot());
+		}
+		return all;
+	}
+
+	/**
+	 * @param pld
+	 * @param delay the configured delay in ms
+	 * @return the delay in ms between two lookups on the pay-level domain
+	 */
+	public long getDelay(String pld, long delay) {
+		Entry e = _entries.get(pld);
+		if (e == null) {
+			return delay;
+		}
+		return e.snapshot().getDelay(delay);
+	}
+
+	/**
+	 * @param pld
+	 * @param maxuris the configured maximum number of URIs per pay-level domain
+	 * @param delay the configured delay in ms
+	 * @return the maximum number of URIs to schedule for the pay-level domain
+	 */
+	public int getQuota(String pld, int maxuris, long delay) {
+		Entry e = _entries.get(pld);
+		if (e == null) {
+			return maxuris;
+		}
+		return e.snapshot().getQuota(maxuris, delay);
+	}
+
+	/**
+	 * @return number of pay-level domains looked up
+	 */
+	public int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * @param delay the configured delay in ms
+	 * @param n
+	 * @return the n pay-level domains with the longest delays, longest first
+	 */
+	public List<String> getSlowest(final long delay, int n) {
+		final Map<String, Stats> all = getAll();
+		List<String> plds = new ArrayList<String>(all.keySet());
+		Collections.sort(plds, new Comparator<String>() {
+			public int compare(String a, String b) {
+				long da = all.get(a).getDelay(delay);
+				long db = all.get(b).getDelay(delay);
+				return da > db ? -1 : (da == db ? a.compareTo(b) : 1);
+			}
+		});
+		return plds.subList(0, Math.min(n, plds.size()));
+	}
+
+	public void clear() {
+		_entries.clear();
+	}
+
+	public String toString() {
+		int backedOff = 0;
+		for (Entry e : _entries.values()) {
+			if (e.snapshot()._consecutiveErrors > 0) {
+				backedOff++;
+			}
+		}
+		return _entries.size() + " plds looked up, " + backedOff + " backed off after errors";
+	}
+
+	/**
+	 * The running statistics of a pay-level domain.
+	 */
+	static class Entry implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		long _lookups;
+		long _errors;
+		int _consecutiveErrors;
+		double _averageTime;
+		double _errorRate;
+
+		synchronized void add(long duration, boolean error) {
+			if (duration >= 0) {
+				_averageTime = _lookups == 0 ? duration : (1 - ALPHA) * _averageTime + ALPHA * duration;
+			}
+			_errorRate = _lookups == 0 ? (error ? 1 : 0) : (1 - ALPHA) * _errorRate + ALPHA * (error ? 1 : 0);
+			_lookups++;
+			if (error) {
+				_errors++;
+				_consecutiveErrors++;
+			} else {
+				_consecutiveErrors = 0;
+			}
+		}
+
+		synchronized Stats snapshot() {
+			return new Stats(_lookups, _errors, _consecutiveErrors, _averageTime, _errorRate);
+		}
+	}
+
+	/**
+	 * A snapshot of the statistics of a pay-level domain, with the delay and
+	 * quota derived from them.
+	 */
+	public static class Stats implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final long _lookups;
+		final long _errors;
+		final int _consecutiveErrors;
+		final double _averageTime;
+		final double _errorRate;
+
+		Stats(long lookups, long errors, int consecutiveErrors, double averageTime, double errorRate) {
+			_lookups = lookups;
+			_errors = errors;
+			_consecutiveErrors = consecutiveErrors;
+			_averageTime = averageTime;
+			_errorRate = errorRate;
+		}
+
+		public long getLookups() {
+			return _lookups;
+		}
+
+		public long getErrors() {
+			return _errors;
+		}
+
+		public int getConsecutiveErrors() {
+			return _consecutiveErrors;
+		}
+
+		/**
+		 * @return moving average of the response time in ms
+		 */
+		public double getAverageTime() {
+			return _averageTime;
+		}
+
+		/**
+		 * @return moving average of the share of lookups that failed
+		 */
+		public double getErrorRate() {
+			return _errorRate;
+		}
+
+		/**
+		 * @param delay the configured delay in ms
+		 * @return the learned delay in ms
+		 */
+		public long getDelay(long delay) {
+			if (_lookups < MIN_SAMPLES) {
+				return delay;
+			}
+
+			long d = (long)(_averageTime * CrawlerConstants.ADAPTIVE_LATENCY_FACTOR);
+			d = Math.max(d, delay / 2);
+
+			if (_consecutiveErrors > 0) {
+				d = Math.max(d, delay) << Math.min(_consecutiveErrors, MAX_BACKOFF);
+			}
+
+			return Math.min(d, Math.max(delay, CrawlerConstants.ADAPTIVE_MAX_DELAY));
+		}
+
+		/**
+		 * @param maxuris the configured maximum number of URIs
+		 * @param delay the configured delay in ms
+		 * @return the learned maximum number of URIs
+		 */
+		public int getQuota(int maxuris, long delay) {
+			if (_lookups < MIN_SAMPLES || maxuris <= 0) {
+				return maxuris;
+			}
+
+			double share = 1.0;
+			long d = getDelay(delay);
+			if (d > delay && delay > 0) {
+				share = (double)delay / d;
+			}
+			share *= 1 - _errorRate;
+			share = Math.max(share, CrawlerConstants.ADAPTIVE_MIN_QUOTA);
+
+			return Math.max(1, (int)(maxuris * share));
+		}
+
+		public String toString() {
+			return _lookups + " lookups, " + _errors + " errors (" + _consecutiveErrors + " in a row), " + Math.round(_averageTime) + " ms on average";
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.http.DnsCache;
+
+/**
+ * Decides which URIs share a politeness delay. By default, the queues keep
+ * the delay per pay-level domain; by host, the hosts within a pay-level
+ * domain are accessed independently of each other; by IP address, all
+ * pay-level domains on the same server share the delay.
+ *
+ * The host names are resolved with a {@link DnsCache}, never while the
+ * queues call {@link #getGroup(URI)} holding their lock: grouping by IP
+ * address, the queues resolve the hosts of a frontier before scheduling it
+ * ({@link #resolve(Collection)}), and the host of a URI added on its own
+ * before taking the lock ({@link #resolve(URI)}). A URI whose host is not
+ * in the cache, as it cannot be resolved, is grouped by its pay-level
+ * domain. The queues prefetch
+ * the host of the next URI of a group when they put the group back into
+ * the schedule ({@link #prefetch(URI)}), so that the lookups find the
+ * addresses in the cache.
+ */
+public class PolitenessGroups implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger _log = Logger.getLogger(PolitenessGroups.class.getName());
+
+	public enum By {
+		PLD,
+		HOST,
+		IP
+	}
+
+	TldManager _tldm;
+	By _by;
+
+	transient DnsCache _dns;
+
+	/**
+	 * @param tldm
+	 * @param by
+	 * @param dns for resolving host names, <code>null</code> for none (then
+	 *        grouping by IP address falls back to the host)
+	 */
+	public PolitenessGroups(TldManager tldm, By by, DnsCache dns) {
+		_tldm = tldm;
+		_by = by;
+		_dns = dns;
+	}
+
+	public By getBy() {
+		return _by;
+	}
+
+	/**
+	 * @return the group of the URI, <code>null</code> if it has no pay-level
+	 *         domain
+	 */
+	public String getGroup(URI u) {
+		String pld = _tldm.getPLD(u);
+		if (pld == null) {
+			return null;
+		}
+
+		String host = u.getHost();
+
+		switch (_by) {
+		case HOST:
+			return host;
+		case IP:
+			if (_dns == null) {
+				return host;
+			}
+			InetAddress[] addresses = _dns.getCached(host);
+			if (addresses != null) {
+				return addresses[0].getHostAddress();
+			}
+			// cannot be resolved, or has expired since the queue has
+			// resolved it
+			_log.fine(host + " not resolved, grouping by pld");
+			_dns.prefetch(host);
+			return pld;
+		default:
+			return pld;
+		}
+	}
+
+	/**
+	 * @return whether {@link #getGroup(URI)} resolves host names
+	 */
+	public boolean isResolving() {
+		return _by == By.IP && _dns != null;
+	}
+
+	/**
+	 * Resolves the hosts of the URIs in parallel, so that
+	 * {@link #getGroup(URI)} finds them in the cache.
+	 */
+	public void resolve(Collection<URI> uris) {
+		if (!isResolving()) {
+			return;
+		}
+
+		List<String> hosts = new ArrayList<String>();
+		for (URI u : uris) {
+			if (u.getHost() != null) {
+				hosts.add(u.getHost());
+			}
+		}
+
+		long time = System.currentTimeMillis();
+		_dns.resolveAll(hosts);
+		_log.info("resolved hosts of " + uris.size() + " uris in " + (System.currentTimeMillis() - time) + " ms, " + _dns);
+	}
+
+	/**
+	 * Resolves the host of the URI, so that {@link #getGroup(URI)} finds it
+	 * in the cache. Blocks until resolved, so must not be called holding the
+	 * lock of a queue.
+	 * 
+	 * @param u
+	 */
+	public void resolve(URI u) {
+		String host = u.getHost();
+		if (!isResolving() || host == null) {
+			return;
+		}
+
+		try {
+			_dns.resolve(host);
+		} catch (UnknownHostException e) {
+			_log.fine("cannot resolve " + host + ", grouping by pld");
+		}
+	}
+
+	/**
+	 * Starts resolving the host of the URI in the background.
+	 * 
+	 * @param u
+	 */
+	public void prefetch(URI u) {
+		String host = u.getHost();
+		if (_dns != null && host != null) {
+			_dns.prefetch(host);
+		}
+	}
+
+	public String toString() {
+		return "politeness by " + _by;
+	}
+}
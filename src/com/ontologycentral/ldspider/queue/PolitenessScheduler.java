@@ -0,0 +1,181 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Decides which pay-level domain may be accessed next. Keeps the PLDs that
+ * have URIs waiting in a heap, ordered by the point in time at which they
+ * may be accessed again (the last access plus the delay), so that finding an
+ * eligible PLD does not require a scan over all PLDs.
+ *
+ * A PLD handed out by {@link #next(long)} leaves the heap; the queue puts it
+ * back with {@link #add(String)} if there are more URIs for it. PLDs that
+ * are eligible at the same time are handed out in the order they have been
+ * added.
+ *
+ * With {@link PldStatistics}, the delay is the one learned for each PLD from
+ * the response times and errors of its lookups, otherwise the same for all.
+ *
+ * Not thread-safe; the queues use it while holding their lock, and wait for
+ * {@link #untilNext(long)} ms on a condition (releasing the lock) if no PLD
+ * is eligible.
+ */
+public class PolitenessScheduler implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	long _delay;
+
+	PriorityQueue<Slot> _heap;
+
+	/**
+	 * The PLDs in the heap.
+	 */
+	Map<String, Slot> _scheduled;
+
+	/**
+	 * Point in time of the last access per PLD.
+	 */
+	Map<String, Long> _last;
+
+	long _seq;
+
+	/**
+	 * If set, the source of the delay per PLD.
+	 */
+	PldStatistics _stats;
+
+	/**
+	 * @param delay minimum time in ms between two accesses to the same PLD
+	 */
+	public PolitenessScheduler(long delay) {
+		_delay = delay;
+		_heap = new PriorityQueue<Slot>();
+		_scheduled = new HashMap<String, Slot>();
+		_last = new HashMap<String, Long>();
+		_seq = 0;
+	}
+
+	public void setDelay(long delay) {
+		_delay = delay;
+	}
+
+	public long getDelay() {
+		return _delay;
+	}
+
+	/**
+	 * @param pld
+	 * @return the delay of the PLD, learned if there are statistics
+	 */
+	public long getDelay(String pld) {
+		return _stats == null ? _delay : _stats.getDelay(pld, _delay);
+	}
+
+	/**
+	 * @param stats the statistics to learn the delay per PLD from,
+	 *        <code>null</code> for the same delay for all
+	 */
+	public void setStatistics(PldStatistics stats) {
+		_stats = stats;
+	}
+
+	/**
+	 * Schedules a PLD for the earliest point in time that respects the delay
+	 * since its last access. Does nothing if the PLD is scheduled already.
+	 *
+	 * @param pld
+	 */
+	public void add(String pld) {
+		if (_scheduled.containsKey(pld)) {
+			return;
+		}
+
+		Long last = _last.get(pld);
+		Slot s = new Slot(pld, last == null ? 0 : last.longValue() + getDelay(pld), _seq++);
+
+		_scheduled.put(pld, s);
+		_heap.add(s);
+	}
+
+	/**
+	 * Hands out a PLD that may be accessed now, and records the access.
+	 *
+	 * @param now
+	 * @return the PLD or <code>null</code> if none is eligible
+	 */
+	public String next(long now) {
+		Slot s = _heap.peek();
+		if (s == null || s._time > now) {
+			return null;
+		}
+
+		_heap.poll();
+		_scheduled.remove(s._pld);
+		_last.put(s._pld, Long.valueOf(now));
+
+		return s._pld;
+	}
+
+	/**
+	 * @param now
+	 * @return time in ms until the next PLD is eligible (0 if one is eligible
+	 *         now), or -1 if no PLD is scheduled
+	 */
+	public long untilNext(long now) {
+		Slot s = _heap.peek();
+		if (s == null) {
+			return -1;
+		}
+		return Math.max(0, s._time - now);
+	}
+
+	public boolean contains(String pld) {
+		return _scheduled.containsKey(pld);
+	}
+
+	/**
+	 * @return the number of PLDs scheduled
+	 */
+	public int size() {
+		return _heap.size();
+	}
+
+	public boolean isEmpty() {
+		return _heap.isEmpty();
+	}
+
+	/**
+	 * Removes all PLDs from the schedule, but remembers their last access.
+	 */
+	public void clear() {
+		_heap.clear();
+		_scheduled.clear();
+	}
+
+	static class Slot implements Comparable<Slot>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		String _pld;
+		long _time;
+		long _seq;
+
+		Slot(String pld, long time, long seq) {
+			_pld = pld;
+			_time = time;
+			_seq = seq;
+		}
+
+		public int compareTo(Slot o) {
+			if (_time != o._time) {
+				return _time < o._time ? -1 : 1;
+			}
+			if (_seq != o._seq) {
+				return _seq < o._seq ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+}
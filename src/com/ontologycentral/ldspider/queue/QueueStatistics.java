@@ -0,0 +1,55 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the counters of a {@link SpiderQueue}, see
+ * {@link SpiderQueue#getStatistics()}.
+ */
+public class QueueStatistics implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	final int _queued;
+	final int _activePlds;
+	final long _polled;
+	final int _seen;
+
+	public QueueStatistics(int queued, int activePlds, long polled, int seen) {
+		_queued = queued;
+		_activePlds = activePlds;
+		_polled = polled;
+		_seen = seen;
+	}
+
+	/**
+	 * @return number of URIs in the queue, including redirects
+	 */
+	public int getQueued() {
+		return _queued;
+	}
+
+	/**
+	 * @return number of pay-level domains with URIs in the queue
+	 */
+	public int getActivePlds() {
+		return _activePlds;
+	}
+
+	/**
+	 * @return number of URIs polled from the queue
+	 */
+	public long getPolled() {
+		return _polled;
+	}
+
+	/**
+	 * @return number of URIs marked as seen
+	 */
+	public int getSeen() {
+		return _seen;
+	}
+
+	public String toString() {
+		return _queued + " uris queued in " + _activePlds + " plds, " + _polled + " polled, " + _seen + " seen";
+	}
+}
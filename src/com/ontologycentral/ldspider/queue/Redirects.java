@@ -8,4 +8,11 @@ public interface Redirects extends Serializable{
 	public void put(URI from, URI to);
 	
 	public URI getRedirect(URI from);
+	
+	/**
+	 * @return the number of redirects followed to get to the URI, 0 if it
+	 *         has not been the target of a redirect or if the redirects on
+	 *         the way are not counted
+	 */
+	public int getHops(URI u);
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.ontologycentral.ldspider.queue;
 import java.net.URI;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.semanticweb.yars.tld.TldManager;
@@ -14,10 +15,17 @@ public abstract class RedirectsFavouringSpiderQueue extends SpiderQueue {
 	private static final  Logger _log = Logger.getLogger(RedirectsFavouringSpiderQueue.class.getName());
 	
 	Queue<URI> _redirectsQueue;
+	
+	/**
+	 * Size of {@link #_redirectsQueue}, which a {@link ConcurrentLinkedQueue}
+	 * would have to count.
+	 */
+	AtomicInteger _redirects;
 
 	public RedirectsFavouringSpiderQueue(TldManager tldm, Redirects redirs) {
 		super(tldm, redirs);
 		_redirectsQueue = new ConcurrentLinkedQueue<URI>();
+		_redirects = new AtomicInteger(0);
 	}
 
 	@Override
@@ -26,15 +34,21 @@ public abstract class RedirectsFavouringSpiderQueue extends SpiderQueue {
 		do {
 			u = _redirectsQueue.poll();
 			if (u != null) {
+				_redirects.decrementAndGet();
 				if (!checkSeen(u)) {
 					_log.fine("polled " + u + " from redirects queue.");
 					addSeen(u);
+					_polled.incrementAndGet();
 					return u;
 				}
 			}
 		} while (!_redirectsQueue.isEmpty());
 		
-		return pollInternal();
+		u = pollInternal();
+		if (u != null) {
+			_polled.incrementAndGet();
+		}
+		return u;
 		
 //		if ((u = _redirects.poll()) != null) {
 //			_log.fine("polled " + u + " from redirects queue.");
@@ -50,12 +64,17 @@ public abstract class RedirectsFavouringSpiderQueue extends SpiderQueue {
 
 	@Override
 	void addRedirect(URI u) {
-		if (!checkSeen(u))
+		if (!checkSeen(u)) {
 			_redirectsQueue.add(u);
+			_redirects.incrementAndGet();
+		}
 	}
 
+	/**
+	 * The redirects plus the URIs in the queues of the pay-level domains.
+	 */
 	public int size() {
-		return _redirectsQueue.size();
+		return _redirects.get() + _queued.get();
 	}
 	
 }
@@ -0,0 +1,53 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+
+/**
+ * The fingerprints of the URIs that a {@link SpiderQueue} has newly marked as
+ * seen since the journal was last drained, so that a checkpoint only has to
+ * write the difference to the previous one.
+ */
+public class SeenJournal {
+	long[] _fps;
+	int _size;
+
+	public SeenJournal() {
+		_fps = new long[1024];
+		_size = 0;
+	}
+
+	public synchronized void add(URI u) {
+		if (_size == _fps.length) {
+			long[] fps = new long[_fps.length * 2];
+			System.arraycopy(_fps, 0, fps, 0, _size);
+			_fps = fps;
+		}
+		_fps[_size++] = Fingerprint.fingerprint(u);
+	}
+
+	/**
+	 * @return the fingerprints added since the last call
+	 */
+	public synchronized long[] drain() {
+		long[] fps = new long[_size];
+		System.arraycopy(_fps, 0, fps, 0, _size);
+		_size = 0;
+		if (_fps.length > 1024) {
+			_fps = new long[1024];
+		}
+		return fps;
+	}
+
+	public synchronized int size() {
+		return _size;
+	}
+
+	/**
+	 * Adds fingerprints from a checkpoint to the seen set of a queue.
+	 */
+	public static void restore(SeenSet seen, long[] fps) {
+		for (long fp : fps) {
+			seen.addFingerprint(fp);
+		}
+	}
+}
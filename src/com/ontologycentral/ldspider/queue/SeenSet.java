@@ -0,0 +1,42 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+import java.util.List;
+
+/**
+ * The URIs a {@link SpiderQueue} has polled, stored as their 64-bit
+ * {@link Fingerprint}s. As the URIs themselves are not kept, a seen set
+ * cannot be iterated, and URIs cannot be removed.
+ */
+public interface SeenSet {
+	/**
+	 * @param u
+	 * @return true if the URI has not been in the set
+	 */
+	public boolean add(URI u);
+
+	public boolean contains(URI u);
+
+	/**
+	 * Looks up a batch of URIs at once.
+	 *
+	 * @param uris
+	 * @return for each URI whether it is in the set
+	 */
+	public boolean[] contains(List<URI> uris);
+
+	/**
+	 * @param fp
+	 * @return true if the fingerprint has not been in the set
+	 */
+	public boolean addFingerprint(long fp);
+
+	/**
+	 * @return the fingerprints in the set, in no particular order
+	 */
+	public long[] fingerprints();
+
+	public int size();
+
+	public void clear();
+}
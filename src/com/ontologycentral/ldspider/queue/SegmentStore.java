@@ -0,0 +1,231 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The URIs of the pay-level domains of a round of the
+ * {@link DiskBreadthFirstQueue}, in a few large segment files instead of one
+ * file per pay-level domain. The URIs of a pay-level domain have to be
+ * appended one after the other; the store keeps the extent of each pay-level
+ * domain, i.e. where its next URI is and how many are left, in memory.
+ *
+ * Once written, the segments are memory-mapped, so that reading a URI of any
+ * pay-level domain does not need a file handle of its own. An extent may go
+ * on in the next segment; a record never does.
+ *
+ * A record is the length of the URI in UTF-8 as int, followed by the bytes.
+ *
+ * Not thread-safe; the queue holds its lock.
+ */
+public class SegmentStore {
+	private static final Logger _log = Logger.getLogger(SegmentStore.class.getName());
+
+	/**
+	 * A new segment is started once a segment has grown beyond this.
+	 */
+	public static final long DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+	static final String PREFIX = "ldspider-diskBreadthFirstQueueSegment";
+	static final String SUFFIX = ".seg";
+
+	File _dir;
+	long _segmentSize;
+
+	List<File> _files;
+	Map<String, Extent> _extents;
+
+	DataOutputStream _out;
+	long _written;
+	Extent _current;
+	String _currentPld;
+
+	MappedByteBuffer[] _maps;
+
+	/**
+	 * @param dir directory for the segments, <code>null</code> for the
+	 *        default temporary directory
+	 * @param segmentSize size from which a new segment is started
+	 */
+	public SegmentStore(File dir, long segmentSize) {
+		_dir = dir;
+		_segmentSize = segmentSize;
+		_files = new ArrayList<File>();
+		_extents = new HashMap<String, Extent>();
+	}
+
+	/**
+	 * Appends a URI of a pay-level domain. All URIs of a pay-level domain
+	 * have to be appended before the ones of the next.
+	 */
+	public void append(String pld, String uri) throws IOException {
+		if (_maps != null) {
+			throw new IllegalStateException("segments already finished");
+		}
+
+		byte[] bytes = uri.getBytes("UTF-8");
+
+		if (_out == null || _written + 4 + bytes.length > _segmentSize && _written > 0) {
+			startSegment();
+		}
+
+		if (!pld.equals(_currentPld)) {
+			if (_extents.containsKey(pld)) {
+				throw new IllegalStateException("uris of " + pld + " are not in one piece");
+			}
+			_current = new Extent(_files.size() - 1, _written);
+			_extents.put(pld, _current);
+			_currentPld = pld;
+		}
+
+		_out.writeInt(bytes.length);
+		_out.write(bytes);
+		_written += 4 + bytes.length;
+		_current._left++;
+	}
+
+	void startSegment() throws IOException {
+		if (_out != null) {
+			_out.close();
+		}
+
+		File f = File.createTempFile(PREFIX, SUFFIX, _dir);
+		f.deleteOnExit();
+		_files.add(f);
+
+		_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+		_written = 0;
+	}
+
+	/**
+	 * Closes the last segment and maps all segments for reading.
+	 */
+	public void finish() throws IOException {
+		if (_out != null) {
+			_out.close();
+			_out = null;
+		}
+
+		_maps = new MappedByteBuffer[_files.size()];
+		for (int i = 0; i < _maps.length; i++) {
+			RandomAccessFile raf = new RandomAccessFile(_files.get(i), "r");
+			try {
+				// the mapping stays valid after closing the file
+				_maps[i] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			} finally {
+				raf.close();
+			}
+		}
+
+		_log.info(_extents.size() + " plds in " + _files.size() + " segments");
+	}
+
+	/**
+	 * @return the next URI of the pay-level domain, or <code>null</code> if
+	 *         there is none left
+	 */
+	public String next(String pld) {
+		Extent e = _extents.get(pld);
+		if (e == null || e._left == 0) {
+			return null;
+		}
+
+		ByteBuffer map = _maps[e._segment];
+		if (e._position >= map.limit()) {
+			// the extent goes on in the next segment
+			e._segment++;
+			e._position = 0;
+			map = _maps[e._segment];
+		}
+
+		int length = map.getInt((int)e._position);
+		byte[] bytes = new byte[length];
+		ByteBuffer b = map.duplicate();
+		b.position((int)e._position + 4);
+		b.get(bytes);
+
+		e._position += 4 + length;
+		e._left--;
+
+		try {
+			return new String(bytes, "UTF-8");
+		} catch (UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	public boolean hasNext(String pld) {
+		Extent e = _extents.get(pld);
+		return e != null && e._left > 0;
+	}
+
+	/**
+	 * @return the pay-level domains in the store
+	 */
+	public Set<String> getPlds() {
+		return _extents.keySet();
+	}
+
+	/**
+	 * @return number of segment files
+	 */
+	public int getSegments() {
+		return _files.size();
+	}
+
+	/**
+	 * Deletes the segments. The store can be written again afterwards.
+	 */
+	public void clear() {
+		if (_out != null) {
+			try {
+				_out.close();
+			} catch (IOException e) {
+				_log.warning(e.getMessage());
+			}
+			_out = null;
+		}
+
+		// the mappings go with the buffers
+		_maps = null;
+
+		for (File f : _files) {
+			if (!f.delete()) {
+				_log.warning("cannot delete " + f);
+			}
+		}
+		_files.clear();
+		_extents.clear();
+		_current = null;
+		_currentPld = null;
+	}
+
+	/**
+	 * Where the next URI of a pay-level domain is, and how many are left.
+	 */
+	static class Extent {
+		int _segment;
+		long _position;
+		int _left;
+
+		Extent(int segment, long position) {
+			_segment = segment;
+			_position = position;
+			_left = 0;
+		}
+	}
+}
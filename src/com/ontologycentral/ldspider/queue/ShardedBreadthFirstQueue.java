@@ -0,0 +1,462 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.frontier.DiskFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.frontier.RankedFrontier;
+import com.ontologycentral.ldspider.frontier.SortingDiskFrontier;
+
+/**
+ * A {@link BreadthFirstQueue} for many threads. The pay-level domains are
+ * hashed to a number of shards, each with its own lock, queues and
+ * {@link PolitenessScheduler}, so that polling and adding URIs of pay-level
+ * domains in different shards do not wait for each other. A thread polling
+ * the queue tries the shards in turn, starting at a different shard each
+ * time; if no pay-level domain is eligible in any shard, it waits until the
+ * next one is, or until a pay-level domain is added or a lookup has finished,
+ * without holding a shard lock.
+ *
+ * The limits are the same as for the {@link BreadthFirstQueue}: maxuris per
+ * pay-level domain, maxplds (the pay-level domains with the most URIs are
+ * kept) and minActPlds. Scheduling a frontier locks all shards.
+ */
+public class ShardedBreadthFirstQueue extends RedirectsFavouringSpiderQueue {
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger _log = Logger.getLogger(ShardedBreadthFirstQueue.class.getName());
+
+	Shard[] _shards;
+
+	/**
+	 * Where the next poll starts looking.
+	 */
+	AtomicInteger _next;
+
+	/**
+	 * Polling threads with no pay-level domain eligible wait for
+	 * {@link #_eligible}, signalled when a pay-level domain is added or a
+	 * lookup has finished.
+	 */
+	final ReentrantLock _waitLock = new ReentrantLock();
+	final Condition _eligible = _waitLock.newCondition();
+
+	/**
+	 * Number of signals, so that a thread does not wait for a signal sent
+	 * while it was looking at the shards; changed holding {@link #_waitLock}.
+	 */
+	volatile long _signals;
+
+	/**
+	 * Number of polling threads looking at the shards or waiting, so that
+	 * adding a URI does not take {@link #_waitLock} if there are none.
+	 */
+	AtomicInteger _waiting;
+
+	int _maxuris;
+	int _maxplds;
+	int _minActPlds;
+	boolean _minActPldsAlready4Seedlist;
+
+	int _scheduledFrontiers;
+
+	volatile boolean _minReached;
+
+	/**
+	 * @param tldm
+	 * @param redirs
+	 * @param maxuris maximum number of URIs per pay-level domain, -1 for no limit
+	 * @param maxplds maximum number of pay-level domains, -1 for no limit
+	 * @param minActPlds finish the round if fewer pay-level domains are left, -1 to disable
+	 * @param minActPldsAlready4Seedlist
+	 * @param shards number of shards
+	 */
+	public ShardedBreadthFirstQueue(TldManager tldm, Redirects redirs, int maxuris, int maxplds, int minActPlds, boolean minActPldsAlready4Seedlist, int shards) {
+		super(tldm, redirs);
+
+		_maxuris = maxuris;
+		if (_maxuris == -1) {
+			_maxuris = Integer.MAX_VALUE-1;
+		}
+
+		_maxplds = maxplds;
+		if (_maxplds == -1) {
+			_maxplds = Integer.MAX_VALUE-1;
+		}
+
+		_minActPlds = minActPlds;
+		_minActPldsAlready4Seedlist = minActPldsAlready4Seedlist;
+
+		_shards = new Shard[shards];
+		for (int i = 0; i < shards; i++) {
+			_shards[i] = new Shard();
+			_shards[i]._politeness.setStatistics(_pldStats);
+		}
+
+		_next = new AtomicInteger(0);
+		_signals = 0;
+		_waiting = new AtomicInteger(0);
+
+		_scheduledFrontiers = 0;
+		_minReached = false;
+	}
+
+	Shard getShard(String pld) {
+		return _shards[(pld.hashCode() & Integer.MAX_VALUE) % _shards.length];
+	}
+
+	public void schedule(Frontier f) {
+		// resolving the hosts may take a while, not holding the locks
+		Iterator<URI> it = resolveGroups(f.iterator(), false);
+
+		for (Shard s : _shards) {
+			s._lock.lock();
+		}
+		try {
+			scheduleLocked(f, it);
+		} finally {
+			for (Shard s : _shards) {
+				s._lock.unlock();
+			}
+		}
+	}
+
+	private void scheduleLocked(Frontier f, Iterator<URI> it) {
+		_log.info("start scheduling...");
+
+		long time = System.currentTimeMillis();
+
+		_minReached = false;
+
+		for (Shard s : _shards) {
+			s._queues.clear();
+			s._politeness.clear();
+		}
+		_queued.set(0);
+		_activePlds.set(0);
+
+		while (it.hasNext()) {
+			URI u = it.next();
+			if (!checkSeen(u)) {
+				String pld = getGroup(u);
+				if (pld != null) {
+					getShard(pld).append(pld, u);
+					_queued.incrementAndGet();
+				}
+			}
+		}
+
+		Map<String, Queue<URI>> queues = new HashMap<String, Queue<URI>>();
+		for (Shard s : _shards) {
+			queues.putAll(s._queues);
+		}
+
+		if (_minActPlds < 0) {
+			for (Map.Entry<String, Queue<URI>> e : queues.entrySet()) {
+				String pld = e.getKey();
+				Queue<URI> q = e.getValue();
+
+				// fewer uris for slow or failing servers
+				int maxuris = _pldStats.getQuota(pld, _maxuris, getShard(pld)._politeness.getDelay());
+
+				while (q.size() > maxuris) {
+					((LinkedList<URI>)q).removeLast();
+					_queued.decrementAndGet();
+				}
+			}
+		}
+
+		List<String> lipld = new ArrayList<String>(queues.keySet());
+		if (_minActPlds < 0) {
+			// most uris first
+			final Map<String, Queue<URI>> sizes = queues;
+			Collections.sort(lipld, new Comparator<String>() {
+				public int compare(String a, String b) {
+					return sizes.get(b).size() - sizes.get(a).size();
+				}
+			});
+		}
+
+		if (_maxplds < lipld.size()) {
+			for (String pld : lipld.subList(_maxplds, lipld.size())) {
+				Queue<URI> q = getShard(pld)._queues.remove(pld);
+				_queued.addAndGet(-q.size());
+				_log.fine("removing " + pld);
+			}
+			lipld = lipld.subList(0, _maxplds);
+		}
+
+		for (String pld : lipld) {
+			getShard(pld)._politeness.add(pld);
+			_activePlds.incrementAndGet();
+		}
+
+		// see BreadthFirstQueue
+		if (f instanceof DiskFrontier || f instanceof RankedFrontier || f instanceof SortingDiskFrontier) {
+			f.reset();
+		}
+
+		++_scheduledFrontiers;
+
+		_log.info("scheduling " + _activePlds.get() + " plds in " + _shards.length + " shards done (" + size()
+				+ " URIs) in " + (System.currentTimeMillis() - time) + " ms. This was schedule No. "
+				+ _scheduledFrontiers);
+	}
+
+	/**
+	 * Polls a URI from a pay-level domain that has not been accessed for
+	 * {@link CrawlerConstants#MIN_DELAY} ms, waiting for one to become
+	 * eligible if necessary.
+	 *
+	 * @return the URI or <code>null</code> if the round is over
+	 */
+	protected URI pollInternal() {
+		_waiting.incrementAndGet();
+		try {
+			return pollWaiting();
+		} finally {
+			_waiting.decrementAndGet();
+		}
+	}
+
+	private URI pollWaiting() {
+		long time = System.currentTimeMillis();
+
+		while (true) {
+			long signals = _signals;
+
+			if (_minReached || _queued.get() == 0) {
+				return null;
+			}
+
+			if (_minActPlds > -1 && _activePlds.get() < _minActPlds && (_minActPldsAlready4Seedlist || _scheduledFrontiers > 1)) {
+				_log.info("The minimum number of active PLDs has been reached. Finishing this round...");
+				_minReached = true;
+				return null;
+			}
+
+			long now = System.currentTimeMillis();
+			long wait = Long.MAX_VALUE;
+
+			int start = (_next.getAndIncrement() & Integer.MAX_VALUE) % _shards.length;
+			for (int i = 0; i < _shards.length; i++) {
+				Shard s = _shards[(start + i) % _shards.length];
+
+				URI next;
+				long w;
+
+				s._lock.lock();
+				try {
+					next = pollShard(s, now);
+					w = s._politeness.untilNext(now);
+				} finally {
+					s._lock.unlock();
+				}
+
+				if (next != null) {
+					_log.fine("poll for " + next + " done in " + (System.currentTimeMillis() - time) + " ms");
+					return next;
+				}
+
+				if (w >= 0 && w < wait) {
+					wait = w;
+				}
+			}
+
+			if (wait == Long.MAX_VALUE) {
+				// other threads hold the last pay-level domains
+				wait = CrawlerConstants.MIN_DELAY;
+			}
+
+			_log.fine("no pld eligible, waiting " + wait + " ms ...");
+			_waitLock.lock();
+			try {
+				// no shard lock held
+				if (signals == _signals && wait > 0) {
+					_eligible.await(wait, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				_log.info(e.getMessage());
+			} finally {
+				_waitLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wakes up the threads waiting for a pay-level domain to become eligible.
+	 */
+	void signal() {
+		if (_waiting.get() > 0) {
+			_waitLock.lock();
+			try {
+				_signals++;
+				_eligible.signalAll();
+			} finally {
+				_waitLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Polls a URI from the next eligible pay-level domain of a shard; the
+	 * lock of the shard is held.
+	 *
+	 * @return the URI, or <code>null</code> if no pay-level domain with URIs
+	 *         not seen is eligible
+	 */
+	private URI pollShard(Shard s, long now) {
+		String pld;
+		while ((pld = s._politeness.next(now)) != null) {
+			Queue<URI> q = s._queues.get(pld);
+
+			URI next = null;
+			while (next == null && !q.isEmpty()) {
+				next = q.poll();
+				_queued.decrementAndGet();
+
+				if (checkSeen(next)) {
+					next = null;
+				} else {
+					setSeen(next);
+				}
+			}
+
+			if (!q.isEmpty()) {
+				s._politeness.add(pld);
+				prefetch(q.peek());
+			} else {
+				s._queues.remove(pld);
+				_activePlds.decrementAndGet();
+			}
+
+			if (next != null) {
+				return next;
+			}
+		}
+
+		return null;
+	}
+
+	public void add(URI u, boolean uriHasAlreadyBeenProcessed) {
+		if (!uriHasAlreadyBeenProcessed) {
+			try {
+				u = Frontier.normalise(u);
+			} catch (URISyntaxException e) {
+				_log.info(u +  " not parsable, skipping " + u);
+				return;
+			}
+		}
+
+		resolveGroup(u);
+
+		// the pld or, if set, the politeness group
+		String pld = getGroup(u);
+		if (pld == null) {
+			return;
+		}
+
+		boolean created = false;
+
+		Shard s = getShard(pld);
+		s._lock.lock();
+		try {
+			if (s.append(pld, u)) {
+				s._politeness.add(pld);
+				_activePlds.incrementAndGet();
+				created = true;
+			}
+			_queued.incrementAndGet();
+		} finally {
+			s._lock.unlock();
+		}
+
+		if (created) {
+			signal();
+		}
+	}
+
+	/**
+	 * Wakes up the waiting threads, as the lookup may have added URIs or
+	 * emptied the queue.
+	 */
+	public void finished(URI u) {
+		signal();
+	}
+
+	public int getShards() {
+		return _shards.length;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+
+		for (Shard s : _shards) {
+			s._lock.lock();
+			try {
+				for (Map.Entry<String, Queue<URI>> e : s._queues.entrySet()) {
+					sb.append(e.getKey());
+					sb.append(": ");
+					sb.append(e.getValue().size());
+					sb.append("\n");
+				}
+			} finally {
+				s._lock.unlock();
+			}
+		}
+		sb.append("Plus ");
+		sb.append(_redirectsQueue.size());
+		sb.append(" redirects.\n");
+
+		return sb.toString();
+	}
+
+	/**
+	 * The pay-level domains hashed to one lock.
+	 */
+	static class Shard implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final ReentrantLock _lock = new ReentrantLock();
+
+		/**
+		 * Queues of the pay-level domains with URIs left.
+		 */
+		Map<String, Queue<URI>> _queues = new HashMap<String, Queue<URI>>();
+
+		PolitenessScheduler _politeness = new PolitenessScheduler(CrawlerConstants.MIN_DELAY);
+
+		/**
+		 * @return true if the queue of the pay-level domain was empty
+		 */
+		boolean append(String pld, URI u) {
+			Queue<URI> q = _queues.get(pld);
+			boolean created = (q == null);
+			if (created) {
+				q = new LinkedList<URI>();
+				_queues.put(pld, q);
+			}
+			q.add(u);
+			return created;
+		}
+	}
+}
@@ -3,13 +3,15 @@ package com.ontologycentral.ldspider.queue;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
 
 import org.semanticweb.yars.tld.TldManager;
-import org.semanticweb.yars.util.LRUMapCache;
 
 import com.ontologycentral.ldspider.CrawlerConstants;
 import com.ontologycentral.ldspider.frontier.DiskFrontier;
@@ -25,10 +27,17 @@ public abstract class SpiderQueue implements Serializable{
 	public abstract URI poll();
 	public abstract int size();
 	
-	protected Set<URI> _seen;
+	/**
+	 * The URIs polled so far, as fingerprints (see {@link FingerprintSeenSet}).
+	 */
+	protected SeenSet _seen;
+	
+	/**
+	 * If set, the URIs newly marked as seen are also noted for the next
+	 * checkpoint.
+	 */
+	protected volatile SeenJournal _journal;
 	
-	LRUMapCache<URI, Integer> _redirsCache = new LRUMapCache<URI, Integer>(2 * CrawlerConstants.NB_THREADS);
-
 	//protected Set<URI> _seenRound = null;
 	//protected Set<URI> _redirsRound = null;
 
@@ -37,12 +46,48 @@ public abstract class SpiderQueue implements Serializable{
 	protected TldManager _tldm;
 	protected Redirects _redirs;
 	
+	/**
+	 * Which URIs share a politeness delay, <code>null</code> for the URIs of
+	 * a pay-level domain.
+	 */
+	protected volatile PolitenessGroups _groups;
+	
+	/**
+	 * Response times and errors per politeness group, for the delay and
+	 * quota learned per group.
+	 */
+	protected final PldStatistics _pldStats = new PldStatistics();
+	
+	/**
+	 * Guards the data structures of the queue. An explicit lock instead of
+	 * synchronized methods, so that threads waiting for the queue do not pin
+	 * their carrier thread when running as virtual threads.
+	 */
+	protected final ReentrantLock _lock = new ReentrantLock();
+	
+	/**
+	 * Number of URIs in the queues of the pay-level domains, kept up to date
+	 * by the subclasses so that {@link #size()} does not have to count them.
+	 */
+	protected final AtomicInteger _queued = new AtomicInteger(0);
+	
+	/**
+	 * Number of pay-level domains with URIs in the queues, kept up to date by
+	 * the subclasses.
+	 */
+	protected final AtomicInteger _activePlds = new AtomicInteger(0);
+	
+	/**
+	 * Number of URIs polled.
+	 */
+	protected final AtomicLong _polled = new AtomicLong(0);
+	
 	public SpiderQueue(TldManager tldm, Redirects redirs) {
 		_tldm = tldm;
 		
 		_redirs = redirs;
 		
-		_seen = Collections.synchronizedSet(new HashSet<URI>());
+		_seen = new FingerprintSeenSet(FingerprintSeenSet.DEFAULT_STRIPES, CrawlerConstants.SEEN_OFF_HEAP);
 		
 //		_urisRound = new HashSet<URI>();
 	}
@@ -86,15 +131,10 @@ public abstract class SpiderQueue implements Serializable{
 		_redirs.put(from, to);
 //		_redirsRound.add(to);
 		
-		Integer i = null;
-		if ((i = _redirsCache.get(from)) != null) {
-			_redirsCache.remove(from);
-			_redirsCache.put(to, i = Integer.valueOf(i.intValue() + 1));
-		} else {
-			_redirsCache.put(to, i = Integer.valueOf(0));
-		}
+		// the redirects before this one
+		int hops = _redirs.getHops(to) - 1;
 		
-		if (i.intValue() >= CrawlerConstants.MAX_REDIRECTS) {
+		if (hops >= CrawlerConstants.MAX_REDIRECTS) {
 			_log.info("Too many redirects on path to: " + to + " ; previous on path: " + from + " .");
 			return;
 		}
@@ -130,6 +170,143 @@ public abstract class SpiderQueue implements Serializable{
 		return from;
 	}
 	
+	/**
+	 * @return number of pay-level domains with URIs in the queues
+	 */
+	public int getActivePlds() {
+		return _activePlds.get();
+	}
+	
+	/**
+	 * Takes the numbers from counters; does not need the lock.
+	 * 
+	 * @return the current statistics of the queue
+	 */
+	public QueueStatistics getStatistics() {
+		return new QueueStatistics(size(), _activePlds.get(), _polled.get(), _seen.size());
+	}
+	
+	public PolitenessGroups getPolitenessGroups() {
+		return _groups;
+	}
+	
+	/**
+	 * @param groups which URIs share a politeness delay, <code>null</code> for
+	 *        the URIs of a pay-level domain
+	 */
+	public void setPolitenessGroups(PolitenessGroups groups) {
+		_groups = groups;
+	}
+	
+	/**
+	 * @return the politeness group of the URI, by default its pay-level
+	 *         domain; <code>null</code> if it has no pay-level domain
+	 */
+	String getGroup(URI u) {
+		PolitenessGroups g = _groups;
+		if (g == null) {
+			return _tldm.getPLD(u);
+		}
+		return g.getGroup(u);
+	}
+	
+	/**
+	 * Resolves the host of the URI that a politeness group is polled for
+	 * next, in the background. Called when the group has been put back into
+	 * the schedule, so the lookup follows within the delay, long before the
+	 * address expires from the cache.
+	 * 
+	 * @param next
+	 */
+	void prefetch(URI next) {
+		PolitenessGroups g = _groups;
+		if (g != null && next != null) {
+			g.prefetch(next);
+		}
+	}
+	
+	/**
+	 * If the politeness groups need the address of the host, resolves it, so
+	 * that the URI is grouped by address right away. Called before taking
+	 * the lock for adding a single URI.
+	 * 
+	 * @param u
+	 */
+	void resolveGroup(URI u) {
+		PolitenessGroups g = _groups;
+		if (g != null) {
+			g.resolve(u);
+		}
+	}
+	
+	/**
+	 * If the politeness groups need the addresses of the hosts, reads the
+	 * URIs not seen yet and resolves their hosts in parallel, rather than
+	 * one by one while scheduling.
+	 * 
+	 * @param it the URIs of a frontier
+	 * @param remove whether to remove the URIs from the frontier
+	 * @return the URIs to schedule
+	 */
+	Iterator<URI> resolveGroups(Iterator<URI> it, boolean remove) {
+		PolitenessGroups g = _groups;
+		if (g == null || !g.isResolving()) {
+			return it;
+		}
+		
+		List<URI> uris = new ArrayList<URI>();
+		while (it.hasNext()) {
+			URI u = it.next();
+			if (!checkSeen(u)) {
+				uris.add(u);
+			}
+			if (remove) {
+				it.remove();
+			}
+		}
+		g.resolve(uris);
+		
+		return uris.iterator();
+	}
+	
+	/**
+	 * @return the response times and errors of the lookups, and the delays
+	 *         and quotas learned from them, per pay-level domain (resp.
+	 *         politeness group)
+	 */
+	public PldStatistics getPldStatistics() {
+		return _pldStats;
+	}
+	
+	/**
+	 * Called when a lookup of a URI obtained via {@link #poll()} has got a
+	 * response.
+	 * 
+	 * @param u
+	 * @param status
+	 * @param duration time in ms from sending the request to handling the response
+	 */
+	public void lookupDone(URI u, int status, long duration) {
+		String g = getGroup(u);
+		if (g != null) {
+			_pldStats.done(g, status, duration);
+		}
+	}
+	
+	/**
+	 * Called when a lookup of a URI obtained via {@link #poll()} has failed
+	 * without a response.
+	 * 
+	 * @param u
+	 * @param duration time in ms until the failure, -1 if unknown
+	 */
+	public void lookupFailed(URI u, long duration) {
+		String g = getGroup(u);
+		if (g != null) {
+			_pldStats.failed(g, duration);
+		}
+	}
+	
 	public Redirects getRedirects() {
 		return _redirs;
 	}
@@ -138,19 +315,43 @@ public abstract class SpiderQueue implements Serializable{
 		_redirs = redirs;		
 	}
 
+	/**
+	 * Called when a URI obtained via {@link #poll()} has been processed
+	 * completely, i.e. after its links have been extracted.
+	 * 
+	 * @param u
+	 */
+	public void finished(URI u) {
+		;
+	}
+
 	public void addSeen(URI u) {
-		if (u != null)
-			_seen.add(u);
+		if (u != null && _seen.add(u)) {
+			SeenJournal j = _journal;
+			if (j != null)
+				j.add(u);
+		}
 	}
 	
-	public Set<URI> getSeen() {
+	public SeenSet getSeen() {
 		return _seen;
 	}
 	
-	public void setSeen(Set<URI> seen) {
+	public void setSeen(SeenSet seen) {
 		_seen = seen;
 	}
 	
+	public SeenJournal getSeenJournal() {
+		return _journal;
+	}
+	
+	/**
+	 * @param journal the journal of the URIs newly seen, <code>null</code> for none
+	 */
+	public void setSeenJournal(SeenJournal journal) {
+		_journal = journal;
+	}
+	
 	public boolean checkSeen(URI u) {
 		if (u == null) {
 			throw new NullPointerException("u cannot be null");
@@ -159,6 +360,17 @@ public abstract class SpiderQueue implements Serializable{
 		return _seen.contains(u);
 	}
 	
+	/**
+	 * Checks a batch of URIs, which a {@link TieredSeenSet} verifies on disk
+	 * together.
+	 * 
+	 * @param uris
+	 * @return for each URI whether it has been seen
+	 */
+	public boolean[] checkSeen(List<URI> uris) {
+		return _seen.contains(uris);
+	}
+	
 	void setSeen(URI u) {
 		addSeen(u);
 //		if (u != null) {
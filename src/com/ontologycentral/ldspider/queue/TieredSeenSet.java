@@ -0,0 +1,743 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * A set of URI {@link Fingerprint}s that grows on disk instead of on the
+ * heap, for crawls of more URIs than a {@link FingerprintSeenSet} can hold
+ * in memory.
+ *
+ * The set has three tiers, similar to a log-structured merge tree:
+ * <ul>
+ * <li>a Bloom filter over all fingerprints, which answers most lookups of
+ * URIs not in the set without touching the other tiers,</li>
+ * <li>a buffer of the recently added fingerprints in memory,</li>
+ * <li>runs of sorted fingerprints on disk, each with a sparse index of its
+ * blocks in memory. A full buffer is written to a new run; once there are
+ * {@link #MERGE_RUNS} runs, a background thread merges them into one.</li>
+ * </ul>
+ *
+ * A URI the Bloom filter reports as maybe contained has to be looked up in
+ * a block of each run. {@link #contains(List)} looks up a whole batch of URIs
+ * at once, reading each block needed only once and in the order of the
+ * file; the queues use it to check the frontier when scheduling.
+ *
+ * As with {@link FingerprintSeenSet}, the URIs themselves are not stored,
+ * so the set cannot be iterated, and URIs cannot be removed.
+ */
+public class TieredSeenSet implements SeenSet, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final Logger _log = Logger.getLogger(TieredSeenSet.class.getName());
+
+	public static final long DEFAULT_EXPECTED = 10000000;
+	public static final double DEFAULT_FALSE_POSITIVES = 0.01;
+	public static final int DEFAULT_BUFFER = 1 << 20;
+
+	/**
+	 * The runs are merged once there are that many.
+	 */
+	public static final int MERGE_RUNS = 4;
+
+	/**
+	 * Number of fingerprints per block of a run, i.e. per entry of its index.
+	 */
+	static final int BLOCK = 4096;
+
+	static final String PREFIX = "ldspider-seen";
+	static final String SUFFIX = ".run";
+
+	long _expected;
+	double _falsePositives;
+	int _bufferSize;
+	File _dir;
+
+	transient AtomicLongArray _bloom;
+	transient long _bits;
+	transient int _hashes;
+
+	transient FingerprintSeenSet _buffer;
+	transient List<Run> _runs;
+
+	/**
+	 * Guards the buffer and the list of runs: lookups and adds hold the read
+	 * lock, flushing the buffer and replacing merged runs the write lock.
+	 */
+	transient ReentrantReadWriteLock _rwlock;
+
+	transient AtomicLong _size;
+	transient volatile boolean _merging;
+
+	public TieredSeenSet() {
+		this(DEFAULT_EXPECTED, DEFAULT_FALSE_POSITIVES, DEFAULT_BUFFER, new File(System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * @param expected number of URIs the Bloom filter is sized for; with more
+	 *        URIs, more lookups have to go to disk
+	 * @param falsePositives false positive rate of the Bloom filter at the
+	 *        expected number of URIs
+	 * @param bufferSize number of fingerprints kept in memory before they are
+	 *        written to a run
+	 * @param dir directory for the runs
+	 */
+	public TieredSeenSet(long expected, double falsePositives, int bufferSize, File dir) {
+		_expected = expected;
+		_falsePositives = falsePositives;
+		_bufferSize = bufferSize;
+		_dir = dir;
+
+		init();
+	}
+
+	void init() {
+		// optimal number of bits and hash functions for a Bloom filter
+		double ln2 = Math.log(2);
+		long bits = (long)Math.ceil(-_expected * Math.log(_falsePositives) / (ln2 * ln2));
+		bits = Math.max(64, Math.min(bits, 64L * Integer.MAX_VALUE));
+		_bloom = new AtomicLongArray((int)((bits + 63) / 64));
+		_bits = 64L * _bloom.length();
+		_hashes = Math.max(1, (int)Math.round((double)bits / _expected * ln2));
+
+		_buffer = new FingerprintSeenSet();
+		_runs = new ArrayList<Run>();
+		_rwlock = new ReentrantReadWriteLock();
+		_size = new AtomicLong(0);
+		_merging = false;
+	}
+
+	static long fingerprint(URI u) {
+		long fp = Fingerprint.fingerprint(u);
+		// as stored by the buffer
+		return fp == 0 ? FingerprintSeenSet.ZERO : fp;
+	}
+
+	public boolean add(URI u) {
+		return addFingerprint(fingerprint(u));
+	}
+
+	/**
+	 * @param fp
+	 * @return true if the fingerprint has not been in the set
+	 */
+	public boolean addFingerprint(long fp) {
+		if (fp == 0) {
+			fp = FingerprintSeenSet.ZERO;
+		}
+
+		_rwlock.readLock().lock();
+		try {
+			if (mightContain(fp) && (_buffer.containsFingerprint(fp) || onDisk(fp))) {
+				return false;
+			}
+			if (!_buffer.addFingerprint(fp)) {
+				// added by another thread in the meantime
+				return false;
+			}
+			setBloom(fp);
+			_size.incrementAndGet();
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+
+		if (_buffer.size() >= _bufferSize) {
+			flush(false);
+		}
+
+		return true;
+	}
+
+	public boolean contains(URI u) {
+		long fp = fingerprint(u);
+
+		if (!mightContain(fp)) {
+			return false;
+		}
+
+		_rwlock.readLock().lock();
+		try {
+			return _buffer.containsFingerprint(fp) || onDisk(fp);
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Looks up a batch of URIs. The fingerprints that might be on disk are
+	 * sorted, so that each block of a run is read at most once.
+	 *
+	 * @param uris
+	 * @return for each URI whether it is in the set
+	 */
+	public boolean[] contains(List<URI> uris) {
+		boolean[] seen = new boolean[uris.size()];
+
+		long[] maybe = new long[uris.size()];
+		int[] pos = new int[uris.size()];
+		int m = 0;
+
+		_rwlock.readLock().lock();
+		try {
+			for (int i = 0; i < seen.length; i++) {
+				long fp = fingerprint(uris.get(i));
+				if (!mightContain(fp)) {
+					continue;
+				}
+				if (_buffer.containsFingerprint(fp)) {
+					seen[i] = true;
+					continue;
+				}
+				maybe[m] = fp;
+				pos[m] = i;
+				m++;
+			}
+
+			if (m == 0 || _runs.isEmpty()) {
+				return seen;
+			}
+
+			long[] sorted = new long[m];
+			System.arraycopy(maybe, 0, sorted, 0, m);
+			Arrays.sort(sorted);
+
+			boolean[] found = new boolean[m];
+			for (Run r : _runs) {
+				r.contains(sorted, found);
+			}
+
+			for (int j = 0; j < m; j++) {
+				int k = Arrays.binarySearch(sorted, maybe[j]);
+				seen[pos[j]] = found[k];
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read runs in " + _dir, e);
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+
+		_log.fine(m + " of " + seen.length + " uris verified on disk");
+
+		return seen;
+	}
+
+	/**
+	 * The read lock is held.
+	 */
+	boolean onDisk(long fp) {
+		try {
+			for (Run r : _runs) {
+				if (r.contains(fp)) {
+					return true;
+				}
+			}
+			return false;
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read runs in " + _dir, e);
+		}
+	}
+
+	boolean mightContain(long fp) {
+		long h2 = Fingerprint.mix(fp) | 1;
+		for (int i = 0; i < _hashes; i++) {
+			long bit = ((fp + i * h2) & Long.MAX_VALUE) % _bits;
+			if ((_bloom.get((int)(bit >>> 6)) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	void setBloom(long fp) {
+		long h2 = Fingerprint.mix(fp) | 1;
+		for (int i = 0; i < _hashes; i++) {
+			long bit = ((fp + i * h2) & Long.MAX_VALUE) % _bits;
+			int word = (int)(bit >>> 6);
+			long mask = 1L << bit;
+			while (true) {
+				long v = _bloom.get(word);
+				if ((v & mask) != 0 || _bloom.compareAndSet(word, v, v | mask)) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the buffer to a new run and starts a merge if there are enough
+	 * runs.
+	 *
+	 * @param force write the buffer even if it is not full
+	 */
+	void flush(boolean force) {
+		_rwlock.writeLock().lock();
+		try {
+			int size = _buffer.size();
+			if (size == 0 || (!force && size < _bufferSize)) {
+				// flushed by another thread
+				return;
+			}
+
+			long time = System.currentTimeMillis();
+
+			long[] fps = _buffer.fingerprints();
+			Arrays.sort(fps);
+
+			RunWriter w = new RunWriter(_dir);
+			for (long fp : fps) {
+				w.write(fp);
+			}
+			_runs.add(w.close());
+			_buffer = new FingerprintSeenSet();
+
+			_log.info("wrote " + fps.length + " fingerprints to run " + _runs.size() + " in " + (System.currentTimeMillis() - time) + " ms");
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot write run to " + _dir, e);
+		} finally {
+			_rwlock.writeLock().unlock();
+		}
+
+		startMerge();
+	}
+
+	void startMerge() {
+		_rwlock.readLock().lock();
+		try {
+			if (_merging || _runs.size() < MERGE_RUNS) {
+				return;
+			}
+			_merging = true;
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+
+		Thread t = new Thread("seen-set merge") {
+			public void run() {
+				try {
+					merge();
+				} catch (IOException e) {
+					_log.warning("cannot merge runs in " + _dir + ": " + e.getMessage());
+				} finally {
+					_merging = false;
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * Merges the current runs into one. The runs are not changed once
+	 * written, so lookups can go on while merging; only replacing the runs
+	 * takes the write lock.
+	 */
+	void merge() throws IOException {
+		List<Run> runs;
+		_rwlock.readLock().lock();
+		try {
+			runs = new ArrayList<Run>(_runs);
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+
+		long time = System.currentTimeMillis();
+
+		Run merged = mergeRuns(runs, _dir);
+
+		_rwlock.writeLock().lock();
+		try {
+			if (!_runs.containsAll(runs)) {
+				// cleared in the meantime
+				merged.delete();
+				return;
+			}
+			_runs.removeAll(runs);
+			_runs.add(merged);
+		} finally {
+			_rwlock.writeLock().unlock();
+		}
+
+		for (Run r : runs) {
+			r.delete();
+		}
+
+		_log.info("merged " + runs.size() + " runs into one of " + merged._count + " fingerprints in " + (System.currentTimeMillis() - time) + " ms");
+	}
+
+	static Run mergeRuns(List<Run> runs, File dir) throws IOException {
+		DataInputStream[] ins = new DataInputStream[runs.size()];
+		long[] heads = new long[ins.length];
+		long[] left = new long[ins.length];
+
+		RunWriter w = new RunWriter(dir);
+		try {
+			for (int i = 0; i < ins.length; i++) {
+				Run r = runs.get(i);
+				ins[i] = new DataInputStream(new BufferedInputStream(new FileInputStream(r._file), 1 << 16));
+				left[i] = r._count;
+				if (left[i] > 0) {
+					heads[i] = ins[i].readLong();
+				}
+			}
+
+			// few runs, so a linear scan for the smallest head will do
+			while (true) {
+				int min = -1;
+				for (int i = 0; i < ins.length; i++) {
+					if (left[i] > 0 && (min == -1 || heads[i] < heads[min])) {
+						min = i;
+					}
+				}
+				if (min == -1) {
+					break;
+				}
+
+				w.write(heads[min]);
+
+				left[min]--;
+				if (left[min] > 0) {
+					heads[min] = ins[min].readLong();
+				}
+			}
+		} finally {
+			for (DataInputStream in : ins) {
+				if (in != null) {
+					in.close();
+				}
+			}
+		}
+
+		return w.close();
+	}
+
+	public int size() {
+		return (int)Math.min(_size.get(), Integer.MAX_VALUE);
+	}
+
+	public void clear() {
+		List<Run> runs;
+		_rwlock.writeLock().lock();
+		try {
+			for (int i = 0; i < _bloom.length(); i++) {
+				_bloom.set(i, 0);
+			}
+			_buffer = new FingerprintSeenSet();
+			runs = new ArrayList<Run>(_runs);
+			_runs.clear();
+			_size.set(0);
+		} finally {
+			_rwlock.writeLock().unlock();
+		}
+
+		for (Run r : runs) {
+			r.delete();
+		}
+	}
+
+	/**
+	 * Deletes the runs.
+	 */
+	public void close() {
+		clear();
+	}
+
+	/**
+	 * Reads all runs, so this needs 8 bytes of memory per URI in the set.
+	 */
+	public long[] fingerprints() {
+		_rwlock.readLock().lock();
+		try {
+			long[] buffered = _buffer.fingerprints();
+			long count = buffered.length;
+			for (Run r : _runs) {
+				count += r._count;
+			}
+			if (count > Integer.MAX_VALUE) {
+				throw new IllegalStateException("too many fingerprints to return at once: " + count);
+			}
+
+			long[] fps = new long[(int)count];
+			System.arraycopy(buffered, 0, fps, 0, buffered.length);
+			int n = buffered.length;
+			for (Run r : _runs) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(r._file), 1 << 16));
+				try {
+					for (long i = 0; i < r._count; i++) {
+						fps[n++] = in.readLong();
+					}
+				} finally {
+					in.close();
+				}
+			}
+			return fps;
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read runs in " + _dir, e);
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return number of runs on disk
+	 */
+	public int getRuns() {
+		_rwlock.readLock().lock();
+		try {
+			return _runs.size();
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return bytes of the runs on disk
+	 */
+	public long getDiskUsage() {
+		_rwlock.readLock().lock();
+		try {
+			long bytes = 0;
+			for (Run r : _runs) {
+				bytes += 8L * r._count;
+			}
+			return bytes;
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return bytes of the Bloom filter, the buffer and the indexes of the runs
+	 */
+	public long getMemoryUsage() {
+		_rwlock.readLock().lock();
+		try {
+			long bytes = _bits / 8 + _buffer.getMemoryUsage();
+			for (Run r : _runs) {
+				bytes += 8L * r._index.length;
+			}
+			return bytes;
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	public String toString() {
+		return size() + " fingerprints, " + getRuns() + " runs with " + getDiskUsage() + " bytes on disk, " + getMemoryUsage() + " bytes in memory";
+	}
+
+	/**
+	 * Writes the fingerprints in sorted order; reading them writes one run.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		flush(true);
+
+		out.defaultWriteObject();
+
+		_rwlock.readLock().lock();
+		try {
+			long count = 0;
+			for (Run r : _runs) {
+				count += r._count;
+			}
+			out.writeLong(count);
+
+			Run merged = mergeRuns(_runs, _dir);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(merged._file), 1 << 16));
+			try {
+				for (long i = 0; i < merged._count; i++) {
+					out.writeLong(in.readLong());
+				}
+			} finally {
+				in.close();
+				merged.delete();
+			}
+		} finally {
+			_rwlock.readLock().unlock();
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (_dir == null || !_dir.isDirectory()) {
+			_dir = new File(System.getProperty("java.io.tmpdir"));
+		}
+		init();
+
+		long count = in.readLong();
+		if (count == 0) {
+			return;
+		}
+
+		RunWriter w = new RunWriter(_dir);
+		for (long i = 0; i < count; i++) {
+			long fp = in.readLong();
+			w.write(fp);
+			setBloom(fp);
+		}
+		_runs.add(w.close());
+		_size.set(count);
+	}
+
+	/**
+	 * Writes sorted fingerprints to a new run, collecting the index.
+	 */
+	static class RunWriter {
+		File _file;
+		DataOutputStream _out;
+		long _count;
+		long[] _index;
+		int _blocks;
+
+		RunWriter(File dir) throws IOException {
+			_file = File.createTempFile(PREFIX, SUFFIX, dir);
+			_file.deleteOnExit();
+			_out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_file), 1 << 16));
+			_count = 0;
+			_index = new long[16];
+			_blocks = 0;
+		}
+
+		void write(long fp) throws IOException {
+			if (_count % BLOCK == 0) {
+				if (_blocks == _index.length) {
+					long[] index = new long[_index.length * 2];
+					System.arraycopy(_index, 0, index, 0, _index.length);
+					_index = index;
+				}
+				_index[_blocks++] = fp;
+			}
+			_out.writeLong(fp);
+			_count++;
+		}
+
+		Run close() throws IOException {
+			_out.close();
+
+			long[] index = new long[_blocks];
+			System.arraycopy(_index, 0, index, 0, _blocks);
+
+			return new Run(_file, _count, index);
+		}
+	}
+
+	/**
+	 * A file of sorted fingerprints, with the first fingerprint of each
+	 * block in memory.
+	 */
+	static class Run {
+		final File _file;
+		final long _count;
+		final long[] _index;
+		final RandomAccessFile _raf;
+		final FileChannel _channel;
+
+		Run(File file, long count, long[] index) throws IOException {
+			_file = file;
+			_count = count;
+			_index = index;
+			_raf = new RandomAccessFile(file, "r");
+			_channel = _raf.getChannel();
+		}
+
+		/**
+		 * @return the block that contains the fingerprint if it is in the
+		 *         run, or -1
+		 */
+		int getBlock(long fp) {
+			int b = Arrays.binarySearch(_index, fp);
+			if (b < 0) {
+				// the block before the insertion point
+				b = -b - 2;
+			}
+			return b;
+		}
+
+		boolean contains(long fp) throws IOException {
+			int b = getBlock(fp);
+			if (b < 0) {
+				return false;
+			}
+			return Arrays.binarySearch(readBlock(b), fp) >= 0;
+		}
+
+		/**
+		 * Looks up sorted fingerprints, reading each block at most once.
+		 *
+		 * @param fps sorted fingerprints
+		 * @param found set to true for the fingerprints in the run
+		 */
+		void contains(long[] fps, boolean[] found) throws IOException {
+			int current = -1;
+			long[] block = null;
+
+			for (int i = 0; i < fps.length; i++) {
+				if (found[i]) {
+					continue;
+				}
+				int b = getBlock(fps[i]);
+				if (b < 0) {
+					continue;
+				}
+				if (b != current) {
+					block = readBlock(b);
+					current = b;
+				}
+				if (Arrays.binarySearch(block, fps[i]) >= 0) {
+					found[i] = true;
+				}
+			}
+		}
+
+		long[] readBlock(int b) throws IOException {
+			long start = (long)b * BLOCK;
+			int n = (int)Math.min(BLOCK, _count - start);
+
+			// positional reads, so that threads can share the channel
+			ByteBuffer buf = ByteBuffer.allocate(8 * n);
+			long pos = 8 * start;
+			while (buf.hasRemaining()) {
+				int r = _channel.read(buf, pos + buf.position());
+				if (r < 0) {
+					throw new EOFException(_file + " is truncated");
+				}
+			}
+			buf.flip();
+
+			long[] block = new long[n];
+			buf.asLongBuffer().get(block);
+			return block;
+		}
+
+		void delete() {
+			try {
+				_raf.close();
+			} catch (IOException e) {
+				_log.warning("cannot close " + _file + ": " + e.getMessage());
+			}
+			if (!_file.delete()) {
+				_log.warning("cannot delete " + _file);
+			}
+		}
+	}
+}
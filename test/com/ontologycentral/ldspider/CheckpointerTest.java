@@ -0,0 +1,227 @@
+package com.ontologycentral.ldspider;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.queue.BreadthFirstQueue;
+import com.ontologycentral.ldspider.queue.HashTableRedirects;
+import com.ontologycentral.ldspider.queue.SpiderQueue;
+
+public class CheckpointerTest extends TestCase {
+	File _dir;
+	
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("ldspider-checkpoints", "");
+		_dir.delete();
+	}
+	
+	public void tearDown() throws Exception {
+		File[] files = _dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		_dir.delete();
+	}
+	
+	SpiderQueue newQueue() throws Exception {
+		return new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), Integer.MAX_VALUE, Integer.MAX_VALUE, -1, false);
+	}
+	
+	public void testResume() throws Exception {
+		URI a = new URI("http://a.example.org/");
+		URI b = new URI("http://b.example.org/");
+		URI c = new URI("http://c.example.org/");
+		URI d = new URI("http://d.example.org/");
+		
+		File output = new File(_dir, "output.nq");
+		Checkpointer cp = new Checkpointer(_dir);
+		FileOutputStream os = new FileOutputStream(output);
+		cp.setOutput(os, output);
+		
+		SpiderQueue q = newQueue();
+		q.setSeenJournal(cp.getJournal());
+		CrawlBudget budget = new CrawlBudget();
+		Frontier f = new BasicFrontier();
+		
+		// round 0
+		q.addSeen(a);
+		q.addSeen(b);
+		q.setRedirect(b, new URI("http://b.example.org/home"), 301);
+		f.add(a);
+		f.add(c);
+		budget.fetched(10);
+		os.write("round 0\n".getBytes("UTF-8"));
+		cp.checkpoint(0, q, f, budget);
+		
+		// round 1
+		f.reset();
+		q.addSeen(c);
+		f.add(d);
+		budget.fetched(5);
+		os.write("round 1\n".getBytes("UTF-8"));
+		cp.checkpoint(1, q, f, budget);
+		long length = output.length();
+		
+		// round 2, interrupted
+		q.addSeen(d);
+		os.write("round 2\n".getBytes("UTF-8"));
+		os.close();
+		new File(_dir, "seen-3.fp").createNewFile();
+		new File(_dir, "checkpoint-3.tmp").createNewFile();
+		
+		Checkpointer cp2 = new Checkpointer(_dir);
+		assertEquals(2, cp2.getLatest());
+		assertEquals(length, cp2.getOutputLength());
+		
+		SpiderQueue q2 = newQueue();
+		Frontier f2 = new BasicFrontier();
+		CrawlBudget budget2 = new CrawlBudget();
+		assertEquals(1, cp2.resume(q2, f2, budget2));
+		
+		assertTrue(q2.checkSeen(a));
+		assertTrue(q2.checkSeen(b));
+		assertTrue(q2.checkSeen(c));
+		assertFalse(q2.checkSeen(d));
+		
+		Iterator<URI> it = f2.iterator();
+		assertEquals(d, it.next());
+		assertFalse(it.hasNext());
+		
+		assertEquals(new URI("http://b.example.org/home"), q2.getRedirects().getRedirect(b));
+		assertEquals(2, budget2.getFetches());
+		assertEquals(15, budget2.getStatements());
+		
+		assertFalse(new File(_dir, "seen-3.fp").exists());
+		assertFalse(new File(_dir, "checkpoint-3.tmp").exists());
+		
+		// the numbering goes on
+		cp2.checkpoint(2, q2, f2, budget2);
+		assertEquals(3, cp2.getLatest());
+	}
+	
+	public void testNewCrawl() throws Exception {
+		Checkpointer cp = new Checkpointer(_dir);
+		assertEquals(0, cp.getLatest());
+		assertEquals(-1, cp.resume(newQueue(), new BasicFrontier(), new CrawlBudget()));
+		
+		SpiderQueue q = newQueue();
+		cp.checkpoint(0, q, new BasicFrontier(), new CrawlBudget());
+		cp.checkpoint(1, q, new BasicFrontier(), new CrawlBudget());
+		assertEquals(2, cp.getLatest());
+		assertEquals(-1, cp.getOutputLength());
+		
+		// a new crawl does not overwrite the checkpoints unless cleared
+		Checkpointer cp2 = new Checkpointer(_dir);
+		try {
+			cp2.start(new BasicFrontier());
+			fail("expected an exception for the checkpoints of another crawl");
+		} catch (IOException e) {
+			;
+		}
+		try {
+			cp2.checkpoint(0, q, new BasicFrontier(), new CrawlBudget());
+			fail("expected an exception for the checkpoints of another crawl");
+		} catch (IOException e) {
+			;
+		}
+		assertEquals(2, cp2.getLatest());
+		
+		cp2.clear();
+		cp2.start(new BasicFrontier());
+		cp2.checkpoint(0, q, new BasicFrontier(), new CrawlBudget());
+		assertEquals(1, cp2.getLatest());
+	}
+	
+	public void testLinks() throws Exception {
+		Checkpointer cp = new Checkpointer(_dir);
+		SpiderQueue q = newQueue();
+		q.setSeenJournal(cp.getJournal());
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/seed"));
+		cp.start(f);
+		
+		// the first checkpoint writes the whole frontier, the next ones only
+		// the links found, until the frontier is written again
+		for (int round = 0; round < Checkpointer.COMPACT; round++) {
+			f.add(new URI("http://example.org/" + round), null);
+			cp.checkpoint(round, q, f, new CrawlBudget());
+		}
+		assertTrue(new File(_dir, "frontier-1.rec").exists());
+		assertTrue(new File(_dir, "links-2.rec").exists());
+		assertFalse(new File(_dir, "frontier-2.rec").exists());
+		
+		// resuming before the frontier is written again
+		Checkpointer cp2 = new Checkpointer(_dir);
+		Frontier f2 = new BasicFrontier();
+		assertEquals(Checkpointer.COMPACT - 1, cp2.resume(newQueue(), f2, new CrawlBudget()));
+		
+		Set<URI> uris = new HashSet<URI>();
+		for (URI u : f2) {
+			uris.add(u);
+		}
+		assertEquals(Checkpointer.COMPACT + 1, uris.size());
+		assertTrue(uris.contains(new URI("http://example.org/seed")));
+		assertTrue(uris.contains(new URI("http://example.org/" + (Checkpointer.COMPACT - 1))));
+		
+		// the links of the round not done
+		assertFalse(new File(_dir, "links-" + (Checkpointer.COMPACT + 1) + ".rec").exists());
+		
+		// the frontier written again replaces the files of the earlier ones
+		cp2.start(f2);
+		cp2.checkpoint(Checkpointer.COMPACT, newQueue(), f2, new CrawlBudget());
+		assertTrue(new File(_dir, "frontier-" + (Checkpointer.COMPACT + 1) + ".rec").exists());
+		assertFalse(new File(_dir, "frontier-1.rec").exists());
+		assertFalse(new File(_dir, "links-2.rec").exists());
+		
+		Frontier f3 = new BasicFrontier();
+		new Checkpointer(_dir).resume(newQueue(), f3, new CrawlBudget());
+		int n = 0;
+		for (Iterator<URI> it = f3.iterator(); it.hasNext(); it.next()) {
+			n++;
+		}
+		assertEquals(Checkpointer.COMPACT + 1, n);
+	}
+	
+	public void testGzipMembers() throws Exception {
+		File output = new File(_dir, "output.nq.gz");
+		_dir.mkdirs();
+		GZIPMembersOutputStream gz = new GZIPMembersOutputStream(new FileOutputStream(output));
+		gz.write("round 0\n".getBytes("UTF-8"));
+		gz.endMember();
+		long length = output.length();
+		gz.write("round 1, not done\n".getBytes("UTF-8"));
+		gz.flush();
+		
+		// cut back to the end of the member and appended to when resuming
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		raf.setLength(length);
+		raf.close();
+		GZIPMembersOutputStream gz2 = new GZIPMembersOutputStream(new FileOutputStream(output, true));
+		gz2.write("round 1\n".getBytes("UTF-8"));
+		gz2.close();
+		
+		BufferedReader r = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(output)), "UTF-8"));
+		assertEquals("round 0", r.readLine());
+		assertEquals("round 1", r.readLine());
+		assertNull(r.readLine());
+		r.close();
+	}
+}
@@ -0,0 +1,69 @@
+package com.ontologycentral.ldspider;
+
+import junit.framework.TestCase;
+
+public class CrawlBudgetTest extends TestCase {
+	public void testUnlimited() throws Exception {
+		CrawlBudget b = new CrawlBudget();
+		b.start();
+
+		for (int i = 0; i < 1000; i++) {
+			b.fetched(10);
+			b.read(1024);
+		}
+
+		assertFalse(b.isExhausted());
+		assertEquals(1000, b.getFetches());
+		assertEquals(10000, b.getStatements());
+		assertEquals(1024000, b.getBytes());
+		assertEquals(Long.MAX_VALUE, b.getRemainingFetches());
+	}
+
+	public void testFetchesWithRdf() throws Exception {
+		CrawlBudget b = new CrawlBudget();
+		b.setMaxFetchesWithRdf(2);
+
+		b.fetched(0);
+		b.fetched(5);
+		assertFalse(b.isExhausted());
+		assertEquals(1, b.getRemainingFetchesWithRdf());
+
+		b.fetched(0);
+		assertFalse(b.isExhausted());
+
+		b.fetched(1);
+		assertTrue(b.isExhausted());
+		assertEquals("fetches with rdf", b.getExhausted());
+		assertEquals(0, b.getRemainingFetchesWithRdf());
+		assertEquals(4, b.getFetches());
+	}
+
+	public void testBytes() throws Exception {
+		CrawlBudget b = new CrawlBudget();
+		b.setMaxBytes(1000);
+
+		b.read(600);
+		assertEquals(400, b.getRemainingBytes());
+		assertFalse(b.isExhausted());
+
+		b.read(600);
+		assertTrue(b.isExhausted());
+		assertEquals("bytes", b.getExhausted());
+	}
+
+	public void testTime() throws Exception {
+		CrawlBudget b = new CrawlBudget();
+		b.setMaxTime(100);
+
+		// the clock starts with the crawl
+		Thread.sleep(150);
+		assertFalse(b.isExhausted());
+
+		b.start();
+		assertFalse(b.isExhausted());
+
+		Thread.sleep(150);
+		assertTrue(b.isExhausted());
+		assertEquals(0, b.getRemainingTime());
+	}
+}
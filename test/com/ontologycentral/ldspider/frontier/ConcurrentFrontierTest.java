@@ -0,0 +1,92 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class ConcurrentFrontierTest extends TestCase {
+	static final int THREADS = 8;
+	static final int LINKS = 1000;
+
+	public void testThreads() throws Exception {
+		final ConcurrentFrontier f = new ConcurrentFrontier(4, 16);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < THREADS; i++) {
+			Thread t = new Thread() {
+				public void run() {
+					// all threads find the same links, fragments are cut off
+					for (int j = 0; j < LINKS; j++) {
+						try {
+							f.add(new URI("http://example.org/" + j + "#frag"));
+						} catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			};
+			threads.add(t);
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Set<URI> seen = new HashSet<URI>();
+		for (URI u : f) {
+			assertNull(u.getFragment());
+			assertTrue("twice " + u, seen.add(u));
+		}
+		assertEquals(LINKS, seen.size());
+		assertEquals(LINKS, f.size());
+
+		// the buffers of the terminated threads are gone
+		assertTrue(f._buffers.isEmpty());
+	}
+
+	public void testBuffered() throws Exception {
+		ConcurrentFrontier f = new ConcurrentFrontier(4, 100);
+
+		f.add(new URI("http://example.org/a"));
+		f.add(new URI("ftp://example.org/b"));
+
+		// not merged yet, but iterating merges the buffers
+		for (ConcurrentFrontier.Shard s : f._shards) {
+			assertTrue(s._data.isEmpty());
+		}
+
+		Iterator<URI> it = f.iterator();
+		assertTrue(it.hasNext());
+		assertEquals(new URI("http://example.org/a"), it.next());
+		assertFalse(it.hasNext());
+	}
+
+	public void testRemove() throws Exception {
+		ConcurrentFrontier f = new ConcurrentFrontier(4, 1);
+
+		for (int i = 0; i < 20; i++) {
+			f.add(new URI("http://example.org/" + i));
+		}
+
+		List<URI> remove = new ArrayList<URI>();
+		remove.add(new URI("http://example.org/0"));
+		remove.add(new URI("http://example.org/1"));
+		f.removeAll(remove);
+		assertEquals(18, f.size());
+
+		for (Iterator<URI> it = f.iterator(); it.hasNext(); ) {
+			it.next();
+			it.remove();
+		}
+		assertEquals(0, f.size());
+
+		f.add(new URI("http://example.org/2"));
+		f.reset();
+		assertFalse(f.iterator().hasNext());
+	}
+}
@@ -33,4 +33,22 @@ public class FrontierTest extends TestCase {
 			System.out.println(it.next());
 		}
 	}
+
+	public void testSortingDiskFrontier() throws Exception {
+		SortingDiskFrontier frontier = new SortingDiskFrontier(true, true);
+		frontier.add(new URI("http://umbrich.net/foaf.rdf"));
+		frontier.add(new URI("http://harth.org/andreas/foaf.rdf"));
+		frontier.add(new URI("http://umbrich.net/foaf.rdf"));
+
+		Iterator<URI> it = frontier.iterator();
+		
+		// sorted, with duplicates
+		assertEquals(new URI("http://harth.org/andreas/foaf.rdf"), it.next());
+		assertEquals(new URI("http://umbrich.net/foaf.rdf"), it.next());
+		assertEquals(new URI("http://umbrich.net/foaf.rdf"), it.next());
+		assertFalse(it.hasNext());
+		
+		frontier.reset();
+		assertFalse(frontier.iterator().hasNext());
+	}
 }
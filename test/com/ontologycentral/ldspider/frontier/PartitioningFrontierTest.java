@@ -0,0 +1,225 @@
+package com.ontologycentral.ldspider.frontier;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.distributed.LinkTransport;
+import com.ontologycentral.ldspider.distributed.LocalLinkTransport;
+import com.ontologycentral.ldspider.distributed.PldPartitioner;
+import com.ontologycentral.ldspider.distributed.SocketLinkTransport;
+
+public class PartitioningFrontierTest extends TestCase {
+	static final String[] HOSTS = { "example.org", "example.com", "w3.org", "dbpedia.org", "wikipedia.org", "bbc.co.uk", "ontologycentral.com", "deri.ie" };
+
+	public void testLocal() throws Exception {
+		LocalLinkTransport[] t = LocalLinkTransport.create(3);
+		crawl(t);
+	}
+
+	public void testSockets() throws Exception {
+		InetSocketAddress[] nodes = new InetSocketAddress[2];
+		for (int i = 0; i < nodes.length; i++) {
+			ServerSocket s = new ServerSocket(0);
+			nodes[i] = new InetSocketAddress("localhost", s.getLocalPort());
+			s.close();
+		}
+
+		LinkTransport[] t = new LinkTransport[nodes.length];
+		try {
+			for (int i = 0; i < nodes.length; i++) {
+				t[i] = new SocketLinkTransport(nodes, i);
+			}
+			crawl(t);
+		} finally {
+			for (LinkTransport lt : t) {
+				if (lt != null) {
+					lt.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A batch that cannot be sent is sent again with the next one.
+	 */
+	public void testRetry() throws Exception {
+		final List<URI> sent = new ArrayList<URI>();
+		final int[] failures = { 2 };
+
+		LinkTransport t = new LinkTransport() {
+			public void send(int node, List<URI> links) throws IOException {
+				if (failures[0]-- > 0) {
+					throw new IOException("node " + node + " is down");
+				}
+				sent.addAll(links);
+			}
+
+			public void setReceiver(LinkListener l) {
+				;
+			}
+
+			public void close() {
+				;
+			}
+		};
+
+		TldManager tldm = new TldManager();
+		PldPartitioner p = new PldPartitioner(tldm, 2, 0);
+		PartitioningFrontier f = new PartitioningFrontier(new BasicFrontier(), p, t, 2);
+
+		int remote = 0;
+		for (String host : HOSTS) {
+			for (int j = 0; j < 3; j++) {
+				URI u = new URI("http://" + host + "/" + j);
+				if (p.getNode(u) != 0) {
+					f.add(u);
+					remote++;
+				}
+			}
+		}
+		assertTrue(remote > 4);
+
+		f.flush();
+		assertEquals(0, f.getUnsent());
+		assertEquals(remote, sent.size());
+		assertEquals(remote, new HashSet<URI>(sent).size());
+	}
+
+	/**
+	 * Links of more than 64k bytes are sent.
+	 */
+	public void testLongLink() throws Exception {
+		InetSocketAddress[] nodes = new InetSocketAddress[2];
+		for (int i = 0; i < nodes.length; i++) {
+			ServerSocket s = new ServerSocket(0);
+			nodes[i] = new InetSocketAddress("localhost", s.getLocalPort());
+			s.close();
+		}
+
+		StringBuilder sb = new StringBuilder("http://example.org/?q=");
+		while (sb.length() < 70000) {
+			sb.append("\u00e4");
+		}
+		final URI u = new URI(sb.toString());
+
+		final List<URI> received = Collections.synchronizedList(new ArrayList<URI>());
+
+		SocketLinkTransport[] t = new SocketLinkTransport[nodes.length];
+		try {
+			for (int i = 0; i < nodes.length; i++) {
+				t[i] = new SocketLinkTransport(nodes, i);
+			}
+			t[1].setReceiver(new LinkListener() {
+				public void linkFound(URI link, URI from) {
+					received.add(link);
+				}
+			});
+
+			t[0].send(1, Arrays.asList(u, new URI("http://example.org/")));
+
+			long deadline = System.currentTimeMillis() + 10000;
+			while (received.size() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+		} finally {
+			for (LinkTransport lt : t) {
+				if (lt != null) {
+					lt.close();
+				}
+			}
+		}
+
+		assertEquals(2, received.size());
+		assertEquals(u, received.get(0));
+	}
+
+	/**
+	 * Crawls without rounds get the links received from other nodes from the
+	 * link listener, including those received before it was set.
+	 */
+	public void testListener() throws Exception {
+		LocalLinkTransport[] t = LocalLinkTransport.create(2);
+		TldManager tldm = new TldManager();
+		PldPartitioner p0 = new PldPartitioner(tldm, 2, 0);
+		PartitioningFrontier f0 = new PartitioningFrontier(new BasicFrontier(), p0, t[0], 1);
+		PartitioningFrontier f1 = new PartitioningFrontier(new BasicFrontier(), new PldPartitioner(tldm, 2, 1), t[1], 1);
+
+		List<URI> remote = new ArrayList<URI>();
+		for (String host : HOSTS) {
+			URI u = new URI("http://" + host + "/");
+			if (p0.getNode(u) == 1) {
+				remote.add(u);
+			}
+		}
+		assertTrue(remote.size() > 1);
+
+		f0.add(remote.get(0), null);
+
+		final List<URI> found = Collections.synchronizedList(new ArrayList<URI>());
+		f1.setLinkListener(new LinkListener() {
+			public void linkFound(URI u, URI from) {
+				found.add(u);
+			}
+		});
+		for (URI u : remote.subList(1, remote.size())) {
+			f0.add(u, null);
+		}
+		f0.flush();
+
+		assertEquals(remote, found);
+		assertFalse(f1.iterator().hasNext());
+	}
+
+	void crawl(LinkTransport[] t) throws Exception {
+		TldManager tldm = new TldManager();
+
+		PartitioningFrontier[] f = new PartitioningFrontier[t.length];
+		PldPartitioner[] p = new PldPartitioner[t.length];
+		for (int i = 0; i < t.length; i++) {
+			p[i] = new PldPartitioner(tldm, t.length, i);
+			f[i] = new PartitioningFrontier(new BasicFrontier(), p[i], t[i], 3);
+		}
+
+		// every node finds links to all hosts
+		for (int i = 0; i < t.length; i++) {
+			for (String host : HOSTS) {
+				for (int j = 0; j < 2; j++) {
+					f[i].add(new URI("http://" + host + "/" + j + "#frag"), new URI("http://" + host + "/"));
+				}
+			}
+		}
+
+		for (int i = 0; i < t.length; i++) {
+			f[i].flush();
+		}
+
+		Set<URI> all = new HashSet<URI>();
+		long deadline = System.currentTimeMillis() + 10000;
+		while (all.size() < HOSTS.length * 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+			all.clear();
+			for (int i = 0; i < t.length; i++) {
+				for (URI u : f[i]) {
+					// only URIs owned by the node end up in its frontier
+					assertEquals(i, p[i].getNode(u));
+					all.add(u);
+				}
+			}
+		}
+
+		assertEquals(HOSTS.length * 2, all.size());
+		assertTrue(all.contains(new URI("http://dbpedia.org/1")));
+	}
+}
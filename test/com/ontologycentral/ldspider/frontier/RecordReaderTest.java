@@ -0,0 +1,74 @@
+package com.ontologycentral.ldspider.frontier;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+
+public class RecordReaderTest extends TestCase {
+	public void testPlain() throws Exception {
+		roundTrip(false);
+	}
+
+	public void testCompressed() throws Exception {
+		roundTrip(true);
+	}
+
+	void roundTrip(boolean compress) throws Exception {
+		StringBuilder sb = new StringBuilder("http://example.org/");
+		while (sb.length() < 3 * RecordWriter.BLOCK_SIZE) {
+			sb.append("long");
+		}
+		String longUri = sb.toString();
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		RecordWriter w = new RecordWriter(bos, compress);
+		for (int i = 0; i < 20000; i++) {
+			w.write(i, i % 300, "http://example" + (i % 300) + ".org/" + i);
+		}
+		w.write(1, 0, longUri);
+		w.write(Integer.MAX_VALUE, 1, "http://example.org/\u00e4\u00f6\u00fc");
+		w.close();
+		assertEquals(20002, w.getCount());
+
+		RecordReader r = new RecordReader(new ByteArrayInputStream(bos.toByteArray()));
+		for (int i = 0; i < 20000; i++) {
+			assertTrue(r.next());
+			assertEquals(i, r.getCount());
+			assertEquals(i % 300, r.getPld());
+			assertEquals("http://example" + (i % 300) + ".org/" + i, r.getUri());
+		}
+		assertTrue(r.next());
+		assertEquals(longUri, r.getUri());
+		assertTrue(r.next());
+		assertEquals(Integer.MAX_VALUE, r.getCount());
+		assertEquals("http://example.org/\u00e4\u00f6\u00fc", r.getUri());
+		assertFalse(r.next());
+		assertNull(r.getUri());
+		r.close();
+	}
+
+	public void testCompresses() throws Exception {
+		ByteArrayOutputStream plain = new ByteArrayOutputStream();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		RecordWriter wp = new RecordWriter(plain, false);
+		RecordWriter wc = new RecordWriter(compressed, true);
+		for (int i = 0; i < 10000; i++) {
+			wp.write(1, 0, "http://example.org/resource/" + i);
+			wc.write(1, 0, "http://example.org/resource/" + i);
+		}
+		wp.close();
+		wc.close();
+		assertTrue(compressed.size() < plain.size() / 2);
+	}
+
+	public void testNotARecordFile() throws Exception {
+		try {
+			new RecordReader(new ByteArrayInputStream("<http://example.org/> .\n".getBytes("UTF-8")));
+			fail("text is not a record file");
+		} catch (IOException e) {
+			;
+		}
+	}
+}
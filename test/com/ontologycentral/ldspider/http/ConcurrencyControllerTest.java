@@ -0,0 +1,68 @@
+package com.ontologycentral.ldspider.http;
+
+import junit.framework.TestCase;
+
+public class ConcurrencyControllerTest extends TestCase {
+	public void testAimd() throws Exception {
+		LookupThreadPool pool = new LookupThreadPool(null, 4);
+		ConcurrencyController c = new ConcurrencyController(pool, 2, 6, 1000);
+
+		long now = c._lastTime;
+
+		// too few lookups
+		lookups(pool, 5, 100);
+		now += 1000;
+		assertEquals(4, c.adjust(now));
+
+		// additive increase while latency and throughput are fine
+		lookups(pool, 20, 100);
+		now += 1000;
+		assertEquals(5, c.adjust(now));
+
+		lookups(pool, 25, 100);
+		now += 1000;
+		assertEquals(6, c.adjust(now));
+
+		// upper bound
+		lookups(pool, 30, 100);
+		now += 1000;
+		assertEquals(6, c.adjust(now));
+		assertEquals(6, pool.getSize());
+
+		// multiplicative decrease on congestion
+		lookups(pool, 30, 400);
+		now += 1000;
+		assertEquals(4, c.adjust(now));
+		assertEquals(4, pool.getSize());
+
+		// lower bound
+		lookups(pool, 30, 1000);
+		now += 1000;
+		assertEquals(3, c.adjust(now));
+		lookups(pool, 30, 2000);
+		now += 1000;
+		assertEquals(2, c.adjust(now));
+	}
+
+	public void testThroughputDrop() throws Exception {
+		LookupThreadPool pool = new LookupThreadPool(null, 4);
+		ConcurrencyController c = new ConcurrencyController(pool, 1, 10, 1000);
+
+		long now = c._lastTime;
+
+		lookups(pool, 40, 100);
+		now += 1000;
+		assertEquals(5, c.adjust(now));
+
+		// more threads, but fewer lookups per second
+		lookups(pool, 30, 100);
+		now += 1000;
+		assertEquals(3, c.adjust(now));
+	}
+
+	static void lookups(LookupThreadPool pool, int n, long latency) {
+		for (int i = 0; i < n; i++) {
+			pool.lookupDone(latency);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.ontologycentral.ldspider.http;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class DnsCacheTest extends TestCase {
+	/**
+	 * Resolves hosts starting with "unknown" to nothing and others to
+	 * 10.0.0.1, counting the resolutions.
+	 */
+	static class CountingDnsCache extends DnsCache {
+		AtomicInteger _lookups = new AtomicInteger(0);
+
+		CountingDnsCache(long ttl, long negativeTtl, int maxSize) {
+			super(ttl, negativeTtl, maxSize, 2);
+		}
+
+		protected InetAddress[] getAllByName(String host) throws UnknownHostException {
+			_lookups.incrementAndGet();
+			if (host.startsWith("unknown")) {
+				throw new UnknownHostException(host);
+			}
+			return new InetAddress[] { InetAddress.getByAddress(host, new byte[] { 10, 0, 0, 1 }) };
+		}
+	}
+
+	public void testCache() throws Exception {
+		CountingDnsCache dns = new CountingDnsCache(60000, 60000, 100);
+
+		assertEquals("10.0.0.1", dns.resolve("example.org")[0].getHostAddress());
+		assertEquals("10.0.0.1", dns.resolve("Example.ORG")[0].getHostAddress());
+		assertEquals(1, dns._lookups.get());
+		assertEquals(1, dns.getHits());
+		assertEquals(1, dns.getMisses());
+
+		// failures are cached, too
+		for (int i = 0; i < 2; i++) {
+			try {
+				dns.resolve("unknown.example.org");
+				fail("resolved unknown host");
+			} catch (UnknownHostException e) {
+				;
+			}
+		}
+		assertEquals(2, dns._lookups.get());
+
+		dns.close();
+	}
+
+	public void testExpiry() throws Exception {
+		CountingDnsCache dns = new CountingDnsCache(0, 0, 100);
+
+		dns.resolve("example.org");
+		dns.resolve("example.org");
+		assertEquals(2, dns._lookups.get());
+
+		dns.close();
+	}
+
+	public void testBounded() throws Exception {
+		CountingDnsCache dns = new CountingDnsCache(60000, 60000, 8);
+
+		for (int i = 0; i < 100; i++) {
+			dns.resolve("host" + i + ".example.org");
+		}
+		assertTrue(dns.size() <= 8);
+
+		dns.close();
+	}
+
+	public void testResolveAll() throws Exception {
+		CountingDnsCache dns = new CountingDnsCache(60000, 60000, 100);
+
+		List<String> hosts = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			hosts.add("host" + (i % 10) + ".example.org");
+		}
+		hosts.add("unknown.example.org");
+
+		dns.resolveAll(hosts);
+		assertEquals(11, dns.size());
+		assertEquals(11, dns._lookups.get());
+
+		// all from the cache
+		for (int i = 0; i < 10; i++) {
+			dns.resolve("host" + i + ".example.org");
+		}
+		assertEquals(11, dns._lookups.get());
+
+		dns.close();
+	}
+
+	public void testConcurrent() throws Exception {
+		final CountingDnsCache dns = new CountingDnsCache(60000, 60000, 1000);
+
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < 1000; i++) {
+						try {
+							dns.resolve("host" + (i % 50) + ".example.org");
+						} catch (UnknownHostException e) {
+							fail(e.getMessage());
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		// one resolution per host, threads wait for the one in progress
+		assertEquals(50, dns._lookups.get());
+
+		dns.close();
+	}
+}
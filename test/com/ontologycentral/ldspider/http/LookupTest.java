@@ -0,0 +1,81 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.hooks.content.ContentHandlerRdfXml;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandlerDummy;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilterAllow;
+import com.ontologycentral.ldspider.hooks.sink.SinkDummy;
+import com.ontologycentral.ldspider.queue.BreadthFirstQueue;
+import com.ontologycentral.ldspider.queue.HashTableRedirects;
+
+public class LookupTest extends TestCase {
+	List<Long> _done;
+	List<URI> _failed;
+	BreadthFirstQueue _q;
+
+	public void setUp() throws Exception {
+		_done = new ArrayList<Long>();
+		_failed = new ArrayList<URI>();
+		_q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false) {
+			public void lookupDone(URI u, int status, long duration) {
+				_done.add(Long.valueOf(duration));
+			}
+
+			public void lookupFailed(URI u, long duration) {
+				_failed.add(u);
+			}
+		};
+	}
+
+	/**
+	 * Parsing is neither part of the response time nor an error of the server.
+	 */
+	public void testContentErrors() throws Exception {
+		Lookup l = new Lookup(_q, new ContentHandlerRdfXml(), new SinkDummy(), null, null, new ErrorHandlerDummy(), new FetchFilterAllow(), new FetchFilterAllow()) {
+			protected void handleContent(URI lu, String type, HttpResponse hres, InputStream is) throws IOException {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					;
+				}
+				throw new IOException("cannot parse " + lu);
+			}
+		};
+
+		URI u = new URI("http://example.org/foo");
+		long time = System.currentTimeMillis();
+		l.handleResponse(u, new HttpGet(u), response(), time, time + 10);
+
+		assertEquals(1, _done.size());
+		assertEquals(10, _done.get(0).longValue());
+		assertTrue(_failed.isEmpty());
+
+		l.handleFailure(u, new HttpGet(u), new ContentTooLargeException("too large"));
+		assertTrue(_failed.isEmpty());
+
+		l.handleFailure(u, new HttpGet(u), new SocketTimeoutException("timeout"));
+		assertEquals(1, _failed.size());
+	}
+
+	static HttpResponse response() throws Exception {
+		BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		res.setHeader("Content-Type", "application/rdf+xml");
+		res.setEntity(new StringEntity("<rdf:RDF/>"));
+		return res;
+	}
+}
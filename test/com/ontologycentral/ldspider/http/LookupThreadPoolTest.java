@@ -0,0 +1,245 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.semanticweb.yars.nx.parser.Callback;
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.hooks.content.ContentHandler;
+import com.ontologycentral.ldspider.hooks.content.ContentHandlerRdfXml;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandlerDummy;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilterAllow;
+import com.ontologycentral.ldspider.hooks.sink.SinkDummy;
+import com.ontologycentral.ldspider.http.robot.Robots;
+import com.ontologycentral.ldspider.queue.BreadthFirstQueue;
+import com.ontologycentral.ldspider.queue.HashTableRedirects;
+
+public class LookupThreadPoolTest extends TestCase {
+	static final int PLDS = 5;
+
+	/**
+	 * A content handler and an error handler that throw must neither end the
+	 * round early nor leave the pool waiting for a dead thread.
+	 */
+	public void testThrowingHooks() throws Exception {
+		final AtomicInteger handled = new AtomicInteger(0);
+
+		ConnectionManager cm = new ConnectionManager(null, 0, null, null, 2) {
+			public HttpResponse connect(HttpGet get) {
+				BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+				res.setHeader("Content-Type", "text/plain");
+				try {
+					res.setEntity(new StringEntity("<a> <b> <c> ."));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				return res;
+			}
+		};
+
+		ContentHandler ch = new ContentHandler() {
+			public boolean canHandle(String mime) {
+				return true;
+			}
+
+			public boolean handle(URI uri, String mime, InputStream source, Callback callback) {
+				handled.incrementAndGet();
+				throw new Error("bug in content handler");
+			}
+
+			public String[] getMimeTypes() {
+				return new String[0];
+			}
+		};
+
+		Robots robots = new Robots(cm) {
+			public boolean accessOk(URI uri) {
+				return true;
+			}
+		};
+
+		final LookupThreadPool pool = new LookupThreadPool(cm, 1);
+		pool.setHooks(ch, new SinkDummy(), null, robots, new ErrorHandlerDummy() {
+			public void handleError(URI u, Throwable e) {
+				throw new RuntimeException("bug in error handler", e);
+			}
+		}, new FetchFilterAllow(), new FetchFilterAllow());
+
+		final TldManager tldm = new TldManager();
+
+		Thread rounds = new Thread() {
+			public void run() {
+				try {
+					for (int r = 0; r < 2; r++) {
+						Frontier f = new BasicFrontier();
+						for (int i = 0; i < PLDS; i++) {
+							f.add(new URI("http://example" + i + ".org/" + r));
+						}
+						BreadthFirstQueue q = new BreadthFirstQueue(tldm, new HashTableRedirects(), -1, -1, -1, false);
+						q.schedule(f);
+						pool.runRound(q);
+					}
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		rounds.setDaemon(true);
+		rounds.start();
+		rounds.join(60000);
+
+		assertFalse("rounds did not complete", rounds.isAlive());
+		assertEquals(2 * PLDS, handled.get());
+
+		pool.shutdown();
+		cm.shutdown();
+	}
+
+	/**
+	 * A thread that has left the round because the pool was shrunk gives up
+	 * its slot, so that growing the pool again in the same round starts a
+	 * new thread.
+	 */
+	public void testShrinkAndGrow() throws Exception {
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger maxRunning = new AtomicInteger(0);
+		final boolean[] grown = { false };
+
+		ConnectionManager cm = new ConnectionManager(null, 0, null, null, 2) {
+			public HttpResponse connect(HttpGet get) {
+				int n = running.incrementAndGet();
+				synchronized (grown) {
+					if (grown[0] && n > maxRunning.get()) {
+						maxRunning.set(n);
+					}
+				}
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					;
+				}
+				running.decrementAndGet();
+				return new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+			}
+		};
+
+		Robots robots = new Robots(cm) {
+			public boolean accessOk(URI uri) {
+				return true;
+			}
+		};
+
+		final LookupThreadPool pool = new LookupThreadPool(cm, 2);
+		pool.setHooks(new ContentHandlerRdfXml(), new SinkDummy(), null, robots, new ErrorHandlerDummy(), new FetchFilterAllow(), new FetchFilterAllow());
+
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 40; i++) {
+			f.add(new URI("http://example" + i + ".org/"));
+		}
+		final BreadthFirstQueue q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false);
+		q.schedule(f);
+
+		Thread round = new Thread() {
+			public void run() {
+				pool.runRound(q);
+			}
+		};
+		round.setDaemon(true);
+		round.start();
+
+		Thread.sleep(300);
+
+		// grow the pool again after the surplus thread has left the round,
+		// before it is done with it
+		pool._lock.lock();
+		try {
+			pool.setSize(1);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (!pool._lock.hasQueuedThreads() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			synchronized (grown) {
+				grown[0] = true;
+			}
+			pool.setSize(2);
+		} finally {
+			pool._lock.unlock();
+		}
+
+		round.join(60000);
+		assertFalse("round did not complete", round.isAlive());
+		assertEquals(2, maxRunning.get());
+
+		pool.shutdown();
+		cm.shutdown();
+	}
+
+	/**
+	 * The monitor is given the threads that actually run the lookups, also
+	 * if they are virtual threads, and they are named after the URI.
+	 */
+	public void testMonitoredThreads() throws Exception {
+		final Thread[] fetching = { null };
+		final String[] name = { null };
+		final boolean[] monitored = { false };
+		final LookupThreadPool[] pools = { null };
+
+		ConnectionManager cm = new ConnectionManager(null, 0, null, null, 2) {
+			public HttpResponse connect(HttpGet get) {
+				synchronized (fetching) {
+					fetching[0] = Thread.currentThread();
+					name[0] = fetching[0].getName();
+					monitored[0] = pools[0]._monitored.contains(fetching[0]);
+				}
+				return new BasicHttpResponse(HttpVersion.HTTP_1_1, 404, "Not Found");
+			}
+		};
+
+		Robots robots = new Robots(cm) {
+			public boolean accessOk(URI uri) {
+				return true;
+			}
+		};
+
+		final LookupThreadPool pool = new LookupThreadPool(cm, 1);
+		pools[0] = pool;
+		// falls back to platform threads on older JVMs
+		pool.setVirtual(true);
+		pool.setHooks(new ContentHandlerRdfXml(), new SinkDummy(), null, robots, new ErrorHandlerDummy(), new FetchFilterAllow(), new FetchFilterAllow());
+
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example0.org/"));
+		final BreadthFirstQueue q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false);
+		q.schedule(f);
+
+		Thread round = new Thread() {
+			public void run() {
+				pool.runRound(q);
+			}
+		};
+		round.setDaemon(true);
+		round.start();
+		round.join(60000);
+		assertFalse("round did not complete", round.isAlive());
+
+		synchronized (fetching) {
+			assertNotNull(fetching[0]);
+			assertTrue(monitored[0]);
+			assertEquals("LT-0:http://example0.org/", name[0]);
+		}
+
+		pool.shutdown();
+		cm.shutdown();
+	}
+}
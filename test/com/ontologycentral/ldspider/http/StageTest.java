@@ -0,0 +1,68 @@
+package com.ontologycentral.ldspider.http;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+
+public class StageTest extends TestCase {
+	public void testAwaitIdle() throws Exception {
+		final AtomicInteger sum = new AtomicInteger(0);
+		
+		Stage<Integer> s = new Stage<Integer>("Test", 4, 8) {
+			protected void process(Integer i) {
+				sum.addAndGet(i.intValue());
+			}
+		};
+		s.start();
+		
+		for (int i = 1; i <= 1000; i++) {
+			s.put(Integer.valueOf(i));
+		}
+		s.awaitIdle();
+		
+		assertEquals(500500, sum.get());
+		
+		s.shutdown();
+	}
+	
+	public void testBackpressure() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		final Stage<Integer> s = new Stage<Integer>("Test", 1, 2) {
+			protected void process(Integer i) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					;
+				}
+			}
+		};
+		s.start();
+		
+		final AtomicInteger put = new AtomicInteger(0);
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 10; i++) {
+					s.put(Integer.valueOf(i));
+					put.incrementAndGet();
+				}
+			}
+		};
+		producer.start();
+		
+		Thread.sleep(200);
+		
+		// one item in process, two in the queue, the producer blocked on the fourth
+		assertEquals(3, put.get());
+		
+		release.countDown();
+		producer.join();
+		s.awaitIdle();
+		
+		assertEquals(10, put.get());
+		assertEquals(0, s.getQueued());
+		
+		s.shutdown();
+	}
+}
@@ -0,0 +1,189 @@
+package com.ontologycentral.ldspider.http;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.semanticweb.yars.nx.Node;
+import org.semanticweb.yars.nx.Resource;
+import org.semanticweb.yars.nx.namespace.RDFS;
+import org.semanticweb.yars.nx.parser.Callback;
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlBudget;
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.hooks.content.ContentHandler;
+import com.ontologycentral.ldspider.hooks.error.ErrorHandlerDummy;
+import com.ontologycentral.ldspider.hooks.fetch.FetchFilterAllow;
+import com.ontologycentral.ldspider.hooks.links.LinkFilterDefault;
+import com.ontologycentral.ldspider.hooks.sink.SinkDummy;
+import com.ontologycentral.ldspider.http.robot.Robots;
+import com.ontologycentral.ldspider.queue.BreadthFirstQueue;
+import com.ontologycentral.ldspider.queue.ContinuousQueue;
+import com.ontologycentral.ldspider.queue.HashTableRedirects;
+
+public class StagedLookupsTest extends TestCase {
+	static final int PLDS = 5;
+
+	/**
+	 * A URI is finished only once its document has been parsed, and a
+	 * document that cannot be parsed is reported to the error handler.
+	 */
+	public void testFinishedAfterParsing() throws Exception {
+		final Set<URI> parsed = Collections.synchronizedSet(new HashSet<URI>());
+		final Set<URI> early = Collections.synchronizedSet(new HashSet<URI>());
+		final Set<URI> errors = Collections.synchronizedSet(new HashSet<URI>());
+
+		ConnectionManager cm = new ConnectionManager(null, 0, null, null, 2) {
+			public HttpResponse connect(HttpGet get) {
+				BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+				res.setHeader("Content-Type", "text/plain");
+				try {
+					res.setEntity(new StringEntity("<a> <b> <c> ."));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				return res;
+			}
+		};
+
+		ContentHandler ch = new ContentHandler() {
+			public boolean canHandle(String mime) {
+				return true;
+			}
+
+			public boolean handle(URI uri, String mime, InputStream source, Callback callback) {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					;
+				}
+				parsed.add(uri);
+				return !uri.getHost().equals("example0.org");
+			}
+
+			public String[] getMimeTypes() {
+				return new String[0];
+			}
+		};
+
+		Robots robots = new Robots(cm) {
+			public boolean accessOk(URI uri) {
+				return true;
+			}
+		};
+
+		BreadthFirstQueue q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false) {
+			public void finished(URI u) {
+				if (!parsed.contains(u)) {
+					early.add(u);
+				}
+				super.finished(u);
+			}
+		};
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < PLDS; i++) {
+			f.add(new URI("http://example" + i + ".org/"));
+		}
+		q.schedule(f);
+
+		StagedLookups sl = new StagedLookups(cm, 2, 1, 1, 1, 4);
+		sl.runRound(q, ch, new SinkDummy(), new SinkDummy().newDataset(null), robots, new ErrorHandlerDummy() {
+			public void handleError(URI u, Throwable e) {
+				errors.add(u);
+			}
+		}, new FetchFilterAllow(), new FetchFilterAllow(), new CrawlBudget());
+		sl.shutdown();
+
+		assertEquals(PLDS, parsed.size());
+		assertTrue("finished before parsing: " + early, early.isEmpty());
+		assertEquals(Collections.singleton(new URI("http://example0.org/")), errors);
+
+		cm.shutdown();
+	}
+
+	/**
+	 * The links of a document reach a continuous queue before the URI is
+	 * finished, which drops its depth.
+	 */
+	public void testLinksQueued() throws Exception {
+		final Set<URI> fetched = Collections.synchronizedSet(new HashSet<URI>());
+
+		ConnectionManager cm = new ConnectionManager(null, 0, null, null, 2) {
+			public HttpResponse connect(HttpGet get) {
+				fetched.add(get.getURI());
+				BasicHttpResponse res = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+				res.setHeader("Content-Type", "text/plain");
+				try {
+					res.setEntity(new StringEntity(""));
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				return res;
+			}
+		};
+
+		// example<i>.org links to example<i+1>.org
+		final ContentHandler ch = new ContentHandler() {
+			public boolean canHandle(String mime) {
+				return true;
+			}
+
+			public boolean handle(URI uri, String mime, InputStream source, Callback callback) {
+				int i = Integer.parseInt(uri.getHost().substring("example".length(), uri.getHost().indexOf('.')));
+				if (i + 1 < PLDS) {
+					callback.processStatement(new Node[] { new Resource(uri.toString()), RDFS.SEEALSO,
+							new Resource("http://example" + (i + 1) + ".org/"), new Resource(uri.toString()) });
+				}
+				return true;
+			}
+
+			public String[] getMimeTypes() {
+				return new String[0];
+			}
+		};
+
+		final Robots robots = new Robots(cm) {
+			public boolean accessOk(URI uri) {
+				return true;
+			}
+		};
+
+		final ContinuousQueue q = new ContinuousQueue(new TldManager(), new HashTableRedirects(), PLDS, -1, -1);
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example0.org/"));
+		q.schedule(f);
+		f.setLinkListener(q);
+
+		final LinkFilterDefault links = new LinkFilterDefault(f);
+		links.setErrorHandler(new ErrorHandlerDummy());
+
+		final StagedLookups sl = new StagedLookups(cm, 2, 1, 1, 1, 4);
+		Thread round = new Thread() {
+			public void run() {
+				sl.runRound(q, ch, new SinkDummy(), links, robots, new ErrorHandlerDummy(), new FetchFilterAllow(), new FetchFilterAllow(), new CrawlBudget());
+			}
+		};
+		round.setDaemon(true);
+		round.start();
+		round.join(30000);
+		assertFalse("round did not complete", round.isAlive());
+		sl.shutdown();
+
+		for (int i = 0; i < PLDS; i++) {
+			assertTrue("not fetched: example" + i + ".org", fetched.contains(new URI("http://example" + i + ".org/")));
+		}
+
+		cm.shutdown();
+	}
+}
@@ -0,0 +1,108 @@
+package com.ontologycentral.ldspider.http.internal;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+
+public class NioExchangeTest extends TestCase {
+	public void testContentLength() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+		
+		assertFalse(ex.append(wrap("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n"), 1024));
+		assertFalse(ex.append(wrap("\r\nhel"), 1024));
+		assertTrue(ex.append(wrap("lo"), 1024));
+		
+		HttpResponse res = ex.toResponse();
+		
+		assertEquals(200, res.getStatusLine().getStatusCode());
+		assertEquals("text/plain", res.getFirstHeader("Content-Type").getValue());
+		assertEquals("hello", EntityUtils.toString(res.getEntity()));
+	}
+	
+	public void testChunked() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		assertFalse(ex.append(wrap("HTTP/1.1 303 See Other\r\nLocation: /bar\r\nTransfer-Encoding: chunked\r\n\r\n"), 1024));
+		assertFalse(ex.append(wrap("3\r\nhel\r\n2;x=y\r\nlo\r\n0\r"), 1024));
+		assertTrue(ex.append(wrap("\n\r\n"), 1024));
+		
+		HttpResponse res = ex.toResponse();
+		
+		assertEquals(303, res.getStatusLine().getStatusCode());
+		assertEquals("/bar", res.getFirstHeader("Location").getValue());
+		assertEquals("hello", EntityUtils.toString(res.getEntity()));
+	}
+	
+	public void testChunkedData() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		// the data of a chunk ends like the last chunk
+		assertFalse(ex.append(wrap("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"), 1024));
+		assertFalse(ex.append(wrap("7\r\na\n0\r\n\r\n"), 1024));
+		assertFalse(ex.append(wrap("\r\n1\r\nb\r\n"), 1024));
+		assertTrue(ex.append(wrap("0\r\n\r\n"), 1024));
+
+		assertEquals("a\n0\r\n\r\nb", EntityUtils.toString(ex.toResponse().getEntity()));
+	}
+	
+	public void testTrailers() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		assertFalse(ex.append(wrap("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r"), 1024));
+		assertFalse(ex.append(wrap("\n\r"), 1024));
+		assertFalse(ex.append(wrap("\n5\r\nhello\r\n0\r\nExpires: 0\r\n"), 1024));
+		assertTrue(ex.append(wrap("\r\n"), 1024));
+
+		assertEquals("hello", EntityUtils.toString(ex.toResponse().getEntity()));
+	}
+	
+	public void testContentLengthClosedEarly() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		// the server closes the connection after 5 of 10 bytes
+		assertFalse(ex.append(wrap("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nhello"), 1024));
+		try {
+			ex.toResponse();
+			fail("expected an exception for a truncated body");
+		} catch (java.io.IOException e) {
+			;
+		}
+
+		// no body expected
+		NioExchange nm = new NioExchange(new HttpGet("http://example.org/foo"), null);
+		nm.append(wrap("HTTP/1.1 304 Not Modified\r\nContent-Length: 10\r\n\r\n"), 1024);
+		assertEquals(304, nm.toResponse().getStatusLine().getStatusCode());
+	}
+
+	public void testChunkedClosedEarly() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		// the last chunk is missing
+		assertFalse(ex.append(wrap("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n"), 1024));
+		try {
+			ex.toResponse();
+			fail("expected an exception for a truncated body");
+		} catch (java.io.IOException e) {
+			;
+		}
+	}
+
+	public void testTooLarge() throws Exception {
+		NioExchange ex = new NioExchange(new HttpGet("http://example.org/foo"), null);
+
+		try {
+			ex.append(wrap("HTTP/1.1 200 OK\r\n\r\n0123456789"), 16);
+			fail("expected an exception for an oversized response");
+		} catch (java.io.IOException e) {
+			;
+		}
+	}
+	
+	static ByteBuffer wrap(String s) throws Exception {
+		return ByteBuffer.wrap(s.getBytes("ISO-8859-1"));
+	}
+}
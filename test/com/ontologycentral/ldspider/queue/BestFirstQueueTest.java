@@ -0,0 +1,183 @@
+package com.ontologycentral.ldspider.queue;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+
+public class BestFirstQueueTest extends TestCase {
+	public void testOpic() throws Exception {
+		BestFirstQueue q = new BestFirstQueue(new TldManager(), new HashTableRedirects(), BestFirstQueue.Importance.OPIC, -1, -1);
+		q.setMinDelay(0);
+
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/a"));
+		f.add(new URI("http://example.com/b"));
+		q.schedule(f);
+
+		f.setLinkListener(q);
+
+		URI a = q.poll();
+		URI b = q.poll();
+		if (a.getHost().equals("example.com")) {
+			URI tmp = a;
+			a = b;
+			b = tmp;
+		}
+
+		f.add(new URI("http://example.org/x"), a);
+		f.add(new URI("http://example.org/y"), a);
+		f.add(new URI("http://example.org/y"), b);
+
+		// queued right away, cash follows when the lookups have finished
+		assertEquals(2, q.size());
+		assertEquals(0.0, q.getScore(new URI("http://example.org/y")));
+
+		q.finished(a);
+		assertEquals(0.5, q.getScore(new URI("http://example.org/x")));
+		assertEquals(0.5, q.getScore(new URI("http://example.org/y")));
+
+		q.finished(b);
+		assertEquals(1.5, q.getScore(new URI("http://example.org/y")));
+
+		// more important first
+		assertEquals(new URI("http://example.org/y"), q.poll());
+		assertEquals(new URI("http://example.org/x"), q.poll());
+
+		q.finished(new URI("http://example.org/y"));
+		q.finished(new URI("http://example.org/x"));
+
+		assertNull(q.poll());
+	}
+
+	public void testIndegree() throws Exception {
+		BestFirstQueue q = new BestFirstQueue(new TldManager(), new HashTableRedirects(), BestFirstQueue.Importance.INDEGREE, -1, -1);
+		q.setMinDelay(0);
+
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/a"));
+		q.schedule(f);
+
+		f.setLinkListener(q);
+
+		URI a = q.poll();
+
+		f.add(new URI("http://example.org/x"), a);
+		f.add(new URI("http://example.org/y"), a);
+		f.add(new URI("http://example.org/y"), new URI("http://example.net/"));
+
+		assertEquals(1.0, q.getScore(new URI("http://example.org/x")));
+		assertEquals(2.0, q.getScore(new URI("http://example.org/y")));
+
+		assertEquals(new URI("http://example.org/y"), q.poll());
+	}
+
+	public void testBounded() throws Exception {
+		BestFirstQueue q = new BestFirstQueue(new TldManager(), new HashTableRedirects(), BestFirstQueue.Importance.OPIC, 2, -1);
+		q.setMinDelay(0);
+
+		Frontier f = new BasicFrontier();
+		f.setLinkListener(q);
+
+		// links from unknown sources, without cash
+		URI from = new URI("http://example.net/");
+		f.add(new URI("http://example.org/x"), from);
+		f.add(new URI("http://example.org/y"), from);
+		// not more important than y
+		f.add(new URI("http://example.org/z"), from);
+		assertEquals(2, q.size());
+		assertEquals(-1.0, q.getScore(new URI("http://example.org/z")));
+		assertEquals(1, q.getDropped());
+
+		// a seed is more important than y, which is dropped
+		q.add(new URI("http://example.org/s"), false);
+		assertEquals(2, q.size());
+		assertEquals(-1.0, q.getScore(new URI("http://example.org/y")));
+		assertEquals(2, q.getDropped());
+
+		assertEquals(new URI("http://example.org/s"), q.poll());
+		assertEquals(new URI("http://example.org/x"), q.poll());
+	}
+
+	public void testPoliteness() throws Exception {
+		BestFirstQueue q = new BestFirstQueue(new TldManager(), new HashTableRedirects(), BestFirstQueue.Importance.INDEGREE, -1, -1);
+		q.setMinDelay(200);
+
+		Frontier f = new BasicFrontier();
+		f.setLinkListener(q);
+
+		URI from = new URI("http://example.net/");
+		for (int i = 0; i < 3; i++) {
+			f.add(new URI("http://example.org/" + i), from);
+		}
+		f.add(new URI("http://example.com/"), from);
+
+		// both plds right away, the second uri of example.org after the delay
+		long start = System.currentTimeMillis();
+		URI u1 = q.poll();
+		URI u2 = q.poll();
+		assertFalse(u1.getHost().equals(u2.getHost()));
+		q.finished(u1);
+		q.finished(u2);
+
+		assertNotNull(q.poll());
+		assertTrue(System.currentTimeMillis() - start >= 150);
+	}
+
+	public void testMaxQueued() throws Exception {
+		BestFirstQueue q = new BestFirstQueue(new TldManager(), new HashTableRedirects(), BestFirstQueue.Importance.OPIC, -1, -1, 3);
+		q.setMinDelay(0);
+
+		Frontier f = new BasicFrontier();
+		f.setLinkListener(q);
+
+		// links from unknown sources, without cash
+		URI from = new URI("http://example.net/");
+		f.add(new URI("http://example.org/x"), from);
+		f.add(new URI("http://example.com/y"), from);
+		f.add(new URI("http://example.info/z"), from);
+		assertEquals(3, q.size());
+
+		// a seed is more important than any, the least important of all is
+		// dropped, leaving example.info empty
+		q.add(new URI("http://example.edu/s"), false);
+		assertEquals(3, q.size());
+		assertEquals(-1.0, q.getScore(new URI("http://example.info/z")));
+		assertEquals(1, q.getDropped());
+		assertEquals(3, q.getActivePlds());
+
+		// not more important than the queued
+		f.add(new URI("http://example.info/w"), from);
+		assertEquals(3, q.size());
+		assertEquals(2, q.getDropped());
+
+		for (int i = 0; i < 3; i++) {
+			URI u = q.poll();
+			assertNotNull(u);
+			q.finished(u);
+		}
+		assertNull(q.poll());
+		assertEquals(0, q.getActivePlds());
+	}
+
+	public void testGroups() throws Exception {
+		TldManager tldm = new TldManager();
+		BestFirstQueue q = new BestFirstQueue(tldm, new HashTableRedirects(), BestFirstQueue.Importance.INDEGREE, 1, -1);
+		q.setPolitenessGroups(new PolitenessGroups(tldm, PolitenessGroups.By.HOST, null));
+		q.setMinDelay(0);
+
+		Frontier f = new BasicFrontier();
+		f.setLinkListener(q);
+
+		// one uri per host, not per pld
+		URI from = new URI("http://example.net/");
+		f.add(new URI("http://a.example.org/"), from);
+		f.add(new URI("http://b.example.org/"), from);
+		assertEquals(2, q.size());
+		assertEquals(0, q.getDropped());
+	}
+}
@@ -0,0 +1,104 @@
+package com.ontologycentral.ldspider.queue;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+
+public class ContinuousQueueTest extends TestCase {
+	public void testDepth() throws Exception {
+		ContinuousQueue q = new ContinuousQueue(new TldManager(), new HashTableRedirects(), 1, -1, -1);
+		q.setMinDelay(0);
+		
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/a"));
+		q.schedule(f);
+		
+		f.setLinkListener(q);
+		
+		URI a = q.poll();
+		assertEquals(new URI("http://example.org/a"), a);
+		assertEquals(0, q.getDepth(a));
+		
+		f.add(new URI("http://example.org/b"), a);
+		f.add(new URI("http://example.com/c#frag"), a);
+		
+		// available before a has been finished
+		assertEquals(2, q.size());
+		
+		URI b = q.poll();
+		URI c = q.poll();
+		if (b.getHost().equals("example.com")) {
+			// plds that have not been accessed yet come first
+			URI tmp = b;
+			b = c;
+			c = tmp;
+		}
+		assertEquals(1, q.getDepth(b));
+		assertEquals(1, q.getDepth(c));
+		assertEquals(new URI("http://example.com/c"), c);
+		
+		// beyond maximum depth
+		f.add(new URI("http://example.org/d"), b);
+		// unknown source
+		f.add(new URI("http://example.org/e"), new URI("http://example.net/"));
+		// already queued
+		f.add(new URI("http://example.org/a"), b);
+		
+		assertEquals(0, q.size());
+		
+		q.finished(a);
+		q.finished(b);
+		q.finished(c);
+		
+		// depths are dropped once finished, the seen set takes over
+		assertEquals(-1, q.getDepth(a));
+		assertEquals(0, q._depths.size());
+		q.add(new URI("http://example.org/a"), 0);
+		assertEquals(0, q.size());
+		
+		assertNull(q.poll());
+	}
+	
+	public void testLimits() throws Exception {
+		ContinuousQueue q = new ContinuousQueue(new TldManager(), new HashTableRedirects(), 2, 2, 2);
+		q.setMinDelay(0);
+		
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 5; i++) {
+			f.add(new URI("http://example.org/" + i));
+		}
+		f.add(new URI("http://example.com/"));
+		f.add(new URI("http://example.net/"));
+		q.schedule(f);
+		
+		// two uris of two plds
+		assertEquals(3, q.size());
+	}
+	
+	public void testPoliteness() throws Exception {
+		ContinuousQueue q = new ContinuousQueue(new TldManager(), new HashTableRedirects(), 0, -1, -1);
+		q.setMinDelay(200);
+		
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/a"));
+		f.add(new URI("http://example.org/b"));
+		f.add(new URI("http://example.com/c"));
+		q.schedule(f);
+		
+		long time = System.currentTimeMillis();
+		
+		for (int i = 0; i < 3; i++) {
+			URI u = q.poll();
+			assertNotNull(u);
+			q.finished(u);
+		}
+		
+		assertTrue(System.currentTimeMillis() - time >= 200);
+		assertNull(q.poll());
+	}
+}
@@ -0,0 +1,42 @@
+package com.ontologycentral.ldspider.queue;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+
+public class CountStoreTest extends TestCase {
+	public void testAdd() throws Exception {
+		// small, so that the table grows several times
+		CountStore s = new CountStore(null, 16);
+
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(1, s.add(new URI("http://example.org/" + i), 1));
+		}
+		for (int i = 0; i < 10000; i += 2) {
+			assertEquals(4, s.add(new URI("http://example.org/" + i), 3));
+		}
+		assertEquals(10000, s.size());
+		assertTrue(s.getFileSize() >= 10000 * CountStore.SLOT);
+
+		assertEquals(4, s.get(new URI("http://example.org/0")));
+		assertEquals(1, s.get(new URI("http://example.org/1")));
+		assertEquals(0, s.get(new URI("http://example.com/")));
+
+		s.close();
+	}
+
+	public void testPages() throws Exception {
+		// more slots than fit into one mapped page
+		CountStore s = new CountStore(null, 2L * CountStore.PAGE_SLOTS);
+		assertEquals(2, s._pages.length);
+
+		for (int i = 0; i < 1000; i++) {
+			s.add(new URI("http://example.org/" + i), i);
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(i, s.get(new URI("http://example.org/" + i)));
+		}
+
+		s.close();
+	}
+}
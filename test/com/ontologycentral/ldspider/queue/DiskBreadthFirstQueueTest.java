@@ -0,0 +1,57 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.io.File;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+public class DiskBreadthFirstQueueTest extends TestCase {
+	static final int PLDS = 40;
+
+	public void testSeen() throws Exception {
+		DiskBreadthFirstQueue q = new DiskBreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1);
+
+		// a buffer of 8 fingerprints, so that most go to runs on disk
+		TieredSeenSet seen = new TieredSeenSet(1000, 0.01, 8, new File(System.getProperty("java.io.tmpdir")));
+		q.setSeen(seen);
+		SeenJournal journal = new SeenJournal();
+		q.setSeenJournal(journal);
+
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < PLDS; i++) {
+			f.add(new URI("http://example" + i + ".org/"));
+		}
+		q.schedule(f);
+		assertEquals(PLDS, q.size());
+
+		int polled = 0;
+		while (q.poll() != null) {
+			polled++;
+		}
+		assertEquals(PLDS, polled);
+
+		// the polled uris have been marked as seen, beyond the memory tier
+		assertEquals(PLDS, seen.size());
+		assertTrue(seen.getRuns() > 0);
+		assertTrue(seen.contains(new URI("http://example0.org/")));
+
+		// and journalled for the next checkpoint
+		assertEquals(PLDS, journal.size());
+
+		// and are not scheduled again
+		for (int i = 0; i < PLDS; i++) {
+			f.add(new URI("http://example" + i + ".org/"));
+		}
+		f.add(new URI("http://example0.org/new"));
+		q.schedule(f);
+		assertEquals(1, q.size());
+		assertEquals(new URI("http://example0.org/new"), q.poll());
+
+		seen.close();
+	}
+}
@@ -0,0 +1,93 @@
+package com.ontologycentral.ldspider.queue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+
+public class ExternalSorterTest extends TestCase {
+	public void testMerge() throws Exception {
+		// small batches, so that there are many runs
+		ExternalSorter s = new ExternalSorter(null, 100, 4);
+
+		List<ExternalSorter.Record> expected = new ArrayList<ExternalSorter.Record>();
+		Random r = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			String pld = "example" + r.nextInt(50) + ".org";
+			int count = r.nextInt(10) + 1;
+			String uri = "http://" + pld + "/" + i;
+			s.add(pld, count, uri);
+			expected.add(new ExternalSorter.Record(pld, count, uri));
+		}
+		Collections.sort(expected);
+
+		Iterator<ExternalSorter.Record> it = s.sorted();
+		assertEquals(50, s.getRuns());
+
+		ExternalSorter.Record prev = null;
+		int n = 0;
+		while (it.hasNext()) {
+			ExternalSorter.Record rec = it.next();
+			assertEquals(expected.get(n).toString(), rec.toString());
+			if (prev != null && prev.getPld().equals(rec.getPld())) {
+				// most links first
+				assertTrue(prev.getCount() >= rec.getCount());
+			}
+			prev = rec;
+			n++;
+		}
+		assertEquals(5000, n);
+		assertEquals(5000, s.getCount());
+
+		s.close();
+	}
+
+	public void testMergePasses() throws Exception {
+		// 200 runs, merged 4 at a time
+		ExternalSorter s = new ExternalSorter(null, 10, 4);
+		s._fanIn = 4;
+
+		List<ExternalSorter.Record> expected = new ArrayList<ExternalSorter.Record>();
+		Random r = new Random(7);
+		for (int i = 0; i < 2000; i++) {
+			String pld = "example" + r.nextInt(20) + ".org";
+			int count = r.nextInt(5) + 1;
+			String uri = "http://" + pld + "/" + i;
+			s.add(pld, count, uri);
+			expected.add(new ExternalSorter.Record(pld, count, uri));
+		}
+		Collections.sort(expected);
+
+		Iterator<ExternalSorter.Record> it = s.sorted();
+		assertEquals(200, s.getRuns());
+		assertTrue(s._runs.size() <= 4);
+
+		int n = 0;
+		while (it.hasNext()) {
+			assertEquals(expected.get(n).toString(), it.next().toString());
+			n++;
+		}
+		assertEquals(2000, n);
+
+		s.close();
+	}
+
+	public void testInMemory() throws Exception {
+		ExternalSorter s = new ExternalSorter(null, ExternalSorter.DEFAULT_BATCH, 2);
+		s.add("b.org", 1, "http://b.org/");
+		s.add("a.org", 1, "http://a.org/x");
+		s.add("a.org", 3, "http://a.org/y");
+
+		Iterator<ExternalSorter.Record> it = s.sorted();
+		assertEquals(0, s.getRuns());
+		assertEquals("http://a.org/y", it.next().getUri());
+		assertEquals("http://a.org/x", it.next().getUri());
+		assertEquals("http://b.org/", it.next().getUri());
+		assertFalse(it.hasNext());
+
+		s.close();
+	}
+}
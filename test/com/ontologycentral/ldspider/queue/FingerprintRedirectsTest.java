@@ -0,0 +1,150 @@
+package com.ontologycentral.ldspider.queue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+
+public class FingerprintRedirectsTest extends TestCase {
+	URI a, b, c, d;
+
+	public void setUp() throws Exception {
+		a = new URI("http://example.org/a");
+		b = new URI("http://example.org/b");
+		c = new URI("http://example.org/c");
+		d = new URI("http://example.org/d");
+	}
+
+	public void testChain() throws Exception {
+		FingerprintRedirects r = new FingerprintRedirects();
+		assertSame(a, r.getRedirect(a));
+
+		r.put(b, c);
+		// points to the end of the chain right away
+		r.put(a, b);
+		assertEquals(c, r.getRedirect(a));
+		assertEquals(c, r.getRedirect(b));
+
+		// the end moves on
+		r.put(c, d);
+		assertEquals(d, r.getRedirect(a));
+		assertEquals(d, r.getRedirect(b));
+		assertSame(d, r.getRedirect(d));
+	}
+
+	public void testHops() throws Exception {
+		FingerprintRedirects r = new FingerprintRedirects();
+		r.put(a, b);
+		r.put(b, c);
+		r.put(c, d);
+		assertEquals(0, r.getHops(a));
+		assertEquals(1, r.getHops(b));
+		assertEquals(2, r.getHops(c));
+		assertEquals(3, r.getHops(d));
+	}
+
+	public void testCycle() throws Exception {
+		FingerprintRedirects r = new FingerprintRedirects();
+		r.put(a, b);
+		r.put(b, a);
+		assertEquals(b, r.getRedirect(a));
+		assertEquals(a, r.getRedirect(b));
+
+		// each time around counts
+		r.put(a, b);
+		r.put(b, a);
+		assertTrue(r.getHops(a) >= 3);
+	}
+
+	public void testSpill() throws Exception {
+		FingerprintRedirects r = new FingerprintRedirects(null);
+		for (int i = 0; i < 1000; i++) {
+			r.put(new URI("http://example.org/" + i), new URI("http://example.org/" + i + "/"));
+		}
+		r.put(new URI("http://example.org/999/"), a);
+		assertEquals(new URI("http://example.org/5/"), r.getRedirect(new URI("http://example.org/5")));
+		assertEquals(a, r.getRedirect(new URI("http://example.org/999")));
+
+		// with the targets
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(r);
+		oos.close();
+		r.close();
+
+		FingerprintRedirects r2 = (FingerprintRedirects)new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+		assertEquals(r.size(), r2.size());
+		assertEquals(new URI("http://example.org/5/"), r2.getRedirect(new URI("http://example.org/5")));
+		assertEquals(a, r2.getRedirect(new URI("http://example.org/999")));
+	}
+
+	/**
+	 * Compressing a chain on lookup does not write the target again.
+	 */
+	public void testCompressWithoutWriting() throws Exception {
+		FingerprintRedirects r = new FingerprintRedirects(null);
+		r.put(a, b);
+		r.put(b, c);
+		r.put(c, d);
+		long end = r._end.get();
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(d, r.getRedirect(a));
+			assertEquals(d, r.getRedirect(b));
+		}
+		assertEquals(end, r._end.get());
+
+		r.close();
+	}
+
+	public void testLongTarget() throws Exception {
+		StringBuilder sb = new StringBuilder("http://example.org/?q=");
+		while (sb.length() < 70000) {
+			sb.append('x');
+		}
+		URI to = new URI(sb.toString());
+
+		FingerprintRedirects r = new FingerprintRedirects();
+		r.put(a, to);
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(r);
+		oos.close();
+
+		FingerprintRedirects r2 = (FingerprintRedirects)new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+		assertEquals(to, r2.getRedirect(a));
+		assertEquals(1, r2.getHops(to));
+	}
+
+	public void testConcurrent() throws Exception {
+		final FingerprintRedirects r = new FingerprintRedirects();
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = offset; i < 10000; i += 8) {
+							r.put(new URI("http://example.org/" + i), new URI("http://example.org/" + i + "/"));
+							r.getRedirect(new URI("http://example.org/" + (i / 2)));
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		for (int i = 0; i < 10000; i++) {
+			assertEquals(new URI("http://example.org/" + i + "/"), r.getRedirect(new URI("http://example.org/" + i)));
+		}
+		assertEquals(20000, r.size());
+	}
+}
@@ -0,0 +1,112 @@
+package com.ontologycentral.ldspider.queue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+
+public class FingerprintSeenSetTest extends TestCase {
+	public void testAddContains() throws Exception {
+		FingerprintSeenSet s = new FingerprintSeenSet(4, false);
+
+		for (int i = 0; i < 100000; i++) {
+			assertTrue(s.add(new URI("http://example.org/" + i)));
+		}
+		assertFalse(s.add(new URI("http://example.org/42")));
+		assertEquals(100000, s.size());
+
+		for (int i = 0; i < 100000; i++) {
+			assertTrue(s.contains(new URI("http://example.org/" + i)));
+			assertFalse(s.contains(new URI("http://example.com/" + i)));
+		}
+
+		// less than 8 bytes per slot at 0.7 load, plus growing by doubling
+		assertTrue(s.getMemoryUsage() < 100000 * 8 * 3);
+		assertTrue(s.getFalsePositiveRate() < 1e-12);
+
+		s.clear();
+		assertEquals(0, s.size());
+		assertFalse(s.contains(new URI("http://example.org/42")));
+	}
+
+	public void testOffHeap() throws Exception {
+		FingerprintSeenSet s = new FingerprintSeenSet(16, true);
+
+		for (int i = 0; i < 50000; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+		assertEquals(50000, s.size());
+		assertTrue(s.contains(new URI("http://example.org/49999")));
+	}
+
+	public void testConcurrent() throws Exception {
+		final FingerprintSeenSet s = new FingerprintSeenSet();
+		final int[] added = new int[8];
+
+		Thread[] threads = new Thread[added.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int no = t;
+			threads[t] = new Thread() {
+				public void run() {
+					// all threads add the same uris
+					for (int i = 0; i < 20000; i++) {
+						try {
+							if (s.add(new URI("http://example.org/" + i))) {
+								added[no]++;
+							}
+						} catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		int sum = 0;
+		for (int a : added) {
+			sum += a;
+		}
+		assertEquals(20000, sum);
+		assertEquals(20000, s.size());
+	}
+
+	public void testSerialisation() throws Exception {
+		FingerprintSeenSet s = new FingerprintSeenSet(8, true);
+		for (int i = 0; i < 1000; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(s);
+		oos.close();
+
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		FingerprintSeenSet s2 = (FingerprintSeenSet)ois.readObject();
+
+		assertEquals(1000, s2.size());
+		assertTrue(s2.contains(new URI("http://example.org/999")));
+		assertFalse(s2.contains(new URI("http://example.org/1000")));
+	}
+
+	public void testFingerprints() throws Exception {
+		FingerprintSeenSet s = new FingerprintSeenSet(4, false);
+		for (int i = 0; i < 100; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+
+		FingerprintSeenSet s2 = new FingerprintSeenSet(16, true);
+		for (long fp : s.fingerprints()) {
+			assertTrue(s2.addFingerprint(fp));
+		}
+		assertEquals(100, s2.size());
+		assertTrue(s2.contains(new URI("http://example.org/42")));
+	}
+}
@@ -9,16 +9,18 @@ import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
 import com.ontologycentral.ldspider.frontier.Frontier;
 import com.ontologycentral.ldspider.frontier.RankedFrontier;
 import com.ontologycentral.ldspider.queue.LoadBalancingQueue;
-import com.ontologycentral.ldspider.tld.TldManager;
 
 public class LoadBalancingQueueTest extends TestCase {
 	public void testPoll() throws Exception {
 		TldManager tldm = new TldManager();
 		
-		LoadBalancingQueue fq = new LoadBalancingQueue(tldm);
+		LoadBalancingQueue fq = new LoadBalancingQueue(tldm, new HashTableRedirects());
 		
 		fq.setMinDelay(0);
 		fq.setMaxDelay(Integer.MAX_VALUE);
@@ -59,4 +61,73 @@ public class LoadBalancingQueueTest extends TestCase {
 		
 		System.out.println("read " + i + " lines, polled " + j + " uris");
 	}
+	
+	public void testWaitForTurnaround() throws Exception {
+		LoadBalancingQueue fq = new LoadBalancingQueue(new TldManager(), new HashTableRedirects());
+		
+		fq.setMinDelay(200);
+		fq.setMaxDelay(Integer.MAX_VALUE);
+		
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 3; i++) {
+			f.add(new URI("http://example.org/" + i));
+		}
+		f.add(new URI("http://example.com/"));
+		fq.schedule(f);
+		
+		long start = System.currentTimeMillis();
+		
+		// one turnaround per uri of example.org, waiting instead of giving up
+		int j = 0;
+		while (fq.poll() != null) {
+			j++;
+		}
+		
+		assertEquals(4, j);
+		assertEquals(0, fq.size());
+		assertTrue(System.currentTimeMillis() - start >= 2 * 200 - 50);
+	}
+	
+	public void testRoundLimit() throws Exception {
+		LoadBalancingQueue fq = new LoadBalancingQueue(new TldManager(), new HashTableRedirects());
+		
+		fq.setMinDelay(0);
+		fq.setMaxDelay(Integer.MAX_VALUE);
+		
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 4; i++) {
+			f.add(new URI("http://example.org/" + i));
+			f.add(new URI("http://example.com/" + i));
+			f.add(new URI("http://example.net/" + i));
+		}
+		fq.schedule(f);
+		
+		// as in Crawler.evaluateLoadBalanced: one turnaround per round, at
+		// most maxuris in all
+		int maxuris = 5;
+		int uris = 0;
+		int rounds = 0;
+		
+		while (uris < maxuris && fq.size() > 0) {
+			int limit = Math.min(maxuris - uris, Math.max(1, fq.getActivePlds()));
+			fq.setRoundLimit(limit);
+			
+			int polled = 0;
+			while (fq.poll() != null) {
+				polled++;
+			}
+			assertTrue(polled <= limit);
+			
+			uris = (int)fq.getStatistics().getPolled();
+			rounds++;
+			
+			// links found in the round, scheduled with the rest still queued
+			f.add(new URI("http://example.org/new" + rounds));
+			fq.schedule(f);
+		}
+		
+		assertEquals(maxuris, uris);
+		assertEquals(2, rounds);
+		assertEquals(12 + rounds - maxuris, fq.size());
+	}
 }
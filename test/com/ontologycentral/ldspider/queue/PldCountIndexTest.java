@@ -0,0 +1,36 @@
+package com.ontologycentral.ldspider.queue;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+
+public class PldCountIndexTest extends TestCase {
+	public void testOrder() throws Exception {
+		PldCountIndex idx = new PldCountIndex();
+
+		idx.increment("a.org");
+		idx.increment("b.org");
+		idx.increment("b.org");
+		idx.increment("c.org");
+		idx.set("d.org", 5);
+
+		assertEquals(Arrays.asList(new String[] { "d.org", "b.org", "a.org", "c.org" }), idx.getPlds());
+		assertEquals(4, idx.size());
+
+		// b.org moves behind a.org and c.org, which got the count earlier
+		idx.decrement("b.org");
+		assertEquals(1, idx.getCount("b.org"));
+		assertEquals(Arrays.asList(new String[] { "d.org", "a.org", "c.org", "b.org" }), idx.getPlds());
+
+		idx.decrement("a.org");
+		assertEquals(0, idx.getCount("a.org"));
+		assertEquals(3, idx.size());
+
+		idx.remove("d.org");
+		assertEquals(Arrays.asList(new String[] { "c.org", "b.org" }), idx.getPlds());
+
+		idx.clear();
+		assertTrue(idx.isEmpty());
+		assertTrue(idx.getPlds().isEmpty());
+	}
+}
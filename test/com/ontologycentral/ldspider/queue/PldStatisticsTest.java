@@ -0,0 +1,76 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+
+public class PldStatisticsTest extends TestCase {
+	public void testDefaults() throws Exception {
+		PldStatistics stats = new PldStatistics();
+
+		assertNull(stats.get("example.org"));
+		assertEquals(500, stats.getDelay("example.org", 500));
+		assertEquals(100, stats.getQuota("example.org", 100, 500));
+
+		// too few samples
+		stats.done("example.org", 200, 5000);
+		assertEquals(500, stats.getDelay("example.org", 500));
+		assertEquals(100, stats.getQuota("example.org", 100, 500));
+	}
+
+	public void testLatency() throws Exception {
+		PldStatistics stats = new PldStatistics();
+
+		for (int i = 0; i < 10; i++) {
+			stats.done("fast.org", 200, 20);
+			stats.done("slow.org", 200, 2500);
+		}
+
+		PldStatistics.Stats fast = stats.get("fast.org");
+		assertEquals(10, fast.getLookups());
+		assertEquals(0, fast.getErrors());
+		assertEquals(20, Math.round(fast.getAverageTime()));
+
+		// polled more often, full quota
+		assertEquals(250, stats.getDelay("fast.org", 500));
+		assertEquals(100, stats.getQuota("fast.org", 100, 500));
+
+		// ten times the delay, a tenth of the uris
+		assertEquals(5000, stats.getDelay("slow.org", 500));
+		assertEquals(10, stats.getQuota("slow.org", 100, 500));
+
+		List<String> slowest = stats.getSlowest(500, 1);
+		assertEquals(1, slowest.size());
+		assertEquals("slow.org", slowest.get(0));
+	}
+
+	public void testBackoff() throws Exception {
+		PldStatistics stats = new PldStatistics();
+
+		for (int i = 0; i < 3; i++) {
+			stats.done("example.org", 200, 100);
+		}
+		assertEquals(250, stats.getDelay("example.org", 500));
+
+		stats.failed("example.org", -1);
+		assertEquals(1000, stats.getDelay("example.org", 500));
+		stats.done("example.org", 503, 100);
+		assertEquals(2000, stats.getDelay("example.org", 500));
+		assertEquals(2, stats.get("example.org").getConsecutiveErrors());
+
+		// bounded
+		for (int i = 0; i < 20; i++) {
+			stats.failed("example.org", -1);
+		}
+		assertEquals(CrawlerConstants.ADAPTIVE_MAX_DELAY, stats.getDelay("example.org", 500));
+		assertEquals((int)(100 * CrawlerConstants.ADAPTIVE_MIN_QUOTA), stats.getQuota("example.org", 100, 500));
+
+		// recovers
+		stats.done("example.org", 200, 100);
+		assertEquals(0, stats.get("example.org").getConsecutiveErrors());
+		assertEquals(250, stats.getDelay("example.org", 500));
+		assertTrue(stats.getQuota("example.org", 100, 500) < 100);
+	}
+}
@@ -0,0 +1,101 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+import com.ontologycentral.ldspider.http.DnsCache;
+
+public class PolitenessGroupsTest extends TestCase {
+	/**
+	 * Hosts of example.org and example.com on one server, others on another.
+	 */
+	static class FakeDnsCache extends DnsCache {
+		FakeDnsCache() {
+			super(60000, 60000, 100, 2);
+		}
+
+		protected InetAddress[] getAllByName(String host) throws UnknownHostException {
+			byte last = (byte)(host.endsWith("example.org") || host.endsWith("example.com") ? 1 : 2);
+			return new InetAddress[] { InetAddress.getByAddress(host, new byte[] { 10, 0, 0, last }) };
+		}
+	}
+
+	public void testGroups() throws Exception {
+		TldManager tldm = new TldManager();
+		DnsCache dns = new FakeDnsCache();
+
+		URI a = new URI("http://a.example.org/x");
+		URI b = new URI("http://b.example.org/x");
+		URI c = new URI("http://example.com/x");
+
+		PolitenessGroups pld = new PolitenessGroups(tldm, PolitenessGroups.By.PLD, dns);
+		assertEquals("example.org", pld.getGroup(a));
+		assertEquals(pld.getGroup(a), pld.getGroup(b));
+		assertFalse(pld.getGroup(a).equals(pld.getGroup(c)));
+
+		PolitenessGroups host = new PolitenessGroups(tldm, PolitenessGroups.By.HOST, dns);
+		assertFalse(host.getGroup(a).equals(host.getGroup(b)));
+
+		PolitenessGroups ip = new PolitenessGroups(tldm, PolitenessGroups.By.IP, dns);
+		URI d = new URI("http://example.net/");
+		
+		// not resolved yet: by pld, without waiting for the resolver
+		assertEquals("example.org", ip.getGroup(a));
+		
+		ip.resolve(Arrays.asList(new URI[] { a, c, d }));
+		assertEquals("10.0.0.1", ip.getGroup(a));
+		assertEquals(ip.getGroup(a), ip.getGroup(c));
+		assertEquals("10.0.0.2", ip.getGroup(d));
+
+		dns.close();
+	}
+
+	public void testQueueByIp() throws Exception {
+		TldManager tldm = new TldManager();
+		DnsCache dns = new FakeDnsCache();
+
+		BreadthFirstQueue q = new BreadthFirstQueue(tldm, new HashTableRedirects(), -1, -1, -1, false);
+		q.setPolitenessGroups(new PolitenessGroups(tldm, PolitenessGroups.By.IP, dns));
+
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/a"));
+		f.add(new URI("http://example.com/b"));
+		f.add(new URI("http://example.net/c"));
+		q.schedule(f);
+
+		// example.org and example.com share a queue
+		assertEquals(3, q.size());
+		assertEquals(2, q.getActivePlds());
+
+		dns.close();
+	}
+
+	/**
+	 * URIs added on their own are grouped by address right away, not by
+	 * pay-level domain until their hosts are in the cache.
+	 */
+	public void testAddByIp() throws Exception {
+		TldManager tldm = new TldManager();
+		DnsCache dns = new FakeDnsCache();
+
+		BreadthFirstQueue q = new BreadthFirstQueue(tldm, new HashTableRedirects(), -1, -1, -1, false);
+		q.setPolitenessGroups(new PolitenessGroups(tldm, PolitenessGroups.By.IP, dns));
+
+		q.add(new URI("http://example.org/a"));
+		q.add(new URI("http://example.com/b"));
+		q.add(new URI("http://example.net/c"));
+
+		assertEquals(3, q.size());
+		assertEquals(2, q.getActivePlds());
+
+		dns.close();
+	}
+}
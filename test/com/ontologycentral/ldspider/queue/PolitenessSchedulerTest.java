@@ -0,0 +1,84 @@
+package com.ontologycentral.ldspider.queue;
+
+import junit.framework.TestCase;
+
+
+public class PolitenessSchedulerTest extends TestCase {
+	public void testOrder() throws Exception {
+		PolitenessScheduler s = new PolitenessScheduler(500);
+
+		assertEquals(-1, s.untilNext(0));
+		assertNull(s.next(0));
+
+		s.add("b.org");
+		s.add("a.org");
+		s.add("b.org");
+		assertEquals(2, s.size());
+
+		// never accessed, eligible right away, in the order added
+		assertEquals(0, s.untilNext(1000));
+		assertEquals("b.org", s.next(1000));
+		assertEquals("a.org", s.next(1000));
+		assertNull(s.next(1000));
+		assertTrue(s.isEmpty());
+	}
+
+	public void testDelay() throws Exception {
+		PolitenessScheduler s = new PolitenessScheduler(500);
+
+		s.add("a.org");
+		s.add("b.org");
+		assertEquals("a.org", s.next(1000));
+		s.add("a.org");
+
+		// b.org is next, a.org has to wait
+		assertEquals("b.org", s.next(1100));
+		s.add("b.org");
+
+		assertNull(s.next(1200));
+		assertEquals(300, s.untilNext(1200));
+		assertEquals("a.org", s.next(1500));
+		assertNull(s.next(1500));
+		assertEquals("b.org", s.next(1600));
+	}
+
+	public void testClear() throws Exception {
+		PolitenessScheduler s = new PolitenessScheduler(500);
+
+		s.add("a.org");
+		assertEquals("a.org", s.next(1000));
+		s.add("a.org");
+		s.clear();
+		assertFalse(s.contains("a.org"));
+
+		// the last access is kept across rounds
+		s.add("a.org");
+		assertNull(s.next(1100));
+		assertEquals("a.org", s.next(1500));
+	}
+
+	public void testLearnedDelay() throws Exception {
+		PolitenessScheduler s = new PolitenessScheduler(500);
+		PldStatistics stats = new PldStatistics();
+		s.setStatistics(stats);
+
+		// fast and slow server
+		for (int i = 0; i < PldStatistics.MIN_SAMPLES; i++) {
+			stats.done("fast.org", 200, 10);
+			stats.done("slow.org", 200, 1000);
+		}
+
+		s.add("fast.org");
+		s.add("slow.org");
+		assertEquals("fast.org", s.next(1000));
+		assertEquals("slow.org", s.next(1000));
+		s.add("fast.org");
+		s.add("slow.org");
+
+		// half the delay for the fast one, twice the response time for the slow one
+		assertEquals(250, s.untilNext(1000));
+		assertEquals("fast.org", s.next(1250));
+		assertNull(s.next(2999));
+		assertEquals("slow.org", s.next(3000));
+	}
+}
@@ -0,0 +1,82 @@
+package com.ontologycentral.ldspider.queue;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+
+public class QueueStatisticsTest extends TestCase {
+	Frontier getFrontier() throws Exception {
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 3; i++) {
+			f.add(new URI("http://example.org/" + i));
+		}
+		f.add(new URI("http://example.com/"));
+		return f;
+	}
+
+	public void testBreadthFirst() throws Exception {
+		BreadthFirstQueue q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), 2, -1, -1, false);
+		q.schedule(getFrontier());
+
+		// cut to 2 uris per pld
+		QueueStatistics s = q.getStatistics();
+		assertEquals(3, s.getQueued());
+		assertEquals(2, s.getActivePlds());
+		assertEquals(0, s.getPolled());
+
+		assertNotNull(q.poll());
+		assertNotNull(q.poll());
+		s = q.getStatistics();
+		assertEquals(1, s.getQueued());
+		assertEquals(1, s.getActivePlds());
+		assertEquals(2, s.getPolled());
+		assertEquals(2, s.getSeen());
+
+		// a new pld is polled without rescheduling
+		q.add(new URI("http://example.net/"), false);
+		assertEquals(2, q.size());
+		assertEquals(2, q.getActivePlds());
+
+		while (q.poll() != null) {
+			;
+		}
+		assertEquals(0, q.size());
+		assertEquals(0, q.getActivePlds());
+		assertEquals(4, q.getStatistics().getPolled());
+	}
+
+	public void testLoadBalancing() throws Exception {
+		LoadBalancingQueue q = new LoadBalancingQueue(new TldManager(), new HashTableRedirects());
+		q.setMinDelay(0);
+		q.schedule(getFrontier());
+
+		assertEquals(4, q.size());
+		assertEquals(2, q.getActivePlds());
+
+		int n = 0;
+		while (q.poll() != null) {
+			n++;
+		}
+		assertEquals(4, n);
+		assertEquals(0, q.size());
+		assertEquals(0, q.getActivePlds());
+	}
+
+	public void testRedirects() throws Exception {
+		BreadthFirstQueue q = new BreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false);
+		q.schedule(new BasicFrontier());
+
+		q.setRedirect(new URI("http://example.org/a"), new URI("http://example.org/b"), 303);
+		assertEquals(1, q.size());
+		assertEquals(0, q.getActivePlds());
+
+		assertEquals(new URI("http://example.org/b"), q.poll());
+		assertEquals(0, q.size());
+		assertEquals(1, q.getStatistics().getPolled());
+	}
+}
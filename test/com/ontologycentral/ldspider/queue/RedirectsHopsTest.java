@@ -0,0 +1,70 @@
+package com.ontologycentral.ldspider.queue;
+
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+public class RedirectsHopsTest extends TestCase {
+	public void testDummyHops() throws Exception {
+		checkHops(new DummyRedirects());
+	}
+
+	public void testHashTableHops() throws Exception {
+		checkHops(new HashTableRedirects());
+	}
+
+	public void testDummyLimit() throws Exception {
+		checkLimit(new DummyRedirects());
+	}
+
+	public void testHashTableLimit() throws Exception {
+		checkLimit(new HashTableRedirects());
+	}
+
+	public void testFingerprintLimit() throws Exception {
+		checkLimit(new FingerprintRedirects());
+	}
+
+	void checkHops(Redirects r) throws Exception {
+		URI a = new URI("http://example.org/a");
+		URI b = new URI("http://example.org/b");
+		URI c = new URI("http://example.org/c");
+
+		r.put(a, b);
+		r.put(b, c);
+
+		assertEquals(0, r.getHops(a));
+		assertEquals(1, r.getHops(b));
+		assertEquals(2, r.getHops(c));
+	}
+
+	/**
+	 * The queue follows at most {@link CrawlerConstants#MAX_REDIRECTS}
+	 * redirects on a path.
+	 */
+	void checkLimit(Redirects r) throws Exception {
+		SpiderQueue q = new BreadthFirstQueue(new TldManager(), r, -1, -1, -1, false);
+
+		URI u = new URI("http://example0.org/");
+		Frontier f = new BasicFrontier();
+		f.add(u);
+		q.schedule(f);
+		assertEquals(u, q.poll());
+
+		for (int i = 1; i <= CrawlerConstants.MAX_REDIRECTS; i++) {
+			URI to = new URI("http://example" + i + ".org/");
+			q.setRedirect(u, to, 301);
+			assertEquals(to, q.poll());
+			u = to;
+		}
+
+		q.setRedirect(u, new URI("http://example.org/too-far"), 301);
+		assertNull(q.poll());
+	}
+}
@@ -0,0 +1,58 @@
+package com.ontologycentral.ldspider.queue;
+import junit.framework.TestCase;
+
+
+public class SegmentStoreTest extends TestCase {
+	public void testExtents() throws Exception {
+		// small segments, so that extents go on in the next segment
+		SegmentStore s = new SegmentStore(null, 100);
+
+		for (int p = 0; p < 10; p++) {
+			for (int i = 0; i < 20; i++) {
+				s.append("example" + p + ".org", "http://example" + p + ".org/" + i);
+			}
+		}
+		s.finish();
+
+		assertEquals(10, s.getPlds().size());
+		assertTrue(s.getSegments() > 10);
+
+		// interleaved, as polled by the queue
+		for (int i = 0; i < 20; i++) {
+			for (int p = 9; p >= 0; p--) {
+				assertTrue(s.hasNext("example" + p + ".org"));
+				assertEquals("http://example" + p + ".org/" + i, s.next("example" + p + ".org"));
+			}
+		}
+		for (int p = 0; p < 10; p++) {
+			assertFalse(s.hasNext("example" + p + ".org"));
+			assertNull(s.next("example" + p + ".org"));
+		}
+		assertNull(s.next("example.com"));
+
+		s.clear();
+		assertEquals(0, s.getSegments());
+		assertTrue(s.getPlds().isEmpty());
+	}
+
+	public void testNotInOnePiece() throws Exception {
+		SegmentStore s = new SegmentStore(null, SegmentStore.DEFAULT_SEGMENT_SIZE);
+		s.append("example.org", "http://example.org/");
+		s.append("example.com", "http://example.com/");
+		try {
+			s.append("example.org", "http://example.org/a");
+			fail("uris of example.org are not in one piece");
+		} catch (IllegalStateException e) {
+			;
+		}
+		s.clear();
+	}
+
+	public void testUtf8() throws Exception {
+		SegmentStore s = new SegmentStore(null, SegmentStore.DEFAULT_SEGMENT_SIZE);
+		s.append("example.org", "http://example.org/\u00e4\u00f6\u00fc");
+		s.finish();
+		assertEquals("http://example.org/\u00e4\u00f6\u00fc", s.next("example.org"));
+		s.clear();
+	}
+}
@@ -0,0 +1,125 @@
+package com.ontologycentral.ldspider.queue;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.semanticweb.yars.tld.TldManager;
+
+import com.ontologycentral.ldspider.CrawlerConstants;
+import com.ontologycentral.ldspider.frontier.BasicFrontier;
+import com.ontologycentral.ldspider.frontier.Frontier;
+
+
+public class ShardedBreadthFirstQueueTest extends TestCase {
+	public void testLimits() throws Exception {
+		ShardedBreadthFirstQueue q = new ShardedBreadthFirstQueue(new TldManager(), new HashTableRedirects(), 2, 2, -1, false, 4);
+
+		Frontier f = new BasicFrontier();
+		for (int i = 0; i < 5; i++) {
+			f.add(new URI("http://example.org/" + i));
+			f.add(new URI("http://example.com/" + i));
+		}
+		f.add(new URI("http://example.net/"));
+		q.schedule(f);
+
+		// two uris of the two plds with most uris
+		assertEquals(4, q.size());
+
+		Set<String> hosts = new HashSet<String>();
+		URI u;
+		while ((u = q.poll()) != null) {
+			hosts.add(u.getHost());
+		}
+		assertEquals(2, hosts.size());
+		assertFalse(hosts.contains("example.net"));
+		assertEquals(0, q.size());
+	}
+
+	public void testConcurrentPoll() throws Exception {
+		final ShardedBreadthFirstQueue q = new ShardedBreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false, 8);
+
+		Frontier f = new BasicFrontier();
+		for (int p = 0; p < 20; p++) {
+			for (int i = 0; i < 3; i++) {
+				f.add(new URI("http://example" + p + ".org/" + i));
+			}
+		}
+		q.schedule(f);
+		assertEquals(60, q.size());
+
+		final Set<URI> polled = Collections.synchronizedSet(new HashSet<URI>());
+		final Map<String, Long> last = Collections.synchronizedMap(new HashMap<String, Long>());
+		final int[] errors = { 0 };
+
+		Thread[] threads = new Thread[16];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					URI u;
+					while ((u = q.poll()) != null) {
+						long now = System.currentTimeMillis();
+						Long l = last.put(u.getHost(), Long.valueOf(now));
+						synchronized (errors) {
+							if (!polled.add(u)) {
+								errors[0]++;
+							}
+							// a little leeway for the time between poll and put
+							if (l != null && now - l.longValue() < CrawlerConstants.MIN_DELAY - 50) {
+								errors[0]++;
+							}
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		assertEquals(0, errors[0]);
+		assertEquals(60, polled.size());
+
+		// uris added after scheduling are polled, too
+		q.add(new URI("http://example0.org/3"), false);
+		assertEquals(1, q.size());
+		assertEquals(new URI("http://example0.org/3"), q.poll());
+		assertNull(q.poll());
+	}
+
+	public void testWakeUp() throws Exception {
+		final ShardedBreadthFirstQueue q = new ShardedBreadthFirstQueue(new TldManager(), new HashTableRedirects(), -1, -1, -1, false, 4);
+
+		Frontier f = new BasicFrontier();
+		f.add(new URI("http://example.org/0"));
+		f.add(new URI("http://example.org/1"));
+		q.schedule(f);
+		assertNotNull(q.poll());
+
+		// example.org is not eligible again for MIN_DELAY ms
+		final URI[] polled = new URI[1];
+		final long[] done = new long[1];
+		Thread t = new Thread() {
+			public void run() {
+				polled[0] = q.poll();
+				done[0] = System.currentTimeMillis();
+			}
+		};
+		t.setDaemon(true);
+		long start = System.currentTimeMillis();
+		t.start();
+
+		Thread.sleep(50);
+		q.add(new URI("http://example.com/"), false);
+		t.join(10000);
+
+		// the waiting thread polls the new pld instead of waiting
+		assertEquals(new URI("http://example.com/"), polled[0]);
+		assertTrue(done[0] - start < CrawlerConstants.MIN_DELAY - 100);
+	}
+}
@@ -0,0 +1,133 @@
+package com.ontologycentral.ldspider.queue;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+
+public class TieredSeenSetTest extends TestCase {
+	File _dir;
+
+	public void setUp() throws Exception {
+		_dir = File.createTempFile("seen", "");
+		_dir.delete();
+		_dir.mkdir();
+	}
+
+	public void tearDown() throws Exception {
+		for (File f : _dir.listFiles()) {
+			f.delete();
+		}
+		_dir.delete();
+	}
+
+	public void testAddContains() throws Exception {
+		// small buffer, so that most fingerprints are in runs on disk
+		TieredSeenSet s = new TieredSeenSet(100000, 0.01, 1000, _dir);
+
+		for (int i = 0; i < 20000; i++) {
+			assertTrue(s.add(new URI("http://example.org/" + i)));
+		}
+		assertFalse(s.add(new URI("http://example.org/42")));
+		assertEquals(20000, s.size());
+		assertTrue(s.getRuns() > 0);
+		assertTrue(s.getDiskUsage() >= 8 * 19000);
+
+		for (int i = 0; i < 20000; i++) {
+			assertTrue(s.contains(new URI("http://example.org/" + i)));
+			assertFalse(s.contains(new URI("http://example.com/" + i)));
+		}
+
+		s.close();
+		assertEquals(0, s.size());
+		assertEquals(0, s.getRuns());
+		assertFalse(s.contains(new URI("http://example.org/42")));
+	}
+
+	public void testBatch() throws Exception {
+		TieredSeenSet s = new TieredSeenSet(100000, 0.01, 1000, _dir);
+
+		for (int i = 0; i < 10000; i += 2) {
+			s.add(new URI("http://example.org/" + i));
+		}
+
+		List<URI> uris = new ArrayList<URI>();
+		for (int i = 0; i < 10000; i++) {
+			uris.add(new URI("http://example.org/" + i));
+		}
+		boolean[] seen = s.contains(uris);
+		for (int i = 0; i < seen.length; i++) {
+			assertEquals(i % 2 == 0, seen[i]);
+		}
+
+		s.close();
+	}
+
+	public void testMerge() throws Exception {
+		TieredSeenSet s = new TieredSeenSet(100000, 0.01, 100, _dir);
+
+		for (int i = 0; i < 100 * TieredSeenSet.MERGE_RUNS; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+		// the merge runs in the background
+		for (int i = 0; i < 100 && s.getRuns() > 1; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, s.getRuns());
+		assertEquals(1, _dir.listFiles().length);
+
+		for (int i = 0; i < 100 * TieredSeenSet.MERGE_RUNS; i++) {
+			assertTrue(s.contains(new URI("http://example.org/" + i)));
+		}
+
+		s.close();
+	}
+
+	public void testSerialisation() throws Exception {
+		TieredSeenSet s = new TieredSeenSet(100000, 0.01, 300, _dir);
+		for (int i = 0; i < 1000; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(s);
+		oos.close();
+		s.close();
+
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		TieredSeenSet s2 = (TieredSeenSet)ois.readObject();
+
+		assertEquals(1000, s2.size());
+		assertEquals(1, s2.getRuns());
+		assertTrue(s2.contains(new URI("http://example.org/999")));
+		assertFalse(s2.contains(new URI("http://example.org/1000")));
+
+		s2.close();
+	}
+
+	public void testFingerprints() throws Exception {
+		TieredSeenSet s = new TieredSeenSet(100000, 0.01, 300, _dir);
+		for (int i = 0; i < 1000; i++) {
+			s.add(new URI("http://example.org/" + i));
+		}
+		assertTrue(s.getRuns() > 0);
+
+		long[] fps = s.fingerprints();
+		assertEquals(1000, fps.length);
+
+		FingerprintSeenSet s2 = new FingerprintSeenSet();
+		for (long fp : fps) {
+			assertTrue(s2.addFingerprint(fp));
+		}
+		assertTrue(s2.contains(new URI("http://example.org/999")));
+
+		s.close();
+	}
+}